@@ -112,12 +112,29 @@ public class CodeServer {
     File workDir = ensureWorkDir(options);
     System.out.println("workDir: " + workDir);
 
-    Modules modules = new Modules();
+    SourceWatcher sourceWatcher = null;
+    if (options.shouldRecompileOnChange()) {
+      sourceWatcher = new SourceWatcher(options.getSourcePath(), logger);
+    }
+
+    final Modules modules = new Modules();
     for (String moduleName : options.getModuleNames()) {
       AppSpace appSpace = AppSpace.create(new File(workDir, moduleName));
 
       Recompiler recompiler = new Recompiler(appSpace, moduleName, options, logger);
-      modules.addModuleState(new ModuleState(recompiler, logger, options.getNoPrecompile()));
+      modules.addModuleState(
+          new ModuleState(recompiler, logger, options.getNoPrecompile(), sourceWatcher));
+    }
+
+    if (sourceWatcher != null) {
+      sourceWatcher.start(new SourceWatcher.Listener() {
+        @Override
+        public void sourcesChanged() {
+          for (String moduleName : modules) {
+            modules.get(moduleName).recompileInBackground();
+          }
+        }
+      });
     }
     return modules;
   }
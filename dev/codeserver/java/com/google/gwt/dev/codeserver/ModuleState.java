@@ -20,6 +20,7 @@ import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.dev.json.JsonArray;
 import com.google.gwt.dev.json.JsonObject;
+import com.google.gwt.dev.util.DaemonThreadPool;
 
 import java.io.BufferedInputStream;
 import java.io.File;
@@ -27,25 +28,85 @@ import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Contains everything that the code server knows about a GWT app (module), including how
  * to recompile it and where the compiler output is.
+ * <p>
+ * Recompiles run on a pool of threads shared by all modules, whose size is set by the
+ * gwt.codeserver.recompileThreads system property. Recompiles for different binding properties
+ * run concurrently, while the output of the last successful recompile for each keeps being
+ * served.
+ * <p>
+ * Each client, as told apart by the caller (such as by a cookie), is served the output of
+ * the last successful recompile with the binding properties it last asked for, and the log of
+ * the last recompile with them, so that browsers recompiling with different binding properties
+ * each get their own output.
+ * <p>
+ * When a {@link SourceWatcher} is given, the module is also recompiled in the background after
+ * the sources change, for the binding properties of the last recompile a browser asked for. A
+ * recompile request then reuses that compile if the sources didn't change since it started.
  */
 class ModuleState {
-  private final AtomicReference<CompileDir> current = new AtomicReference<CompileDir>();
+
+  private static final String RECOMPILE_THREADS_PROPERTY = "gwt.codeserver.recompileThreads";
+
+  private static final DaemonThreadPool RECOMPILE_POOL =
+      new DaemonThreadPool("Recompile", Integer.getInteger(RECOMPILE_THREADS_PROPERTY, 2));
+
+  /**
+   * The output of the compile done at startup, served until a recompile succeeds.
+   */
+  private final CompileDir initialCompileDir;
+
+  /**
+   * The recompiles for each set of binding properties that has been asked for. Guarded by itself.
+   */
+  private final Map<Map<String, String>, CompileLane> lanes =
+      new HashMap<Map<String, String>, CompileLane>();
+
+  /**
+   * The binding properties of the last recompile a browser asked for, or null if none did yet.
+   */
+  private volatile Map<String, String> lastBindingProperties;
+
+  /**
+   * The binding properties of the last recompile each client asked for. Guarded by
+   * {@link #lanes}.
+   */
+  private final Map<String, Map<String, String>> clientBindingProperties =
+      new HashMap<String, Map<String, String>>();
+
   private final Recompiler recompiler;
   private final TreeLogger logger;
+  private final SourceWatcher sourceWatcher;
 
-  ModuleState(Recompiler recompiler, TreeLogger logger, boolean noPrecompile)
-      throws UnableToCompleteException {
+  /**
+   * The index of each source map that was looked up, by the output it's in, so that it's only
+   * parsed once per compile. Entries go away with the outputs that are no longer served.
+   * Guarded by itself.
+   */
+  private final Map<CompileDir, ReverseSourceMap> reverseSourceMaps =
+      new WeakHashMap<CompileDir, ReverseSourceMap>();
+
+  /**
+   * @param sourceWatcher tracks changes to the sources, or null to always recompile on request.
+   */
+  ModuleState(Recompiler recompiler, TreeLogger logger, boolean noPrecompile,
+      SourceWatcher sourceWatcher) throws UnableToCompleteException {
     this.recompiler = recompiler;
     this.logger = logger;
+    this.sourceWatcher = sourceWatcher;
 
     CompileDir compileDir;
     if (noPrecompile) {
@@ -57,26 +118,67 @@ class ModuleState {
       defaultProps.put("compiler.useSourceMaps", "true");
       compileDir = recompiler.compile(defaultProps);
     }
-    current.set(compileDir);
+    initialCompileDir = compileDir;
   }
 
   /**
    * Recompiles the module with the given binding properties. If successful, this changes the
-   * location of the output directory. (The log file changes both on success and on failure.
+   * location of the output directory for the client and any other client that last asked for the
+   * same binding properties. (The log file changes both on success and on failure.
+   * <p>
+   * If a recompile with the same binding properties is waiting to start, this waits for it
+   * instead of starting another one. If the sources are watched, this also reuses a running or
+   * finished recompile that started after the last change.
    *
    * @param bindingProperties The properties used to compile. (Chooses the permutation.)
+   * @param client The client asking for the recompile, or null if unknown.
    * @return true if the compile finished successfully.
    */
-  boolean recompile(Map<String, String> bindingProperties) {
+  boolean recompile(Map<String, String> bindingProperties, String client) {
+    long sourceVersion = sourceWatcher == null ? -1 : sourceWatcher.checkNow();
+    Map<String, String> properties = new HashMap<String, String>(bindingProperties);
+    lastBindingProperties = properties;
+    Future<CompileDir> compile;
+    synchronized (lanes) {
+      if (client != null) {
+        clientBindingProperties.put(client, properties);
+      }
+      compile = getLane(bindingProperties).request(sourceVersion);
+    }
+
     try {
-      current.set(recompiler.compile(bindingProperties));
+      compile.get();
       return true;
-    } catch (UnableToCompleteException e) {
-      logger.log(TreeLogger.Type.WARN, "continuing to serve previous version");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof UnableToCompleteException) {
+        logger.log(TreeLogger.Type.WARN, "continuing to serve previous version");
+        return false;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw DaemonThreadPool.toUnchecked(e, "Exception while recompiling");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.log(TreeLogger.Type.WARN, "interrupted while waiting for a recompile");
       return false;
     }
   }
 
+  /**
+   * Starts recompiling the module in the background for the binding properties a browser last
+   * asked for, unless that is already up to date. Does nothing before the first request.
+   */
+  void recompileInBackground() {
+    Map<String, String> bindingProperties = lastBindingProperties;
+    if (bindingProperties == null) {
+      return;
+    }
+    synchronized (lanes) {
+      getLane(bindingProperties).request(sourceWatcher.getVersion());
+    }
+  }
+
   /**
    * Returns the name of this module (after renaming).
    */
@@ -85,12 +187,12 @@ class ModuleState {
   }
 
   /**
-   * Returns the source map file from the most recent recompile.
+   * Returns the source map file from a compile's output.
    * @throws RuntimeException if unable
    */
-  File findSourceMap() {
+  private File findSourceMap(CompileDir compileDir) {
     String moduleName = recompiler.getModuleName();
-    File symbolMapsDir = current.get().findSymbolMapDir(moduleName);
+    File symbolMapsDir = compileDir.findSymbolMapDir(moduleName);
     if (symbolMapsDir == null) {
       throw new RuntimeException("Can't find symbolMaps dir for " + moduleName);
     }
@@ -117,19 +219,47 @@ class ModuleState {
     return new File(symbolMapsDir, sourceMapFiles[0].getName());
   }
 
+  /**
+   * Returns the reverse source map from the output served to a client. It's loaded the first
+   * time it's asked for after each recompile.
+   * @throws RuntimeException if unable
+   */
+  ReverseSourceMap getReverseSourceMap(String client) {
+    CompileDir compileDir = getCompileDir(client);
+    synchronized (reverseSourceMaps) {
+      ReverseSourceMap map = reverseSourceMaps.get(compileDir);
+      if (map == null) {
+        map = ReverseSourceMap.load(logger, findSourceMap(compileDir));
+        reverseSourceMaps.put(compileDir, map);
+      }
+      return map;
+    }
+  }
+
+  /**
+   * Writes the source map from the output served to a client as JSON, with the given prefix
+   * added to each source filename. The source map is copied as it's read, so that it's never
+   * held in memory.
+   * @throws RuntimeException if there's no source map
+   */
+  void writeSourceMap(String serverPrefix, String client, Writer out) throws IOException {
+    SourceMap.copyWithPrefix(findSourceMap(getCompileDir(client)), serverPrefix, out);
+  }
+
   /**
    * Finds a source file (or other resource) that's either in this module's source path, or
    * is a generated file.
    * @param path location of the file relative to its directory in the classpath, or (if
    *   it starts with "gen/"), a generated file.
+   * @param client The client whose output has the generated files, or null if unknown.
    * @return bytes in the file, or null if there's no such source file.
    */
-  InputStream openSourceFile(String path) throws IOException {
+  InputStream openSourceFile(String path, String client) throws IOException {
 
     if (path.startsWith("gen/")) {
       // generated file?
       String rest = path.substring("gen/".length());
-      File fileInGenDir = new File(getGenDir(), rest);
+      File fileInGenDir = new File(getGenDir(client), rest);
       if (!fileInGenDir.isFile()) {
         return null;
       }
@@ -146,51 +276,82 @@ class ModuleState {
 
   /**
    * Returns the location of a file in the compiler's output directory from the
-   * last time this module was recompiled. The location will change after a successful
-   * recompile.
+   * last time this module was recompiled for a client. The location will change after a
+   * successful recompile.
    * @param urlPath The path to the file. This should be a relative path beginning
    * with the module name (after renaming).
+   * @param client The client, or null if unknown.
    * @return The location of the file, which might not actually exist.
    */
-  File getOutputFile(String urlPath) {
-    return new File(current.get().getWarDir(), urlPath);
+  File getOutputFile(String urlPath, String client) {
+    return new File(getCompileDir(client).getWarDir(), urlPath);
   }
 
   /**
-   * Returns the log file from the last time this module was recompiled. This changes
-   * after every call to {@link #recompile}.
+   * Returns the log file from the last time this module was recompiled for a client, with the
+   * binding properties the client last asked for. This changes after every recompile with them.
+   * @param client The client, or null if unknown.
    */
-  File getCompileLog() {
-    return recompiler.getLastLog();
+  File getCompileLog(String client) {
+    return recompiler.getLastLog(getBindingProperties(client));
   }
 
-  File getGenDir() {
-    return current.get().getGenDir();
+  File getGenDir(String client) {
+    return getCompileDir(client).getGenDir();
   }
 
-  File getWarDir() {
-    return current.get().getWarDir();
+  File getWarDir(String client) {
+    return getCompileDir(client).getWarDir();
   }
 
   /**
    * Returns a file out of the "extras" directory.
    * @param path relative path of the file, not including the module name.
+   * @param client The client, or null if unknown.
    * @return The location of the file, which might not actually exist.
    */
-  File getExtraFile(String path) {
-    File prefix = new File(current.get().getExtraDir(), getModuleName());
+  File getExtraFile(String path, String client) {
+    File prefix = new File(getCompileDir(client).getExtraDir(), getModuleName());
     return new File(prefix, path);
   }
 
-  JsonObject getTemplateVariables() {
+  JsonObject getTemplateVariables(String client) {
     JsonObject result = new JsonObject();
     result.put("moduleName", getModuleName());
-    result.put("files", listModuleFiles());
+    result.put("files", listModuleFiles(client));
     return result;
   }
 
-  private JsonArray listModuleFiles() {
-    File[] files = new File(getWarDir(), getModuleName()).listFiles();
+  /**
+   * Returns the output to serve to a client: that of the last successful recompile with the
+   * binding properties the client last asked for. Clients that didn't ask for a recompile get
+   * the output for the binding properties asked for last.
+   */
+  private CompileDir getCompileDir(String client) {
+    synchronized (lanes) {
+      Map<String, String> bindingProperties = getBindingProperties(client);
+      CompileLane lane = bindingProperties == null ? null : lanes.get(bindingProperties);
+      if (lane == null || lane.lastSucceeded == null) {
+        return initialCompileDir;
+      }
+      return lane.lastSucceeded.compileDir;
+    }
+  }
+
+  /**
+   * Returns the binding properties a client last asked for, or those asked for last if the client
+   * didn't ask for a recompile, or null if no client did.
+   */
+  private Map<String, String> getBindingProperties(String client) {
+    synchronized (lanes) {
+      Map<String, String> bindingProperties =
+          client == null ? null : clientBindingProperties.get(client);
+      return bindingProperties == null ? lastBindingProperties : bindingProperties;
+    }
+  }
+
+  private JsonArray listModuleFiles(String client) {
+    File[] files = new File(getWarDir(client), getModuleName()).listFiles();
     if (files == null) {
       return new JsonArray();
     }
@@ -207,4 +368,123 @@ class ModuleState {
     }
     return result;
   }
+
+  /**
+   * Must be called while holding the lock on {@link #lanes}.
+   */
+  private CompileLane getLane(Map<String, String> bindingProperties) {
+    CompileLane lane = lanes.get(bindingProperties);
+    if (lane == null) {
+      lane = new CompileLane(new HashMap<String, String>(bindingProperties));
+      lanes.put(lane.bindingProperties, lane);
+    }
+    return lane;
+  }
+
+  /**
+   * The recompiles for one set of binding properties. At most one of them runs at a time.
+   * Requests that arrive while it runs share one follow-up recompile, which starts once the
+   * running one is done, so that it sees any source changes made in the meantime.
+   * All methods must be called while holding the lock on {@link #lanes}.
+   */
+  private class CompileLane {
+    private final Map<String, String> bindingProperties;
+    private Compile running;
+    private Compile waiting;
+
+    /**
+     * The recompile whose output is served to the clients that last asked for these binding
+     * properties.
+     */
+    private Compile lastSucceeded;
+
+    CompileLane(Map<String, String> bindingProperties) {
+      this.bindingProperties = bindingProperties;
+    }
+
+    /**
+     * Returns a recompile that includes the given version of the sources, starting it if
+     * nothing else runs in this lane.
+     *
+     * @param sourceVersion the version from the {@link SourceWatcher}, or -1 if the sources
+     *     aren't watched, in which case only a recompile that has yet to start is shared.
+     */
+    Future<CompileDir> request(long sourceVersion) {
+      if (sourceVersion >= 0 && waiting == null) {
+        if (running != null && running.sourceVersion == sourceVersion) {
+          return running;
+        }
+        if (running == null && lastSucceeded != null
+            && lastSucceeded.sourceVersion == sourceVersion) {
+          return lastSucceeded;
+        }
+      }
+      if (waiting == null) {
+        waiting = new Compile(this);
+        if (running == null) {
+          startWaiting();
+        }
+      }
+      return waiting != null ? waiting : running;
+    }
+
+    private void finished() {
+      running = null;
+      if (waiting != null) {
+        startWaiting();
+      }
+    }
+
+    private void startWaiting() {
+      running = waiting;
+      waiting = null;
+      // The compile reads the sources after this, so it includes at least this version.
+      running.sourceVersion = sourceWatcher == null ? -1 : sourceWatcher.getVersion();
+      RECOMPILE_POOL.getExecutor().execute(running);
+    }
+  }
+
+  /**
+   * One recompile in a {@link CompileLane}.
+   */
+  private class Compile extends FutureTask<CompileDir> {
+    private final CompileLane lane;
+
+    /**
+     * The version of the sources when the compile started. Guarded by {@link #lanes}.
+     */
+    private long sourceVersion = -1;
+
+    /**
+     * The output, once the compile succeeded.
+     */
+    private volatile CompileDir compileDir;
+
+    Compile(final CompileLane lane) {
+      super(new Callable<CompileDir>() {
+        @Override
+        public CompileDir call() throws UnableToCompleteException {
+          return recompiler.compile(lane.bindingProperties);
+        }
+      });
+      this.lane = lane;
+    }
+
+    @Override
+    protected void set(CompileDir compileDir) {
+      this.compileDir = compileDir;
+      // Before the compile is done, so that its output is served once the waiting clients see it.
+      synchronized (lanes) {
+        lane.lastSucceeded = this;
+      }
+      super.set(compileDir);
+    }
+
+    @Override
+    protected void done() {
+      synchronized (lanes) {
+        lane.finished();
+      }
+    }
+  }
 }
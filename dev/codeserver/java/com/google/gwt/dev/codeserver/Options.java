@@ -56,6 +56,7 @@ public class Options {
   // Use the same default as the GWT compiler.
   private SourceLevel sourceLevel = SourceLevel.DEFAULT_SOURCE_LEVEL;
   private boolean strictResources = false;
+  private boolean recompileOnChange = false;
 
   /**
    * Sets each option to the appropriate value, based on command-line arguments.
@@ -78,6 +79,11 @@ public class Options {
       return false;
     }
 
+    if (recompileOnChange && sourcePath.isEmpty()) {
+      System.err.println("Usage: -recompileOnChange needs at least one -src directory to watch");
+      return false;
+    }
+
     return true;
   }
 
@@ -174,6 +180,13 @@ public class Options {
     return sourcePath;
   }
 
+  /**
+   * Whether to recompile in the background when files in the source path change.
+   */
+  boolean shouldRecompileOnChange() {
+    return recompileOnChange;
+  }
+
   private class ArgProcessor extends ArgProcessorBase {
 
     public ArgProcessor() {
@@ -186,6 +199,7 @@ public class Options {
       registerHandler(new SourceFlag());
       registerHandler(new ModuleNameArgument());
       registerHandler(new StrictResourcesFlag());
+      registerHandler(new RecompileOnChangeFlag());
       registerHandler(new ArgHandlerSourceLevel(new OptionSourceLevel() {
         @Override
         public SourceLevel getSourceLevel() {
@@ -380,6 +394,30 @@ public class Options {
     }
   }
 
+  private class RecompileOnChangeFlag extends ArgHandlerFlag {
+
+    @Override
+    public String getLabel() {
+      return "recompileOnChange";
+    }
+
+    @Override
+    public String getPurposeSnippet() {
+      return "Recompile in the background when files in the -src directories change.";
+    }
+
+    @Override
+    public boolean setFlag(boolean value) {
+      recompileOnChange = value;
+      return true;
+    }
+
+    @Override
+    public boolean getDefaultValue() {
+      return false;
+    }
+  }
+
   private class AllowMissingSourceDirFlag extends ArgHandlerFlag {
 
     @Override
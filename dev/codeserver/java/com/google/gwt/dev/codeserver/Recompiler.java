@@ -23,6 +23,7 @@ import com.google.gwt.core.linker.IFrameLinker;
 import com.google.gwt.dev.Compiler;
 import com.google.gwt.dev.CompilerContext;
 import com.google.gwt.dev.CompilerOptions;
+import com.google.gwt.dev.RebindCache;
 import com.google.gwt.dev.cfg.BindingProperty;
 import com.google.gwt.dev.cfg.ConfigurationProperty;
 import com.google.gwt.dev.cfg.ModuleDef;
@@ -30,6 +31,7 @@ import com.google.gwt.dev.cfg.ModuleDefLoader;
 import com.google.gwt.dev.cfg.Property;
 import com.google.gwt.dev.cfg.ResourceLoader;
 import com.google.gwt.dev.cfg.ResourceLoaders;
+import com.google.gwt.dev.javac.UnitCache;
 import com.google.gwt.dev.javac.UnitCacheSingleton;
 import com.google.gwt.dev.resource.impl.ResourceOracleImpl;
 import com.google.gwt.dev.resource.impl.ZipFileClassPathEntry;
@@ -41,27 +43,49 @@ import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Recompiles a GWT module on demand.
+ * <p>
+ * Compiles for different binding properties may run concurrently. The caller must not start a
+ * compile for a set of binding properties while another one for the same set is running.
  */
 class Recompiler {
   private final AppSpace appSpace;
   private final String originalModuleName;
   private final TreeLogger logger;
   private String serverPrefix;
-  private int compilesDone = 0;
+  private final AtomicInteger compilesStarted = new AtomicInteger();
+
+  /**
+   * Held while loading the module, which clears and fills caches shared by all compiles.
+   */
+  private final Object loadModuleLock = new Object();
 
   // after renaming
   private AtomicReference<String> moduleName = new AtomicReference<String>(null);
 
   private final AtomicReference<CompileDir> lastBuild = new AtomicReference<CompileDir>();
+
+  /**
+   * The last build for each set of binding properties. Guarded by itself.
+   */
+  private final Map<Map<String, String>, CompileDir> lastBuildsByProperties =
+      new HashMap<Map<String, String>, CompileDir>();
+
   private final AtomicReference<ResourceLoader> resourceLoader =
       new AtomicReference<ResourceLoader>();
-  private final CompilerContext.Builder compilerContextBuilder = new CompilerContext.Builder();
-  private CompilerContext compilerContext;
   private Options options;
+  private UnitCache unitCache;
+
+  /**
+   * The generator results of earlier compiles, for each set of binding properties that a browser
+   * asked for. Incremental generators reuse them when their inputs didn't change.
+   */
+  private final Map<Map<String, String>, RebindCache> rebindCaches =
+      new HashMap<Map<String, String>, RebindCache>();
 
   Recompiler(AppSpace appSpace, String moduleName, Options options, TreeLogger logger) {
     this.appSpace = appSpace;
@@ -69,23 +93,14 @@ class Recompiler {
     this.options = options;
     this.logger = logger;
     this.serverPrefix = options.getPreferredHost() + ":" + options.getPort();
-    compilerContext = compilerContextBuilder.build();
   }
 
-  synchronized CompileDir compile(Map<String, String> bindingProperties)
+  CompileDir compile(Map<String, String> bindingProperties)
       throws UnableToCompleteException {
-    if (compilesDone == 0) {
-      System.setProperty("java.awt.headless", "true");
-      if (System.getProperty("gwt.speedtracerlog") == null) {
-        System.setProperty("gwt.speedtracerlog",
-            appSpace.getSpeedTracerLogFile().getAbsolutePath());
-      }
-      compilerContext = compilerContextBuilder.unitCache(
-          UnitCacheSingleton.get(logger, appSpace.getUnitCacheDir())).build();
-    }
+    UnitCache unitCache = getUnitCache();
 
     long startTime = System.currentTimeMillis();
-    int compileId = ++compilesDone;
+    int compileId = compilesStarted.incrementAndGet();
     CompileDir compileDir = makeCompileDir(compileId);
     TreeLogger compileLogger = makeCompileLogger(compileDir);
 
@@ -102,8 +117,9 @@ class Recompiler {
       CompilerOptions compilerOptions = new CompilerOptionsImpl(
           compileDir, options.getModuleNames(), options.getSourceLevel(),
           options.enforceStrictResources(), options.getLogLevel());
-      compilerContext = compilerContextBuilder.options(compilerOptions).build();
-      ModuleDef module = loadModule(compileLogger, bindingProperties);
+      CompilerContext compilerContext = new CompilerContext.Builder()
+          .unitCache(unitCache).options(compilerOptions).build();
+      ModuleDef module = loadModule(compileLogger, compilerContext, bindingProperties);
 
       // Propagates module rename.
       String newModuleName = module.getName();
@@ -111,10 +127,13 @@ class Recompiler {
       compilerOptions = new CompilerOptionsImpl(
           compileDir, Lists.newArrayList(newModuleName), options.getSourceLevel(),
           options.enforceStrictResources(), options.getLogLevel());
-      compilerContext = compilerContextBuilder.options(compilerOptions).build();
 
-      success = new Compiler(compilerOptions).run(compileLogger, module);
+      success = new Compiler(compilerOptions, getRebindCache(bindingProperties))
+          .run(compileLogger, module);
       lastBuild.set(compileDir); // makes compile log available over HTTP
+      synchronized (lastBuildsByProperties) {
+        lastBuildsByProperties.put(new HashMap<String, String>(bindingProperties), compileDir);
+      }
     } finally {
       try {
         options.getRecompileListener().finishedCompile(originalModuleName, compileId, success);
@@ -139,12 +158,13 @@ class Recompiler {
     return compileDir;
   }
 
-  synchronized CompileDir noCompile() throws UnableToCompleteException {
+  CompileDir noCompile() throws UnableToCompleteException {
     long startTime = System.currentTimeMillis();
-    CompileDir compileDir = makeCompileDir(++compilesDone);
+    CompileDir compileDir = makeCompileDir(compilesStarted.incrementAndGet());
     TreeLogger compileLogger = makeCompileLogger(compileDir);
 
-    ModuleDef module = loadModule(compileLogger, new HashMap<String, String>());
+    ModuleDef module = loadModule(compileLogger, new CompilerContext.Builder().build(),
+        new HashMap<String, String>());
     String newModuleName = module.getName();  // includes any rename.
     moduleName.set(newModuleName);
 
@@ -179,6 +199,18 @@ class Recompiler {
     return lastBuild.get().getLogFile();
   }
 
+  /**
+   * Returns the log from the last compile with the given binding properties. (It may be a failed
+   * build.) Falls back to the log from the last compile if there was none with them.
+   */
+  File getLastLog(Map<String, String> bindingProperties) {
+    CompileDir compileDir;
+    synchronized (lastBuildsByProperties) {
+      compileDir = bindingProperties == null ? null : lastBuildsByProperties.get(bindingProperties);
+    }
+    return compileDir == null ? getLastLog() : compileDir.getLogFile();
+  }
+
   String getModuleName() {
     return moduleName.get();
   }
@@ -187,6 +219,40 @@ class Recompiler {
     return resourceLoader.get();
   }
 
+  /**
+   * Returns the cache of generator results to use when compiling for the given binding
+   * properties, or null if generator result caching is disabled.
+   */
+  private RebindCache getRebindCache(Map<String, String> bindingProperties) {
+    if (System.getProperty("gwt.disableGeneratorResultCaching") != null) {
+      return null;
+    }
+    synchronized (rebindCaches) {
+      RebindCache cache = rebindCaches.get(bindingProperties);
+      if (cache == null) {
+        cache = new RebindCache();
+        rebindCaches.put(new HashMap<String, String>(bindingProperties), cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Sets up the JVM for compiling the first time it's called, and returns the unit cache that
+   * all compiles share.
+   */
+  private synchronized UnitCache getUnitCache() {
+    if (unitCache == null) {
+      System.setProperty("java.awt.headless", "true");
+      if (System.getProperty("gwt.speedtracerlog") == null) {
+        System.setProperty("gwt.speedtracerlog",
+            appSpace.getSpeedTracerLogFile().getAbsolutePath());
+      }
+      unitCache = UnitCacheSingleton.get(logger, appSpace.getUnitCacheDir());
+    }
+    return unitCache;
+  }
+
   private TreeLogger makeCompileLogger(CompileDir compileDir)
       throws UnableToCompleteException {
     try {
@@ -200,21 +266,25 @@ class Recompiler {
     }
   }
 
-  private ModuleDef loadModule(TreeLogger logger, Map<String, String> bindingProperties)
-      throws UnableToCompleteException {
+  private ModuleDef loadModule(TreeLogger logger, CompilerContext compilerContext,
+      Map<String, String> bindingProperties) throws UnableToCompleteException {
 
-    // make sure we get the latest version of any modified jar
-    ZipFileClassPathEntry.clearCache();
-    ResourceOracleImpl.clearCache();
-    ModuleDefLoader.clearModuleCache();
+    ModuleDef moduleDef;
+    synchronized (loadModuleLock) {
+      // make sure we get the latest version of any modified jar
+      ZipFileClassPathEntry.clearCache();
+      ResourceOracleImpl.clearCache();
+      ModuleDefLoader.clearModuleCache();
 
-    ResourceLoader resources = ResourceLoaders.forClassLoader(Thread.currentThread());
-    resources = ResourceLoaders.forPathAndFallback(options.getSourcePath(), resources);
-    this.resourceLoader.set(resources);
+      ResourceLoader resources = ResourceLoaders.forClassLoader(Thread.currentThread());
+      resources = ResourceLoaders.forPathAndFallback(options.getSourcePath(), resources);
+      this.resourceLoader.set(resources);
 
-    ModuleDef moduleDef = ModuleDefLoader.loadFromResources(
-        logger, compilerContext, originalModuleName, resources, true);
-    compilerContext = compilerContextBuilder.module(moduleDef).build();
+      // Since the module cache was just cleared, this is a new ModuleDef that no other compile
+      // shares, so the bindings below can be set on it.
+      moduleDef = ModuleDefLoader.loadFromResources(
+          logger, compilerContext, originalModuleName, resources, true);
+    }
 
     // We need a cross-site linker. Automatically replace the default linker.
     if (IFrameLinker.class.isAssignableFrom(moduleDef.getActivePrimaryLinker())) {
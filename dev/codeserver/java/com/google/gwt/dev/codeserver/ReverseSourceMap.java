@@ -18,33 +18,80 @@ package com.google.gwt.dev.codeserver;
 
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.dev.util.Util;
+import com.google.gwt.thirdparty.debugging.sourcemap.FilePosition;
 import com.google.gwt.thirdparty.debugging.sourcemap.SourceMapConsumerV3;
 import com.google.gwt.thirdparty.debugging.sourcemap.SourceMapParseException;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
 /**
  * A mapping from Java lines to JavaScript.
+ * <p>
+ * The source map is parsed once, into a bit set of the lines that have JavaScript for each
+ * source file and a sorted listing of the source files by directory, so that a loaded map
+ * answers lookups without keeping the parsed mappings around.
  */
 class ReverseSourceMap {
-  private final SourceMapConsumerV3 consumer;
+  private final Map<String, BitSet> linesWithJavaScript;
+  private final SortedMap<String, List<String>> filesByDirectory;
 
-  private ReverseSourceMap(SourceMapConsumerV3 consumer) {
-    this.consumer = consumer;
+  private ReverseSourceMap(Map<String, BitSet> linesWithJavaScript, Iterable<String> sources) {
+    this.linesWithJavaScript = linesWithJavaScript;
+    this.filesByDirectory = new TreeMap<String, List<String>>();
+    for (String source : sources) {
+      File file = new File(source);
+      String directory = file.getParent() == null ? "" : file.getParent();
+      List<String> files = filesByDirectory.get(directory);
+      if (files == null) {
+        files = new ArrayList<String>();
+        filesByDirectory.put(directory, files);
+      }
+      files.add(file.getName());
+    }
+    for (List<String> files : filesByDirectory.values()) {
+      Collections.sort(files);
+    }
   }
 
   /**
-   * Reads a source map from disk and parses it into an in-memory representation.
+   * Reads a source map from disk and indexes it.
    * If it can't be loaded, logs a warning and returns an empty source map.
    */
-  static ReverseSourceMap load(TreeLogger logger, ModuleState moduleState) {
+  static ReverseSourceMap load(TreeLogger logger, File sourceMapFile) {
     SourceMapConsumerV3 consumer = new SourceMapConsumerV3();
-    String unparsed = Util.readFileAsString(moduleState.findSourceMap());
     try {
-      consumer.parse(unparsed);
-      return new ReverseSourceMap(consumer);
+      consumer.parse(Util.readFileAsString(sourceMapFile));
     } catch (SourceMapParseException e) {
       logger.log(TreeLogger.WARN, "can't parse source map", e);
-      return new ReverseSourceMap(null);
+      return new ReverseSourceMap(new HashMap<String, BitSet>(), Collections.<String>emptyList());
     }
+
+    final Map<String, BitSet> linesWithJavaScript = new HashMap<String, BitSet>();
+    consumer.visitMappings(new SourceMapConsumerV3.EntryVisitor() {
+      @Override
+      public void visit(String sourceName, String symbolName, FilePosition sourceStartPosition,
+          FilePosition startPosition, FilePosition endPosition) {
+        if (sourceName == null) {
+          return;
+        }
+        BitSet lines = linesWithJavaScript.get(sourceName);
+        if (lines == null) {
+          lines = new BitSet();
+          linesWithJavaScript.put(sourceName, lines);
+        }
+        // Lines are numbered from zero in the source map.
+        lines.set(sourceStartPosition.getLine());
+      }
+    });
+    return new ReverseSourceMap(linesWithJavaScript, consumer.getOriginalSources());
   }
 
   /**
@@ -53,7 +100,26 @@ class ReverseSourceMap {
    * where the GWT compiler found it.)
    */
   boolean appearsInJavaScript(String path, int lineNumber) {
-    // TODO: getReverseMapping() seems to be off by one (lines numbered from zero). Why?
-    return consumer != null && !consumer.getReverseMapping(path, lineNumber - 1, -1).isEmpty();
+    BitSet lines = linesWithJavaScript.get(path);
+    return lines != null && lineNumber >= 1 && lines.get(lineNumber - 1);
+  }
+
+  /**
+   * Returns a sorted list of all the directories containing at least one filename
+   * in the source map.
+   */
+  List<String> getSourceDirectories() {
+    return new ArrayList<String>(filesByDirectory.keySet());
+  }
+
+  /**
+   * Returns a sorted, unmodifiable list of all filenames in the given directory.
+   */
+  List<String> getSourceFilesInDirectory(String parent) {
+    if (!parent.endsWith("/")) {
+      throw new IllegalArgumentException("unexpected: " + parent);
+    }
+    List<String> files = filesByDirectory.get(parent.substring(0, parent.length() - 1));
+    return files == null ? Collections.<String>emptyList() : Collections.unmodifiableList(files);
   }
 }
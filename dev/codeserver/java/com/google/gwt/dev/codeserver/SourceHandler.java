@@ -76,17 +76,18 @@ class SourceHandler {
 
     String rest = target.substring(rootDir.length());
 
+    String client = WebServer.getClient(request);
     if (rest.isEmpty()) {
-      sendDirectoryListPage(moduleName, response);
+      sendDirectoryListPage(moduleName, client, response);
 
     } else if (rest.endsWith("/")) {
-      sendFileListPage(moduleName, rest, response);
+      sendFileListPage(moduleName, rest, client, response);
 
     } else if (rest.equals("gwtSourceMap.json")) {
       sendSourceMap(moduleName, request, response);
 
     } else if (rest.endsWith(".java")) {
-      sendSourceFile(moduleName, rest, request.getQueryString(), response);
+      sendSourceFile(moduleName, rest, request.getQueryString(), client, response);
 
     } else {
       response.sendError(HttpServletResponse.SC_NOT_FOUND);
@@ -109,21 +110,20 @@ class SourceHandler {
   private void sendSourceMap(String moduleName, HttpServletRequest request,
       HttpServletResponse response) throws IOException {
 
-    SourceMap map = loadSourceMap(moduleName);
-
     // hack: rewrite the source map so that each filename is a URL
     String serverPrefix = String.format("http://%s:%d/sourcemaps/%s/", request.getServerName(),
         request.getServerPort(), moduleName);
-    map.addPrefixToEachSourceFile(serverPrefix);
-
-    PageUtil.sendString("application/json", map.serialize(), response);
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType("application/json");
+    modules.get(moduleName).writeSourceMap(serverPrefix, WebServer.getClient(request),
+        response.getWriter());
     logger.log(TreeLogger.WARN, "sent source map for module: " + moduleName);
   }
 
-  private void sendDirectoryListPage(String moduleName, HttpServletResponse response)
-      throws IOException {
+  private void sendDirectoryListPage(String moduleName, String client,
+      HttpServletResponse response) throws IOException {
 
-    SourceMap map = loadSourceMap(moduleName);
+    ReverseSourceMap map = modules.get(moduleName).getReverseSourceMap(client);
 
     JsonObject config = new JsonObject();
     config.put("moduleName", moduleName);
@@ -138,10 +138,10 @@ class SourceHandler {
     PageUtil.sendJsonAndHtml("config", config, "directorylist.html", response, logger);
   }
 
-  private void sendFileListPage(String moduleName, String rest, HttpServletResponse response)
-      throws IOException {
+  private void sendFileListPage(String moduleName, String rest, String client,
+      HttpServletResponse response) throws IOException {
 
-    SourceMap map = loadSourceMap(moduleName);
+    ReverseSourceMap map = modules.get(moduleName).getReverseSourceMap(client);
 
     JsonObject config = new JsonObject();
     config.put("moduleName", moduleName);
@@ -161,11 +161,11 @@ class SourceHandler {
    * Sends an HTTP response containing a Java source. It will be sent as plain text by default,
    * or as HTML if the query string is equal to "html".
    */
-  private void sendSourceFile(String moduleName, String sourcePath, String query,
+  private void sendSourceFile(String moduleName, String sourcePath, String query, String client,
       HttpServletResponse response)
       throws IOException {
     ModuleState moduleState = modules.get(moduleName);
-    InputStream pageBytes = moduleState.openSourceFile(sourcePath);
+    InputStream pageBytes = moduleState.openSourceFile(sourcePath, client);
 
     if (pageBytes == null) {
       response.sendError(HttpServletResponse.SC_NOT_FOUND);
@@ -175,7 +175,7 @@ class SourceHandler {
 
     if (query != null && query.equals("html")) {
       BufferedReader reader = new BufferedReader(new InputStreamReader(pageBytes));
-      sendSourceFileAsHtml(moduleName, sourcePath, reader, response);
+      sendSourceFileAsHtml(moduleName, sourcePath, reader, client, response);
     } else {
       PageUtil.sendStream("text/plain", pageBytes, response);
     }
@@ -187,9 +187,9 @@ class SourceHandler {
    * source map).
    */
   private void sendSourceFileAsHtml(String moduleName, String sourcePath, BufferedReader lines,
-      HttpServletResponse response) throws IOException {
+      String client, HttpServletResponse response) throws IOException {
 
-    ReverseSourceMap sourceMap = ReverseSourceMap.load(logger, modules.get(moduleName));
+    ReverseSourceMap sourceMap = modules.get(moduleName).getReverseSourceMap(client);
 
     File sourceFile = new File(sourcePath);
 
@@ -231,9 +231,4 @@ class SourceHandler {
     out.endTag("body").nl();
     out.endTag("html").nl();
   }
-
-  private SourceMap loadSourceMap(String moduleName) {
-    ModuleState moduleState = modules.get(moduleName);
-    return SourceMap.load(moduleState.findSourceMap());
-  }
 }
@@ -16,108 +16,131 @@
 
 package com.google.gwt.dev.codeserver;
 
-import com.google.gwt.dev.json.JsonArray;
-import com.google.gwt.dev.json.JsonException;
-import com.google.gwt.dev.json.JsonObject;
-import com.google.gwt.dev.util.Util;
-
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
 
 /**
- * In-memory representation of a SourceMap.
+ * Copies a source map file, adding a prefix to each source filename on the way. The file is
+ * streamed rather than parsed, since source maps for large modules take tens of megabytes.
  *
  * @author skybrian@google.com (Brian Slesinsky)
  */
 class SourceMap {
-  private final JsonObject json;
+  private static final String SOURCES_KEY = "sources";
 
-  /** @see #load */
-  private SourceMap(JsonObject json) {
-    this.json = json;
-  }
+  private final String escapedPrefix;
+  private final Writer out;
 
-  static SourceMap load(File file) {
-    String sourceMapJson = Util.readFileAsString(file);
+  /**
+   * Nesting depth of the objects and arrays around the next character.
+   */
+  private int depth;
 
-    JsonObject json;
-    try {
-      json = JsonObject.parse(new StringReader(sourceMapJson));
-    } catch (JsonException e) {
-      throw new RuntimeException("can't parse sourcemap as json", e);
-    } catch (IOException e) {
-      throw new RuntimeException("can't parse sourcemap as json", e);
-    }
+  private boolean inString;
+  private boolean escaped;
 
-    return new SourceMap(json);
-  }
+  /**
+   * The start of the string being read at depth 1, while it might still be "sources".
+   */
+  private final StringBuilder key = new StringBuilder();
 
   /**
-   * Adds the given prefix to each source filename in the source map.
+   * True after "sources" was read at depth 1, until the next value starts.
    */
-  void addPrefixToEachSourceFile(String serverPrefix) {
-    JsonArray sources = (JsonArray) json.get("sources");
-    JsonArray newSources = new JsonArray();
-    for (int i = 0; i < sources.getLength(); i++) {
-      String filename = sources.get(i).asString().getString();
-      newSources.add(serverPrefix + filename);
-    }
-    json.put("sources", newSources);
-  }
+  private boolean afterSourcesKey;
 
   /**
-   * Returns a sorted list of all the directories containing at least one filename
-   * in the source map.
+   * The depth of the filenames in the sources array, or -1 when not in it.
    */
-  List<String> getSourceDirectories() {
-    JsonArray sources = (JsonArray) json.get("sources");
-    Set<String> directories = new HashSet<String>();
-    for (int i = 0; i < sources.getLength(); i++) {
-      String filename = sources.get(i).asString().getString();
-      directories.add(new File(filename).getParent());
-    }
+  private int sourcesDepth = -1;
 
-    List<String> result = new ArrayList<String>();
-    result.addAll(directories);
-    Collections.sort(result);
-    return result;
+  /** @see #copyWithPrefix */
+  private SourceMap(String serverPrefix, Writer out) {
+    this.escapedPrefix = serverPrefix.replace("\\", "\\\\").replace("\"", "\\\"");
+    this.out = out;
   }
 
   /**
-   * Returns a sorted list of all filenames in the given directory.
+   * Writes the source map in the given file to out, with the given prefix added to each source
+   * filename. Doesn't close out.
    */
-  List<String> getSourceFilesInDirectory(String parent) {
-    if (!parent.endsWith("/")) {
-      throw new IllegalArgumentException("unexpected: " + parent);
-    }
-
-    JsonArray sources = (JsonArray) json.get("sources");
-
-    List<String> result = new ArrayList<String>();
-    for (int i = 0; i < sources.getLength(); i++) {
-      File candidate = new File(sources.get(i).asString().getString());
-      if (parent.equals(candidate.getParent() + "/")) {
-        result.add(candidate.getName());
+  static void copyWithPrefix(File file, String serverPrefix, Writer out) throws IOException {
+    Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+    try {
+      SourceMap copier = new SourceMap(serverPrefix, out);
+      char[] buffer = new char[8 * 1024];
+      while (true) {
+        int charsRead = in.read(buffer);
+        if (charsRead == -1) {
+          break;
+        }
+        copier.write(buffer, charsRead);
       }
+    } finally {
+      in.close();
     }
-
-    return result;
+    out.flush();
   }
 
-  String serialize() {
-    StringWriter buffer = new StringWriter();
-    try {
-      json.write(buffer);
-    } catch (IOException e) {
-      throw new RuntimeException("can't convert sourcemap to json");
+  private void write(char[] buffer, int length) throws IOException {
+    int unwritten = 0;
+    for (int i = 0; i < length; i++) {
+      char c = buffer[i];
+      if (inString) {
+        if (escaped) {
+          escaped = false;
+        } else if (c == '\\') {
+          escaped = true;
+        } else if (c == '"') {
+          inString = false;
+          afterSourcesKey = depth == 1 && key.toString().equals(SOURCES_KEY);
+          key.setLength(0);
+          continue;
+        }
+        if (depth == 1 && key.length() <= SOURCES_KEY.length()) {
+          key.append(c);
+        }
+        continue;
+      }
+      switch (c) {
+        case '"':
+          inString = true;
+          if (depth == sourcesDepth) {
+            out.write(buffer, unwritten, i + 1 - unwritten);
+            out.write(escapedPrefix);
+            unwritten = i + 1;
+          }
+          break;
+        case '[':
+          depth++;
+          if (afterSourcesKey) {
+            sourcesDepth = depth;
+          }
+          afterSourcesKey = false;
+          break;
+        case '{':
+          depth++;
+          afterSourcesKey = false;
+          break;
+        case ']':
+        case '}':
+          if (depth == sourcesDepth) {
+            sourcesDepth = -1;
+          }
+          depth--;
+          afterSourcesKey = false;
+          break;
+        case ',':
+          afterSourcesKey = false;
+          break;
+        default:
+          break;
+      }
     }
-    return buffer.toString();
+    out.write(buffer, unwritten, length - unwritten);
   }
 }
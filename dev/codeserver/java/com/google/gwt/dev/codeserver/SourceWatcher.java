@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.codeserver;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.thirdparty.guava.common.collect.ImmutableList;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Watches the directories on the source path for changes. Each change it sees bumps a version
+ * number, so that a compile can tell whether the sources changed since another compile started.
+ * <p>
+ * The directories are polled, since the file system can't be watched before Java 7. Once files
+ * have stopped changing for a poll interval, a listener is told so that it can start a
+ * recompile before a browser asks for one.
+ * <p>
+ * Modification times may only be accurate to a second or two, so a file that is saved again
+ * without changing size soon after a scan may look unchanged. While any file's modification time
+ * is that close to the time of a scan, the next check bumps the version whether or not anything
+ * else changed, so that a compile that may have read the earlier contents is never reused.
+ */
+class SourceWatcher {
+
+  /**
+   * Called on the watcher's thread after the sources changed.
+   */
+  interface Listener {
+    void sourcesChanged();
+  }
+
+  private static final long POLL_MILLIS = 1000;
+
+  /**
+   * The coarsest file timestamp resolution we expect to encounter.
+   */
+  private static final long TIMESTAMP_GRANULARITY_MS = 2000;
+
+  private final List<File> dirs;
+  private final TreeLogger logger;
+
+  /**
+   * Guarded by this.
+   */
+  private long fingerprint;
+
+  /**
+   * True if a file was modified too close to the last scan to tell whether it changed again
+   * afterwards. Guarded by this.
+   */
+  private boolean unsettled;
+
+  /**
+   * The newest modification time seen by the scan in progress. Guarded by this.
+   */
+  private long newestModified;
+
+  /**
+   * Guarded by this.
+   */
+  private long version;
+
+  SourceWatcher(List<File> dirs, TreeLogger logger) {
+    this.dirs = ImmutableList.copyOf(dirs);
+    this.logger = logger;
+    synchronized (this) {
+      this.fingerprint = scan();
+    }
+  }
+
+  /**
+   * Returns the version of the sources as of the last check.
+   */
+  synchronized long getVersion() {
+    return version;
+  }
+
+  /**
+   * Checks the directories for changes and returns the current version of the sources.
+   */
+  synchronized long checkNow() {
+    boolean wasUnsettled = unsettled;
+    long newFingerprint = scan();
+    if (newFingerprint != fingerprint || wasUnsettled) {
+      fingerprint = newFingerprint;
+      version++;
+    }
+    return version;
+  }
+
+  /**
+   * Starts polling the directories on a daemon thread.
+   */
+  void start(final Listener listener) {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        poll(listener);
+      }
+    }, "SourceWatcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void poll(Listener listener) {
+    long lastSeen = getVersion();
+    long lastNotified = lastSeen;
+    while (true) {
+      try {
+        Thread.sleep(POLL_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      long current = checkNow();
+      // Wait until the sources stay the same for a whole poll interval, so that saving many
+      // files at once starts a single recompile.
+      if (current == lastSeen && current != lastNotified) {
+        lastNotified = current;
+        try {
+          listener.sourcesChanged();
+        } catch (RuntimeException e) {
+          logger.log(TreeLogger.Type.WARN, "unable to start a recompile after a source change", e);
+        }
+      }
+      lastSeen = current;
+    }
+  }
+
+  /**
+   * Returns a hash of the names, sizes and modification times of all the files in the
+   * directories. It doesn't depend on the order in which the files are listed. Also records
+   * whether any file was modified too recently to be sure it won't change without changing the
+   * hash.
+   */
+  private long scan() {
+    long scanTime = System.currentTimeMillis();
+    newestModified = 0;
+    long result = 0;
+    for (File dir : dirs) {
+      result += scan(dir);
+    }
+    unsettled = newestModified + TIMESTAMP_GRANULARITY_MS >= scanTime;
+    return result;
+  }
+
+  private long scan(File dir) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return 0;
+    }
+    long result = 0;
+    for (File child : children) {
+      if (child.getName().startsWith(".")) {
+        continue;
+      } else if (child.isDirectory()) {
+        result += scan(child);
+      } else {
+        long lastModified = child.lastModified();
+        newestModified = Math.max(newestModified, lastModified);
+        long hash = child.getPath().hashCode();
+        hash = hash * 31 + lastModified;
+        hash = hash * 31 + child.length();
+        result += hash * 0x9E3779B97F4A7C15L;
+      }
+    }
+    return result;
+  }
+}
@@ -41,11 +41,13 @@ import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.servlet.ServletException;
 import javax.servlet.DispatcherType;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -84,6 +86,11 @@ public class WebServer {
   private static final Pattern SAFE_CALLBACK =
       Pattern.compile("([a-zA-Z_][a-zA-Z0-9_]*\\.)*[a-zA-Z_][a-zA-Z0-9_]*");
 
+  /**
+   * The cookie holding the id that tells apart the browsers using the code server.
+   */
+  private static final String CLIENT_COOKIE = "gwt-codeserver-client";
+
   private static final MimeTypes MIME_TYPES = new MimeTypes();
   private static final String TIME_IN_THE_PAST = "Fri, 01 Jan 1990 00:00:00 GMT";
 
@@ -146,10 +153,44 @@ public class WebServer {
   }
 
   /**
-   * Returns the location of the compiler output. (Changes after every recompile.)
+   * Returns the location of the compiler output for the binding properties of the last
+   * recompile. (Changes after every recompile.)
    */
   public File getCurrentWarDir(String moduleName) {
-    return modules.get(moduleName).getWarDir();
+    return modules.get(moduleName).getWarDir(null);
+  }
+
+  /**
+   * Tells apart the browsers that ask for recompiles and for the output, so that each is served
+   * the output for the binding properties it asked for. Returns the id from the browser's
+   * cookie, or null if it has none (such as when it blocks cookies from the code server).
+   */
+  static String getClient(HttpServletRequest request) {
+    Cookie[] cookies = request.getCookies();
+    if (cookies != null) {
+      for (Cookie cookie : cookies) {
+        if (CLIENT_COOKIE.equals(cookie.getName())) {
+          return cookie.getValue();
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the id of the browser making a request, first giving it a new one in a cookie if it
+   * has none.
+   */
+  private static String getOrCreateClient(HttpServletRequest request,
+      HttpServletResponse response) {
+    String client = getClient(request);
+    if (client == null) {
+      client = UUID.randomUUID().toString();
+      Cookie cookie = new Cookie(CLIENT_COOKIE, client);
+      cookie.setPath("/");
+      response.addCookie(cookie);
+    }
+    return client;
   }
 
   private void handleRequest(String target, HttpServletRequest request,
@@ -165,6 +206,9 @@ public class WebServer {
       throws IOException {
     if (target.equals("/")) {
       setHandled(request);
+      // Sets the cookie while the code server is the site visited, so that it's also sent by the
+      // bookmarklets and the module loaded from other sites.
+      getOrCreateClient(request, response);
       JsonObject config = makeConfig();
       PageUtil.sendJsonAndHtml("config", config, "frontpage.html", response, logger);
       return;
@@ -197,7 +241,8 @@ public class WebServer {
       // cause a spurious recompile, resulting in an unexpected permutation being loaded later.
       //
       // It would be unsafe to allow a configuration property to be changed.
-      boolean ok = moduleState.recompile(getBindingProperties(request));
+      boolean ok = moduleState.recompile(getBindingProperties(request),
+          getOrCreateClient(request, response));
 
       JsonObject config = makeConfig();
       config.put("status", ok ? "ok" : "failed");
@@ -208,7 +253,7 @@ public class WebServer {
     if (target.startsWith("/log/")) {
       setHandled(request);
       String moduleName = target.substring("/log/".length());
-      File file = modules.get(moduleName).getCompileLog();
+      File file = modules.get(moduleName).getCompileLog(getClient(request));
       sendLogPage(moduleName, file, response);
       return;
     }
@@ -226,14 +271,14 @@ public class WebServer {
 
     if (target.equals("/policies/")) {
       setHandled(request);
-      sendPolicyIndex(response);
+      sendPolicyIndex(request, response);
       return;
     }
 
     Matcher matcher = SAFE_MODULE_PATH.matcher(target);
     if (matcher.matches()) {
       setHandled(request);
-      sendModulePage(matcher.group(1), response);
+      sendModulePage(matcher.group(1), request, response);
       return;
     }
 
@@ -252,7 +297,7 @@ public class WebServer {
         return;
       }
       if (target.startsWith("/policies/")) {
-        sendPolicyFile(target, response);
+        sendPolicyFile(target, request, response);
         return;
       }
       sendOutputFile(target, request, response);
@@ -269,10 +314,11 @@ public class WebServer {
     String moduleName = target.substring(1, secondSlash);
     ModuleState moduleState = modules.get(moduleName);
 
-    File file = moduleState.getOutputFile(target);
+    String client = getClient(request);
+    File file = moduleState.getOutputFile(target, client);
     if (!file.isFile()) {
       // perhaps it's compressed
-      file = moduleState.getOutputFile(target + ".gz");
+      file = moduleState.getOutputFile(target + ".gz", client);
       if (!file.isFile()) {
         response.sendError(HttpServletResponse.SC_NOT_FOUND);
         logger.log(TreeLogger.WARN, "not found: " + file.toString());
@@ -299,7 +345,8 @@ public class WebServer {
     PageUtil.sendFile(mimeType, file, response);
   }
 
-  private void sendModulePage(String moduleName, HttpServletResponse response) throws IOException {
+  private void sendModulePage(String moduleName, HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
     ModuleState module = modules.get(moduleName);
     if (module == null) {
       response.sendError(HttpServletResponse.SC_NOT_FOUND);
@@ -307,11 +354,12 @@ public class WebServer {
       return;
     }
     PageUtil
-        .sendJsonAndHtml("config", module.getTemplateVariables(), "modulepage.html", response,
-            logger);
+        .sendJsonAndHtml("config", module.getTemplateVariables(getClient(request)),
+            "modulepage.html", response, logger);
   }
 
-  private void sendPolicyIndex(HttpServletResponse response) throws IOException {
+  private void sendPolicyIndex(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
 
     response.setContentType("text/html");
 
@@ -327,7 +375,7 @@ public class WebServer {
 
     for (String moduleName : modules) {
       ModuleState module = modules.get(moduleName);
-      File manifest = module.getExtraFile("rpcPolicyManifest/manifest.txt");
+      File manifest = module.getExtraFile("rpcPolicyManifest/manifest.txt", getClient(request));
       if (manifest.isFile()) {
         out.startTag("h2").text(moduleName).endTag("h2").nl();
 
@@ -370,7 +418,8 @@ public class WebServer {
     out.endTag("html").nl();
   }
 
-  private void sendPolicyFile(String target, HttpServletResponse response) throws IOException {
+  private void sendPolicyFile(String target, HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
     int secondSlash = target.indexOf('/', 1);
     if (secondSlash < 1) {
       response.sendError(HttpServletResponse.SC_NOT_FOUND);
@@ -384,7 +433,7 @@ public class WebServer {
 
     for (String moduleName : modules) {
       ModuleState module = modules.get(moduleName);
-      File policy = module.getOutputFile(moduleName + "/" + rest);
+      File policy = module.getOutputFile(moduleName + "/" + rest, getClient(request));
       if (policy.isFile()) {
         PageUtil.sendFile("text/plain", policy, response);
         return;
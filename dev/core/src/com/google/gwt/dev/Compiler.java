@@ -118,11 +118,24 @@ public class Compiler {
   private final CompilerOptionsImpl options;
 
   public Compiler(CompilerOptions compilerOptions) {
+    this(compilerOptions, null);
+  }
+
+  /**
+   * Creates a compiler that reuses the generator results in the given cache, and records its own
+   * into it, when the module compiles to a single permutation.
+   */
+  public Compiler(CompilerOptions compilerOptions, RebindCache rebindCache) {
     this.options = new CompilerOptionsImpl(compilerOptions);
-    this.compilerContextBuilder = new CompilerContext.Builder();
+    this.compilerContextBuilder = new CompilerContext.Builder().rebindCache(rebindCache);
     this.compilerContext = compilerContextBuilder.options(options).build();
   }
 
+  // VisibleForTesting
+  CompilerContext getCompilerContext() {
+    return compilerContext;
+  }
+
   public boolean run(TreeLogger logger) throws UnableToCompleteException {
     ModuleDef[] modules = new ModuleDef[options.getModuleNames().size()];
     int i = 0;
@@ -46,6 +46,7 @@ public class CompilerContext {
     private ModuleDef module;
     private PrecompileTaskOptions options = new PrecompileTaskOptionsImpl();
     private ResourceOracle publicResourceOracle;
+    private RebindCache rebindCache;
     private ResourceOracle sourceResourceOracle;
     private UnitCache unitCache = new MemoryUnitCache();
 
@@ -60,6 +61,7 @@ public class CompilerContext {
       compilerContext.compileMonolithic = compileMonolithic;
       compilerContext.options = options;
       compilerContext.publicResourceOracle = publicResourceOracle;
+      compilerContext.rebindCache = rebindCache;
       compilerContext.sourceResourceOracle = sourceResourceOracle;
       compilerContext.unitCache = unitCache;
       return compilerContext;
@@ -99,6 +101,15 @@ public class CompilerContext {
       return this;
     }
 
+    /**
+     * Sets the cache of generator results to reuse across compiles of the same module, or
+     * {@code null} to run every generator from scratch.
+     */
+    public Builder rebindCache(RebindCache rebindCache) {
+      this.rebindCache = rebindCache;
+      return this;
+    }
+
     public Builder unitCache(UnitCache unitCache) {
       this.unitCache = unitCache;
       return this;
@@ -159,6 +170,7 @@ public class CompilerContext {
   // sets.
   private PrecompileTaskOptions options = new PrecompileTaskOptionsImpl();
   private ResourceOracle publicResourceOracle;
+  private RebindCache rebindCache;
   private ResourceOracle sourceResourceOracle;
   private UnitCache unitCache = new MemoryUnitCache();
 
@@ -230,6 +242,14 @@ public class CompilerContext {
     return publicResourceOracle;
   }
 
+  /**
+   * Returns the cache of generator results kept from earlier compiles of the module, or
+   * {@code null} if generator results are not cached.
+   */
+  public RebindCache getRebindCache() {
+    return rebindCache;
+  }
+
   public ResourceOracle getSourceResourceOracle() {
     return sourceResourceOracle;
   }
@@ -60,6 +60,10 @@ class DistillerRebindPermutationOracle implements RebindPermutationOracle {
     rebindOracles = new RebindOracle[perms.size()];
     generatorContext = new StandardGeneratorContext(
         compilerContext, compilationState, generatorArtifacts, true);
+    // Cached results are kept per rule and type, not per permutation, so they can only be
+    // reused when there is a single permutation.
+    RebindCache rebindCache = perms.size() == 1 ? compilerContext.getRebindCache() : null;
+    generatorContext.setGeneratorResultCachingEnabled(rebindCache != null);
     BindingProperty[] orderedProps = perms.getOrderedProperties();
     SortedSet<ConfigurationProperty> configPropSet = module.getProperties().getConfigurationProperties();
     ConfigurationProperty[] configProps = configPropSet.toArray(new ConfigurationProperty[configPropSet.size()]);
@@ -68,8 +72,10 @@ class DistillerRebindPermutationOracle implements RebindPermutationOracle {
       String[] orderedPropValues = perms.getOrderedPropertyValues(i);
       propertyOracles[i] = new StaticPropertyOracle(orderedProps,
           orderedPropValues, configProps);
-      rebindOracles[i] = new StandardRebindOracle(propertyOracles[i], rules,
-          generatorContext);
+      StandardRebindOracle rebindOracle =
+          new StandardRebindOracle(propertyOracles[i], rules, generatorContext);
+      rebindOracle.setRebindCache(rebindCache);
+      rebindOracles[i] = rebindOracle;
       permutations[i] = new Permutation(i, propertyOracles[i]);
     }
   }
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.util.tools.Utility;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Remembers how long each permutation took to compile and how much heap it
+ * needed, so that the next build can schedule its permutations longest-first
+ * and keep in-process compiles within a heap budget.
+ * <p>
+ * Permutations are identified by their {@link RebindAnswersPermutationKey},
+ * which stays the same across builds as long as the live rebind answers of the
+ * permutation do. The history is only kept between builds when the
+ * {@value #HISTORY_FILE_PROPERTY} system property names a file to store it in.
+ */
+class PermutationCostHistory {
+
+  /**
+   * The measured cost of compiling one permutation.
+   */
+  static class Cost {
+    private final long heapBytes;
+    private final long millis;
+
+    Cost(long millis, long heapBytes) {
+      this.millis = millis;
+      this.heapBytes = heapBytes;
+    }
+
+    /**
+     * Returns the share of the heap the permutation used, or 0 if unknown.
+     */
+    public long getHeapBytes() {
+      return heapBytes;
+    }
+
+    public long getMillis() {
+      return millis;
+    }
+  }
+
+  /**
+   * The name of the system property that points to the history file.
+   */
+  public static final String HISTORY_FILE_PROPERTY = "gwt.jjs.permutationCostHistory";
+
+  /**
+   * Loads the history named by {@value #HISTORY_FILE_PROPERTY}, or returns an
+   * empty one that is never saved if the property isn't set.
+   */
+  static PermutationCostHistory load(TreeLogger logger) {
+    String historyFile = System.getProperty(HISTORY_FILE_PROPERTY);
+    return load(logger, historyFile == null ? null : new File(historyFile));
+  }
+
+  static PermutationCostHistory load(TreeLogger logger, File historyFile) {
+    PermutationCostHistory history = new PermutationCostHistory(historyFile);
+    if (historyFile == null || !historyFile.isFile()) {
+      return history;
+    }
+    Properties properties = new Properties();
+    InputStream in = null;
+    try {
+      in = new FileInputStream(historyFile);
+      properties.load(in);
+    } catch (IOException e) {
+      logger.log(TreeLogger.WARN, "Unable to read permutation cost history from " + historyFile,
+          e);
+      return history;
+    } finally {
+      Utility.close(in);
+    }
+    for (String key : properties.stringPropertyNames()) {
+      String[] parts = properties.getProperty(key).split(",");
+      try {
+        history.record(key, Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+      } catch (RuntimeException e) {
+        // Ignore malformed entries; they'll be overwritten after this build.
+      }
+    }
+    return history;
+  }
+
+  private final Map<String, Cost> costs = new TreeMap<String, Cost>();
+
+  private final File historyFile;
+
+  private PermutationCostHistory(File historyFile) {
+    this.historyFile = historyFile;
+  }
+
+  /**
+   * Returns the recorded cost of a permutation. If the permutation has never
+   * been compiled, guesses that it costs as much as an average one; returns
+   * null if nothing has been recorded at all.
+   */
+  synchronized Cost estimate(String key) {
+    Cost cost = costs.get(key);
+    if (cost != null || costs.isEmpty()) {
+      return cost;
+    }
+    long totalMillis = 0;
+    long totalHeapBytes = 0;
+    for (Cost each : costs.values()) {
+      totalMillis += each.getMillis();
+      totalHeapBytes += each.getHeapBytes();
+    }
+    return new Cost(totalMillis / costs.size(), totalHeapBytes / costs.size());
+  }
+
+  /**
+   * Records the cost of compiling a permutation, replacing any earlier record.
+   * A heap size of 0 keeps the previously recorded heap size.
+   */
+  synchronized void record(String key, long millis, long heapBytes) {
+    Cost previous = costs.get(key);
+    if (heapBytes <= 0 && previous != null) {
+      heapBytes = previous.getHeapBytes();
+    }
+    costs.put(key, new Cost(millis, Math.max(0, heapBytes)));
+  }
+
+  /**
+   * Writes the history back to its file, if it has one.
+   */
+  synchronized void save(TreeLogger logger) {
+    if (historyFile == null) {
+      return;
+    }
+    Properties properties = new Properties();
+    for (Map.Entry<String, Cost> entry : costs.entrySet()) {
+      Cost cost = entry.getValue();
+      properties.setProperty(entry.getKey(), cost.getMillis() + "," + cost.getHeapBytes());
+    }
+    OutputStream out = null;
+    try {
+      File parent = historyFile.getAbsoluteFile().getParentFile();
+      if (parent != null) {
+        parent.mkdirs();
+      }
+      out = new FileOutputStream(historyFile);
+      properties.store(out, "GWT permutation compile costs: millis,heapBytes");
+    } catch (IOException e) {
+      logger.log(TreeLogger.WARN, "Unable to write permutation cost history to " + historyFile,
+          e);
+    } finally {
+      Utility.close(out);
+    }
+  }
+}
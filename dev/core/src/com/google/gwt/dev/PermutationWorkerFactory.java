@@ -24,11 +24,21 @@ import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -43,6 +53,11 @@ public abstract class PermutationWorkerFactory {
   /**
    * Coordinates the actions of a set of {@link PermutationWorker}s, running
    * each in its own thread.
+   * <p>
+   * Idle workers take the most expensive pending permutation first, so that the
+   * slowest permutations don't end up running alone at the end of the build.
+   * Workers that run in this JVM only start a permutation if its estimated heap
+   * use fits in the remaining heap budget, see {@value #HEAP_BUDGET_PROPERTY}.
    */
   private static class Manager {
 
@@ -50,14 +65,89 @@ public abstract class PermutationWorkerFactory {
       SUCCESS, FAIL, WORKER_DEATH
     }
 
+    /**
+     * Samples the heap after each garbage collection while local permutations
+     * are running, and charges each running permutation an equal share of its
+     * growth since the permutations started. Only the heap left in use by the
+     * collections is counted, so neither garbage nor what was live before the
+     * permutations started, such as the shared AST, is charged.
+     */
+    private class HeapSampler implements Runnable {
+      private final List<GarbageCollectorMXBean> collectors =
+          ManagementFactory.getGarbageCollectorMXBeans();
+      private final List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+      private final long baseline;
+      private long lastCollectionCount;
+
+      public HeapSampler() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+          if (pool.getType() == MemoryType.HEAP) {
+            heapPools.add(pool);
+          }
+        }
+        baseline = getLiveHeap();
+        lastCollectionCount = getCollectionCount();
+      }
+
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            Thread.sleep(HEAP_SAMPLE_MILLIS);
+            long collectionCount = getCollectionCount();
+            if (collectionCount == lastCollectionCount) {
+              continue;
+            }
+            lastCollectionCount = collectionCount;
+            long used = Math.max(0, getLiveHeap() - baseline);
+            synchronized (Manager.this) {
+              if (runningLocalWork.isEmpty()) {
+                continue;
+              }
+              long share = used / runningLocalWork.size();
+              for (Work work : runningLocalWork) {
+                work.peakHeap = Math.max(work.peakHeap, share);
+              }
+            }
+          }
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+
+      private long getCollectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+          count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+      }
+
+      /**
+       * Returns the heap in use right after the latest collection of each pool.
+       */
+      private long getLiveHeap() {
+        long live = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+          MemoryUsage usage = pool.getCollectionUsage();
+          if (usage != null) {
+            live += usage.getUsed();
+          }
+        }
+        return live;
+      }
+    }
+
     /**
      * Runs a {@link PermutationWorker} on its own thread.
      */
     private class WorkerThread implements Runnable {
+      private final boolean isLocal;
       private final PermutationWorker worker;
 
-      public WorkerThread(PermutationWorker worker) {
+      public WorkerThread(PermutationWorker worker, boolean isLocal) {
         this.worker = worker;
+        this.isLocal = isLocal;
       }
 
       @Override
@@ -65,26 +155,32 @@ public abstract class PermutationWorkerFactory {
         Result threadDeathResult = Result.FAIL;
         try {
           while (true) {
-            Work work = workQueue.take();
+            Work work = take(isLocal);
             if (work == POISON_PILL) {
               return;
             }
             TreeLogger logger = work.getLogger();
+            long start = System.currentTimeMillis();
             try {
               worker.compile(
                   logger, work.getCompilerContext(), work.getPerm(), work.getResultFile());
+              history.record(work.getCostKey(), System.currentTimeMillis() - start,
+                  getPeakHeap(work));
               logger.log(TreeLogger.DEBUG, "Successfully compiled permutation");
               resultsQueue.put(Result.SUCCESS);
             } catch (TransientWorkerException e) {
               logger.log(TreeLogger.DEBUG,
                   "Worker died, will retry Permutation", e);
-              workQueue.add(work);
+              release(work, isLocal);
+              requeue(work);
               threadDeathResult = Result.WORKER_DEATH;
               return;
             } catch (UnableToCompleteException e) {
               logger.log(TreeLogger.ERROR,
                   "Unrecoverable exception, shutting down", e);
               return;
+            } finally {
+              release(work, isLocal);
             }
           }
         } catch (InterruptedException e) {
@@ -99,37 +195,101 @@ public abstract class PermutationWorkerFactory {
       }
     }
 
-    private static final Work POISON_PILL = new Work(null, null, null, null);
+    private static final long HEAP_SAMPLE_MILLIS = 200;
+
+    private static final Work POISON_PILL = new Work(null, null, null, null, null, null);
 
-    public static void run(TreeLogger logger, List<Work> work,
-        List<PermutationWorker> workers) throws UnableToCompleteException {
-      new Manager().doRun(logger, work, workers);
+    public static void run(TreeLogger logger, List<Work> work, List<PermutationWorker> workers,
+        Set<PermutationWorker> localWorkers, PermutationCostHistory history)
+        throws UnableToCompleteException {
+      new Manager(history).doRun(logger, work, workers, localWorkers);
+    }
+
+    /**
+     * Returns the heap budget for permutations compiled in this JVM.
+     */
+    private static long getHeapBudget(TreeLogger logger) {
+      String budget = System.getProperty(HEAP_BUDGET_PROPERTY);
+      if (budget != null) {
+        try {
+          long megabytes = Long.parseLong(budget);
+          if (megabytes > 0) {
+            return megabytes * 1024 * 1024;
+          }
+        } catch (NumberFormatException e) {
+          // Fall through to the warning below.
+        }
+        logger.log(TreeLogger.WARN, "Ignoring invalid value '" + budget + "' of property "
+            + HEAP_BUDGET_PROPERTY);
+      }
+      return Runtime.getRuntime().maxMemory();
     }
 
     /**
-     * The queue of work to do.
+     * The heap share estimated for the permutations running locally.
+     */
+    private long heapReserved;
+
+    private long heapBudget;
+
+    private final PermutationCostHistory history;
+
+    /**
+     * The work to do, most expensive first. Guarded by this.
+     */
+    private final List<Work> pending = new ArrayList<Work>();
+
+    /**
+     * The queue of results.
+     */
+    private final BlockingQueue<Result> resultsQueue = new LinkedBlockingQueue<Result>();
+
+    /**
+     * Work currently being compiled in this JVM. Guarded by this.
      */
-    BlockingQueue<Work> workQueue;
+    private final Set<Work> runningLocalWork = new HashSet<Work>();
 
     /**
-     * The queue of work to do.
+     * Set once the outcome is known; idle workers then receive the
+     * {@link #POISON_PILL}. Guarded by this.
      */
-    BlockingQueue<Result> resultsQueue;
+    private boolean stopped;
 
-    private Manager() {
+    private Manager(PermutationCostHistory history) {
+      this.history = history;
     }
 
-    private void doRun(TreeLogger logger, List<Work> work,
-        List<PermutationWorker> workers) throws UnableToCompleteException {
+    private void doRun(TreeLogger logger, List<Work> work, List<PermutationWorker> workers,
+        Set<PermutationWorker> localWorkers) throws UnableToCompleteException {
 
       // Initialize state.
-      workQueue = new LinkedBlockingQueue<Work>(work);
-      resultsQueue = new LinkedBlockingQueue<Result>();
+      heapBudget = getHeapBudget(logger);
+      for (Work each : work) {
+        requeue(each);
+      }
+      if (logger.isLoggable(TreeLogger.DEBUG)) {
+        TreeLogger branch = logger.branch(TreeLogger.DEBUG, "Scheduling permutations with a "
+            + (heapBudget / 1024 / 1024) + " MB local heap budget");
+        synchronized (this) {
+          for (Work each : pending) {
+            branch.log(TreeLogger.DEBUG, "Permutation " + each.getPerm().getId()
+                + ": estimated " + each.getEstimatedMillis() + " ms, "
+                + (each.getEstimatedHeap() / 1024 / 1024) + " MB");
+          }
+        }
+      }
 
-      List<Thread> threads = new ArrayList<Thread>(workers.size());
+      List<Thread> threads = new ArrayList<Thread>(workers.size() + 1);
       try {
+        if (!localWorkers.isEmpty()) {
+          Thread sampler = new Thread(new HeapSampler(), "Permutation heap sampler");
+          sampler.setDaemon(true);
+          threads.add(sampler);
+          sampler.start();
+        }
         for (PermutationWorker worker : workers) {
-          Thread thread = new Thread(new WorkerThread(worker), worker.getName());
+          Thread thread = new Thread(new WorkerThread(worker, localWorkers.contains(worker)),
+              worker.getName());
           threads.add(thread);
           thread.start();
         }
@@ -154,10 +314,7 @@ public abstract class PermutationWorkerFactory {
           }
         }
 
-        workQueue.clear();
-        for (int i = 0; i < aliveWorkers; ++i) {
-          workQueue.add(POISON_PILL);
-        }
+        stop();
 
         if (workToDo > 0) {
           logger.log(TreeLogger.ERROR,
@@ -176,6 +333,67 @@ public abstract class PermutationWorkerFactory {
         }
       }
     }
+
+    private synchronized long getPeakHeap(Work work) {
+      return work.peakHeap;
+    }
+
+    /**
+     * Gives up a local worker's heap reservation for a piece of work. Does
+     * nothing if the work isn't running locally (anymore).
+     */
+    private synchronized void release(Work work, boolean isLocal) {
+      if (isLocal && runningLocalWork.remove(work)) {
+        heapReserved -= work.getEstimatedHeap();
+        notifyAll();
+      }
+    }
+
+    /**
+     * Adds work to the pending list, keeping the most expensive work first.
+     */
+    private synchronized void requeue(Work work) {
+      int index = 0;
+      while (index < pending.size()
+          && pending.get(index).getEstimatedMillis() >= work.getEstimatedMillis()) {
+        index++;
+      }
+      pending.add(index, work);
+      notifyAll();
+    }
+
+    private synchronized void stop() {
+      stopped = true;
+      pending.clear();
+      notifyAll();
+    }
+
+    /**
+     * Blocks until there is work the given kind of worker may start, and
+     * returns the most expensive such work. A local worker only starts work
+     * that fits in the heap budget, unless nothing else is running locally.
+     */
+    private synchronized Work take(boolean isLocal) throws InterruptedException {
+      while (!stopped) {
+        for (Iterator<Work> it = pending.iterator(); it.hasNext();) {
+          Work work = it.next();
+          if (!isLocal) {
+            it.remove();
+            return work;
+          }
+          if (runningLocalWork.isEmpty()
+              || heapReserved + work.getEstimatedHeap() <= heapBudget) {
+            it.remove();
+            heapReserved += work.getEstimatedHeap();
+            work.peakHeap = 0;
+            runningLocalWork.add(work);
+            return work;
+          }
+        }
+        wait();
+      }
+      return POISON_PILL;
+    }
   }
 
   /**
@@ -186,19 +404,44 @@ public abstract class PermutationWorkerFactory {
     private final Permutation perm;
     private final PersistenceBackedObject<PermutationResult> resultFile;
     private final CompilerContext compilerContext;
+    private final String costKey;
+    private final long estimatedHeap;
+    private final long estimatedMillis;
+
+    /**
+     * The largest heap share sampled while compiling locally. Guarded by the
+     * {@link Manager}.
+     */
+    private long peakHeap;
 
     public Work(TreeLogger logger, CompilerContext compilerContext, Permutation perm,
-        PersistenceBackedObject<PermutationResult> resultFile) {
+        PersistenceBackedObject<PermutationResult> resultFile, String costKey,
+        PermutationCostHistory.Cost estimate) {
       this.logger = logger;
       this.compilerContext = compilerContext;
       this.perm = perm;
       this.resultFile = resultFile;
+      this.costKey = costKey;
+      this.estimatedMillis = estimate == null ? 0 : estimate.getMillis();
+      this.estimatedHeap = estimate == null ? 0 : estimate.getHeapBytes();
     }
 
     public CompilerContext getCompilerContext() {
       return compilerContext;
     }
 
+    public String getCostKey() {
+      return costKey;
+    }
+
+    public long getEstimatedHeap() {
+      return estimatedHeap;
+    }
+
+    public long getEstimatedMillis() {
+      return estimatedMillis;
+    }
+
     public TreeLogger getLogger() {
       return logger;
     }
@@ -217,6 +460,13 @@ public abstract class PermutationWorkerFactory {
    */
   public static final String FACTORY_IMPL_PROPERTY = "gwt.jjs.permutationWorkerFactory";
 
+  /**
+   * The name of the system property that limits, in megabytes, the combined
+   * estimated heap use of the permutations compiled in this JVM at the same
+   * time. Defaults to the maximum heap size.
+   */
+  public static final String HEAP_BUDGET_PROPERTY = "gwt.jjs.permutationHeapBudget";
+
   /**
    * This value can be passed into {@link #setLocalWorkers(int)} to indicate
    * that a heuristic should be used to determine the total number of local
@@ -251,6 +501,8 @@ public abstract class PermutationWorkerFactory {
         Arrays.asList(permutations));
 
     // Create the work.
+    PermutationCostHistory history = PermutationCostHistory.load(logger);
+    SortedSet<String> liveRebindRequests = precompilation.getUnifiedAst().getRebindRequests();
     List<Work> work = new ArrayList<Work>(permutations.length);
     for (int i = 0; i < permutations.length; ++i) {
       Permutation perm = permutations[i];
@@ -258,17 +510,23 @@ public abstract class PermutationWorkerFactory {
         logger.log(TreeLogger.DEBUG,
             "Creating worker permutation " + perm.getId() + " of " + permutations.length);
       }
-      work.add(new Work(logger, compilerContext, perm, resultFiles.get(i)));
+      String costKey = new RebindAnswersPermutationKey(perm, liveRebindRequests).get();
+      work.add(new Work(logger, compilerContext, perm, resultFiles.get(i), costKey,
+          history.estimate(costKey)));
     }
 
     // Create the workers.
     List<PermutationWorker> workers = new ArrayList<PermutationWorker>();
+    Set<PermutationWorker> localWorkerSet =
+        Collections.newSetFromMap(new IdentityHashMap<PermutationWorker, Boolean>());
     try {
-      createWorkers(logger, precompilation.getUnifiedAst(), work.size(), localWorkers, workers);
+      createWorkers(logger, precompilation.getUnifiedAst(), work.size(), localWorkers, workers,
+          localWorkerSet);
 
       // Get it done!
-      Manager.run(logger, work, workers);
+      Manager.run(logger, work, workers, localWorkerSet, history);
     } finally {
+      history.save(logger);
       Throwable caught = null;
       for (PermutationWorker worker : workers) {
         try {
@@ -344,8 +602,8 @@ public abstract class PermutationWorkerFactory {
    * Create as many workers as possible to service the Permutations.
    */
   private static void createWorkers(TreeLogger logger, UnifiedAst unifiedAst,
-      int workersNeeded, int localWorkers, List<PermutationWorker> workers)
-      throws UnableToCompleteException {
+      int workersNeeded, int localWorkers, List<PermutationWorker> workers,
+      Set<PermutationWorker> localWorkerSet) throws UnableToCompleteException {
     if (localWorkers <= WORKERS_AUTO) {
       // TODO: something smarter?
       localWorkers = 1;
@@ -369,6 +627,7 @@ public abstract class PermutationWorkerFactory {
       workersNeeded -= newWorkers.size();
       if (factory.isLocal()) {
         localWorkers -= newWorkers.size();
+        localWorkerSet.addAll(newWorkers);
       }
     }
 
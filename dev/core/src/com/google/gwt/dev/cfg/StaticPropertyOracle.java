@@ -25,6 +25,7 @@ import com.google.gwt.thirdparty.guava.common.collect.Maps;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Map;
 import java.util.TreeSet;
 
@@ -76,6 +77,13 @@ public class StaticPropertyOracle implements PropertyOracle, Serializable {
     return new DefaultConfigurationProperty(config.getName(), config.getValues());
   }
 
+  /**
+   * Returns the configuration properties, in the order they were supplied.
+   */
+  public Collection<ConfigurationProperty> getConfigurationProperties() {
+    return configPropertiesByName.values();
+  }
+
   /**
    * @return an array of binding properties.
    */
@@ -254,6 +254,9 @@ public class CompilationStateBuilder {
         Map<CompilationUnitBuilder, CompilationUnit> cachedUnits, EventType eventType)
         throws UnableToCompleteException {
       UnitCache unitCache = compilerContext.getUnitCache();
+      // Dependencies of invalidated units, used to partition them for a parallel compile.
+      Map<CompilationUnitBuilder, Dependencies> previousDependencies =
+          new IdentityHashMap<CompilationUnitBuilder, Dependencies>();
       // Initialize the set of valid classes to the initially cached units.
       for (CompilationUnit unit : cachedUnits.values()) {
         for (CompiledClass cc : unit.getCompiledClasses()) {
@@ -306,7 +309,13 @@ public class CompilationStateBuilder {
         Event jdtCompilerEvent = SpeedTracerLogger.start(eventType);
         long compilationStartNanos = System.nanoTime();
         try {
-          compiler.doCompile(branch, builders);
+          if (JDT_THREADS > 1) {
+            compiler.doCompile(branch, CompilationUnitPartitioner.partition(
+                new ArrayList<CompilationUnitBuilder>(builders), previousDependencies, JDT_THREADS),
+                JDT_THREADS);
+          } else {
+            compiler.doCompile(branch, builders);
+          }
         } finally {
           jdtCompilerEvent.end();
         }
@@ -328,8 +337,11 @@ public class CompilationStateBuilder {
         } finally {
           buildQueue = null;
         }
+        // Units may have been built in any order if they were compiled in parallel.
+        Collections.sort(newlyBuiltUnits, CompilationUnit.COMPARATOR);
         resultUnits.addAll(newlyBuiltUnits);
         builders.clear();
+        previousDependencies.clear();
 
         // Resolve all newly built unit deps against the global classes.
         for (CompilationUnit unit : newlyBuiltUnits) {
@@ -363,6 +375,7 @@ public class CompilationStateBuilder {
             }
             invalidatedUnits.add(unit);
             builders.add(entry.getKey());
+            previousDependencies.put(entry.getKey(), unit.getDependencies());
             it.remove();
           }
         }
@@ -411,6 +424,15 @@ public class CompilationStateBuilder {
     }
   }
 
+  /**
+   * A Java system property that sets the number of threads used to compile Java source with JDT.
+   * Values above 1 split the units to compile into partitions of mutually referring units that
+   * are compiled concurrently.
+   */
+  public static final String JDT_THREADS_PROPERTY = "gwt.jdt.threads";
+
+  private static final int JDT_THREADS = Math.max(1, Integer.getInteger(JDT_THREADS_PROPERTY, 1));
+
   private static final CompilationStateBuilder instance = new CompilationStateBuilder();
 
   /**
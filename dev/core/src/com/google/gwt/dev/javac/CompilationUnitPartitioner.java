@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.javac;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a set of {@link CompilationUnitBuilder}s into groups that can be handed to independent
+ * JDT compiler instances.
+ * <p>
+ * Units end up in the same group when they are in the same package or when one refers to the other.
+ * References are taken from the previous {@link Dependencies} of a unit when they are known and
+ * are otherwise approximated by scanning the import declarations of its source. The approximation
+ * only needs to be good, not exact: a reference that crosses groups is still resolved by the
+ * compiler (see {@link JdtCompiler#doCompile(com.google.gwt.core.ext.TreeLogger, List, int)}),
+ * it just costs some duplicated work.
+ */
+class CompilationUnitPartitioner {
+
+  private static final Pattern IMPORT_PATTERN = Pattern.compile(
+      "^\\s*import\\s+(?:static\\s+)?([\\w.]+?)(\\.\\*)?\\s*;", Pattern.MULTILINE);
+
+  /**
+   * Returns at most {@code maxPartitions} non-empty groups of builders. Groups are balanced by
+   * unit count; ties are broken by input order so the result is deterministic.
+   */
+  static List<List<CompilationUnitBuilder>> partition(List<CompilationUnitBuilder> builders,
+      Map<CompilationUnitBuilder, Dependencies> knownDependencies, int maxPartitions) {
+    assert maxPartitions > 0;
+    if (maxPartitions == 1 || builders.size() < 2) {
+      return Collections.singletonList(builders);
+    }
+    return new CompilationUnitPartitioner(builders).unionAll(knownDependencies).pack(maxPartitions);
+  }
+
+  private final List<CompilationUnitBuilder> builders;
+
+  /**
+   * Union-find forest over builder indices.
+   */
+  private final int[] parents;
+
+  /**
+   * Maps each package to the index of the first builder seen in it.
+   */
+  private final Map<String, Integer> packageRepresentatives = new HashMap<String, Integer>();
+
+  /**
+   * Maps each top level type name to the index of its builder.
+   */
+  private final Map<String, Integer> typeIndices = new HashMap<String, Integer>();
+
+  private CompilationUnitPartitioner(List<CompilationUnitBuilder> builders) {
+    this.builders = builders;
+    this.parents = new int[builders.size()];
+    for (int i = 0; i < parents.length; i++) {
+      parents[i] = i;
+      String typeName = builders.get(i).getTypeName();
+      typeIndices.put(typeName, i);
+      String packageName = Shared.getPackageName(typeName);
+      Integer representative = packageRepresentatives.get(packageName);
+      if (representative == null) {
+        packageRepresentatives.put(packageName, i);
+      } else {
+        union(representative, i);
+      }
+    }
+  }
+
+  private int find(int i) {
+    while (parents[i] != i) {
+      parents[i] = parents[parents[i]];
+      i = parents[i];
+    }
+    return i;
+  }
+
+  /**
+   * Distributes the connected components over {@code maxPartitions} groups, largest component
+   * first into the currently smallest group.
+   */
+  private List<List<CompilationUnitBuilder>> pack(int maxPartitions) {
+    Map<Integer, List<CompilationUnitBuilder>> componentsByRoot =
+        new HashMap<Integer, List<CompilationUnitBuilder>>();
+    List<List<CompilationUnitBuilder>> components = new ArrayList<List<CompilationUnitBuilder>>();
+    final Map<List<CompilationUnitBuilder>, Integer> firstIndex =
+        new IdentityHashMap<List<CompilationUnitBuilder>, Integer>();
+    for (int i = 0; i < parents.length; i++) {
+      int root = find(i);
+      List<CompilationUnitBuilder> component = componentsByRoot.get(root);
+      if (component == null) {
+        component = new ArrayList<CompilationUnitBuilder>();
+        componentsByRoot.put(root, component);
+        components.add(component);
+        firstIndex.put(component, i);
+      }
+      component.add(builders.get(i));
+    }
+    Collections.sort(components, new Comparator<List<CompilationUnitBuilder>>() {
+      @Override
+      public int compare(List<CompilationUnitBuilder> a, List<CompilationUnitBuilder> b) {
+        if (a.size() != b.size()) {
+          return b.size() - a.size();
+        }
+        return firstIndex.get(a) - firstIndex.get(b);
+      }
+    });
+
+    int partitionCount = Math.min(maxPartitions, components.size());
+    List<List<CompilationUnitBuilder>> partitions =
+        new ArrayList<List<CompilationUnitBuilder>>(partitionCount);
+    for (int i = 0; i < partitionCount; i++) {
+      partitions.add(new ArrayList<CompilationUnitBuilder>());
+    }
+    for (List<CompilationUnitBuilder> component : components) {
+      List<CompilationUnitBuilder> smallest = partitions.get(0);
+      for (List<CompilationUnitBuilder> partition : partitions) {
+        if (partition.size() < smallest.size()) {
+          smallest = partition;
+        }
+      }
+      smallest.addAll(component);
+    }
+    return partitions;
+  }
+
+  /**
+   * Unions builder {@code i} with whatever unit or package {@code name} refers to. Handles
+   * references to nested types and static members by trying successively shorter prefixes.
+   */
+  private void unionReference(int i, String name, boolean isPackageReference) {
+    if (isPackageReference) {
+      Integer representative = packageRepresentatives.get(name);
+      if (representative != null) {
+        union(i, representative);
+        return;
+      }
+    }
+    while (name.length() > 0) {
+      Integer target = typeIndices.get(name);
+      if (target != null) {
+        union(i, target);
+        return;
+      }
+      int dot = name.lastIndexOf('.');
+      if (dot < 0) {
+        return;
+      }
+      name = name.substring(0, dot);
+    }
+  }
+
+  private void union(int a, int b) {
+    int rootA = find(a);
+    int rootB = find(b);
+    if (rootA != rootB) {
+      // Keep the lowest index as root so the outcome doesn't depend on union order.
+      parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+    }
+  }
+
+  private CompilationUnitPartitioner unionAll(
+      Map<CompilationUnitBuilder, Dependencies> knownDependencies) {
+    for (int i = 0; i < parents.length; i++) {
+      CompilationUnitBuilder builder = builders.get(i);
+      Dependencies dependencies = knownDependencies.get(builder);
+      if (dependencies != null) {
+        for (String qualifiedRef : dependencies.qualified.keySet()) {
+          unionReference(i, qualifiedRef, true);
+        }
+        for (String apiRef : dependencies.getApiRefs()) {
+          unionReference(i, apiRef, false);
+        }
+      } else {
+        Matcher matcher = IMPORT_PATTERN.matcher(builder.getSource());
+        while (matcher.find()) {
+          unionReference(i, matcher.group(1), matcher.group(2) != null);
+        }
+      }
+    }
+    return this;
+  }
+}
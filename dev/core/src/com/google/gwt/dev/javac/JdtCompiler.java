@@ -21,6 +21,7 @@ import com.google.gwt.dev.CompilerContext;
 import com.google.gwt.dev.jdt.TypeRefVisitor;
 import com.google.gwt.dev.jjs.InternalCompilerException;
 import com.google.gwt.dev.jjs.ast.JDeclaredType;
+import com.google.gwt.dev.util.DaemonThreadPool;
 import com.google.gwt.dev.util.arg.SourceLevel;
 import com.google.gwt.dev.util.collect.Lists;
 import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
@@ -81,11 +82,14 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -285,11 +289,20 @@ public class JdtCompiler {
     private TreeLogger logger;
     private int abortCount = 0;
 
-    public CompilerImpl(TreeLogger logger, CompilerOptions compilerOptions) {
+    /**
+     * The builders whose results are reported to the {@link UnitProcessor}, or {@code null} for
+     * all of them. Set when compiling one partition of a parallel compile, where this compiler may
+     * also see (and redundantly compile) source owned by another partition.
+     */
+    private final Set<CompilationUnitBuilder> ownedBuilders;
+
+    public CompilerImpl(TreeLogger logger, CompilerOptions compilerOptions,
+        Set<CompilationUnitBuilder> ownedBuilders) {
       super(new INameEnvironmentImpl(), DefaultErrorHandlingPolicies.proceedWithAllProblems(),
           compilerOptions, new ICompilerRequestorImpl(), new DefaultProblemFactory(
               Locale.getDefault()));
       this.logger = logger;
+      this.ownedBuilders = ownedBuilders;
     }
 
     /**
@@ -338,6 +351,13 @@ public class JdtCompiler {
         }
         return; // continue without it; it might be a server-side class.
       }
+      ICompilationUnit icu = cud.compilationResult().compilationUnit;
+      Adapter adapter = (Adapter) icu;
+      CompilationUnitBuilder builder = adapter.getBuilder();
+      if (ownedBuilders != null && !ownedBuilders.contains(builder)) {
+        // Pulled in from another partition, which reports it.
+        return;
+      }
       ClassFile[] classFiles = cud.compilationResult().getClassFiles();
       Map<ClassFile, CompiledClass> results = new LinkedHashMap<ClassFile, CompiledClass>();
       for (ClassFile classFile : classFiles) {
@@ -346,10 +366,10 @@ public class JdtCompiler {
       List<CompiledClass> compiledClasses = new ArrayList<CompiledClass>(results.values());
       addBinaryTypes(compiledClasses);
 
-      ICompilationUnit icu = cud.compilationResult().compilationUnit;
-      Adapter adapter = (Adapter) icu;
-      CompilationUnitBuilder builder = adapter.getBuilder();
-      processor.process(builder, cud, compiledClasses);
+      // Processors are not thread safe; only JDT work runs in parallel.
+      synchronized (processor) {
+        processor.process(builder, cud, compiledClasses);
+      }
     }
 
     /**
@@ -416,8 +436,20 @@ public class JdtCompiler {
       if (isPackage(internalName)) {
         return null;
       }
-      if (additionalTypeProviderDelegate != null) {
-        GeneratedUnit unit = additionalTypeProviderDelegate.doFindAdditionalType(internalName);
+      Map<String, CompilationUnitBuilder> sourceTypes = pendingSourceTypes;
+      if (sourceTypes != null) {
+        CompilationUnitBuilder builder = sourceTypes.get(internalName);
+        if (builder != null) {
+          return new NameEnvironmentAnswer(new Adapter(builder), null);
+        }
+      }
+      AdditionalTypeProviderDelegate delegate = additionalTypeProviderDelegate;
+      if (delegate != null) {
+        GeneratedUnit unit;
+        // Partitions compiled in parallel share the delegate.
+        synchronized (delegate) {
+          unit = delegate.doFindAdditionalType(internalName);
+        }
         if (unit != null) {
           CompilationUnitBuilder b = CompilationUnitBuilder.create(unit);
           Adapter a = new Adapter(b);
@@ -475,10 +507,16 @@ public class JdtCompiler {
         return false;
       }
       String resourceName = slashedPackageName + '/';
-      if ((additionalTypeProviderDelegate != null && additionalTypeProviderDelegate
-          .doFindAdditionalPackage(slashedPackageName))) {
-        addPackages(slashedPackageName);
-        return true;
+      AdditionalTypeProviderDelegate delegate = additionalTypeProviderDelegate;
+      if (delegate != null) {
+        boolean found;
+        synchronized (delegate) {
+          found = delegate.doFindAdditionalPackage(slashedPackageName);
+        }
+        if (found) {
+          addPackages(slashedPackageName);
+          return true;
+        }
       }
       // Include class loader check for binary-only annotations.
       if (getClassLoader().getResource(resourceName) != null) {
@@ -632,16 +670,23 @@ public class JdtCompiler {
   /**
    * Maps internal names to compiled classes.
    */
-  private final Map<String, CompiledClass> internalTypes = new HashMap<String, CompiledClass>();
+  private final Map<String, CompiledClass> internalTypes =
+      new ConcurrentHashMap<String, CompiledClass>();
 
   /**
-   * Only active during a compile.
+   * Only active during a compile; one per thread when partitions are compiled in parallel.
    */
-  private transient CompilerImpl compilerImpl;
+  private final transient ThreadLocal<CompilerImpl> compilerImpl = new ThreadLocal<CompilerImpl>();
 
-  private final Set<String> notPackages = new HashSet<String>();
+  private final Set<String> notPackages = Collections.synchronizedSet(new HashSet<String>());
 
-  private final Set<String> packages = new HashSet<String>();
+  private final Set<String> packages = Collections.synchronizedSet(new HashSet<String>());
+
+  /**
+   * Source of every unit in a parallel compile, keyed by internal name, so that a partition can
+   * resolve references into another one. Only active during a parallel compile.
+   */
+  private volatile Map<String, CompilationUnitBuilder> pendingSourceTypes;
 
   private final UnitProcessor processor;
 
@@ -879,36 +924,80 @@ public class JdtCompiler {
     if (builders.isEmpty()) {
       return;
     }
-    List<ICompilationUnit> icus = new ArrayList<ICompilationUnit>();
     for (CompilationUnitBuilder builder : builders) {
       addPackages(Shared.getPackageName(builder.getTypeName()).replace('.', '/'));
-      icus.add(new Adapter(builder));
     }
+    if (!compile(logger, builders, null)) {
+      throw new UnableToCompleteException();
+    }
+  }
 
-    compilerImpl = new CompilerImpl(logger, getCompilerOptions());
+  /**
+   * Compiles source using one JDT compiler per partition, running up to {@code threads} of them
+   * at a time. A partition should contain the units that refer to each other; references that
+   * cross partitions are still resolved, by compiling the referenced source again in the
+   * referring partition, but only the partition that owns a unit reports it. The
+   * {@link UnitProcessor#process} callback is called once for each compiled file, never
+   * concurrently. If any compiler aborts, logs a message and throws UnableToCompleteException.
+   */
+  public void doCompile(final TreeLogger logger,
+      List<? extends Collection<CompilationUnitBuilder>> partitions, int threads)
+      throws UnableToCompleteException {
+    if (partitions.size() < 2 || threads < 2) {
+      List<CompilationUnitBuilder> builders = new ArrayList<CompilationUnitBuilder>();
+      for (Collection<CompilationUnitBuilder> partition : partitions) {
+        builders.addAll(partition);
+      }
+      doCompile(logger, builders);
+      return;
+    }
+
+    Map<String, CompilationUnitBuilder> sourceTypes =
+        new HashMap<String, CompilationUnitBuilder>();
+    for (Collection<CompilationUnitBuilder> partition : partitions) {
+      for (CompilationUnitBuilder builder : partition) {
+        addPackages(Shared.getPackageName(builder.getTypeName()).replace('.', '/'));
+        sourceTypes.put(builder.getTypeName().replace('.', '/'), builder);
+      }
+    }
+
+    pendingSourceTypes = sourceTypes;
+    // Type lookups go through the context class loader, which the workers must share.
+    final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+    DaemonThreadPool pool =
+        new DaemonThreadPool("JdtCompiler", Math.min(threads, partitions.size()));
     try {
-      compilerImpl.compile(icus.toArray(new ICompilationUnit[icus.size()]));
-    } catch (AbortCompilation e) {
-      final String compilerAborted = String.format("JDT compiler aborted after %d errors",
-          compilerImpl.getAbortCount());
-      if (e.problem == null) {
-        logger.log(TreeLogger.Type.ERROR, compilerAborted + ".");
-      } else if (e.problem.getOriginatingFileName() == null) {
-        logger.log(TreeLogger.Type.ERROR, compilerAborted + ": " + e.problem.getMessage());
-      } else {
-        String filename = new String(e.problem.getOriginatingFileName());
-        TreeLogger branch = logger.branch(TreeLogger.Type.ERROR,
-            "At " + filename + ": " + e.problem.getSourceLineNumber());
-        branch.log(TreeLogger.Type.ERROR, compilerAborted + ": " + e.problem.getMessage());
+      List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+      for (final Collection<CompilationUnitBuilder> partition : partitions) {
+        tasks.add(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+            return compile(logger, partition,
+                Collections.newSetFromMap(
+                    new IdentityHashMap<CompilationUnitBuilder, Boolean>()));
+          }
+        });
       }
+      boolean success = true;
+      for (boolean partitionSuccess : pool.invokeAll(tasks, "compiling partition")) {
+        success &= partitionSuccess;
+      }
+      if (!success) {
+        throw new UnableToCompleteException();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.log(TreeLogger.ERROR, "Interrupted while compiling", e);
       throw new UnableToCompleteException();
     } finally {
-      compilerImpl = null;
+      pool.shutdown();
+      pendingSourceTypes = null;
     }
   }
 
   public ReferenceBinding resolveType(String sourceOrBinaryName) {
-    return resolveType(compilerImpl.lookupEnvironment, sourceOrBinaryName);
+    return resolveType(compilerImpl.get().lookupEnvironment, sourceOrBinaryName);
   }
 
   public void setAdditionalTypeProviderDelegate(AdditionalTypeProviderDelegate newDelegate) {
@@ -947,6 +1036,47 @@ public class JdtCompiler {
     }
   }
 
+  /**
+   * Runs one JDT compiler over {@code builders} on the current thread.
+   *
+   * @param ownedBuilders if not null, only these builders are reported to the processor; it is
+   *          filled with {@code builders}
+   * @return false if the compiler aborted, after logging why
+   */
+  private boolean compile(TreeLogger logger, Collection<CompilationUnitBuilder> builders,
+      Set<CompilationUnitBuilder> ownedBuilders) {
+    List<ICompilationUnit> icus = new ArrayList<ICompilationUnit>();
+    for (CompilationUnitBuilder builder : builders) {
+      icus.add(new Adapter(builder));
+    }
+    if (ownedBuilders != null) {
+      ownedBuilders.addAll(builders);
+    }
+
+    CompilerImpl compiler = new CompilerImpl(logger, getCompilerOptions(), ownedBuilders);
+    compilerImpl.set(compiler);
+    try {
+      compiler.compile(icus.toArray(new ICompilationUnit[icus.size()]));
+      return true;
+    } catch (AbortCompilation e) {
+      final String compilerAborted = String.format("JDT compiler aborted after %d errors",
+          compiler.getAbortCount());
+      if (e.problem == null) {
+        logger.log(TreeLogger.Type.ERROR, compilerAborted + ".");
+      } else if (e.problem.getOriginatingFileName() == null) {
+        logger.log(TreeLogger.Type.ERROR, compilerAborted + ": " + e.problem.getMessage());
+      } else {
+        String filename = new String(e.problem.getOriginatingFileName());
+        TreeLogger branch = logger.branch(TreeLogger.Type.ERROR,
+            "At " + filename + ": " + e.problem.getSourceLineNumber());
+        branch.log(TreeLogger.Type.ERROR, compilerAborted + ": " + e.problem.getMessage());
+      }
+      return false;
+    } finally {
+      compilerImpl.remove();
+    }
+  }
+
   private static String getSourceName(ReferenceBinding classBinding) {
     return Joiner.on(".").skipNulls().join(new String[] {
         Strings.emptyToNull(CharOperation.charToString(classBinding.qualifiedPackageName())),
@@ -0,0 +1,653 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.javac;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.dev.jjs.InternalCompilerException;
+import com.google.gwt.dev.jjs.impl.GwtAstBuilder;
+import com.google.gwt.dev.util.log.speedtracer.DevModeEventType;
+import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
+import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
+import com.google.gwt.util.tools.Utility;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A persistent cache of {@link CompilationUnit} instances backed by
+ * append-only, memory-mapped segment files.
+ * <p>
+ * Each segment starts with a small header and is followed by a sequence of
+ * records. Every record carries the resource path, {@link ContentId} and last
+ * modified time of a unit in front of its serialized form. On startup only the
+ * record headers are scanned to build an index keyed by {@link ContentId} and
+ * resource path; a unit is deserialized out of the mapped segment the first
+ * time {@link #find(ContentId)} or {@link #find(String)} asks for it. Units
+ * that are never looked up are never brought onto the heap.
+ * <p>
+ * As in {@link PersistentUnitCache}, a new segment is written per session and
+ * the segments are compacted into a single one once
+ * {@link PersistentUnitCache#CACHE_FILE_THRESHOLD} files accumulate.
+ * Compaction copies the raw records of live units and never deserializes them.
+ * <p>
+ * Enabled with {@code -Dgwt.persistentunitcachemode=mapped} (see
+ * {@link UnitCacheSingleton}).
+ * <p>
+ * Known Issues:
+ * <ul>
+ * <li>On platforms that do not allow deleting a file that is still mapped
+ * (Windows), compacted segments may survive until the next session. Records
+ * found in more than one segment are resolved the same way as in
+ * {@link PersistentUnitCache}, so this only costs disk space.</li>
+ * </ul>
+ */
+class MappedUnitCache extends MemoryUnitCache {
+
+  /**
+   * Name of the directory holding the segment files. It is distinct from the
+   * one used by {@link PersistentUnitCache} so that the two storage modes never
+   * purge each other's files.
+   */
+  static final String SEGMENT_DIRECTORY = PersistentUnitCache.UNIT_CACHE_PREFIX + "-mapped";
+
+  /**
+   * Identifies a segment file, followed by the format version.
+   */
+  private static final int SEGMENT_MAGIC = 0x47574353;
+  private static final int SEGMENT_FORMAT_VERSION = 1;
+
+  /**
+   * Location of a serialized unit inside a mapped segment.
+   */
+  private static final class IndexEntry {
+    private final ContentId contentId;
+    private final long lastModified;
+    private final int length;
+    private final int offset;
+    private final String resourcePath;
+    private final ByteBuffer segment;
+
+    private IndexEntry(String resourcePath, ContentId contentId, long lastModified,
+        ByteBuffer segment, int offset, int length) {
+      this.resourcePath = resourcePath;
+      this.contentId = contentId;
+      this.lastModified = lastModified;
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /**
+     * Returns a private view of the serialized unit, safe to read from any
+     * thread.
+     */
+    ByteBuffer getPayload() {
+      ByteBuffer payload = segment.duplicate();
+      payload.limit(offset + length);
+      payload.position(offset);
+      return payload.slice();
+    }
+  }
+
+  /**
+   * Adapts a {@link ByteBuffer} to an {@link InputStream} without copying.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, buffer.remaining());
+      buffer.get(b, off, len);
+      return len;
+    }
+  }
+
+  /**
+   * Maps an entire segment file read-only. The mapping stays valid after the
+   * channel is closed.
+   */
+  private static ByteBuffer mapSegment(File segmentFile) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(segmentFile, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Segment too large to map: " + channel.size() + " bytes");
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      Utility.close(raf);
+    }
+  }
+
+  /**
+   * Reads a string written with {@link DataOutputStream#writeUTF(String)}.
+   */
+  private static String readUTF(ByteBuffer buffer) throws IOException {
+    int length = buffer.getShort() & 0xffff;
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  private int addedSinceLastCleanup = 0;
+
+  /**
+   * Used to write segments in a background thread.
+   */
+  private final ExecutorService backgroundService;
+
+  /**
+   * Directory that holds the segment files.
+   */
+  private final File cacheDirectory;
+
+  /**
+   * Current segment file and stream being written to.
+   */
+  private File currentSegmentFile;
+  private DataOutputStream currentSegmentStream;
+
+  /**
+   * Units available in mapped segments, but not yet loaded into memory.
+   */
+  private final Map<ContentId, IndexEntry> indexByContentId =
+      new ConcurrentHashMap<ContentId, IndexEntry>();
+  private final Map<String, IndexEntry> indexByResourcePath =
+      new ConcurrentHashMap<String, IndexEntry>();
+
+  /**
+   * Saved to be able to wait for the index scan to complete.
+   */
+  private Future<Boolean> indexLoadStatus;
+
+  private final TreeLogger logger;
+
+  private Future<Boolean> purgeTaskStatus;
+
+  private int recordsWritten = 0;
+
+  private final Runnable shutdownThreadTask = new Runnable() {
+    @Override
+    public void run() {
+      closeCurrentSegment();
+      logger.log(TreeLogger.TRACE, "Shutting down MappedUnitCache thread");
+      backgroundService.shutdownNow();
+    }
+  };
+
+  MappedUnitCache(final TreeLogger logger, File cacheDir) throws UnableToCompleteException {
+    assert cacheDir != null;
+    this.logger = logger;
+
+    // Canonicalize for the same reasons as PersistentUnitCache (issue 6443).
+    try {
+      this.cacheDirectory = new File(cacheDir.getCanonicalFile(), SEGMENT_DIRECTORY);
+    } catch (IOException ex) {
+      logger.log(TreeLogger.WARN, "Unable to create canonical file of "
+          + cacheDir.getAbsolutePath() + ".", ex);
+      throw new UnableToCompleteException();
+    }
+
+    if (logger.isLoggable(TreeLogger.TRACE)) {
+      logger.log(TreeLogger.TRACE, "Mapped unit cache dir set to: "
+          + this.cacheDirectory.getAbsolutePath());
+    }
+
+    if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+      logger.log(TreeLogger.WARN, "Unable to initialize cache. Couldn't create directory "
+          + cacheDirectory.getAbsolutePath() + ".");
+      throw new UnableToCompleteException();
+    }
+
+    currentSegmentFile = PersistentUnitCache.createCacheFile(logger, cacheDirectory);
+    try {
+      openCurrentSegment();
+    } catch (IOException ex) {
+      Utility.close(currentSegmentStream);
+      currentSegmentFile.delete();
+      logger.log(TreeLogger.ERROR, "Error creating cache " + currentSegmentFile
+          + ". Disabling cache.", ex);
+      throw new UnableToCompleteException();
+    }
+
+    backgroundService = Executors.newSingleThreadExecutor();
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        try {
+          Future<Boolean> status = backgroundService.submit(shutdownThreadTask, Boolean.TRUE);
+          // Don't let the shutdown hang more than 5 seconds
+          status.get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          // ignore
+        } catch (RejectedExecutionException e) {
+          // already shutdown, ignore
+        } catch (ExecutionException e) {
+          logger.log(TreeLogger.ERROR, "Error during shutdown", e);
+        } catch (TimeoutException e) {
+          // ignore
+        } finally {
+          backgroundService.shutdownNow();
+        }
+      }
+    });
+
+    /*
+     * Scanning the record headers is cheap compared to deserializing units, but
+     * it is still done in the background so that startup isn't delayed.
+     */
+    indexLoadStatus = backgroundService.submit(new Runnable() {
+      @Override
+      public void run() {
+        loadIndex();
+      }
+    }, Boolean.TRUE);
+  }
+
+  /**
+   * Enqueue a unit to be written by the background thread.
+   */
+  @Override
+  public void add(CompilationUnit newUnit) {
+    awaitIndexLoad();
+    addedSinceLastCleanup++;
+    removeFromIndex(newUnit.getResourcePath());
+    super.add(newUnit);
+    final CompilationUnit unit = newUnit;
+    try {
+      backgroundService.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(payload);
+            out.writeObject(unit);
+            out.close();
+            writeRecord(unit.getResourcePath(), unit.getContentId(), unit.getLastModified(),
+                ByteBuffer.wrap(payload.toByteArray()));
+          } catch (IOException ex) {
+            backgroundService.shutdownNow();
+            if (logger.isLoggable(TreeLogger.TRACE)) {
+              logger.log(TreeLogger.TRACE, "Error saving unit to cache in: "
+                  + cacheDirectory.getAbsolutePath(), ex);
+            }
+          }
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      // background thread is not running, ignore
+    }
+  }
+
+  @Override
+  public void addArchivedUnit(CompilationUnit newUnit) {
+    awaitIndexLoad();
+    removeFromIndex(newUnit.getResourcePath());
+    super.addArchivedUnit(newUnit);
+  }
+
+  /**
+   * Starts a new segment for the next session and, once enough segments have
+   * accumulated, compacts the live records into the current one.
+   */
+  @Override
+  public void cleanup(TreeLogger logger) {
+    awaitIndexLoad();
+
+    if (backgroundService.isShutdown()) {
+      return;
+    }
+    boolean shouldRotate = addedSinceLastCleanup > 0;
+    logger.log(TreeLogger.TRACE, "Added " + addedSinceLastCleanup
+        + " units to cache since last cleanup.");
+    addedSinceLastCleanup = 0;
+    try {
+      File[] segmentFiles = PersistentUnitCache.getCacheFiles(cacheDirectory, true);
+      if (segmentFiles.length < PersistentUnitCache.CACHE_FILE_THRESHOLD) {
+        if (shouldRotate) {
+          backgroundService.execute(new Runnable() {
+            @Override
+            public void run() {
+              rotateCurrentSegment();
+            }
+          });
+        }
+        return;
+      }
+
+      if (purgeTaskStatus != null) {
+        try {
+          purgeTaskStatus.get(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        } catch (TimeoutException ex) {
+          // compaction is currently in progress.
+          return;
+        }
+      }
+
+      // Copy every record still reachable through the index.
+      final List<IndexEntry> liveEntries = new ArrayList<IndexEntry>(indexByResourcePath.values());
+      purgeTaskStatus = backgroundService.submit(new Runnable() {
+        @Override
+        public void run() {
+          compactSegments(liveEntries);
+        }
+      }, Boolean.TRUE);
+    } catch (ExecutionException ex) {
+      throw new InternalCompilerException("Error purging cache", ex);
+    } catch (RejectedExecutionException ex) {
+      // Cache background thread is not running - ignore
+    }
+  }
+
+  @Override
+  public CompilationUnit find(ContentId contentId) {
+    awaitIndexLoad();
+    CompilationUnit unit = super.find(contentId);
+    if (unit == null) {
+      unit = loadFromIndex(indexByContentId.get(contentId));
+    }
+    return unit;
+  }
+
+  @Override
+  public CompilationUnit find(String resourcePath) {
+    awaitIndexLoad();
+    CompilationUnit unit = super.find(resourcePath);
+    if (unit == null) {
+      unit = loadFromIndex(indexByResourcePath.get(resourcePath));
+    }
+    return unit;
+  }
+
+  @Override
+  public void remove(CompilationUnit unit) {
+    super.remove(unit);
+    removeFromIndex(unit.getResourcePath());
+  }
+
+  /**
+   * For Unit testing - shutdown the persistent cache.
+   */
+  void shutdown() throws InterruptedException, ExecutionException {
+    try {
+      Future<Runnable> future = backgroundService.submit(shutdownThreadTask, shutdownThreadTask);
+      backgroundService.shutdown();
+      future.get();
+    } catch (RejectedExecutionException ex) {
+      // background thread is not running - ignore
+    }
+  }
+
+  private synchronized void awaitIndexLoad() {
+    try {
+      if (indexLoadStatus != null) {
+        indexLoadStatus.get();
+        // no need to check any more.
+        indexLoadStatus = null;
+      }
+    } catch (InterruptedException e) {
+      throw new InternalCompilerException("Interrupted waiting for unit cache index to load.", e);
+    } catch (ExecutionException e) {
+      logger.log(TreeLogger.ERROR, "Failure in unit cache index load.", e);
+      // keep going
+      indexLoadStatus = null;
+    }
+  }
+
+  private void closeCurrentSegment() {
+    Utility.close(currentSegmentStream);
+    if (recordsWritten == 0) {
+      // Remove useless empty file.
+      currentSegmentFile.delete();
+    }
+  }
+
+  /**
+   * Rewrites the given records into the current segment and deletes all other
+   * segments. Runs on the background thread.
+   */
+  private void compactSegments(List<IndexEntry> liveEntries) {
+    try {
+      for (IndexEntry entry : liveEntries) {
+        writeRecord(entry.resourcePath, entry.contentId, entry.lastModified, entry.getPayload());
+      }
+      currentSegmentStream.flush();
+    } catch (IOException ex) {
+      logger.log(TreeLogger.TRACE, "Error compacting cache in: "
+          + cacheDirectory.getAbsolutePath(), ex);
+      backgroundService.shutdownNow();
+      return;
+    }
+
+    Event deleteEvent = SpeedTracerLogger.start(DevModeEventType.DELETE_CACHE);
+    logger.log(TreeLogger.TRACE, "Purging cache files from " + cacheDirectory);
+    for (File toDelete : PersistentUnitCache.getCacheFiles(cacheDirectory, false)) {
+      if (!currentSegmentFile.equals(toDelete) && !toDelete.delete()) {
+        logger.log(TreeLogger.WARN, "Couldn't delete file: " + toDelete);
+      }
+    }
+    deleteEvent.end();
+
+    rotateCurrentSegment();
+  }
+
+  /**
+   * Deserializes an indexed unit and promotes it to the in-memory cache.
+   */
+  private CompilationUnit loadFromIndex(IndexEntry entry) {
+    if (entry == null) {
+      return null;
+    }
+    ObjectInputStream inputStream = null;
+    try {
+      inputStream = new ObjectInputStream(new ByteBufferInputStream(entry.getPayload()));
+      CachedCompilationUnit unit = (CachedCompilationUnit) inputStream.readObject();
+      synchronized (unitMap) {
+        // Another thread may have raced us here; keep whatever got in first.
+        UnitCacheEntry existing = unitMap.get(unit.getResourcePath());
+        if (existing != null) {
+          return existing.getUnit();
+        }
+        UnitCacheEntry newEntry = new UnitCacheEntry(unit, UnitOrigin.PERSISTENT);
+        unitMap.put(unit.getResourcePath(), newEntry);
+        unitMapByContentId.put(unit.getContentId(), newEntry);
+      }
+      return unit;
+    } catch (IOException ex) {
+      logger.log(TreeLogger.TRACE, "Ignoring cached unit " + entry.resourcePath
+          + " due to read error.", ex);
+    } catch (ClassNotFoundException ex) {
+      logger.log(TreeLogger.TRACE, "Ignoring cached unit " + entry.resourcePath
+          + " due to deserialization error.", ex);
+    } finally {
+      Utility.close(inputStream);
+    }
+    removeFromIndex(entry.resourcePath);
+    return null;
+  }
+
+  /**
+   * Scans the headers of every segment on disk and indexes the records they
+   * contain. Units themselves are left in place.
+   */
+  private void loadIndex() {
+    Event loadPersistentUnitEvent =
+        SpeedTracerLogger.start(DevModeEventType.LOAD_PERSISTENT_UNIT_CACHE);
+    if (logger.isLoggable(TreeLogger.TRACE)) {
+      logger.log(TreeLogger.TRACE, "Indexing previously cached Compilation Units in "
+          + cacheDirectory.getAbsolutePath());
+    }
+    try {
+      for (File segmentFile : PersistentUnitCache.getCacheFiles(cacheDirectory, true)) {
+        if (segmentFile.equals(currentSegmentFile)) {
+          continue;
+        }
+        boolean deleteSegmentFile = false;
+        try {
+          ByteBuffer segment = mapSegment(segmentFile);
+          if (segment.remaining() < 16 || segment.getInt() != SEGMENT_MAGIC
+              || segment.getInt() != SEGMENT_FORMAT_VERSION
+              || segment.getLong() != GwtAstBuilder.getSerializationVersion()) {
+            deleteSegmentFile = true;
+          } else {
+            while (segment.hasRemaining()) {
+              indexRecord(segment);
+            }
+          }
+        } catch (BufferUnderflowException ex) {
+          // A truncated trailing record; keep whatever was indexed before it.
+        } catch (IOException ex) {
+          deleteSegmentFile = true;
+          if (logger.isLoggable(TreeLogger.TRACE)) {
+            logger.log(TreeLogger.TRACE, "Ignoring and deleting cache segment "
+                + segmentFile.getAbsolutePath() + " due to read error.", ex);
+          }
+        }
+        if (deleteSegmentFile) {
+          segmentFile.delete();
+        } else if (logger.isLoggable(TreeLogger.TRACE)) {
+          logger.log(TreeLogger.TRACE, segmentFile.getName() + ": Index complete");
+        }
+      }
+    } finally {
+      loadPersistentUnitEvent.end();
+    }
+  }
+
+  /**
+   * Reads one record header at the current position of {@code segment} and
+   * skips over its payload.
+   */
+  private void indexRecord(ByteBuffer segment) throws IOException {
+    String resourcePath = readUTF(segment);
+    String sourceTypeName = readUTF(segment);
+    String strongHash = readUTF(segment);
+    long lastModified = segment.getLong();
+    int length = segment.getInt();
+    int offset = segment.position();
+    if (length < 0 || length > segment.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    segment.position(offset + length);
+
+    IndexEntry entry = new IndexEntry(resourcePath, new ContentId(sourceTypeName, strongHash),
+        lastModified, segment, offset, length);
+    IndexEntry existingEntry = indexByResourcePath.get(resourcePath);
+    // Same precedence rule as PersistentUnitCache: on a tie, the newer record wins.
+    if (existingEntry == null || lastModified >= existingEntry.lastModified) {
+      if (existingEntry != null) {
+        indexByContentId.remove(existingEntry.contentId);
+      }
+      indexByResourcePath.put(resourcePath, entry);
+      indexByContentId.put(entry.contentId, entry);
+    }
+  }
+
+  private void openCurrentSegment() throws IOException {
+    currentSegmentStream = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(currentSegmentFile)));
+    currentSegmentStream.writeInt(SEGMENT_MAGIC);
+    currentSegmentStream.writeInt(SEGMENT_FORMAT_VERSION);
+    currentSegmentStream.writeLong(GwtAstBuilder.getSerializationVersion());
+  }
+
+  private void removeFromIndex(String resourcePath) {
+    IndexEntry entry = indexByResourcePath.remove(resourcePath);
+    if (entry != null) {
+      indexByContentId.remove(entry.contentId);
+    }
+  }
+
+  private void rotateCurrentSegment() {
+    if (logger.isLoggable(TreeLogger.TRACE)) {
+      logger.log(TreeLogger.TRACE, "Wrote " + recordsWritten + " units to mapped cache.");
+    }
+    closeCurrentSegment();
+    recordsWritten = 0;
+    try {
+      currentSegmentFile = PersistentUnitCache.createCacheFile(logger, cacheDirectory);
+      openCurrentSegment();
+    } catch (UnableToCompleteException ex) {
+      backgroundService.shutdownNow();
+    } catch (IOException ex) {
+      Utility.close(currentSegmentStream);
+      logger.log(TreeLogger.ERROR, "Error rotating file.  Shutting down cache thread.", ex);
+      backgroundService.shutdownNow();
+    }
+  }
+
+  private void writeRecord(String resourcePath, ContentId contentId, long lastModified,
+      ByteBuffer payload) throws IOException {
+    String sourceTypeName = contentId.getSourceTypeName();
+    currentSegmentStream.writeUTF(resourcePath);
+    currentSegmentStream.writeUTF(sourceTypeName);
+    currentSegmentStream.writeUTF(contentId.get().substring(sourceTypeName.length() + 1));
+    currentSegmentStream.writeLong(lastModified);
+    currentSegmentStream.writeInt(payload.remaining());
+    if (payload.hasArray()) {
+      currentSegmentStream.write(payload.array(), payload.arrayOffset() + payload.position(),
+          payload.remaining());
+    } else {
+      byte[] bytes = new byte[payload.remaining()];
+      payload.get(bytes);
+      currentSegmentStream.write(bytes);
+    }
+    recordsWritten++;
+  }
+}
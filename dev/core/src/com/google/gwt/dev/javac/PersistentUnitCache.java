@@ -77,6 +77,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * <li>gwt.persistentunitcache : enables the persistent cache (eventually will
  * be default)</li>
  * <li>gwt.persistentunitcachedir=<dir>: sets or overrides the cache directory</li>
+ * <li>gwt.persistentunitcachemode=mapped: uses {@link MappedUnitCache}, which
+ * loads units lazily, instead of this class</li>
  * </ul>
  *
  * <p>
@@ -116,7 +118,7 @@ class PersistentUnitCache extends MemoryUnitCache {
   /**
    * Creates a new file with a name based on the current system time.
    */
-  private static File createCacheFile(TreeLogger logger, File cacheDirectory)
+  static File createCacheFile(TreeLogger logger, File cacheDirectory)
       throws UnableToCompleteException {
     File newFile = null;
     long timestamp = System.currentTimeMillis();
@@ -146,7 +148,7 @@ class PersistentUnitCache extends MemoryUnitCache {
    * @return an array of sorted filenames. The file name pattern is such that
    *         sorting them alphabetically also sorts the files by age.
    */
-  private static File[] getCacheFiles(File cacheDirectory, boolean currentVersion) {
+  static File[] getCacheFiles(File cacheDirectory, boolean currentVersion) {
     if (cacheDirectory.isDirectory()) {
       File[] files = cacheDirectory.listFiles();
       List<File> cacheFiles = new ArrayList<File>();
@@ -32,6 +32,13 @@ public class UnitCacheSingleton {
       "true");
   private static final boolean usePersistent = configPropertyValue.length() == 0
       || Boolean.parseBoolean(configPropertyValue);
+
+  /**
+   * Selects how the persistent cache is stored on disk: "log" (the default)
+   * uses {@link PersistentUnitCache}, "mapped" uses {@link MappedUnitCache}.
+   */
+  private static final String storageMode = System.getProperty("gwt.persistentunitcachemode",
+      "log");
   private static UnitCache instance = null;
 
   /**
@@ -56,7 +63,11 @@ public class UnitCacheSingleton {
         }
         if (cacheDir != null) {
           try {
-            instance = new PersistentUnitCache(logger, cacheDir);
+            if ("mapped".equals(storageMode)) {
+              instance = new MappedUnitCache(logger, cacheDir);
+            } else {
+              instance = new PersistentUnitCache(logger, cacheDir);
+            }
             return instance;
           } catch (UnableToCompleteException ignored) {
           }
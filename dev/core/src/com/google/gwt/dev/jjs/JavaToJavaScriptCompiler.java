@@ -85,6 +85,7 @@ import com.google.gwt.dev.jjs.impl.LongEmulationNormalizer;
 import com.google.gwt.dev.jjs.impl.MakeCallsStatic;
 import com.google.gwt.dev.jjs.impl.MethodCallTightener;
 import com.google.gwt.dev.jjs.impl.MethodInliner;
+import com.google.gwt.dev.jjs.impl.OptimizerContext;
 import com.google.gwt.dev.jjs.impl.OptimizerStats;
 import com.google.gwt.dev.jjs.impl.PostOptimizationCompoundAssignmentNormalizer;
 import com.google.gwt.dev.jjs.impl.Pruner;
@@ -114,6 +115,7 @@ import com.google.gwt.dev.js.JsNamespaceChooser;
 import com.google.gwt.dev.js.JsNamespaceOption;
 import com.google.gwt.dev.js.JsNormalizer;
 import com.google.gwt.dev.js.JsObfuscateNamer;
+import com.google.gwt.dev.js.JsOptimizerContext;
 import com.google.gwt.dev.js.JsPrettyNamer;
 import com.google.gwt.dev.js.JsReportGenerationVisitor;
 import com.google.gwt.dev.js.JsSourceGenerationVisitorWithSizeBreakdown;
@@ -135,6 +137,7 @@ import com.google.gwt.dev.js.ast.JsParameter;
 import com.google.gwt.dev.js.ast.JsProgram;
 import com.google.gwt.dev.js.ast.JsVars;
 import com.google.gwt.dev.js.ast.JsVisitor;
+import com.google.gwt.dev.util.DaemonThreadPool;
 import com.google.gwt.dev.util.DefaultTextOutput;
 import com.google.gwt.dev.util.Empty;
 import com.google.gwt.dev.util.Memory;
@@ -165,6 +168,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.zip.GZIPInputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -465,55 +469,8 @@ public abstract class JavaToJavaScriptCompiler {
         return;
       }
 
-      for (int i = 0; i < jsFragments.length; i++) {
-        DefaultTextOutput out = new DefaultTextOutput(options.getOutput().shouldMinimize());
-        JsSourceGenerationVisitorWithSizeBreakdown v;
-
-        if (sourceInfoMaps != null) {
-          v = new JsReportGenerationVisitor(out, jjsMap);
-        } else {
-          v = new JsSourceGenerationVisitorWithSizeBreakdown(out, jjsMap);
-        }
-        v.accept(jsProgram.getFragmentBlock(i));
-
-        StatementRanges statementRanges = v.getStatementRanges();
-        String code = out.toString();
-        Map<Range, SourceInfo> infoMap = (sourceInfoMaps != null) ? v.getSourceInfoMap() : null;
-
-        JsAbstractTextTransformer transformer =
-            new JsAbstractTextTransformer(code, statementRanges, infoMap) {
-                @Override
-              public void exec() {
-              }
-
-                @Override
-              protected void updateSourceInfoMap() {
-              }
-            };
-
-        /**
-         * Reorder function decls to improve compression ratios. Also restructures the top level
-         * blocks into sub-blocks if they exceed 32767 statements.
-         */
-        Event functionClusterEvent = SpeedTracerLogger.start(CompilerEventType.FUNCTION_CLUSTER);
-        // TODO(cromwellian) move to the Js AST optimization, re-enable sourcemaps + clustering
-        if (!sourceMapsEnabled && options.shouldClusterSimilarFunctions()
-        // only cluster for obfuscated mode
-            && options.getOutput() == JsOutputOption.OBFUSCATED) {
-          transformer = new JsFunctionClusterer(transformer);
-          transformer.exec();
-        }
-        functionClusterEvent.end();
-
-        jsFragments[i] = transformer.getJs();
-        ranges[i] = transformer.getStatementRanges();
-        if (sizeBreakdowns != null) {
-          sizeBreakdowns[i] = v.getSizeBreakdown();
-        }
-        if (sourceInfoMaps != null) {
-          sourceInfoMaps.add(transformer.getSourceInfoMap());
-        }
-      }
+      JavaToJavaScriptCompiler.generateJavaScriptCode(jsProgram, options, jjsMap, jsFragments,
+          ranges, sizeBreakdowns, sourceInfoMaps, sourceMapsEnabled, SOURCE_GENERATION_POOL);
     }
 
     private Collection<? extends Artifact<?>> makeSoycArtifacts(int permutationId, String[] js,
@@ -721,6 +678,8 @@ public abstract class JavaToJavaScriptCompiler {
 
     private void optimizeJs(Collection<JsNode> toInline) throws InterruptedException {
       List<OptimizerStats> allOptimizerStats = new ArrayList<OptimizerStats>();
+      JsOptimizerContext optimizerCtx =
+          OptimizerContext.ENABLED ? new JsOptimizerContext(jsProgram) : null;
       int counter = 0;
       while (true) {
         counter++;
@@ -729,24 +688,31 @@ public abstract class JavaToJavaScriptCompiler {
         }
         Event optimizeJsEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE_JS);
 
+        boolean fullPass = optimizerCtx == null || !optimizerCtx.hasPassHistory();
         OptimizerStats stats = new OptimizerStats("Pass " + counter);
 
         // Remove unused functions if possible.
-        stats.add(JsStaticEval.exec(jsProgram));
+        stats.add(JsStaticEval.exec(jsProgram, optimizerCtx));
         // Inline Js function invocations
-        stats.add(JsInliner.exec(jsProgram, toInline));
+        stats.add(JsInliner.exec(jsProgram, toInline, optimizerCtx));
         // Remove unused functions if possible.
-        stats.add(JsUnusedFunctionRemover.exec(jsProgram));
+        stats.add(JsUnusedFunctionRemover.exec(jsProgram, optimizerCtx));
 
         // Save the stats to print out after optimizers finish.
         allOptimizerStats.add(stats);
 
         optimizeJsEvent.end();
         int optimizationLevel = options.getOptimizationLevel();
-        if ((optimizationLevel < OptionOptimize.OPTIMIZE_LEVEL_MAX && counter > optimizationLevel)
-            || !stats.didChange()) {
+        if (optimizationLevel < OptionOptimize.OPTIMIZE_LEVEL_MAX && counter > optimizationLevel) {
           break;
         }
+        if (!stats.didChange()) {
+          if (fullPass) {
+            break;
+          }
+          // Make sure the passes that skipped unchanged functions missed nothing.
+          optimizerCtx.clearPassHistory();
+        }
       }
 
       printJsOptimizeTrace(allOptimizerStats);
@@ -1064,7 +1030,7 @@ public abstract class JavaToJavaScriptCompiler {
            * compiles, so let's avoid doing potentially superlinear optimizations on the unified
            * AST.
            */
-          optimizeJavaOneTime("Early Optimization", jprogram.getNodeCount());
+          optimizeJavaOneTime("Early Optimization", jprogram.getNodeCount(), null);
         }
       }
     }
@@ -1133,6 +1099,125 @@ public abstract class JavaToJavaScriptCompiler {
     }
   }
 
+  /**
+   * Generates the Js code of each fragment of a Js AST, on the threads of the given pool if it has
+   * more than one. Also produces information about that transformation.
+   */
+  // VisibleForTesting
+  static void generateJavaScriptCode(final JsProgram jsProgram, final JJSOptions options,
+      final JavaToJavaScriptMap jjsMap, String[] jsFragments, StatementRanges[] ranges,
+      SizeBreakdown[] sizeBreakdowns, List<Map<Range, SourceInfo>> sourceInfoMaps,
+      final boolean sourceMapsEnabled, DaemonThreadPool pool) {
+    final boolean recordSourceInfo = sourceInfoMaps != null;
+    GeneratedFragment[] fragments = new GeneratedFragment[jsFragments.length];
+    if (pool.getThreads() < 2 || fragments.length < 2) {
+      for (int i = 0; i < fragments.length; i++) {
+        fragments[i] = generateFragment(jsProgram, options, i, jjsMap, recordSourceInfo,
+            sourceMapsEnabled);
+      }
+    } else {
+      // Fragments only read the Js AST, so each is emitted into its own buffer concurrently.
+      List<Callable<GeneratedFragment>> tasks =
+          new ArrayList<Callable<GeneratedFragment>>(fragments.length);
+      for (int i = 0; i < fragments.length; i++) {
+        final int fragment = i;
+        tasks.add(new Callable<GeneratedFragment>() {
+          @Override
+          public GeneratedFragment call() {
+            return generateFragment(jsProgram, options, fragment, jjsMap, recordSourceInfo,
+                sourceMapsEnabled);
+          }
+        });
+      }
+      try {
+        pool.invokeAll(tasks, "generating JavaScript").toArray(fragments);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while generating JavaScript", e);
+      }
+    }
+
+    // Merge in fragment order, as the source maps and reports expect.
+    for (int i = 0; i < fragments.length; i++) {
+      jsFragments[i] = fragments[i].js;
+      ranges[i] = fragments[i].statementRanges;
+      if (sizeBreakdowns != null) {
+        sizeBreakdowns[i] = fragments[i].sizeBreakdown;
+      }
+      if (recordSourceInfo) {
+        sourceInfoMaps.add(fragments[i].sourceInfoMap);
+      }
+    }
+  }
+
+  /**
+   * Generates the Js code of one fragment. Only reads the Js AST, so several fragments can be
+   * generated at once.
+   */
+  private static GeneratedFragment generateFragment(JsProgram jsProgram, JJSOptions options,
+      int fragment, JavaToJavaScriptMap jjsMap, boolean recordSourceInfo,
+      boolean sourceMapsEnabled) {
+    DefaultTextOutput out = new DefaultTextOutput(options.getOutput().shouldMinimize());
+    JsSourceGenerationVisitorWithSizeBreakdown v;
+
+    if (recordSourceInfo) {
+      v = new JsReportGenerationVisitor(out, jjsMap);
+    } else {
+      v = new JsSourceGenerationVisitorWithSizeBreakdown(out, jjsMap);
+    }
+    v.accept(jsProgram.getFragmentBlock(fragment));
+
+    StatementRanges statementRanges = v.getStatementRanges();
+    String code = out.toString();
+    Map<Range, SourceInfo> infoMap = recordSourceInfo ? v.getSourceInfoMap() : null;
+
+    JsAbstractTextTransformer transformer =
+        new JsAbstractTextTransformer(code, statementRanges, infoMap) {
+            @Override
+          public void exec() {
+          }
+
+            @Override
+          protected void updateSourceInfoMap() {
+          }
+        };
+
+    /**
+     * Reorder function decls to improve compression ratios. Also restructures the top level
+     * blocks into sub-blocks if they exceed 32767 statements.
+     */
+    Event functionClusterEvent = SpeedTracerLogger.start(CompilerEventType.FUNCTION_CLUSTER);
+    // TODO(cromwellian) move to the Js AST optimization, re-enable sourcemaps + clustering
+    if (!sourceMapsEnabled && options.shouldClusterSimilarFunctions()
+    // only cluster for obfuscated mode
+        && options.getOutput() == JsOutputOption.OBFUSCATED) {
+      transformer = new JsFunctionClusterer(transformer);
+      transformer.exec();
+    }
+    functionClusterEvent.end();
+
+    return new GeneratedFragment(transformer.getJs(), transformer.getStatementRanges(),
+        v.getSizeBreakdown(), transformer.getSourceInfoMap());
+  }
+
+  /**
+   * The Js code generated for one fragment, with what was recorded while generating it.
+   */
+  private static class GeneratedFragment {
+    private final String js;
+    private final SizeBreakdown sizeBreakdown;
+    private final Map<Range, SourceInfo> sourceInfoMap;
+    private final StatementRanges statementRanges;
+
+    private GeneratedFragment(String js, StatementRanges statementRanges,
+        SizeBreakdown sizeBreakdown, Map<Range, SourceInfo> sourceInfoMap) {
+      this.js = js;
+      this.statementRanges = statementRanges;
+      this.sizeBreakdown = sizeBreakdown;
+      this.sourceInfoMap = sourceInfoMap;
+    }
+  }
+
   private static class PermutationResultImpl implements PermutationResult {
 
     private final ArtifactSet artifacts = new ArtifactSet();
@@ -1217,6 +1302,16 @@ public abstract class JavaToJavaScriptCompiler {
    */
   private static final int MAX_PASSES = 100;
 
+  /**
+   * A Java system property that sets the number of threads used to generate the Js code of the
+   * fragments. Values above 1 generate the fragments of a permutation concurrently.
+   */
+  private static final String SOURCE_GENERATION_THREADS_PROPERTY =
+      "gwt.jjs.sourceGenerationThreads";
+
+  private static final DaemonThreadPool SOURCE_GENERATION_POOL = new DaemonThreadPool(
+      "JsSourceGeneration", Integer.getInteger(SOURCE_GENERATION_THREADS_PROPERTY, 1));
+
   static {
     InternalCompilerException.preload();
   }
@@ -1284,6 +1379,7 @@ public abstract class JavaToJavaScriptCompiler {
     boolean atMaxLevel = options.getOptimizationLevel() == OptionOptimize.OPTIMIZE_LEVEL_MAX;
     int passLimit = atMaxLevel ? MAX_PASSES : options.getOptimizationLevel();
     float minChangeRate = atMaxLevel ? FIXED_POINT_CHANGE_RATE : EFFICIENT_CHANGE_RATE;
+    OptimizerContext optimizerCtx = OptimizerContext.ENABLED ? new OptimizerContext(jprogram) : null;
     while (true) {
       passCount++;
       if (passCount > passLimit) {
@@ -1294,7 +1390,8 @@ public abstract class JavaToJavaScriptCompiler {
         throw new InterruptedException();
       }
       AstDumper.maybeDumpAST(jprogram);
-      OptimizerStats stats = optimizeJavaOneTime("Pass " + passCount, nodeCount);
+      boolean fullPass = optimizerCtx == null || !optimizerCtx.hasPassHistory();
+      OptimizerStats stats = optimizeJavaOneTime("Pass " + passCount, nodeCount, optimizerCtx);
       allOptimizerStats.add(stats);
       lastNodeCount = nodeCount;
       nodeCount = jprogram.getNodeCount();
@@ -1302,7 +1399,15 @@ public abstract class JavaToJavaScriptCompiler {
       float nodeChangeRate = stats.getNumMods() / (float) lastNodeCount;
       float sizeChangeRate = (lastNodeCount - nodeCount) / (float) lastNodeCount;
       if (nodeChangeRate <= minChangeRate && sizeChangeRate <= minChangeRate) {
-        break;
+        if (fullPass) {
+          break;
+        }
+        /*
+         * The method-local passes only looked at what changed since their
+         * previous run; make sure nothing was missed with a pass over the
+         * whole program before stopping.
+         */
+        optimizerCtx.clearPassHistory();
       }
     }
 
@@ -1327,18 +1432,25 @@ public abstract class JavaToJavaScriptCompiler {
     }
   }
 
-  private OptimizerStats optimizeJavaOneTime(String passName, int numNodes) {
+  /**
+   * Runs each optimization pass once. If {@code optimizerCtx} is not
+   * {@code null}, the method-local passes only visit the methods it reports as
+   * changed since their previous run, and TypeTightener reuses the type flow
+   * it keeps.
+   */
+  private OptimizerStats optimizeJavaOneTime(String passName, int numNodes,
+      OptimizerContext optimizerCtx) {
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "phase", "loop");
     // Clinits might have become empty become empty.
     jprogram.typeOracle.recomputeAfterOptimizations();
     OptimizerStats stats = new OptimizerStats(passName);
     stats.add(Pruner.exec(jprogram, true).recordVisits(numNodes));
     stats.add(Finalizer.exec(jprogram).recordVisits(numNodes));
-    stats.add(MakeCallsStatic.exec(options, jprogram).recordVisits(numNodes));
-    stats.add(TypeTightener.exec(jprogram).recordVisits(numNodes));
-    stats.add(MethodCallTightener.exec(jprogram).recordVisits(numNodes));
-    stats.add(DeadCodeElimination.exec(jprogram).recordVisits(numNodes));
-    stats.add(MethodInliner.exec(jprogram).recordVisits(numNodes));
+    stats.add(MakeCallsStatic.exec(options, jprogram, optimizerCtx).recordVisits(numNodes));
+    stats.add(TypeTightener.exec(jprogram, optimizerCtx).recordVisits(numNodes));
+    stats.add(MethodCallTightener.exec(jprogram, optimizerCtx).recordVisits(numNodes));
+    stats.add(DeadCodeElimination.exec(jprogram, optimizerCtx).recordVisits(numNodes));
+    stats.add(MethodInliner.exec(jprogram, optimizerCtx).recordVisits(numNodes));
     if (options.shouldInlineLiteralParameters()) {
       stats.add(SameParameterValueOptimizer.exec(jprogram).recordVisits(numNodes));
     }
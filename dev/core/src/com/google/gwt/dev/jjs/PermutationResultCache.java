@@ -0,0 +1,238 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.About;
+import com.google.gwt.dev.CompilerContext;
+import com.google.gwt.dev.Permutation;
+import com.google.gwt.dev.PrecompileTaskOptions;
+import com.google.gwt.dev.cfg.ConfigurationProperty;
+import com.google.gwt.dev.cfg.StaticPropertyOracle;
+import com.google.gwt.dev.jjs.impl.gflow.DataflowOptimizer;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.util.tools.Utility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.SortedMap;
+
+/**
+ * A persistent cache of {@link PermutationResult}s, keyed by everything that
+ * goes into compiling a permutation: the serialized {@link UnifiedAst}, the
+ * compiler options, the system properties that change the generated code, and
+ * the properties and rebind answers of the permutation.
+ * <p>
+ * The cache is only used when the {@value #CACHE_DIR_PROPERTY} system property
+ * names a directory. Every result is stored in its own file named after its
+ * key, so concurrent permutation workers (and concurrent builds) can share the
+ * directory. The least recently used results are removed once there are more
+ * than {@value #MAX_ENTRIES}.
+ */
+class PermutationResultCache {
+
+  /**
+   * The name of the system property that points to the cache directory.
+   */
+  public static final String CACHE_DIR_PROPERTY = "gwt.jjs.permutationResultCacheDir";
+
+  private static final String FILE_SUFFIX = ".permutation";
+
+  private static final int MAX_ENTRIES = 256;
+
+  /**
+   * The system properties that change the code generated for a permutation.
+   */
+  // VisibleForTesting
+  static final String[] CODEGEN_PROPERTIES = {
+      "gwt.coverage",
+      "gwt.jjs.incrementalOptimizer",
+      "gwt.jjs.literalInternerThreshold",
+      "gwt.jsinlinerMaxFnSize",
+      "gwt.jsinlinerRatio",
+      DataflowOptimizer.MAX_NODES_PROPERTY,
+      DataflowOptimizer.STEPS_PER_NODE_PROPERTY};
+
+  /**
+   * Returns the cache named by {@value #CACHE_DIR_PROPERTY}, or null if
+   * results shouldn't be cached.
+   */
+  static PermutationResultCache get() {
+    String cacheDir = System.getProperty(CACHE_DIR_PROPERTY);
+    return cacheDir == null ? null : new PermutationResultCache(new File(cacheDir));
+  }
+
+  /**
+   * Describes the compiler options and system properties that affect the
+   * compiled output of every permutation.
+   */
+  private static String describe(CompilerContext compilerContext) {
+    PrecompileTaskOptions options = compilerContext.getOptions();
+    StringBuilder sb = new StringBuilder();
+    sb.append("version=").append(About.getGwtVersionNum()).append('\n');
+    sb.append("monolithic=").append(compilerContext.shouldCompileMonolithic()).append('\n');
+    sb.append("link=").append(options.shouldLink()).append('\n');
+    for (String property : CODEGEN_PROPERTIES) {
+      sb.append(property).append('=').append(System.getProperty(property)).append('\n');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Describes the parts of a permutation that affect its compiled output.
+   */
+  private static String describe(Permutation permutation) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("id=").append(permutation.getId()).append('\n');
+    StaticPropertyOracle[] propertyOracles = permutation.getPropertyOracles();
+    SortedMap<String, String>[] rebindAnswers = permutation.getOrderedRebindAnswers();
+    for (int i = 0; i < propertyOracles.length; i++) {
+      sb.append("properties=").append(propertyOracles[i]).append('\n');
+      for (ConfigurationProperty property : propertyOracles[i].getConfigurationProperties()) {
+        sb.append("config ").append(property.getName()).append('=').append(property.getValues())
+            .append('\n');
+      }
+      sb.append("rebinds=").append(rebindAnswers[i]).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private final File cacheDir;
+
+  PermutationResultCache(File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /**
+   * Computes the key under which the result of compiling a permutation of a
+   * {@link UnifiedAst} with the options of a {@link CompilerContext} is stored.
+   */
+  String computeKey(UnifiedAst unifiedAst, CompilerContext compilerContext,
+      Permutation permutation) {
+    ByteArrayOutputStream options = new ByteArrayOutputStream();
+    try {
+      // The compiler reads its options from the context, not from the AST.
+      Util.writeObjectToStream(options, new JJSOptionsImpl(compilerContext.getOptions()));
+    } catch (IOException e) {
+      throw new RuntimeException("Should never happen with in-memory stream", e);
+    }
+    return Util.computeStrongName(new byte[][] {
+        Util.getBytes(unifiedAst.getAstStrongName()), options.toByteArray(),
+        Util.getBytes(describe(compilerContext)), Util.getBytes(describe(permutation))});
+  }
+
+  /**
+   * Returns the cached result for a key, or null if there is none.
+   */
+  PermutationResult read(TreeLogger logger, String key) {
+    File file = getFile(key);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      PermutationResult result = Util.readFileAsObject(file, PermutationResult.class);
+      // Remember that it was used recently.
+      file.setLastModified(System.currentTimeMillis());
+      return result;
+    } catch (ClassNotFoundException e) {
+      logger.log(TreeLogger.TRACE, "Ignoring incompatible cached permutation " + file, e);
+    } catch (IOException e) {
+      logger.log(TreeLogger.TRACE, "Ignoring unreadable cached permutation " + file, e);
+    }
+    file.delete();
+    return null;
+  }
+
+  /**
+   * Stores a result under a key. Failures are logged but otherwise ignored;
+   * the result just won't be reused.
+   */
+  void write(TreeLogger logger, String key, PermutationResult result) {
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      logger.log(TreeLogger.WARN, "Unable to create permutation cache directory " + cacheDir);
+      return;
+    }
+    File file = getFile(key);
+    FileOutputStream out = null;
+    File tempFile = null;
+    try {
+      // Write to a temporary file first so readers never see a partial result.
+      tempFile = File.createTempFile(key, ".tmp", cacheDir);
+      out = new FileOutputStream(tempFile);
+      Util.writeObjectToStream(out, result);
+      out.close();
+      out = null;
+      file.delete();
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Unable to rename " + tempFile + " to " + file);
+      }
+      tempFile = null;
+    } catch (IOException e) {
+      logger.log(TreeLogger.WARN, "Unable to cache permutation result in " + file, e);
+    } finally {
+      Utility.close(out);
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+    prune();
+  }
+
+  private File getFile(String key) {
+    return new File(cacheDir, key + FILE_SUFFIX);
+  }
+
+  /**
+   * Removes the least recently used results beyond {@link #MAX_ENTRIES}.
+   */
+  private void prune() {
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    int entries = 0;
+    for (File file : files) {
+      if (file.getName().endsWith(FILE_SUFFIX)) {
+        files[entries++] = file;
+      }
+    }
+    if (entries <= MAX_ENTRIES) {
+      return;
+    }
+    files = Arrays.copyOf(files, entries);
+    final long[] lastModified = new long[entries];
+    for (int i = 0; i < entries; i++) {
+      lastModified[i] = files[i].lastModified();
+    }
+    Integer[] order = new Integer[entries];
+    for (int i = 0; i < entries; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Long.signum(lastModified[b] - lastModified[a]);
+      }
+    });
+    for (int i = MAX_ENTRIES; i < entries; i++) {
+      files[order[i]].delete();
+    }
+  }
+}
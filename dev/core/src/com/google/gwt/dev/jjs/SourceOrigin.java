@@ -19,11 +19,8 @@ import com.google.gwt.dev.jjs.Correlation.Axis;
 import com.google.gwt.dev.jjs.CorrelationFactory.DummyCorrelationFactory;
 import com.google.gwt.dev.util.StringInterner;
 import com.google.gwt.dev.util.Util;
-
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import com.google.gwt.thirdparty.guava.common.collect.Interner;
+import com.google.gwt.thirdparty.guava.common.collect.Interners;
 
 /**
  * Describes where a SourceInfo's node came from. This class currently includes
@@ -67,19 +64,13 @@ public class SourceOrigin implements SourceInfo {
   };
 
   /**
-   * Cache to reuse recently-created origins. This is very useful for JS nodes,
-   * since {@link com.google.gwt.dev.js.JsParser} currently only provides line
-   * numbers rather than character positions, so we get a lot of reuse there. We
-   * get barely any reuse in the Java AST. Synchronized since several threads
-   * could operate on it at once during parallel optimization phases.
+   * Interns the origins that carry only a file name and a line, so that all of
+   * the nodes coming from one line of source share a single origin. Weak, so
+   * the origins of discarded ASTs can still be collected, and safe to use from
+   * the several threads of parallel compiles.
    */
-  private static final Map<SourceOrigin, SourceOrigin> CANONICAL_SOURCE_ORIGINS = Collections
-      .synchronizedMap(new LinkedHashMap<SourceOrigin, SourceOrigin>(150, 0.75f, true) {
-        @Override
-        protected boolean removeEldestEntry(Entry<SourceOrigin, SourceOrigin> eldest) {
-          return size() > 100;
-        }
-      });
+  private static final Interner<SourceOrigin> CANONICAL_SOURCE_ORIGINS =
+      Interners.newWeakInterner();
 
   private static final Correlation[] NO_CORRELATIONS = new Correlation[0];
 
@@ -95,22 +86,11 @@ public class SourceOrigin implements SourceInfo {
   }
 
   /**
-   * Creates SourceOrigin nodes. This factory method will attempt to provide
-   * canonicalized instances of SourceOrigin objects.
+   * Creates SourceOrigin nodes. This factory method returns canonical instances
+   * of SourceOrigin objects.
    */
   public static SourceOrigin create(int startLine, String fileName) {
-
-    SourceOrigin newInstance = new SourceOrigin(fileName, startLine);
-    SourceOrigin canonical = CANONICAL_SOURCE_ORIGINS.get(newInstance);
-
-    assert canonical == null || (newInstance != canonical && newInstance.equals(canonical));
-
-    if (canonical != null) {
-      return canonical;
-    } else {
-      CANONICAL_SOURCE_ORIGINS.put(newInstance, newInstance);
-      return newInstance;
-    }
+    return CANONICAL_SOURCE_ORIGINS.intern(new SourceOrigin(fileName, startLine));
   }
 
   // TODO: Add Module and Generator tracking
@@ -122,6 +102,13 @@ public class SourceOrigin implements SourceInfo {
     this.startLine = startLine;
   }
 
+  /**
+   * Keeps the origins read back from the unit cache canonical.
+   */
+  private Object readResolve() {
+    return create(startLine, fileName);
+  }
+
   @Override
   public void addCorrelation(Correlation c) {
   }
@@ -26,6 +26,7 @@ import com.google.gwt.dev.js.ast.JsProgram;
 import com.google.gwt.dev.util.DiskCache;
 import com.google.gwt.dev.util.Util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -64,6 +65,11 @@ public class UnifiedAst implements Serializable {
 
   private static final DiskCache diskCache = DiskCache.INSTANCE;
 
+  /**
+   * The strong name of the serialized AST; computed lazily.
+   */
+  private transient String astStrongName;
+
   /**
    * The original AST; nulled out once consumed (by the first call to
    * {@link #getFreshAst()}.
@@ -135,10 +141,53 @@ public class UnifiedAst implements Serializable {
       TreeLogger logger, CompilerContext compilerContext, Permutation permutation)
       throws UnableToCompleteException {
     boolean compileMonolithic = compilerContext.shouldCompileMonolithic();
+    PermutationResultCache cache = PermutationResultCache.get();
+    String cacheKey = null;
+    if (cache != null) {
+      cacheKey = cache.computeKey(this, compilerContext, permutation);
+      PermutationResult cachedResult = cache.read(logger, cacheKey);
+      if (cachedResult != null) {
+        if (logger.isLoggable(TreeLogger.INFO)) {
+          logger.log(TreeLogger.INFO,
+              "Reusing cached result for permutation " + permutation.getId());
+        }
+        return cachedResult;
+      }
+    }
     JavaToJavaScriptCompiler javaToJavaScriptCompiler = compileMonolithic
         ? new MonolithicJavaToJavaScriptCompiler(logger, compilerContext)
         : new LibraryJavaToJavaScriptCompiler(logger, compilerContext);
-    return javaToJavaScriptCompiler.compilePermutation(this, permutation);
+    PermutationResult result = javaToJavaScriptCompiler.compilePermutation(this, permutation);
+    if (cache != null) {
+      cache.write(logger, cacheKey, result);
+    }
+    return result;
+  }
+
+  /**
+   * Returns a hash of the serialized AST. Must be called before the AST is
+   * consumed by {@link #getFreshAst()} if no serialized copy is kept.
+   */
+  String getAstStrongName() {
+    synchronized (myLockObject) {
+      if (astStrongName == null) {
+        if (serializedAstToken >= 0) {
+          astStrongName = Util.computeStrongName(diskCache.readByteArray(serializedAstToken));
+        } else if (initialAst != null) {
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          try {
+            Util.writeObjectToStream(out, initialAst);
+          } catch (IOException e) {
+            throw new RuntimeException("Should never happen with in-memory stream", e);
+          }
+          astStrongName = Util.computeStrongName(out.toByteArray());
+        } else {
+          throw new IllegalStateException(
+              "No serialized AST was cached and AST was already consumed.");
+        }
+      }
+      return astStrongName;
+    }
   }
 
   /**
@@ -158,7 +207,7 @@ public class UnifiedAst implements Serializable {
           throw new IllegalStateException(
               "No serialized AST was cached and AST was already consumed.");
         }
-        return diskCache.readObject(serializedAstToken, AST.class);
+        return readAst(serializedAstToken);
       }
     }
   }
@@ -198,7 +247,7 @@ public class UnifiedAst implements Serializable {
   public void prepare() {
     synchronized (myLockObject) {
       if (initialAst == null) {
-        initialAst = diskCache.readObject(serializedAstToken, AST.class);
+        initialAst = readAst(serializedAstToken);
       }
     }
   }
@@ -217,6 +266,15 @@ public class UnifiedAst implements Serializable {
     this.precompilationMetrics = metrics;
   }
 
+  /**
+   * Deserializes a copy of the AST. Its strings are interned, so that the
+   * copies compiled concurrently by in-process workers share their names and
+   * literals; most of the strings are never rewritten by a permutation.
+   */
+  private static AST readAst(long token) {
+    return diskCache.readObjectInterningStrings(token, AST.class);
+  }
+
   /**
    * Re-initialize lock object; copy serialized AST straight to cache.
    */
@@ -83,6 +83,7 @@ public class JField extends JVariable implements CanBeStatic, HasEnclosingType {
   private final boolean isStatic;
   private final boolean isThisRef;
   private boolean isVolatile;
+  private transient long modificationStamp = JModVisitor.nextModificationStamp();
   private transient String signature;
 
   public JField(SourceInfo info, String name, JDeclaredType enclosingType, JType type,
@@ -113,6 +114,16 @@ public class JField extends JVariable implements CanBeStatic, HasEnclosingType {
     return null;
   }
 
+  /**
+   * Returns the stamp of the last change a {@link JModVisitor} made while
+   * traversing this field, or of its creation.
+   *
+   * @see JModVisitor#getCurrentModificationStamp()
+   */
+  public long getModificationStamp() {
+    return modificationStamp;
+  }
+
   public String getSignature() {
     if (signature == null) {
       StringBuilder sb = new StringBuilder();
@@ -167,10 +178,14 @@ public class JField extends JVariable implements CanBeStatic, HasEnclosingType {
 
   @Override
   public void traverse(JVisitor visitor, Context ctx) {
+    int modsBefore = visitor instanceof JModVisitor ? ((JModVisitor) visitor).getNumMods() : 0;
     if (visitor.visit(this, ctx)) {
       // Do not visit declStmt, it gets visited within its own code block.
     }
     visitor.endVisit(this, ctx);
+    if (visitor instanceof JModVisitor && ((JModVisitor) visitor).getNumMods() != modsBefore) {
+      modificationStamp = JModVisitor.nextModificationStamp();
+    }
   }
 
   protected Object writeReplace() {
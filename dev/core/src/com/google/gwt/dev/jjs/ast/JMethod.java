@@ -106,6 +106,7 @@ public class JMethod extends JNode implements HasEnclosingType, HasName, HasType
   private boolean isFinal;
   private final boolean isStatic;
   private boolean isSynthetic = false;
+  private transient long modificationStamp = JModVisitor.nextModificationStamp();
   private final String name;
 
   private List<JType> originalParamTypes;
@@ -231,6 +232,16 @@ public class JMethod extends JNode implements HasEnclosingType, HasName, HasType
     return enclosingType;
   }
 
+  /**
+   * Returns the stamp of the last change a {@link JModVisitor} made while
+   * traversing this method, or of its creation or latest {@link #setBody}.
+   *
+   * @see JModVisitor#getCurrentModificationStamp()
+   */
+  public long getModificationStamp() {
+    return modificationStamp;
+  }
+
   @Override
   public String getName() {
     return name;
@@ -417,6 +428,7 @@ public class JMethod extends JNode implements HasEnclosingType, HasName, HasType
 
   public void setBody(JAbstractMethodBody body) {
     this.body = body;
+    modificationStamp = JModVisitor.nextModificationStamp();
     if (body != null) {
       body.setMethod(this);
     }
@@ -473,10 +485,14 @@ public class JMethod extends JNode implements HasEnclosingType, HasName, HasType
   public void traverse(JVisitor visitor, Context ctx) {
     String before = null;
     before = traceBefore(visitor);
+    int modsBefore = visitor instanceof JModVisitor ? ((JModVisitor) visitor).getNumMods() : 0;
     if (visitor.visit(this, ctx)) {
       visitChildren(visitor);
     }
     visitor.endVisit(this, ctx);
+    if (visitor instanceof JModVisitor && ((JModVisitor) visitor).getNumMods() != modsBefore) {
+      modificationStamp = JModVisitor.nextModificationStamp();
+    }
     traceAfter(visitor, before);
   }
 
@@ -19,6 +19,7 @@ import com.google.gwt.dev.jjs.InternalCompilerException;
 import com.google.gwt.dev.util.collect.Lists;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A visitor for iterating through and modifying an AST.
@@ -270,6 +271,27 @@ public class JModVisitor extends JVisitor {
     }
   }
 
+  /**
+   * Source of the stamps recorded on methods and fields when they change.
+   */
+  private static final AtomicLong modificationStamps = new AtomicLong();
+
+  /**
+   * Returns the stamp of the latest change made to any method or field. Stamps
+   * only increase, so a member was changed after this call if its stamp is
+   * greater than the returned value.
+   *
+   * @see JMethod#getModificationStamp()
+   * @see JField#getModificationStamp()
+   */
+  public static long getCurrentModificationStamp() {
+    return modificationStamps.get();
+  }
+
+  static long nextModificationStamp() {
+    return modificationStamps.incrementAndGet();
+  }
+
   protected static void checkReplacement(JNode origNode, JNode newNode) {
     if (newNode == null) {
       throw new InternalCompilerException("Cannot replace with null");
@@ -583,7 +583,11 @@ public class JTypeOracle implements Serializable {
     return instantiatedTypes;
   }
 
-  public JMethod getPolyMethod(JClassType type, String signature) {
+  /**
+   * Synchronized, as the method-local optimization passes may call this from
+   * several threads while the polymorphic method maps are filled in lazily.
+   */
+  public synchronized JMethod getPolyMethod(JClassType type, String signature) {
     return getOrCreatePolyMap(type).get(signature);
   }
 
@@ -843,13 +843,13 @@ public class ControlFlowAnalyzer {
    * Schrodinger set of classLiterals to be rescued if type is instantiated AND getClass()
    * is live.
    */
-  private Set<JReferenceType> classLiteralsToBeRescuedIfGetClassIsLive = new HashSet<JReferenceType>();
+  private IndexedSet<JReferenceType> classLiteralsToBeRescuedIfGetClassIsLive;
 
   private DependencyRecorder dependencyRecorder;
-  private Set<JField> fieldsWritten = new HashSet<JField>();
-  private Set<JReferenceType> instantiatedTypes = new HashSet<JReferenceType>();
-  private Set<JNode> liveFieldsAndMethods = new HashSet<JNode>();
-  private Set<String> liveStrings = new HashSet<String>();
+  private final IndexedSet<JField> fieldsWritten;
+  private final IndexedSet<JReferenceType> instantiatedTypes;
+  private final IndexedSet<JNode> liveFieldsAndMethods;
+  private final Set<String> liveStrings;
 
   /**
    * Schrodinger's members... aka "limbo". :) These are instance methods and
@@ -857,7 +857,7 @@ public class ControlFlowAnalyzer {
    * uninstantiable. We place these methods into purgatory until/unless the
    * enclosing type is found to be instantiable.
    */
-  private Set<JNode> membersToRescueIfTypeIsInstantiated = new HashSet<JNode>();
+  private final IndexedSet<JNode> membersToRescueIfTypeIsInstantiated;
 
   /**
    * A precomputed map of all instance methods onto a set of methods that
@@ -867,8 +867,15 @@ public class ControlFlowAnalyzer {
 
   private final JField getClassField;
   private final JMethod getClassMethod;
+
+  /**
+   * Hands out the ids of the bit sets that hold the live nodes. Shared by the
+   * copies of an analyzer, so that copying one only copies bits.
+   */
+  private final IndexedSet.Index nodeIndex;
+
   private final JProgram program;
-  private Set<JReferenceType> referencedTypes = new HashSet<JReferenceType>();
+  private final IndexedSet<JReferenceType> referencedTypes;
   private final RescueVisitor rescuer = new RescueVisitor();
   private final JMethod runAsyncOnsuccess;
   private JMethod stringValueOfChar = null;
@@ -878,14 +885,19 @@ public class ControlFlowAnalyzer {
     asyncFragmentOnLoad = cfa.asyncFragmentOnLoad;
     runAsyncOnsuccess = cfa.runAsyncOnsuccess;
     baseArrayType = cfa.baseArrayType;
-    fieldsWritten = new HashSet<JField>(cfa.fieldsWritten);
-    instantiatedTypes = new HashSet<JReferenceType>(cfa.instantiatedTypes);
-    liveFieldsAndMethods = new HashSet<JNode>(cfa.liveFieldsAndMethods);
-    referencedTypes = new HashSet<JReferenceType>(cfa.referencedTypes);
+    nodeIndex = cfa.nodeIndex;
+    if (cfa.classLiteralsToBeRescuedIfGetClassIsLive != null) {
+      classLiteralsToBeRescuedIfGetClassIsLive =
+          new IndexedSet<JReferenceType>(cfa.classLiteralsToBeRescuedIfGetClassIsLive);
+    }
+    fieldsWritten = new IndexedSet<JField>(cfa.fieldsWritten);
+    instantiatedTypes = new IndexedSet<JReferenceType>(cfa.instantiatedTypes);
+    liveFieldsAndMethods = new IndexedSet<JNode>(cfa.liveFieldsAndMethods);
+    referencedTypes = new IndexedSet<JReferenceType>(cfa.referencedTypes);
     stringValueOfChar = cfa.stringValueOfChar;
     liveStrings = new HashSet<String>(cfa.liveStrings);
     membersToRescueIfTypeIsInstantiated =
-        new HashSet<JNode>(cfa.membersToRescueIfTypeIsInstantiated);
+        new IndexedSet<JNode>(cfa.membersToRescueIfTypeIsInstantiated);
     if (cfa.argsToRescueIfParameterRead != null) {
       argsToRescueIfParameterRead =
           new HashMap<JParameter, List<JExpression>>(cfa.argsToRescueIfParameterRead);
@@ -902,6 +914,14 @@ public class ControlFlowAnalyzer {
     baseArrayType = program.getIndexedType("Array");
     getClassField = program.getIndexedField("Object.___clazz");
     getClassMethod = program.getIndexedMethod("Object.getClass");
+    nodeIndex = new IndexedSet.Index();
+    classLiteralsToBeRescuedIfGetClassIsLive = new IndexedSet<JReferenceType>(nodeIndex);
+    fieldsWritten = new IndexedSet<JField>(nodeIndex);
+    instantiatedTypes = new IndexedSet<JReferenceType>(nodeIndex);
+    liveFieldsAndMethods = new IndexedSet<JNode>(nodeIndex);
+    liveStrings = new HashSet<String>();
+    membersToRescueIfTypeIsInstantiated = new IndexedSet<JNode>(nodeIndex);
+    referencedTypes = new IndexedSet<JReferenceType>(nodeIndex);
     buildMethodsOverriding();
   }
 
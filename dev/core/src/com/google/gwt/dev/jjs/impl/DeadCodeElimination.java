@@ -27,6 +27,7 @@ import com.google.gwt.dev.jjs.ast.JCastOperation;
 import com.google.gwt.dev.jjs.ast.JCharLiteral;
 import com.google.gwt.dev.jjs.ast.JClassType;
 import com.google.gwt.dev.jjs.ast.JConditional;
+import com.google.gwt.dev.jjs.ast.JConstructor;
 import com.google.gwt.dev.jjs.ast.JContinueStatement;
 import com.google.gwt.dev.jjs.ast.JDeclarationStatement;
 import com.google.gwt.dev.jjs.ast.JDeclaredType;
@@ -70,6 +71,7 @@ import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
@@ -503,7 +505,7 @@ public class DeadCodeElimination {
        * / it has no side effects.
        */
       if (ignoringExpressionOutput.contains(x)) {
-        if (!x.getTarget().isEmpty()) {
+        if (!isEmpty(x.getTarget())) {
           return;
         }
         JMultiExpression multi = new JMultiExpression(x.getSourceInfo());
@@ -1795,13 +1797,41 @@ public class DeadCodeElimination {
   public static final String NAME = DeadCodeElimination.class.getSimpleName();
 
   public static OptimizerStats exec(JProgram program) {
-    return new DeadCodeElimination(program).execImpl(program);
+    return new DeadCodeElimination(program).execImpl(Collections.singletonList(program));
   }
 
   public static OptimizerStats exec(JProgram program, JNode node) {
-    return new DeadCodeElimination(program).execImpl(node);
+    return new DeadCodeElimination(program).execImpl(Collections.singletonList(node));
   }
 
+  /**
+   * Runs on the methods that changed since the previous run, as tracked by
+   * an {@link OptimizerContext}, or on the whole program if there is none.
+   * The methods are visited concurrently if {@link OptimizerThreads} is
+   * enabled.
+   */
+  public static OptimizerStats exec(JProgram program, OptimizerContext optimizerCtx) {
+    List<JMethod> methods = optimizerCtx == null ? null : optimizerCtx.startPass(NAME);
+    if (OptimizerThreads.isEnabled()) {
+      if (methods == null) {
+        methods = OptimizerThreads.getModuleMethods(program);
+      }
+      return new DeadCodeElimination(program).execInParallel(methods);
+    }
+    if (methods == null) {
+      return exec(program);
+    }
+    return new DeadCodeElimination(program).execImpl(methods);
+  }
+
+  /**
+   * The constructors that were empty when a concurrent run started, or
+   * {@code null} if this run is not concurrent. Constructor bodies may be
+   * rewritten by other threads during a concurrent run, so their emptiness is
+   * taken from this snapshot instead.
+   */
+  private Set<JConstructor> emptyConstructors;
+
   private final JProgram program;
 
   private final Map<JType, Class<?>> typeClassMap = new IdentityHashMap<JType, Class<?>>();
@@ -1820,14 +1850,43 @@ public class DeadCodeElimination {
     typeClassMap.put(program.getTypePrimitiveShort(), short.class);
   }
 
-  private OptimizerStats execImpl(JNode node) {
+  private OptimizerStats execImpl(List<? extends JNode> nodes) {
     OptimizerStats stats = new OptimizerStats(NAME);
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
 
     DeadCodeVisitor deadCodeVisitor = new DeadCodeVisitor();
-    deadCodeVisitor.accept(node);
+    for (JNode node : nodes) {
+      deadCodeVisitor.accept(node);
+    }
     stats.recordModified(deadCodeVisitor.getNumMods());
     optimizeEvent.end("didChange", "" + stats.didChange());
     return stats;
   }
+
+  private OptimizerStats execInParallel(List<JMethod> methods) {
+    OptimizerStats stats = new OptimizerStats(NAME);
+    Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
+
+    emptyConstructors = new HashSet<JConstructor>();
+    for (JDeclaredType type : program.getDeclaredTypes()) {
+      for (JMethod method : type.getMethods()) {
+        if (method instanceof JConstructor && ((JConstructor) method).isEmpty()) {
+          emptyConstructors.add((JConstructor) method);
+        }
+      }
+    }
+    stats.recordModified(OptimizerThreads.accept(methods, new OptimizerThreads.VisitorFactory() {
+      @Override
+      public JModVisitor create() {
+        return new DeadCodeVisitor();
+      }
+    }));
+    optimizeEvent.end("didChange", "" + stats.didChange());
+    return stats;
+  }
+
+  private boolean isEmpty(JConstructor constructor) {
+    return emptyConstructors == null ? constructor.isEmpty()
+        : emptyConstructors.contains(constructor);
+  }
 }
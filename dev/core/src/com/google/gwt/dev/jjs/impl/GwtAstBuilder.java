@@ -3145,18 +3145,16 @@ public class GwtAstBuilder {
     return result;
   }
 
-  SourceInfo makeSourceInfo(AbstractMethodDeclaration x) {
-    int startLine =
-        Util.getLineNumber(x.sourceStart, curCud.separatorPositions, 0,
-            curCud.separatorPositions.length - 1);
-    return SourceOrigin.create(x.sourceStart, x.bodyEnd, startLine, sourceMapPath);
-  }
-
+  /**
+   * Returns the canonical origin of the line a node starts on. The character
+   * positions are left out, as nothing reads them back from the Java AST, so
+   * that all of the nodes of one line share the same origin.
+   */
   SourceInfo makeSourceInfo(ASTNode x) {
     int startLine =
         Util.getLineNumber(x.sourceStart, curCud.separatorPositions, 0,
             curCud.separatorPositions.length - 1);
-    return SourceOrigin.create(x.sourceStart, x.sourceEnd, startLine, sourceMapPath);
+    return SourceOrigin.create(startLine, sourceMapPath);
   }
 
   InternalCompilerException translateException(ASTNode node, Throwable e) {
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An identity set held as a bit set over dense integer ids. The ids are handed
+ * out by an {@link Index} that all copies of a set share, so copying a set
+ * only copies its bits. Iterates in the order the ids were first handed out.
+ *
+ * @param <T> the type of the elements
+ */
+final class IndexedSet<T> extends AbstractSet<T> {
+
+  /**
+   * Hands out a dense id to each distinct object, the first time it is added
+   * to any set using this index.
+   */
+  static final class Index {
+    private final List<Object> elements = new ArrayList<Object>();
+    private final Map<Object, Integer> ids = new IdentityHashMap<Object, Integer>();
+
+    private int getId(Object o) {
+      Integer id = ids.get(o);
+      return id == null ? -1 : id;
+    }
+
+    private int getOrAssignId(Object o) {
+      Integer id = ids.get(o);
+      if (id == null) {
+        id = elements.size();
+        ids.put(o, id);
+        elements.add(o);
+      }
+      return id;
+    }
+  }
+
+  private final BitSet bits;
+  private final Index index;
+  private int modCount;
+  private int size;
+
+  IndexedSet(Index index) {
+    this.index = index;
+    this.bits = new BitSet();
+  }
+
+  /**
+   * Creates a copy of {@code other} that shares its index.
+   */
+  IndexedSet(IndexedSet<T> other) {
+    this.index = other.index;
+    this.bits = (BitSet) other.bits.clone();
+    this.size = other.size;
+  }
+
+  @Override
+  public boolean add(T o) {
+    int id = index.getOrAssignId(o);
+    if (bits.get(id)) {
+      return false;
+    }
+    bits.set(id);
+    ++size;
+    ++modCount;
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    bits.clear();
+    size = 0;
+    ++modCount;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    int id = index.getId(o);
+    return id >= 0 && bits.get(id);
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private int expectedModCount = modCount;
+      private int last = -1;
+      private int next = bits.nextSetBit(0);
+
+      @Override
+      public boolean hasNext() {
+        return next >= 0;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public T next() {
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        if (next < 0) {
+          throw new NoSuchElementException();
+        }
+        last = next;
+        next = bits.nextSetBit(next + 1);
+        return (T) index.elements.get(last);
+      }
+
+      @Override
+      public void remove() {
+        if (last < 0) {
+          throw new IllegalStateException();
+        }
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        bits.clear(last);
+        --size;
+        last = -1;
+        expectedModCount = ++modCount;
+      }
+    };
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    int id = index.getId(o);
+    if (id < 0 || !bits.get(id)) {
+      return false;
+    }
+    bits.clear(id);
+    --size;
+    ++modCount;
+    return true;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+}
@@ -52,6 +52,7 @@ import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -400,8 +401,19 @@ public class MakeCallsStatic {
   private static final String NAME = MakeCallsStatic.class.getSimpleName();
 
   public static OptimizerStats exec(OptionCheckedMode option, JProgram program) {
+    return exec(option, program, null);
+  }
+
+  /**
+   * Looks for static dispatch sites in the methods that changed since the
+   * previous run, as tracked by an {@link OptimizerContext}, and rewrites the
+   * calls in those methods and in the callers of the methods made static. Runs
+   * on the whole program if there is no context.
+   */
+  public static OptimizerStats exec(OptionCheckedMode option, JProgram program,
+      OptimizerContext optimizerCtx) {
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
-    OptimizerStats stats = new MakeCallsStatic(option, program).execImpl();
+    OptimizerStats stats = new MakeCallsStatic(option, program).execImpl(optimizerCtx);
     optimizeEvent.end("didChange", "" + stats.didChange());
     return stats;
   }
@@ -418,10 +430,15 @@ public class MakeCallsStatic {
     this.converter = new StaticCallConverter(program, option.shouldAddRuntimeChecks());
   }
 
-  private OptimizerStats execImpl() {
+  private OptimizerStats execImpl(OptimizerContext optimizerCtx) {
+    List<JMethod> methods = optimizerCtx == null ? null : optimizerCtx.startPass(NAME);
     OptimizerStats stats = new OptimizerStats(NAME);
     FindStaticDispatchSitesVisitor finder = new FindStaticDispatchSitesVisitor();
-    finder.accept(program);
+    if (methods == null) {
+      finder.accept(program);
+    } else {
+      finder.accept(methods);
+    }
 
     CreateStaticImplsVisitor creator = new CreateStaticImplsVisitor(program);
     for (JMethod method : toBeMadeStatic) {
@@ -434,7 +451,17 @@ public class MakeCallsStatic {
      * are created.
      */
     RewriteCallSites rewriter = new RewriteCallSites();
-    rewriter.accept(program);
+    if (methods == null) {
+      rewriter.accept(program);
+    } else {
+      Set<JMethod> toRewrite = new LinkedHashSet<JMethod>(methods);
+      for (JMethod method : toBeMadeStatic) {
+        toRewrite.addAll(optimizerCtx.getCallers(method));
+        toRewrite.add(program.getStaticImpl(method));
+      }
+      rewriter.initiallyLive = CodeSplitter.computeInitiallyLive(program);
+      rewriter.accept(new ArrayList<JMethod>(toRewrite));
+    }
     stats.recordModified(rewriter.getNumMods());
     assert (rewriter.didChange() || toBeMadeStatic.isEmpty());
     return stats;
@@ -28,6 +28,8 @@ import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
+import java.util.List;
+
 /**
  * Update polymorphic method calls to tighter bindings based on the type of the
  * qualifier. For a given polymorphic method call to a non-final target, see if
@@ -110,8 +112,19 @@ public class MethodCallTightener {
   public static final String NAME = MethodCallTightener.class.getSimpleName();
 
   public static OptimizerStats exec(JProgram program) {
+    return exec(program, null);
+  }
+
+  /**
+   * Runs on the methods that changed since the previous run, as tracked by
+   * an {@link OptimizerContext}, or on the whole program if there is none.
+   * The methods are visited concurrently if {@link OptimizerThreads} is
+   * enabled.
+   */
+  public static OptimizerStats exec(JProgram program, OptimizerContext optimizerCtx) {
+    List<JMethod> methods = optimizerCtx == null ? null : optimizerCtx.startPass(NAME);
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
-    OptimizerStats stats = new MethodCallTightener(program).execImpl();
+    OptimizerStats stats = new MethodCallTightener(program).execImpl(methods);
     optimizeEvent.end("didChange", "" + stats.didChange());
     return stats;
   }
@@ -122,9 +135,28 @@ public class MethodCallTightener {
     this.program = program;
   }
 
-  private OptimizerStats execImpl() {
+  private OptimizerStats execImpl(List<JMethod> methods) {
+    if (OptimizerThreads.isEnabled()) {
+      if (methods == null) {
+        methods = OptimizerThreads.getModuleMethods(program);
+      }
+      int numMods = OptimizerThreads.accept(methods, new OptimizerThreads.VisitorFactory() {
+        @Override
+        public JModVisitor create() {
+          return new MethodCallTighteningVisitor();
+        }
+      });
+      return new OptimizerStats(NAME).recordModified(numMods);
+    }
+
     MethodCallTighteningVisitor tightener = new MethodCallTighteningVisitor();
-    tightener.accept(program);
+    if (methods == null) {
+      tightener.accept(program);
+    } else {
+      for (JMethod method : methods) {
+        tightener.accept(method);
+      }
+    }
     return new OptimizerStats(NAME).recordModified(tightener.getNumMods());
   }
 }
\ No newline at end of file
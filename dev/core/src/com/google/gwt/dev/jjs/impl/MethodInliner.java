@@ -41,6 +41,7 @@ import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -501,8 +502,17 @@ public class MethodInliner {
   public static String NAME = MethodInliner.class.getSimpleName();
 
   public static OptimizerStats exec(JProgram program) {
+    return exec(program, null);
+  }
+
+  /**
+   * Runs on the methods that changed since the previous run, as tracked by
+   * an {@link OptimizerContext}, or on the whole program if there is none.
+   */
+  public static OptimizerStats exec(JProgram program, OptimizerContext optimizerCtx) {
+    List<JMethod> methods = optimizerCtx == null ? null : optimizerCtx.startPass(NAME);
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
-    OptimizerStats stats = new MethodInliner(program).execImpl();
+    OptimizerStats stats = new MethodInliner(program).execImpl(methods);
     optimizeEvent.end("didChange", "" + stats.didChange());
     return stats;
   }
@@ -515,11 +525,21 @@ public class MethodInliner {
     this.program = program;
   }
 
-  private OptimizerStats execImpl() {
+  /**
+   * Inlines calls in the given methods, or in the whole program if
+   * {@code methods} is {@code null}.
+   */
+  private OptimizerStats execImpl(Collection<JMethod> methods) {
     OptimizerStats stats = new OptimizerStats(NAME);
     while (true) {
       InliningVisitor inliner = new InliningVisitor();
-      inliner.accept(program);
+      if (methods == null) {
+        inliner.accept(program);
+      } else {
+        for (JMethod method : methods) {
+          inliner.accept(method);
+        }
+      }
       stats.recordModified(inliner.getNumMods());
       if (!inliner.didChange()) {
         break;
@@ -530,6 +550,13 @@ public class MethodInliner {
         OptimizerStats innerStats = DeadCodeElimination.exec(program, method);
         stats.recordModified(innerStats.getNumMods());
       }
+      if (methods != null) {
+        /*
+         * Only the methods we just modified can have gained new calls to
+         * inline; their callers are picked up by the next optimization pass.
+         */
+        methods = inliner.modifiedMethods;
+      }
     }
     return stats;
   }
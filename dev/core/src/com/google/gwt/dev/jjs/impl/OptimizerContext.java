@@ -0,0 +1,269 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.ast.Context;
+import com.google.gwt.dev.jjs.ast.JDeclaredType;
+import com.google.gwt.dev.jjs.ast.JField;
+import com.google.gwt.dev.jjs.ast.JFieldRef;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JMethodCall;
+import com.google.gwt.dev.jjs.ast.JModVisitor;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.jjs.ast.JVisitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks which methods and fields have changed between the runs of the
+ * optimization passes, so that method-local passes only revisit the parts of
+ * the program where they could find something new to do.
+ * <p>
+ * Changes are detected through the modification stamps that
+ * {@link JModVisitor} leaves on the methods and fields it changes. When a pass
+ * starts, it is handed the methods changed since its previous run, together
+ * with their callers and callees and the methods referencing the changed
+ * fields. The call graph used to find these is updated from the changed
+ * methods only.
+ * <p>
+ * The context also keeps the type flow recorded from method bodies for
+ * {@link TypeTightener}, updated in the same way, so that the analyses the
+ * passes share are not rebuilt from the whole program on every pass.
+ */
+public class OptimizerContext {
+
+  /**
+   * Records the methods called and the fields referenced by a method.
+   */
+  private static class ReferenceCollector extends JVisitor {
+    private final Set<JMethod> callees = newIdentitySet();
+    private final Set<JField> fields = newIdentitySet();
+
+    @Override
+    public void endVisit(JFieldRef x, Context ctx) {
+      fields.add(x.getField());
+    }
+
+    @Override
+    public void endVisit(JMethodCall x, Context ctx) {
+      callees.add(x.getTarget());
+    }
+  }
+
+  /**
+   * Whether the optimizer loop should use an OptimizerContext.
+   */
+  public static final boolean ENABLED =
+      Boolean.parseBoolean(System.getProperty("gwt.jjs.incrementalOptimizer", "true"));
+
+  private static <T> void addEdges(Map<T, Set<JMethod>> map, Set<T> keys, JMethod method) {
+    for (T key : keys) {
+      Set<JMethod> methods = map.get(key);
+      if (methods == null) {
+        methods = newIdentitySet();
+        map.put(key, methods);
+      }
+      methods.add(method);
+    }
+  }
+
+  private static <T> Set<T> newIdentitySet() {
+    return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+  }
+
+  private static <T> void removeEdges(Map<T, Set<JMethod>> map, Set<T> keys, JMethod method) {
+    for (T key : keys) {
+      Set<JMethod> methods = map.get(key);
+      if (methods != null) {
+        methods.remove(method);
+      }
+    }
+  }
+
+  private final Map<JMethod, Set<JMethod>> calleesByMethod =
+      new IdentityHashMap<JMethod, Set<JMethod>>();
+
+  private final Map<JMethod, Set<JMethod>> callersByMethod =
+      new IdentityHashMap<JMethod, Set<JMethod>>();
+
+  private final Map<JMethod, Set<JField>> fieldsByMethod =
+      new IdentityHashMap<JMethod, Set<JField>>();
+
+  /**
+   * The modification stamp up to which the call graph is current.
+   */
+  private long graphStamp = -1;
+
+  /**
+   * The modification stamp at the start of the latest run of each pass.
+   */
+  private final Map<String, Long> lastRunStamps = new HashMap<String, Long>();
+
+  private final JProgram program;
+
+  private final Map<JField, Set<JMethod>> referencersByField =
+      new IdentityHashMap<JField, Set<JMethod>>();
+
+  private TypeFlowIndex typeFlowIndex;
+
+  public OptimizerContext(JProgram program) {
+    this.program = program;
+  }
+
+  /**
+   * Forgets the previous runs of all passes, so that each of them visits the
+   * whole program the next time it runs.
+   */
+  public void clearPassHistory() {
+    lastRunStamps.clear();
+  }
+
+  /**
+   * Returns the methods that called a method when the latest pass started.
+   */
+  public Set<JMethod> getCallers(JMethod method) {
+    Set<JMethod> callers = callersByMethod.get(method);
+    return callers == null ? Collections.<JMethod> emptySet() : callers;
+  }
+
+  /**
+   * Returns the type flow recorded from the bodies of the methods of the
+   * program, brought up to date with the changes made since it was last
+   * requested.
+   */
+  TypeFlowIndex getTypeFlowIndex() {
+    List<JMethod> liveMethods = OptimizerThreads.getModuleMethods(program);
+    if (typeFlowIndex == null) {
+      typeFlowIndex = TypeFlowIndex.build(liveMethods);
+    } else {
+      typeFlowIndex.update(liveMethods);
+    }
+    return typeFlowIndex;
+  }
+
+  /**
+   * Returns {@code true} if any pass has run since this context was created
+   * or {@link #clearPassHistory()} was called.
+   */
+  public boolean hasPassHistory() {
+    return !lastRunStamps.isEmpty();
+  }
+
+  /**
+   * Records the start of a run of a pass and returns the methods it should
+   * visit, in program order, or {@code null} if it should visit the whole
+   * program.
+   */
+  public List<JMethod> startPass(String passName) {
+    Long lastRunStamp = lastRunStamps.put(passName, JModVisitor.getCurrentModificationStamp());
+    if (lastRunStamp == null) {
+      return null;
+    }
+    long since = lastRunStamp;
+
+    List<JMethod> liveMethods = OptimizerThreads.getModuleMethods(program);
+    Set<JMethod> changedMethods = newIdentitySet();
+    Set<JField> changedFields = newIdentitySet();
+    for (JMethod method : liveMethods) {
+      if (method.getModificationStamp() > since) {
+        changedMethods.add(method);
+      }
+    }
+    for (JDeclaredType type : program.getModuleDeclaredTypes()) {
+      for (JField field : type.getFields()) {
+        if (field.getModificationStamp() > since) {
+          changedFields.add(field);
+        }
+      }
+    }
+    updateCallGraph(liveMethods);
+
+    Set<JMethod> affected = newIdentitySet();
+    for (JMethod method : changedMethods) {
+      affected.add(method);
+      addAll(affected, callersByMethod.get(method));
+      addAll(affected, calleesByMethod.get(method));
+    }
+    for (JField field : changedFields) {
+      addAll(affected, referencersByField.get(field));
+    }
+
+    List<JMethod> toReturn = new ArrayList<JMethod>(affected.size());
+    for (JMethod method : liveMethods) {
+      if (affected.contains(method)) {
+        toReturn.add(method);
+      }
+    }
+    return toReturn;
+  }
+
+  private void addAll(Set<JMethod> to, Set<JMethod> from) {
+    if (from != null) {
+      to.addAll(from);
+    }
+  }
+
+  /**
+   * Rescans the methods that changed since the call graph was last updated,
+   * and drops the methods that are no longer part of the program.
+   */
+  private void updateCallGraph(List<JMethod> liveMethods) {
+    long stamp = JModVisitor.getCurrentModificationStamp();
+    Set<JMethod> live = newIdentitySet();
+    live.addAll(liveMethods);
+    for (JMethod method : new ArrayList<JMethod>(calleesByMethod.keySet())) {
+      if (!live.contains(method)) {
+        removeReferences(method);
+        callersByMethod.remove(method);
+      }
+    }
+    for (JField field : new ArrayList<JField>(referencersByField.keySet())) {
+      if (referencersByField.get(field).isEmpty()) {
+        referencersByField.remove(field);
+      }
+    }
+
+    for (JMethod method : liveMethods) {
+      if (method.getModificationStamp() > graphStamp || !calleesByMethod.containsKey(method)) {
+        removeReferences(method);
+        ReferenceCollector collector = new ReferenceCollector();
+        collector.accept(method);
+        calleesByMethod.put(method, collector.callees);
+        fieldsByMethod.put(method, collector.fields);
+        addEdges(callersByMethod, collector.callees, method);
+        addEdges(referencersByField, collector.fields, method);
+      }
+    }
+    graphStamp = stamp;
+  }
+
+  private void removeReferences(JMethod method) {
+    Set<JMethod> callees = calleesByMethod.remove(method);
+    if (callees != null) {
+      removeEdges(callersByMethod, callees, method);
+    }
+    Set<JField> fields = fieldsByMethod.remove(method);
+    if (fields != null) {
+      removeEdges(referencersByField, fields, method);
+    }
+  }
+}
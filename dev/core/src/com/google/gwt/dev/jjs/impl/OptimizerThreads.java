@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.ast.JDeclaredType;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JModVisitor;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.util.DaemonThreadPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs method-local optimization visitors over many methods concurrently.
+ * <p>
+ * The methods are split into contiguous slices, each visited by its own
+ * visitor on a shared pool of daemon threads. A visitor given to this class
+ * must only rewrite the method it is visiting, and must not read state that
+ * other methods' visitors may be rewriting at the same time, such as the
+ * bodies of other methods.
+ */
+final class OptimizerThreads {
+
+  /**
+   * Creates a fresh visitor for each slice of methods.
+   */
+  interface VisitorFactory {
+    JModVisitor create();
+  }
+
+  /**
+   * A Java system property that sets the number of threads used to run the
+   * method-local optimization passes. Values above 1 visit the methods of the
+   * program concurrently.
+   */
+  public static final String THREADS_PROPERTY = "gwt.jjs.optimizerThreads";
+
+  /**
+   * Below this many methods per slice, the cost of handing work to another
+   * thread outweighs the work itself.
+   */
+  private static final int MIN_METHODS_PER_SLICE = 64;
+
+  /**
+   * Slices per thread; more, smaller slices even out the differences between
+   * method sizes.
+   */
+  private static final int SLICES_PER_THREAD = 4;
+
+  private static DaemonThreadPool pool =
+      new DaemonThreadPool("Optimizer", Integer.getInteger(THREADS_PROPERTY, 1));
+
+  /**
+   * Visits each method with visitors created by {@code factory}, and returns
+   * the total number of modifications they made.
+   */
+  static int accept(List<JMethod> methods, VisitorFactory factory) {
+    return accept(methods, factory, getThreads());
+  }
+
+  /**
+   * Visits each method, splitting the methods into as many slices as
+   * {@code threads} threads would use.
+   */
+  static int accept(List<JMethod> methods, VisitorFactory factory, int threads) {
+    int slices = Math.min(threads * SLICES_PER_THREAD,
+        (methods.size() + MIN_METHODS_PER_SLICE - 1) / MIN_METHODS_PER_SLICE);
+    if (slices < 2) {
+      return acceptAll(methods, factory.create());
+    }
+
+    List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(slices);
+    for (int i = 0; i < slices; i++) {
+      final List<JMethod> slice = methods.subList(
+          (int) ((long) methods.size() * i / slices),
+          (int) ((long) methods.size() * (i + 1) / slices));
+      final JModVisitor visitor = factory.create();
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          return acceptAll(slice, visitor);
+        }
+      });
+    }
+
+    int numMods = 0;
+    try {
+      for (int sliceMods : getPool().invokeAll(tasks, "optimizing methods")) {
+        numMods += sliceMods;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while optimizing", e);
+    }
+    return numMods;
+  }
+
+  /**
+   * Returns the methods of the types that {@link JProgram#visitModuleTypes}
+   * visits, in the same order, leaving out external types, which have no code
+   * to optimize.
+   */
+  static List<JMethod> getModuleMethods(JProgram program) {
+    List<JMethod> methods = new ArrayList<JMethod>();
+    for (JDeclaredType type : program.getModuleDeclaredTypes()) {
+      if (!type.isExternal()) {
+        methods.addAll(type.getMethods());
+      }
+    }
+    return methods;
+  }
+
+  /**
+   * Returns {@code true} if the method-local passes should be run through
+   * {@link #accept}.
+   */
+  static boolean isEnabled() {
+    return getThreads() > 1;
+  }
+
+  static int getThreads() {
+    return getPool().getThreads();
+  }
+
+  /**
+   * Overrides {@link #THREADS_PROPERTY}. Package protected for use in tests.
+   */
+  static synchronized void setThreads(int threads) {
+    if (threads != pool.getThreads()) {
+      pool.shutdown();
+      pool = new DaemonThreadPool("Optimizer", threads);
+    }
+  }
+
+  private static int acceptAll(List<JMethod> methods, JModVisitor visitor) {
+    for (JMethod method : methods) {
+      visitor.accept(method);
+    }
+    return visitor.getNumMods();
+  }
+
+  private static synchronized DaemonThreadPool getPool() {
+    return pool;
+  }
+
+  private OptimizerThreads() {
+  }
+}
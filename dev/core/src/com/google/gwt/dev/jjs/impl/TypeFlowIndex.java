@@ -0,0 +1,259 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.SourceOrigin;
+import com.google.gwt.dev.jjs.ast.Context;
+import com.google.gwt.dev.jjs.ast.JArrayRef;
+import com.google.gwt.dev.jjs.ast.JBinaryOperation;
+import com.google.gwt.dev.jjs.ast.JDeclarationStatement;
+import com.google.gwt.dev.jjs.ast.JExpression;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JMethodCall;
+import com.google.gwt.dev.jjs.ast.JModVisitor;
+import com.google.gwt.dev.jjs.ast.JParameter;
+import com.google.gwt.dev.jjs.ast.JParameterRef;
+import com.google.gwt.dev.jjs.ast.JReferenceType;
+import com.google.gwt.dev.jjs.ast.JReturnStatement;
+import com.google.gwt.dev.jjs.ast.JTryStatement;
+import com.google.gwt.dev.jjs.ast.JVariable;
+import com.google.gwt.dev.jjs.ast.JVariableRef;
+import com.google.gwt.dev.jjs.ast.JVisitor;
+import com.google.gwt.dev.jjs.ast.js.JsniFieldRef;
+import com.google.gwt.dev.jjs.ast.js.JsniMethodRef;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The type flow recorded from the bodies of methods: the expressions assigned
+ * to each variable, counting the arguments of calls as assignments to the
+ * parameters of their targets, and the expressions returned by each method.
+ * <p>
+ * An index kept by an {@link OptimizerContext} lives across optimizer passes.
+ * Each {@link #update} records again only the methods that changed since the
+ * previous one, as told by their modification stamps, and drops the methods
+ * that were pruned.
+ */
+final class TypeFlowIndex {
+
+  /**
+   * The type flow recorded from the body of one method.
+   */
+  private static class MethodFlow {
+    private final List<JVariable> targets = new ArrayList<JVariable>();
+    private final List<JExpression> values = new ArrayList<JExpression>();
+    private final Collection<JExpression> returns = new LinkedHashSet<JExpression>();
+  }
+
+  /**
+   * Records the type flow of a method body into a {@link MethodFlow}.
+   */
+  private static class Recorder extends JVisitor {
+    private JMethod currentMethod;
+    private MethodFlow flow;
+
+    @Override
+    public void endVisit(JBinaryOperation x, Context ctx) {
+      if (x.isAssignment() && (x.getType() instanceof JReferenceType)) {
+        JExpression lhs = x.getLhs();
+        if (lhs instanceof JVariableRef) {
+          addAssignment(((JVariableRef) lhs).getTarget(), x.getRhs());
+        } else {
+          assert lhs instanceof JArrayRef;
+        }
+      }
+    }
+
+    @Override
+    public void endVisit(JDeclarationStatement x, Context ctx) {
+      JExpression initializer = x.getInitializer();
+      if (initializer != null) {
+        addAssignment(x.getVariableRef().getTarget(), initializer);
+      }
+    }
+
+    @Override
+    public void endVisit(JMethodCall x, Context ctx) {
+      // All of the params in the target method are considered to be assigned by
+      // the arguments from the caller
+      Iterator<JExpression> argIt = x.getArgs().iterator();
+      List<JParameter> params = x.getTarget().getParams();
+      for (int i = 0; i < params.size(); ++i) {
+        JParameter param = params.get(i);
+        JExpression arg = argIt.next();
+        if (param.getType() instanceof JReferenceType) {
+          addAssignment(param, arg);
+        }
+      }
+    }
+
+    @Override
+    public void endVisit(JReturnStatement x, Context ctx) {
+      if (currentMethod.getType() instanceof JReferenceType) {
+        flow.returns.add(x.getExpr());
+      }
+    }
+
+    @Override
+    public void endVisit(JsniFieldRef x, Context ctx) {
+      if (x.isLvalue()) {
+        // If this happens in JSNI, we can't make any type-tightening
+        // assumptions. Fake an assignment-to-self to prevent tightening.
+        addAssignment(x.getTarget(), x);
+      }
+    }
+
+    @Override
+    public void endVisit(JsniMethodRef x, Context ctx) {
+      // If this happens in JSNI, we can't make any type-tightening assumptions
+      // Fake an assignment-to-self on all args to prevent tightening
+      JMethod method = x.getTarget();
+      for (JParameter param : method.getParams()) {
+        addAssignment(param, new JParameterRef(SourceOrigin.UNKNOWN, param));
+      }
+    }
+
+    @Override
+    public void endVisit(JTryStatement x, Context ctx) {
+      // Never tighten args to catch blocks
+      // Fake an assignment-to-self to prevent tightening
+      for (JTryStatement.CatchClause clause : x.getCatchClauses()) {
+        addAssignment(clause.getArg().getTarget(), clause.getArg());
+      }
+    }
+
+    MethodFlow record(JMethod method) {
+      currentMethod = method;
+      flow = new MethodFlow();
+      accept(method);
+      return flow;
+    }
+
+    private void addAssignment(JVariable target, JExpression value) {
+      flow.targets.add(target);
+      flow.values.add(value);
+    }
+  }
+
+  /**
+   * Builds an index of the given methods.
+   */
+  static TypeFlowIndex build(List<JMethod> methods) {
+    TypeFlowIndex index = new TypeFlowIndex();
+    index.update(methods);
+    return index;
+  }
+
+  /**
+   * For each variable, the expressions assigned to it, with the number of
+   * recorded assignments of each. Literals are shared across the AST, so the
+   * same expression may be recorded by several methods.
+   */
+  private final Map<JVariable, Map<JExpression, Integer>> assignments =
+      new IdentityHashMap<JVariable, Map<JExpression, Integer>>();
+
+  private final Map<JMethod, MethodFlow> flows = new IdentityHashMap<JMethod, MethodFlow>();
+
+  /**
+   * The modification stamp up to which this index is current.
+   */
+  private long stamp = -1;
+
+  /**
+   * Returns the expressions assigned to a variable, or {@code null} if there
+   * are none.
+   */
+  Collection<JExpression> getAssignments(JVariable variable) {
+    Map<JExpression, Integer> values = assignments.get(variable);
+    return values == null ? null : values.keySet();
+  }
+
+  /**
+   * Returns the expressions returned by a method, or {@code null} if there are
+   * none.
+   */
+  Collection<JExpression> getReturns(JMethod method) {
+    MethodFlow flow = flows.get(method);
+    return flow == null || flow.returns.isEmpty() ? null : flow.returns;
+  }
+
+  /**
+   * Records the methods in {@code liveMethods} that are new or changed since
+   * the previous update, and forgets the methods that are no longer live.
+   */
+  void update(List<JMethod> liveMethods) {
+    long newStamp = JModVisitor.getCurrentModificationStamp();
+    if (!flows.isEmpty()) {
+      Map<JMethod, Boolean> live = new IdentityHashMap<JMethod, Boolean>();
+      for (JMethod method : liveMethods) {
+        live.put(method, Boolean.TRUE);
+      }
+      for (Iterator<Map.Entry<JMethod, MethodFlow>> it = flows.entrySet().iterator();
+          it.hasNext();) {
+        Map.Entry<JMethod, MethodFlow> entry = it.next();
+        if (!live.containsKey(entry.getKey())) {
+          removeAssignments(entry.getValue());
+          it.remove();
+        }
+      }
+    }
+
+    Recorder recorder = new Recorder();
+    for (JMethod method : liveMethods) {
+      if (method.getModificationStamp() <= stamp && flows.containsKey(method)) {
+        continue;
+      }
+      MethodFlow flow = recorder.record(method);
+      MethodFlow oldFlow = flows.put(method, flow);
+      if (oldFlow != null) {
+        removeAssignments(oldFlow);
+      }
+      for (int i = 0, c = flow.targets.size(); i < c; ++i) {
+        Map<JExpression, Integer> values = assignments.get(flow.targets.get(i));
+        if (values == null) {
+          values = new LinkedHashMap<JExpression, Integer>();
+          assignments.put(flow.targets.get(i), values);
+        }
+        Integer count = values.get(flow.values.get(i));
+        values.put(flow.values.get(i), count == null ? 1 : count + 1);
+      }
+    }
+    stamp = newStamp;
+  }
+
+  private void removeAssignments(MethodFlow flow) {
+    for (int i = 0, c = flow.targets.size(); i < c; ++i) {
+      JVariable target = flow.targets.get(i);
+      Map<JExpression, Integer> values = assignments.get(target);
+      int count = values.get(flow.values.get(i));
+      if (count > 1) {
+        values.put(flow.values.get(i), count - 1);
+      } else {
+        values.remove(flow.values.get(i));
+        if (values.isEmpty()) {
+          assignments.remove(target);
+        }
+      }
+    }
+  }
+}
@@ -15,17 +15,14 @@
  */
 package com.google.gwt.dev.jjs.impl;
 
-import com.google.gwt.dev.jjs.SourceOrigin;
 import com.google.gwt.dev.jjs.ast.CanBeAbstract;
 import com.google.gwt.dev.jjs.ast.Context;
-import com.google.gwt.dev.jjs.ast.JArrayRef;
 import com.google.gwt.dev.jjs.ast.JArrayType;
 import com.google.gwt.dev.jjs.ast.JBinaryOperation;
 import com.google.gwt.dev.jjs.ast.JBinaryOperator;
 import com.google.gwt.dev.jjs.ast.JCastOperation;
 import com.google.gwt.dev.jjs.ast.JClassType;
 import com.google.gwt.dev.jjs.ast.JConditional;
-import com.google.gwt.dev.jjs.ast.JDeclarationStatement;
 import com.google.gwt.dev.jjs.ast.JDeclaredType;
 import com.google.gwt.dev.jjs.ast.JExpression;
 import com.google.gwt.dev.jjs.ast.JField;
@@ -41,19 +38,13 @@ import com.google.gwt.dev.jjs.ast.JNewInstance;
 import com.google.gwt.dev.jjs.ast.JNullLiteral;
 import com.google.gwt.dev.jjs.ast.JNullType;
 import com.google.gwt.dev.jjs.ast.JParameter;
-import com.google.gwt.dev.jjs.ast.JParameterRef;
 import com.google.gwt.dev.jjs.ast.JProgram;
 import com.google.gwt.dev.jjs.ast.JReferenceType;
-import com.google.gwt.dev.jjs.ast.JReturnStatement;
 import com.google.gwt.dev.jjs.ast.JRunAsync;
-import com.google.gwt.dev.jjs.ast.JTryStatement;
 import com.google.gwt.dev.jjs.ast.JType;
 import com.google.gwt.dev.jjs.ast.JTypeOracle;
 import com.google.gwt.dev.jjs.ast.JVariable;
-import com.google.gwt.dev.jjs.ast.JVariableRef;
 import com.google.gwt.dev.jjs.ast.JVisitor;
-import com.google.gwt.dev.jjs.ast.js.JsniFieldRef;
-import com.google.gwt.dev.jjs.ast.js.JsniMethodRef;
 import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
@@ -61,7 +52,6 @@ import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.IdentityHashMap;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -188,6 +178,11 @@ public class TypeTightener {
    * return statements, plus the return type of any methods that
    * override/implement them.
    *
+   * This visitor records the relationships that follow from the type
+   * hierarchy; the assignments and returns found in method bodies are kept by
+   * a {@link TypeFlowIndex}, which only needs to look again at the methods
+   * that changed since the previous run.
+   *
    * Note that we only have to run this pass ONCE to record the relationships,
    * because type tightening never changes any relationships, only the types of
    * the things related. In my original implementation, I had naively mapped
@@ -195,19 +190,6 @@ public class TypeTightener {
    * visitor each time.
    */
   public class RecordVisitor extends JVisitor {
-    private JMethod currentMethod;
-
-    @Override
-    public void endVisit(JBinaryOperation x, Context ctx) {
-      if (x.isAssignment() && (x.getType() instanceof JReferenceType)) {
-        JExpression lhs = x.getLhs();
-        if (lhs instanceof JVariableRef) {
-          addAssignment(((JVariableRef) lhs).getTarget(), x.getRhs());
-        } else {
-          assert lhs instanceof JArrayRef;
-        }
-      }
-    }
 
     @Override
     public void endVisit(JClassType x, Context ctx) {
@@ -219,23 +201,6 @@ public class TypeTightener {
       }
     }
 
-    @Override
-    public void endVisit(JDeclarationStatement x, Context ctx) {
-      JExpression initializer = x.getInitializer();
-      if (initializer != null) {
-        addAssignment(x.getVariableRef().getTarget(), initializer);
-      }
-    }
-
-    @Override
-    public void endVisit(JField x, Context ctx) {
-      if (x.getLiteralInitializer() != null) {
-        // TODO: do I still need this?
-        addAssignment(x, x.getLiteralInitializer());
-      }
-      currentMethod = null;
-    }
-
     @Override
     public void endVisit(JMethod x, Context ctx) {
       if (program.typeOracle.isInstantiatedType(x.getEnclosingType())) {
@@ -243,67 +208,15 @@ public class TypeTightener {
           addOverrider(method, x);
         }
       }
-      currentMethod = null;
-    }
-
-    @Override
-    public void endVisit(JMethodCall x, Context ctx) {
-      // All of the params in the target method are considered to be assigned by
-      // the arguments from the caller
-      Iterator<JExpression> argIt = x.getArgs().iterator();
-      List<JParameter> params = x.getTarget().getParams();
-      for (int i = 0; i < params.size(); ++i) {
-        JParameter param = params.get(i);
-        JExpression arg = argIt.next();
-        if (param.getType() instanceof JReferenceType) {
-          addAssignment(param, arg);
-        }
-      }
-    }
-
-    @Override
-    public void endVisit(JReturnStatement x, Context ctx) {
-      if (currentMethod.getType() instanceof JReferenceType) {
-        addReturn(currentMethod, x.getExpr());
-      }
-    }
-
-    @Override
-    public void endVisit(JsniFieldRef x, Context ctx) {
-      if (x.isLvalue()) {
-        // If this happens in JSNI, we can't make any type-tightening
-        // assumptions. Fake an assignment-to-self to prevent tightening.
-        addAssignment(x.getTarget(), x);
-      }
-    }
-
-    @Override
-    public void endVisit(JsniMethodRef x, Context ctx) {
-      // If this happens in JSNI, we can't make any type-tightening assumptions
-      // Fake an assignment-to-self on all args to prevent tightening
-      JMethod method = x.getTarget();
-      for (JParameter param : method.getParams()) {
-        addAssignment(param, new JParameterRef(SourceOrigin.UNKNOWN, param));
-      }
-    }
-
-    @Override
-    public void endVisit(JTryStatement x, Context ctx) {
-      // Never tighten args to catch blocks
-      // Fake an assignment-to-self to prevent tightening
-      for (JTryStatement.CatchClause clause : x.getCatchClauses()) {
-        addAssignment(clause.getArg().getTarget(), clause.getArg());
-      }
     }
 
     /**
      * Merge param call args across overriders/implementors. We can't tighten a
      * param type in an overriding method if the declaring method is looser.
+     * The type flow from method bodies is recorded by {@link TypeFlowIndex}.
      */
     @Override
     public boolean visit(JMethod x, Context ctx) {
-      currentMethod = x;
-
       if (x.canBePolymorphic()) {
         /*
          * Add an assignment to each parameter from that same parameter in every
@@ -311,7 +224,7 @@ public class TypeTightener {
          */
         Collection<JMethod> overrides = program.typeOracle.getAllOverrides(x);
         if (overrides.isEmpty()) {
-          return true;
+          return false;
         }
         for (int j = 0, c = x.getParams().size(); j < c; ++j) {
           JParameter param = x.getParams().get(j);
@@ -326,11 +239,7 @@ public class TypeTightener {
           }
         }
       }
-      return true;
-    }
-
-    private void addAssignment(JVariable target, JExpression rhs) {
-      add(target, rhs, assignments);
+      return false;
     }
 
     private void addImplementor(JReferenceType target, JClassType implementor) {
@@ -347,10 +256,6 @@ public class TypeTightener {
     private void addOverrider(JMethod target, JMethod overrider) {
       add(target, overrider, overriders);
     }
-
-    private void addReturn(JMethod target, JExpression expr) {
-      add(target, expr, returns);
-    }
   }
 
   /**
@@ -549,7 +454,7 @@ public class TypeTightener {
       // tighten based on both returned types and possible overrides
       List<JReferenceType> typeList = new ArrayList<JReferenceType>();
 
-      Collection<JExpression> myReturns = returns.get(x);
+      Collection<JExpression> myReturns = typeFlow.getReturns(x);
       if (myReturns != null) {
         for (JExpression expr : myReturns) {
           typeList.add((JReferenceType) expr.getType());
@@ -748,7 +653,11 @@ public class TypeTightener {
         typeList.add(typeNull);
       }
 
-      Collection<JExpression> myAssignments = assignments.get(x);
+      if (x instanceof JField && ((JField) x).getLiteralInitializer() != null) {
+        typeList.add((JReferenceType) ((JField) x).getLiteralInitializer().getType());
+      }
+
+      Collection<JExpression> myAssignments = typeFlow.getAssignments(x);
       if (myAssignments != null) {
         for (JExpression expr : myAssignments) {
           JType type = expr.getType();
@@ -794,8 +703,20 @@ public class TypeTightener {
   private static final String NAME = TypeTightener.class.getSimpleName();
 
   public static OptimizerStats exec(JProgram program) {
+    return exec(program, null);
+  }
+
+  /**
+   * Runs with the type flow kept by an {@link OptimizerContext}, which is
+   * brought up to date instead of being recorded again from the whole program,
+   * or with type flow recorded from scratch if there is no context.
+   */
+  public static OptimizerStats exec(JProgram program, OptimizerContext optimizerCtx) {
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
-    OptimizerStats stats = new TypeTightener(program).execImpl();
+    TypeFlowIndex typeFlow = optimizerCtx == null
+        ? TypeFlowIndex.build(OptimizerThreads.getModuleMethods(program))
+        : optimizerCtx.getTypeFlowIndex();
+    OptimizerStats stats = new TypeTightener(program, typeFlow).execImpl();
     optimizeEvent.end("didChange", "" + stats.didChange());
     return stats;
   }
@@ -839,13 +760,6 @@ public class TypeTightener {
     return toReturn;
   }
 
-  /**
-   * For each program Variable (includes fields, locals and parameters) tracks the set
-   * of expressions that are assigned to them. Assignments include parameter instantiations.
-   *
-   */
-  private final Map<JVariable, Collection<JExpression>> assignments =
-      new IdentityHashMap<JVariable, Collection<JExpression>>();
   /**
    * For each type tracks all classes the extend or implement it.
    */
@@ -862,17 +776,19 @@ public class TypeTightener {
    */
   private final Map<JParameter, Collection<JParameter>> paramUpRefs =
       new IdentityHashMap<JParameter, Collection<JParameter>>();
-  /**
-   * For each method tracks the set of all expressions that are returned.
-   */
-  private final Map<JMethod, Collection<JExpression>> returns =
-      new IdentityHashMap<JMethod, Collection<JExpression>>();
 
   private final JProgram program;
+  /**
+   * For each program Variable (includes fields, locals and parameters) tracks the set
+   * of expressions that are assigned to them, and for each method the set of all
+   * expressions that are returned. Assignments include parameter instantiations.
+   */
+  private final TypeFlowIndex typeFlow;
   private final JNullType typeNull;
 
-  private TypeTightener(JProgram program) {
+  private TypeTightener(JProgram program, TypeFlowIndex typeFlow) {
     this.program = program;
+    this.typeFlow = typeFlow;
     typeNull = program.getTypeNull();
   }
 
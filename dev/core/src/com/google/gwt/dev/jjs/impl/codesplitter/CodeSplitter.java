@@ -298,9 +298,16 @@ public class CodeSplitter {
    */
   private Map<Fragment, ControlFlowAnalyzer> computeComplementCfaForFragments(
       Collection<Fragment> exclusiveFragments) {
-    String dependencyGraphNameAfterInitialSequence = dependencyGraphNameAfterInitialSequence();
-
     Map<Fragment, ControlFlowAnalyzer> notLiveCfaByFragment = Maps.newHashMap();
+    if (dependencyRecorder == MultipleDependencyGraphRecorder.NULL_RECORDER) {
+      if (!exclusiveFragments.isEmpty()) {
+        computeComplementCfas(Lists.newArrayList(exclusiveFragments),
+            new ControlFlowAnalyzer(initialSequenceCfa), notLiveCfaByFragment);
+      }
+      return notLiveCfaByFragment;
+    }
+
+    String dependencyGraphNameAfterInitialSequence = dependencyGraphNameAfterInitialSequence();
 
     for (Fragment fragment : exclusiveFragments) {
       assert fragment.isExclusive();
@@ -328,6 +335,30 @@ public class CodeSplitter {
     return notLiveCfaByFragment;
   }
 
+  /**
+   * Computes the complement CFAs of {@code fragments} by halving. {@code cfa} has traced every
+   * split point outside of {@code fragments}; each half gets a CFA that also traces the other
+   * half. This traces each split point a logarithmic number of times rather than once per other
+   * fragment, but no traversal belongs to a single fragment, so it is only used when no dependency
+   * graphs are being recorded.
+   */
+  private void computeComplementCfas(List<Fragment> fragments, ControlFlowAnalyzer cfa,
+      Map<Fragment, ControlFlowAnalyzer> notLiveCfaByFragment) {
+    if (fragments.size() == 1) {
+      assert fragments.get(0).isExclusive();
+      notLiveCfaByFragment.put(fragments.get(0), cfa);
+      return;
+    }
+    List<Fragment> left = fragments.subList(0, fragments.size() / 2);
+    List<Fragment> right = fragments.subList(fragments.size() / 2, fragments.size());
+    ControlFlowAnalyzer leftCfa = new ControlFlowAnalyzer(cfa);
+    traverseFromFragments(leftCfa, right);
+    // The right half is the last to need cfa, so it extends cfa in place.
+    traverseFromFragments(cfa, left);
+    computeComplementCfas(left, leftCfa, notLiveCfaByFragment);
+    computeComplementCfas(right, cfa, notLiveCfaByFragment);
+  }
+
   /**
    * Compute a CFA that covers the entire live code of the program.
    */
@@ -528,6 +559,21 @@ public class CodeSplitter {
     replaceFragmentId();
   }
 
+  /**
+   * Traverses the split points of the non initial fragments in {@code fragments}. The initial
+   * fragments have already been traced into {@code initialSequenceCfa}.
+   */
+  private void traverseFromFragments(ControlFlowAnalyzer cfa, List<Fragment> fragments) {
+    for (Fragment fragment : fragments) {
+      if (fragment.isInitial()) {
+        continue;
+      }
+      for (JRunAsync runAsync : fragment.getRunAsyncs()) {
+        cfa.traverseFromRunAsync(runAsync);
+      }
+    }
+  }
+
   private boolean isInitial(JRunAsync runAsync) {
     return initialLoadSequence.contains(runAsync);
   }
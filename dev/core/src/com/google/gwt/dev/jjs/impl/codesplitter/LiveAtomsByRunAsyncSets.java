@@ -21,10 +21,8 @@ import com.google.gwt.dev.jjs.ast.JNode;
 import com.google.gwt.dev.jjs.ast.JReferenceType;
 import com.google.gwt.dev.jjs.ast.JRunAsync;
 import com.google.gwt.dev.jjs.impl.ControlFlowAnalyzer;
-import com.google.gwt.thirdparty.guava.common.collect.HashMultiset;
 import com.google.gwt.thirdparty.guava.common.collect.Lists;
 import com.google.gwt.thirdparty.guava.common.collect.Maps;
-import com.google.gwt.thirdparty.guava.common.collect.Multiset;
 
 import java.util.BitSet;
 import java.util.Collection;
@@ -34,14 +32,16 @@ import java.util.Map;
 import java.util.PriorityQueue;
 
 /**
- * Maps an atom to a set of runAsyncs that can be live (NOT necessary exclusively) when that
- * runAsync is activated. The runAsyncs are represented by a bit set where S[i] is set if the atom
- * needs to be live when runAsync i is live.<br />
+ * Records, for each atom that is not live in the initial sequence, the runAsyncs that can make it
+ * live (NOT necessary exclusively) when that runAsync is activated.<br />
  *
  * In this class "payload size" is the size of the atoms that will be loaded (beyond the set of
  * atoms already loaded in the initial sequence) as part of a particular exclusive fragment.
  *
- * "Subset" refers to an arbitrary combination of runAsync ids.
+ * Only the payloads of single runAsyncs and of pairs of runAsyncs are used to decide merges, so
+ * an atom is only tracked until a third runAsync makes it live. The payloads are then kept per
+ * runAsync and per pair, which keeps the work linear in the number of live atoms rather than in
+ * the number of runAsync subsets.
  */
 class LiveAtomsByRunAsyncSets {
 
@@ -49,18 +49,39 @@ class LiveAtomsByRunAsyncSets {
     this.logger = logger;
   }
 
-  private static class SubsetWithSize implements Comparable<SubsetWithSize> {
+  /**
+   * The first two runAsyncs that make an atom live.
+   */
+  private static class AtomLiveness {
+    private final int first;
+    private boolean liveInMore;
+    private int second = -1;
+
+    private AtomLiveness(int first) {
+      this.first = first;
+    }
+  }
+
+  private static class PairWithSize implements Comparable<PairWithSize> {
+    private final int first;
+    private final int second;
     private final int size;
-    private final BitSet subset;
 
-    public SubsetWithSize(BitSet subset, int size) {
-      this.subset = subset;
+    public PairWithSize(int first, int second, int size) {
+      this.first = first;
+      this.second = second;
       this.size = size;
     }
 
     @Override
-    public int compareTo(SubsetWithSize o) {
-      return Integer.valueOf(o.size).compareTo(Integer.valueOf(size));
+    public int compareTo(PairWithSize o) {
+      if (size != o.size) {
+        return size > o.size ? -1 : 1;
+      }
+      if (first != o.first) {
+        return first < o.first ? -1 : 1;
+      }
+      return second < o.second ? -1 : (second == o.second ? 0 : 1);
     }
   }
 
@@ -74,12 +95,6 @@ class LiveAtomsByRunAsyncSets {
     return notMergedSubset;
   }
 
-  private static BitSet computeIntersection(BitSet thisSet, BitSet thatSet) {
-    BitSet intersectionBitSet = (BitSet) thisSet.clone();
-    intersectionBitSet.and(thatSet);
-    return intersectionBitSet;
-  }
-
   private static int getSizeEstimate(JDeclaredType type) {
     int defineClassSize = AVERAGE_NAME_SIZE + 50;
     int methodsSize = (3 + AVERAGE_NAME_SIZE) * type.getMethods().size();
@@ -114,17 +129,20 @@ class LiveAtomsByRunAsyncSets {
     return string.length();
   }
 
-  private static boolean isSubset(BitSet smallerSet, BitSet biggerSet) {
-    return computeIntersection(smallerSet, biggerSet).equals(smallerSet);
-  }
-
   private final Map<JRunAsync, Integer> idForRunAsync = Maps.newHashMap();
-  private Map<JField, BitSet> liveSubsetForField = Maps.newHashMap();
-  private Map<JMethod, BitSet> liveSubsetForMethod = Maps.newHashMap();
-  private Map<String, BitSet> liveSubsetForString = Maps.newHashMap();
-  private Map<JDeclaredType, BitSet> liveSubsetForType = Maps.newHashMap();
+
+  /**
+   * Fields, methods, strings and types that are live after some runAsync but not in the initial
+   * sequence. Nodes compare by identity and strings by value, so they can share one map.
+   */
+  private Map<Object, AtomLiveness> livenessByAtom = Maps.newHashMap();
   private int nextRunAsyncId = 0;
-  private final Multiset<BitSet> payloadSizeBySubset = HashMultiset.create();
+
+  /**
+   * For each runAsync, the payload sizes it shares with each other runAsync, indexed both ways.
+   */
+  private final List<Map<Integer, Integer>> payloadSizeByPairByRunAsync = Lists.newArrayList();
+  private final List<Integer> payloadSizeByRunAsync = Lists.newArrayList();
   private final Map<Integer, JRunAsync> runAsyncForId = Maps.newHashMap();
   private final TreeLogger logger;
   private Collection<Collection<JRunAsync>> groupedRunAsyncs;
@@ -141,7 +159,7 @@ class LiveAtomsByRunAsyncSets {
   public Collection<Collection<JRunAsync>> mergeSimilarPairs(int pairCount) {
     Collection<Collection<JRunAsync>> fragmentRunAsyncLists = Lists.newArrayList();
     BitSet mergedSubset = new BitSet();
-    PriorityQueue<SubsetWithSize> subsetsDescending = computeSubsetsDescending();
+    PriorityQueue<PairWithSize> pairsDescending = computePairsDescending();
 
     // Exclude the groupings prespecified by the user.
     // TODO(rluble): we could do better and treat a prespecified grouping as one runAsync for
@@ -158,15 +176,18 @@ class LiveAtomsByRunAsyncSets {
     }
 
     // While there are still combinations to examine
-    while (fragmentRunAsyncLists.size() < pairCount && !subsetsDescending.isEmpty()) {
-      BitSet largestSubset = subsetsDescending.poll().subset;
+    while (fragmentRunAsyncLists.size() < pairCount && !pairsDescending.isEmpty()) {
+      PairWithSize largestPair = pairsDescending.poll();
 
-      // If one of the runAsyncs in the current set of runAsyncs has already been used.
-      if (largestSubset.intersects(mergedSubset)) {
-        // Then throw this set out.
+      // If one of the runAsyncs in the current pair has already been used.
+      if (mergedSubset.get(largestPair.first) || mergedSubset.get(largestPair.second)) {
+        // Then throw this pair out.
         continue;
       }
 
+      BitSet largestSubset = new BitSet();
+      largestSubset.set(largestPair.first);
+      largestSubset.set(largestPair.second);
       logger.log(TreeLogger.Type.DEBUG, "Merging " + largestSubset);
 
       fragmentRunAsyncLists.add(asRunAsyncList(largestSubset));
@@ -216,7 +237,7 @@ class LiveAtomsByRunAsyncSets {
 
   /**
    * Iteratively expand the initial sequence CFA with each runAsync, record the resulting live
-   * atoms and finally compute the payload size for each subset.
+   * atoms and finally compute the payload size for each runAsync and pair of runAsyncs.
    */
   public void recordLiveSubsetsAndEstimateTheirSizes(
       ControlFlowAnalyzer initialSequenceCfa, Collection<Collection<JRunAsync>> groupedRunAsyncs) {
@@ -225,26 +246,47 @@ class LiveAtomsByRunAsyncSets {
       for (JRunAsync runAsync : runAsyncGroup) {
         ControlFlowAnalyzer withRunAsyncCfa = new ControlFlowAnalyzer(initialSequenceCfa);
         withRunAsyncCfa.traverseFromRunAsync(runAsync);
-        recordLiveSubset(withRunAsyncCfa, runAsync);
+        recordLiveSubset(initialSequenceCfa, withRunAsyncCfa, runAsync);
       }
     }
     accumulatePayloadSizes();
   }
 
-  private <T> void accumulatePayloadSizes(Map<T, BitSet> liveSubsetsByAtom) {
-    for (Map.Entry<T, BitSet> entry : liveSubsetsByAtom.entrySet()) {
-      BitSet liveSubset = entry.getValue();
-      T atom = entry.getKey();
+  /**
+   * Accumulate payload sizes.
+   */
+  private void accumulatePayloadSizes() {
+    for (int i = 0; i < getRunAsyncCount(); i++) {
+      payloadSizeByRunAsync.add(0);
+      payloadSizeByPairByRunAsync.add(Maps.<Integer, Integer> newHashMap());
+    }
+    for (Map.Entry<Object, AtomLiveness> entry : livenessByAtom.entrySet()) {
+      AtomLiveness liveness = entry.getValue();
 
       // TODO(rluble): Underestimates the size of fragments resulting of merging more than 2
       // fragments. With the current strategy it can only happen for the set of very small fragments
       // and that is OK.
-      if (liveSubset.cardinality() > 2) {
+      if (liveness.liveInMore) {
         continue;
       }
 
-      payloadSizeBySubset.add(liveSubset, getSizeEstimate(atom));
+      int size = getSizeEstimate(entry.getKey());
+      if (liveness.second == -1) {
+        payloadSizeByRunAsync.set(liveness.first,
+            payloadSizeByRunAsync.get(liveness.first) + size);
+      } else {
+        addPairPayloadSize(liveness.first, liveness.second, size);
+        addPairPayloadSize(liveness.second, liveness.first, size);
+      }
     }
+    // The atoms are not needed anymore.
+    livenessByAtom = null;
+  }
+
+  private void addPairPayloadSize(int runAsyncId, int otherRunAsyncId, int size) {
+    Map<Integer, Integer> payloadSizeByPair = payloadSizeByPairByRunAsync.get(runAsyncId);
+    Integer oldSize = payloadSizeByPair.get(otherRunAsyncId);
+    payloadSizeByPair.put(otherRunAsyncId, oldSize == null ? size : oldSize + size);
   }
 
   private void addRunAsync(JRunAsync runAsync) {
@@ -270,26 +312,17 @@ class LiveAtomsByRunAsyncSets {
     return runAsyncs;
   }
 
-  private PriorityQueue<SubsetWithSize> computeSubsetsDescending() {
-    PriorityQueue<SubsetWithSize> subsetsDescending = new PriorityQueue<SubsetWithSize>();
-    for (BitSet subset : payloadSizeBySubset.elementSet()) {
-      if (subset.cardinality() != 2) {
-        continue;
+  private PriorityQueue<PairWithSize> computePairsDescending() {
+    PriorityQueue<PairWithSize> pairsDescending = new PriorityQueue<PairWithSize>();
+    for (int i = 0; i < payloadSizeByPairByRunAsync.size(); i++) {
+      for (Map.Entry<Integer, Integer> entry : payloadSizeByPairByRunAsync.get(i).entrySet()) {
+        // Each pair is indexed both ways; only queue it once.
+        if (i < entry.getKey()) {
+          pairsDescending.add(new PairWithSize(i, entry.getKey(), entry.getValue()));
+        }
       }
-
-      subsetsDescending.add(new SubsetWithSize(subset, payloadSizeBySubset.count(subset)));
     }
-    return subsetsDescending;
-  }
-
-  /**
-   * Accumulate payload sizes.
-   */
-  private void accumulatePayloadSizes() {
-    accumulatePayloadSizes(liveSubsetForField);
-    accumulatePayloadSizes(liveSubsetForMethod);
-    accumulatePayloadSizes(liveSubsetForString);
-    accumulatePayloadSizes(liveSubsetForType);
+    return pairsDescending;
   }
 
   private int getIdForRunAsync(JRunAsync runAsync) {
@@ -299,61 +332,63 @@ class LiveAtomsByRunAsyncSets {
   private boolean isFragmentTooSmall(Collection<JRunAsync> fragmentRunAsyncs, int minSize) {
     BitSet fragmentSubset = asBitSet(fragmentRunAsyncs);
 
+    // The payload of a fragment is that of its runAsyncs and of the pairs among them.
     int size = 0;
-    // TODO(rluble): This might be quite inefficient as it compare to all possible (non trivially
-    // empty) subsets (bounded by the number of atoms). But is only run at most #runAsyncs times to
-    // determine whether to merge small fragments.
-    for (BitSet subset : payloadSizeBySubset.elementSet()) {
-      if (isSubset(subset, fragmentSubset)) {
-
-        size += payloadSizeBySubset.count(subset);
-        if (size >= minSize) {
-          return false;
+    for (int i = fragmentSubset.nextSetBit(0); i >= 0; i = fragmentSubset.nextSetBit(i + 1)) {
+      size += payloadSizeByRunAsync.get(i);
+      for (Map.Entry<Integer, Integer> entry : payloadSizeByPairByRunAsync.get(i).entrySet()) {
+        if (i < entry.getKey() && fragmentSubset.get(entry.getKey())) {
+          size += entry.getValue();
         }
       }
+      if (size >= minSize) {
+        return false;
+      }
     }
     return true;
   }
 
-  private ControlFlowAnalyzer recordLiveSubset(ControlFlowAnalyzer cfa, JRunAsync runAsync) {
+  private void recordLiveSubset(ControlFlowAnalyzer initialSequenceCfa, ControlFlowAnalyzer cfa,
+      JRunAsync runAsync) {
     addRunAsync(runAsync);
+    Collection<? extends JNode> initiallyLiveFieldsAndMethods =
+        initialSequenceCfa.getLiveFieldsAndMethods();
     for (JNode node : cfa.getLiveFieldsAndMethods()) {
-      if (node instanceof JField) {
-        setLive(liveSubsetForField, (JField) node, runAsync);
-      }
-      if (node instanceof JMethod) {
-        setLive(liveSubsetForMethod, (JMethod) node, runAsync);
+      if ((node instanceof JField || node instanceof JMethod)
+          && !initiallyLiveFieldsAndMethods.contains(node)) {
+        setLive(node, runAsync);
       }
     }
     for (JField field : cfa.getFieldsWritten()) {
-      setLive(liveSubsetForField, field, runAsync);
+      if (!initialSequenceCfa.getFieldsWritten().contains(field)
+          && !initiallyLiveFieldsAndMethods.contains(field)) {
+        setLive(field, runAsync);
+      }
     }
     for (String string : cfa.getLiveStrings()) {
-      setLive(liveSubsetForString, string, runAsync);
+      if (!initialSequenceCfa.getLiveStrings().contains(string)) {
+        setLive(string, runAsync);
+      }
     }
     for (JReferenceType type : cfa.getInstantiatedTypes()) {
-      if (type instanceof JDeclaredType) {
-        setLive(liveSubsetForType, (JDeclaredType) type, runAsync);
+      if (type instanceof JDeclaredType
+          && !initialSequenceCfa.getInstantiatedTypes().contains(type)) {
+        setLive(type, runAsync);
       }
     }
-    return cfa;
   }
 
-  private <T> boolean setLive(Map<T, BitSet> liveSubsetsByAtom, T atom, JRunAsync runAsync) {
+  private void setLive(Object atom, JRunAsync runAsync) {
     int runAsyncId = idForRunAsync.get(runAsync);
-    BitSet liveSubset = liveSubsetsByAtom.get(atom);
-    if (liveSubset == null) {
-      liveSubset = new BitSet();
-      liveSubset.set(runAsyncId);
-      liveSubsetsByAtom.put(atom, liveSubset);
-      return true;
+    AtomLiveness liveness = livenessByAtom.get(atom);
+    if (liveness == null) {
+      livenessByAtom.put(atom, new AtomLiveness(runAsyncId));
+    } else if (liveness.first == runAsyncId || liveness.second == runAsyncId) {
+      // Already recorded for this runAsync.
+    } else if (liveness.second == -1) {
+      liveness.second = runAsyncId;
     } else {
-      if (liveSubset.get(runAsyncId)) {
-        return false;
-      } else {
-        liveSubset.set(runAsyncId);
-        return true;
-      }
+      liveness.liveInMore = true;
     }
   }
 }
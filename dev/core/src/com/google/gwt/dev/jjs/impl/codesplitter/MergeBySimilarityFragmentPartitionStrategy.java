@@ -31,8 +31,9 @@ import java.util.List;
  * </p>
  *
  * <p>
- * A similarity graph is constructed (represented by a similarity matrix) from the results of the
- * control flow analysis, and fragments linked by the highest weights are merged.
+ * A sparse similarity graph is constructed (its edges are the payloads shared by exactly two
+ * runAsyncs) from the results of the control flow analysis, and fragments linked by the highest
+ * weights are merged.
  * </p>
  *
  * <p>
@@ -43,6 +43,17 @@ import java.util.Map;
  */
 public class AnalysisSolver<N, E, T, G extends Graph<N, E, T>, 
                             A extends Assumption<A>> {
+  /**
+   * Thrown when a solver runs out of its step budget before reaching a fixed
+   * point.
+   */
+  private static class StepBudgetExceededException extends RuntimeException {
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
   /**
    * Adapter from IntegratedFlowFunction to FlowFunction. If integrated function
    * decides to perform transformation, replacement graph is recursively 
@@ -164,7 +175,25 @@ public class AnalysisSolver<N, E, T, G extends Graph<N, E, T>,
   public static <N, E, T, G extends Graph<N, E, T>, A extends Assumption<A>> 
   boolean solveIntegrated(G g, IntegratedAnalysis<N, E, T, G, A> analysis, 
       boolean forward) {
-    return new AnalysisSolver<N, E, T, G, A>(forward).solveIntegrated(g, 
+    return solveIntegrated(g, analysis, forward, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Solve a integrated analysis, giving up if no fixed point is found after
+   * interpreting <code>maxSteps</code> nodes, counting the nodes of
+   * replacement subgraphs. A solver that gives up leaves the graph
+   * untransformed and returns <code>false</code>.
+   * 
+   * @param <N> graph node type.
+   * @param <E> graph edge type.
+   * @param <T> graph transformer type.
+   * @param <G> graph type.
+   * @param <A> assumption type.
+   */
+  public static <N, E, T, G extends Graph<N, E, T>, A extends Assumption<A>> 
+  boolean solveIntegrated(G g, IntegratedAnalysis<N, E, T, G, A> analysis, 
+      boolean forward, int maxSteps) {
+    return new AnalysisSolver<N, E, T, G, A>(forward, maxSteps).solveIntegrated(g, 
         analysis);
   }
   
@@ -174,11 +203,31 @@ public class AnalysisSolver<N, E, T, G extends Graph<N, E, T>,
    */
   private final boolean forward;
 
+  /**
+   * The number of flow function interpretations after which the solver gives
+   * up.
+   */
+  private final int maxSteps;
+
+  /**
+   * The number of flow function interpretations so far.
+   */
+  private int steps;
+
   /**
    * @param forward <code>true</code> if solvers moves forward.
    */
   private AnalysisSolver(boolean forward) {
+    this(forward, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param forward <code>true</code> if solvers moves forward.
+   * @param maxSteps the number of interpretations after which to give up.
+   */
+  private AnalysisSolver(boolean forward, int maxSteps) {
     this.forward = forward;
+    this.maxSteps = maxSteps;
   }
   
   /**
@@ -370,6 +419,10 @@ public class AnalysisSolver<N, E, T, G extends Graph<N, E, T>,
       final N node = iterator.next();
       iterator.remove();
 
+      if (++steps > maxSteps) {
+        throw new StepBudgetExceededException();
+      }
+
       flowFunction.interpret(node, graph, new AssumptionMap<E, A>() {
         @Override
         public A getAssumption(E edge) {
@@ -409,10 +462,18 @@ public class AnalysisSolver<N, E, T, G extends Graph<N, E, T>,
    * 
    * Finds a fixed point by using an IntegratedFlowFunctionAdapter and 
    * recursing into {@link #solve(Graph, Analysis)}. Applies analysis 
-   * transformations based on the found fixed point.
+   * transformations based on the found fixed point. Nothing is transformed if
+   * the step budget runs out first.
    */
   private boolean solveIntegrated(G g, IntegratedAnalysis<N, E, T, G, A> analysis) {
-    iterate(g, analysis);
+    try {
+      iterate(g, analysis);
+    } catch (StepBudgetExceededException e) {
+      if (debug) {
+        System.err.println("Step budget of " + maxSteps + " exceeded");
+      }
+      return false;
+    }
     return actualize(g, analysis);
   }
 }
@@ -42,10 +42,33 @@ import com.google.gwt.thirdparty.guava.common.base.Preconditions;
  */
 public class DataflowOptimizer {
   public static String NAME = DataflowOptimizer.class.getSimpleName();
-  
+
+  /**
+   * A Java system property that sets the largest method, in control flow graph
+   * nodes, that is optimized. Larger methods are left as they are.
+   */
+  public static final String MAX_NODES_PROPERTY = "gwt.jjs.dataflow.maxNodes";
+
+  /**
+   * A Java system property that sets how many times, on average, each node of
+   * a method's control flow graph may be interpreted before an analysis of the
+   * method gives up. Giving up is decided by counting, not by timing, so the
+   * output stays the same from one compile to the next.
+   */
+  public static final String STEPS_PER_NODE_PROPERTY = "gwt.jjs.dataflow.stepsPerNode";
+
+  static final int MAX_NODES = Integer.getInteger(MAX_NODES_PROPERTY, 20000);
+
+  static final int STEPS_PER_NODE = Integer.getInteger(STEPS_PER_NODE_PROPERTY, 40);
+
   public static OptimizerStats exec(JProgram jprogram, JNode node) {
+    return exec(jprogram, node, MAX_NODES, STEPS_PER_NODE);
+  }
+
+  static OptimizerStats exec(JProgram jprogram, JNode node, int maxNodes, int stepsPerNode) {
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
-    OptimizerStats stats = new DataflowOptimizer(jprogram).execImpl(node);
+    OptimizerStats stats =
+        new DataflowOptimizer(jprogram, maxNodes, stepsPerNode).execImpl(node);
     optimizeEvent.end();
     return stats;
   }
@@ -54,10 +77,18 @@ public class DataflowOptimizer {
     return exec(jprogram, jprogram);
   }
 
+  private final int maxNodes;
   private final JProgram program;
+  private final int stepsPerNode;
 
   public DataflowOptimizer(JProgram program) {
+    this(program, MAX_NODES, STEPS_PER_NODE);
+  }
+
+  private DataflowOptimizer(JProgram program, int maxNodes, int stepsPerNode) {
     this.program = program;
+    this.maxNodes = maxNodes;
+    this.stepsPerNode = stepsPerNode;
   }
 
   private class DataflowOptimizerVisitor extends JModVisitor {
@@ -74,6 +105,10 @@ public class DataflowOptimizer {
 
       Preconditions.checkNotNull(cfg, "Can't build flow for %s", methodName);
 
+      if (cfg.getNodes().size() > maxNodes) {
+        return true;
+      }
+
       try {
         CombinedIntegratedAnalysis<CfgNode<?>, CfgEdge, CfgTransformer, Cfg>
         fwdAnalysis = CombinedIntegratedAnalysis.createAnalysis();
@@ -85,18 +120,21 @@ public class DataflowOptimizer {
 
         boolean madeChanges = false;
 
-        madeChanges = AnalysisSolver.solveIntegrated(cfg, fwdAnalysis, true)
+        madeChanges = AnalysisSolver.solveIntegrated(cfg, fwdAnalysis, true, getMaxSteps(cfg))
             || madeChanges;
 
-        cfg = CfgBuilder.build(program, methodBody.getBlock());
-        Preconditions.checkNotNull(cfg);
+        // An untransformed graph still matches the method body
+        if (madeChanges) {
+          cfg = CfgBuilder.build(program, methodBody.getBlock());
+          Preconditions.checkNotNull(cfg);
+        }
 
         CombinedIntegratedAnalysis<CfgNode<?>, CfgEdge, CfgTransformer, Cfg>
         bkwAnalysis = CombinedIntegratedAnalysis.createAnalysis();
 
         bkwAnalysis.addAnalysis(new LivenessAnalysis());
 
-        madeChanges = AnalysisSolver.solveIntegrated(cfg, bkwAnalysis, false)
+        madeChanges = AnalysisSolver.solveIntegrated(cfg, bkwAnalysis, false, getMaxSteps(cfg))
             || madeChanges;
 
         if (madeChanges) {
@@ -112,6 +150,10 @@ public class DataflowOptimizer {
     }
   }
 
+  private int getMaxSteps(Cfg cfg) {
+    return (int) Math.min(Integer.MAX_VALUE, (long) cfg.getNodes().size() * stepsPerNode);
+  }
+
   private OptimizerStats execImpl(JNode node) {
     DataflowOptimizerVisitor visitor = new DataflowOptimizerVisitor();
     visitor.accept(node);
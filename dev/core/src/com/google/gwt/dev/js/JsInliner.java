@@ -71,7 +71,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -390,13 +389,21 @@ public class JsInliner {
     private final Set<JsFunction> called;
     private final JsProgram program;
 
-    public DuplicateXORemover(JsProgram program) {
+    /**
+     * Top-level functions that need not be visited again.
+     */
+    private final Set<JsFunction> skipped;
+
+    public DuplicateXORemover(JsProgram program, Set<JsFunction> skipped) {
       this.program = program;
+      this.skipped = skipped;
       called = new HashSet<JsFunction>();
     }
 
-    public DuplicateXORemover(JsProgram program, Set<JsFunction> alreadyCalled) {
+    public DuplicateXORemover(JsProgram program, Set<JsFunction> alreadyCalled,
+        Set<JsFunction> skipped) {
       this.program = program;
+      this.skipped = skipped;
       called = new HashSet<JsFunction>(alreadyCalled);
     }
 
@@ -535,6 +542,11 @@ public class JsInliner {
       return false;
     }
 
+    @Override
+    public boolean visit(JsFunction x, JsContext ctx) {
+      return !skipped.contains(x);
+    }
+
     @Override
     public boolean visit(JsIf x, JsContext ctx) {
       x.setIfExpr(accept(x.getIfExpr()));
@@ -570,13 +582,13 @@ public class JsInliner {
     }
 
     private <T extends JsNode> void branch(List<T> x) {
-      DuplicateXORemover dup = new DuplicateXORemover(program, called);
+      DuplicateXORemover dup = new DuplicateXORemover(program, called, skipped);
       dup.acceptWithInsertRemove(x);
       didChange |= dup.didChange();
     }
 
     private <T extends JsNode> T branch(T x) {
-      DuplicateXORemover dup = new DuplicateXORemover(program, called);
+      DuplicateXORemover dup = new DuplicateXORemover(program, called, skipped);
       T toReturn = dup.accept(x);
 
       if ((toReturn != x) && !dup.didChange()) {
@@ -844,7 +856,8 @@ public class JsInliner {
    */
   private static class InliningVisitor extends JsModVisitor {
     private final Set<JsFunction> blacklist = new HashSet<JsFunction>();
-    private final Set<JsNode> whitelist;
+    private final JsProgramIndex index;
+    private final Set<JsNode> toInline;
     /**
      * This reflects the functions that are currently being inlined to prevent
      * infinite expansion.
@@ -854,7 +867,7 @@ public class JsInliner {
      * This reflects which function the visitor is currently visiting.
      */
     private final Stack<JsFunction> functionStack = new Stack<JsFunction>();
-    private final InvocationCountingVisitor invocationCountingVisitor = new InvocationCountingVisitor();
+    private final InvocationCountingVisitor invocationCountingVisitor;
     private final Stack<List<JsName>> newLocalVariableStack = new Stack<List<JsName>>();
 
     /**
@@ -868,9 +881,16 @@ public class JsInliner {
      */
     private JsFunction programFunction;
 
-    public InliningVisitor(JsProgram program, Set<JsNode> whitelist) {
-      invocationCountingVisitor.accept(program);
-      this.whitelist = whitelist;
+    /**
+     * Top-level functions that need not be visited again.
+     */
+    private final Set<JsFunction> skipped;
+
+    public InliningVisitor(JsProgramIndex index, Set<JsNode> toInline, Set<JsFunction> skipped) {
+      this.index = index;
+      this.toInline = toInline;
+      this.skipped = skipped;
+      invocationCountingVisitor = new InvocationCountingVisitor(index);
     }
 
     /**
@@ -981,7 +1001,7 @@ public class JsInliner {
       }
       JsFunction callerFunction = functionStack.peek();
 
-      if (!whitelist.contains(callerFunction)) {
+      if (!isCandidate(callerFunction)) {
         // Only look at functions that are in the white list
         return;
       }
@@ -1007,7 +1027,7 @@ public class JsInliner {
       }
 
       // Don't inline blacklisted functions
-      if (blacklist.contains(invokedFunction)) {
+      if (blacklist.contains(invokedFunction) || index.isRedefined(invokedFunction)) {
         return;
       }
 
@@ -1077,7 +1097,7 @@ public class JsInliner {
     public boolean visit(JsFunction x, JsContext ctx) {
       functionStack.push(x);
       newLocalVariableStack.push(new ArrayList<JsName>());
-      return true;
+      return !skipped.contains(x);
     }
 
     /**
@@ -1121,6 +1141,15 @@ public class JsInliner {
       }
     }
 
+    /**
+     * Returns {@code true} if invocations within a function should be
+     * considered for inlining: the function was given to the inliner, or it
+     * contains the only invocation of another function.
+     */
+    private boolean isCandidate(JsFunction f) {
+      return toInline.contains(f) || index.isSingleCaller(f);
+    }
+
     private boolean isInvokedMoreThanOnce(JsFunction f) {
       Integer count = invocationCountingVisitor.invocationCount(f);
       return count == null || count > 1;
@@ -1309,6 +1338,15 @@ public class JsInliner {
     private boolean removingCounts = false;
     private final Map<JsFunction, Integer> invocationCount = new IdentityHashMap<JsFunction, Integer>();
 
+    /**
+     * The counts of the whole program, before the changes counted here.
+     */
+    private final JsProgramIndex index;
+
+    public InvocationCountingVisitor(JsProgramIndex index) {
+      this.index = index;
+    }
+
     @Override
     public void endVisit(JsInvocation x, JsContext ctx) {
       checkFunctionCall(x.getQualifier());
@@ -1320,7 +1358,8 @@ public class JsInliner {
     }
 
     public Integer invocationCount(JsFunction f) {
-      return invocationCount.get(f);
+      Integer count = invocationCount.get(f);
+      return count == null ? index.getCallCount(f) : count;
     }
 
     /**
@@ -1336,7 +1375,7 @@ public class JsInliner {
     private void checkFunctionCall(JsExpression qualifier) {
       JsFunction function = isFunction(qualifier);
       if (function != null) {
-        Integer count = invocationCount.get(function);
+        Integer count = invocationCount(function);
         if (count == null) {
           assert (!removingCounts);
           count = 1;
@@ -1352,71 +1391,6 @@ public class JsInliner {
     }
   }
 
-  /**
-   * Finds functions that are only invoked at a single invocation site.
-   */
-  private static class SingleInvocationVisitor extends JsVisitor {
-    // Keep track of functions that are invoked once.
-    // Invariant: singleInvokations(fn) = null => calls to fn have not been seen
-    //            singleInvokations(fn) = MULTIPLE =>  mutiple callsites to fn have been seen.
-    //            singleInvokations(fn) = caller =>  one callsite has been seen an occurs in caller.
-    private final Map<JsFunction, JsFunction> singleInvocations =
-        new IdentityHashMap<JsFunction, JsFunction>();
-
-    // Indicates multiple invocations were found (only identity is used).
-    private static final JsFunction MULTIPLE = JsFunction.createSentinel();
-
-    private final Stack<JsFunction> functionStack = new Stack<JsFunction>();
-
-    @Override
-    public void endVisit(JsFunction x, JsContext ctx) {
-      if (!functionStack.pop().equals(x)) {
-        throw new InternalCompilerException("Unexpected function popped");
-      }
-    }
-
-    public Collection<JsNode> inliningCandidates() {
-      Collection<JsNode> set = new LinkedHashSet<JsNode>();
-      for (Map.Entry<JsFunction, JsFunction> entry : singleInvocations.entrySet()) {
-        if (entry.getValue() != MULTIPLE) {
-          set.add(entry.getValue());
-        }
-      }
-      return set;
-    }
-
-    @Override
-    public boolean visit(JsFunction x, JsContext ctx) {
-      functionStack.push(x);
-      return true;
-    }
-
-    @Override
-    public void endVisit(JsInvocation x, JsContext ctx) {
-      checkFunctionCall(x.getQualifier());
-    }
-
-    @Override
-    public void endVisit(JsNew x, JsContext ctx) {
-      checkFunctionCall(x.getConstructorExpression());
-    }
-
-    private void checkFunctionCall(JsExpression qualifier) {
-      JsFunction function = isFunction(qualifier);
-      if (function != null && !functionStack.isEmpty()) {
-        // Keep track if function is only invoked at a single callsite.
-        JsFunction recordedInvoker = singleInvocations.get(function);
-        // Mark self recursive functions as if they had multiple call sites.
-        if (recordedInvoker == null && functionStack.peek() != function) {
-          // This is the first invocation, register it.
-          singleInvocations.put(function, functionStack.peek());
-        } else if (recordedInvoker != MULTIPLE) {
-          singleInvocations.put(function, MULTIPLE);
-        }
-      }
-    }
-  }
-
   /**
    * Replace references to JsNames with the inlined JsExpression.
    */
@@ -1622,61 +1596,6 @@ public class JsInliner {
     }
   }
 
-  /**
-   * Determine which functions should not be inlined because they are redefined
-   * during program execution. This would violate the assumption that the
-   * statements to be executed by any given function invocation are stable over
-   * the lifetime of the program.
-   */
-  private static class RedefinedFunctionCollector extends JsVisitor {
-    private final Map<JsName, JsFunction> nameMap = new IdentityHashMap<JsName, JsFunction>();
-    private final Set<JsFunction> redefined = new HashSet<JsFunction>();
-
-    /**
-     * Look for assignments to JsNames whose static references are JsFunctions.
-     */
-    @Override
-    public void endVisit(JsBinaryOperation x, JsContext ctx) {
-
-      if (!x.getOperator().equals(JsBinaryOperator.ASG)) {
-        return;
-      }
-
-      JsFunction f = isFunction(x.getArg1());
-      if (f != null) {
-        redefined.add(f);
-      }
-    }
-
-    /**
-     * Look for the case where a function is declared with the same name as an
-     * existing function.
-     */
-    @Override
-    public void endVisit(JsFunction x, JsContext ctx) {
-      JsName name = x.getName();
-
-      if (name == null) {
-        // Ignore anonymous functions
-        return;
-
-      } else if (nameMap.containsKey(name)) {
-        /*
-         * We have to add the current function as well as the original
-         * JsFunction that was declared to use that name.
-         */
-        redefined.add(nameMap.get(name));
-        redefined.add(x);
-      } else {
-        nameMap.put(name, x);
-      }
-    }
-
-    public Collection<JsFunction> getRedefined() {
-      return redefined;
-    }
-  }
-
   /**
    * Given a collection of JsNames, determine if an AST node refers to any of
    * those names.
@@ -1782,9 +1701,18 @@ public class JsInliner {
    * Static entry point used by JavaToJavaScriptCompiler.
    */
   public static OptimizerStats exec(JsProgram program, Collection<JsNode> toInline) {
+    return exec(program, toInline, null);
+  }
+
+  /**
+   * Inlines invocations, skipping the functions that need no new look since
+   * the previous run recorded in {@code optimizerCtx}, if not {@code null}.
+   */
+  public static OptimizerStats exec(JsProgram program, Collection<JsNode> toInline,
+      JsOptimizerContext optimizerCtx) {
     Event optimizeJsEvent = SpeedTracerLogger.start(
         CompilerEventType.OPTIMIZE_JS, "optimizer", NAME);
-    OptimizerStats stats = execImpl(program, toInline);
+    OptimizerStats stats = execImpl(program, toInline, optimizerCtx);
     optimizeJsEvent.end("didChange", "" + stats.didChange());
     return stats;
   }
@@ -1828,27 +1756,40 @@ public class JsInliner {
   }
 
 
-  private static OptimizerStats execImpl(JsProgram program, Collection<JsNode> toInline) {
+  private static OptimizerStats execImpl(JsProgram program, Collection<JsNode> toInline,
+      JsOptimizerContext optimizerCtx) {
     OptimizerStats stats = new OptimizerStats(NAME);
 
+    Set<JsFunction> skipped;
+    JsProgramIndex index;
+    if (optimizerCtx == null) {
+      skipped = Collections.emptySet();
+      index = JsProgramIndex.build(program);
+    } else {
+      skipped = optimizerCtx.startPass(NAME);
+      index = optimizerCtx.getIndex();
+    }
+
     // We are not covering the whole AST, hence we will try to inline functions with a single call
     // site as well as those produced by native methods and their callers.
-    SingleInvocationVisitor s = new SingleInvocationVisitor();
-    s.accept(program);
-    Set<JsNode> candidates = new LinkedHashSet<JsNode>(toInline);
-    candidates.addAll(s.inliningCandidates());
-
-    RedefinedFunctionCollector d = new RedefinedFunctionCollector();
-    d.accept(program);
+    InliningVisitor v = new InliningVisitor(index, new HashSet<JsNode>(toInline), skipped);
 
+    // Functions that invoke themselves from within a candidate
     RecursionCollector rc = new RecursionCollector();
-    for (JsNode fn : candidates) {
-      rc.accept(fn);
+    for (JsNode node : toInline) {
+      if (!(node instanceof JsFunction)) {
+        rc.accept(node);
+      }
     }
-
-    InliningVisitor v = new InliningVisitor(program, candidates);
-    v.blacklist(d.getRedefined());
     v.blacklist(rc.getRecursive());
+    for (JsFunction f : index.getRecursive()) {
+      for (JsFunction outer = f; outer != null; outer = index.getParent(outer)) {
+        if (v.isCandidate(outer)) {
+          v.blacklist(Collections.singleton(f));
+          break;
+        }
+      }
+    }
     // Do not accept among candidates as the list might get stale and contain nodes that are not
     // reachable from the AST. Instead filter within InliningVisitor.
     v.accept(program);
@@ -1857,7 +1798,7 @@ public class JsInliner {
       stats.recordModified();
     }
 
-    DuplicateXORemover r = new DuplicateXORemover(program);
+    DuplicateXORemover r = new DuplicateXORemover(program, skipped);
     r.accept(program);
     if (r.didChange()) {
       stats.recordModified();
@@ -1991,7 +1932,7 @@ public class JsInliner {
    * Given an expression, determine if it is a JsNameRef that refers to a
    * statically-defined JsFunction.
    */
-  private static JsFunction isFunction(JsExpression e) {
+  static JsFunction isFunction(JsExpression e) {
     if (e instanceof JsNameRef) {
       JsNameRef ref = (JsNameRef) e;
 
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.js;
+
+import com.google.gwt.dev.js.ast.JsFunction;
+import com.google.gwt.dev.js.ast.JsModVisitor;
+import com.google.gwt.dev.js.ast.JsProgram;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks which top-level functions have changed between the runs of the
+ * JavaScript optimization passes, so that the passes only revisit the parts of
+ * the program where they could find something new to do.
+ * <p>
+ * Changes are detected through the modification stamps that
+ * {@link JsModVisitor} leaves on the functions it changes. A top-level
+ * function is revisited when it changed since the pass last ran, or when a
+ * function it calls changed in its body or in the number of its callers. The
+ * code outside of functions is always visited.
+ * <p>
+ * The context also keeps the {@link JsProgramIndex} the passes share, so that
+ * the call counts and name references are not rebuilt from the whole program
+ * on every pass.
+ */
+public class JsOptimizerContext {
+
+  private JsProgramIndex index;
+
+  /**
+   * The modification stamp at the start of the latest run of each pass.
+   */
+  private final Map<String, Long> lastRunStamps = new HashMap<String, Long>();
+
+  private final JsProgram program;
+
+  public JsOptimizerContext(JsProgram program) {
+    this.program = program;
+  }
+
+  /**
+   * Forgets the previous runs of all passes, so that each of them visits the
+   * whole program the next time it runs.
+   */
+  public void clearPassHistory() {
+    lastRunStamps.clear();
+  }
+
+  /**
+   * Returns {@code true} if any pass has run since this context was created
+   * or {@link #clearPassHistory()} was called.
+   */
+  public boolean hasPassHistory() {
+    return !lastRunStamps.isEmpty();
+  }
+
+  /**
+   * Returns the index of the program, brought up to date with the changes
+   * made since it was last requested.
+   */
+  JsProgramIndex getIndex() {
+    if (index == null) {
+      index = JsProgramIndex.build(program);
+    } else {
+      index.update();
+    }
+    return index;
+  }
+
+  /**
+   * Records the start of a run of a pass and returns the top-level functions
+   * it can skip, which is none if it should visit the whole program.
+   */
+  Set<JsFunction> startPass(String passName) {
+    JsProgramIndex index = getIndex();
+    Long lastRunStamp = lastRunStamps.put(passName, JsModVisitor.getCurrentModificationStamp());
+    if (lastRunStamp == null) {
+      return Collections.emptySet();
+    }
+    long since = lastRunStamp;
+
+    Set<JsFunction> skipped = Collections.newSetFromMap(new IdentityHashMap<JsFunction, Boolean>());
+    for (JsFunction function : index.getTopLevelFunctions()) {
+      if (function.getModificationStamp() <= since && index.getDependencyStamp(function) <= since) {
+        skipped.add(function);
+      }
+    }
+    return skipped;
+  }
+}
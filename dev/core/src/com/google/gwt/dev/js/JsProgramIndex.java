@@ -0,0 +1,530 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.js;
+
+import com.google.gwt.dev.js.ast.JsBinaryOperation;
+import com.google.gwt.dev.js.ast.JsBinaryOperator;
+import com.google.gwt.dev.js.ast.JsContext;
+import com.google.gwt.dev.js.ast.JsExprStmt;
+import com.google.gwt.dev.js.ast.JsExpression;
+import com.google.gwt.dev.js.ast.JsFunction;
+import com.google.gwt.dev.js.ast.JsInvocation;
+import com.google.gwt.dev.js.ast.JsModVisitor;
+import com.google.gwt.dev.js.ast.JsName;
+import com.google.gwt.dev.js.ast.JsNameRef;
+import com.google.gwt.dev.js.ast.JsNew;
+import com.google.gwt.dev.js.ast.JsProgram;
+import com.google.gwt.dev.js.ast.JsVisitor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * The facts about a {@link JsProgram} that the JavaScript optimizer passes
+ * share: the calls between functions, the names referenced, and the functions
+ * declared under the same name or assigned to.
+ * <p>
+ * Facts are recorded per top-level function, that is per function that is
+ * not nested in another one, and for the code outside of all functions. Each
+ * {@link #update} records again only the top-level functions that changed
+ * since the previous one, as told by their modification stamps, plus the code
+ * outside of functions, which is small.
+ */
+final class JsProgramIndex {
+
+  /**
+   * The facts recorded from a top-level function, or from the code outside of
+   * all functions.
+   */
+  private static class Summary {
+    /**
+     * The functions assigned to.
+     */
+    private final List<JsFunction> assigned = new ArrayList<JsFunction>();
+
+    /**
+     * The functions called, each paired with the entry of {@link #callers} at
+     * the same index.
+     */
+    private final List<JsFunction> callees = new ArrayList<JsFunction>();
+
+    /**
+     * The innermost function containing each call, or {@code null} for the
+     * calls outside of all functions.
+     */
+    private final List<JsFunction> callers = new ArrayList<JsFunction>();
+
+    /**
+     * Whether a named function is declared as a statement inside a function.
+     */
+    private boolean declaresNestedFunctions;
+
+    /**
+     * The functions in the code, each paired with the entry of
+     * {@link #parents} at the same index.
+     */
+    private final List<JsFunction> functions = new ArrayList<JsFunction>();
+
+    private final List<JsFunction> parents = new ArrayList<JsFunction>();
+
+    /**
+     * The functions called from their own body.
+     */
+    private final List<JsFunction> recursive = new ArrayList<JsFunction>();
+
+    private final List<JsName> references = new ArrayList<JsName>();
+  }
+
+  /**
+   * Records the facts of the code it visits into a {@link Summary}. Stops at
+   * top-level functions when visiting the code outside of functions.
+   */
+  private static class Summarizer extends JsVisitor {
+    private final Stack<JsFunction> functionStack = new Stack<JsFunction>();
+    private final Summary summary = new Summary();
+    private final List<JsFunction> topLevelFunctions;
+
+    /**
+     * @param topLevelFunctions where to collect the top-level functions, or
+     *          {@code null} to visit the functions themselves
+     */
+    private Summarizer(List<JsFunction> topLevelFunctions) {
+      this.topLevelFunctions = topLevelFunctions;
+    }
+
+    @Override
+    public void endVisit(JsBinaryOperation x, JsContext ctx) {
+      if (x.getOperator() == JsBinaryOperator.ASG) {
+        JsFunction f = JsInliner.isFunction(x.getArg1());
+        if (f != null) {
+          summary.assigned.add(f);
+        }
+      }
+    }
+
+    @Override
+    public void endVisit(JsExprStmt x, JsContext ctx) {
+      if (!functionStack.isEmpty() && x.getExpression() instanceof JsFunction
+          && ((JsFunction) x.getExpression()).getName() != null) {
+        summary.declaresNestedFunctions = true;
+      }
+    }
+
+    @Override
+    public void endVisit(JsFunction x, JsContext ctx) {
+      if (topLevelFunctions == null) {
+        functionStack.pop();
+      }
+    }
+
+    @Override
+    public void endVisit(JsInvocation x, JsContext ctx) {
+      JsFunction callee = recordCall(x.getQualifier());
+      if (callee != null && functionStack.contains(callee)) {
+        summary.recursive.add(callee);
+      }
+    }
+
+    @Override
+    public void endVisit(JsNameRef x, JsContext ctx) {
+      summary.references.add(x.getName());
+    }
+
+    @Override
+    public void endVisit(JsNew x, JsContext ctx) {
+      recordCall(x.getConstructorExpression());
+    }
+
+    @Override
+    public boolean visit(JsFunction x, JsContext ctx) {
+      if (topLevelFunctions != null) {
+        topLevelFunctions.add(x);
+        return false;
+      }
+      summary.functions.add(x);
+      summary.parents.add(functionStack.isEmpty() ? null : functionStack.peek());
+      functionStack.push(x);
+      return true;
+    }
+
+    private JsFunction recordCall(JsExpression qualifier) {
+      JsFunction callee = JsInliner.isFunction(qualifier);
+      if (callee != null) {
+        summary.callees.add(callee);
+        summary.callers.add(functionStack.isEmpty() ? null : functionStack.peek());
+      }
+      return callee;
+    }
+  }
+
+  /**
+   * Builds an index of a program.
+   */
+  static JsProgramIndex build(JsProgram program) {
+    JsProgramIndex index = new JsProgramIndex(program);
+    index.update();
+    return index;
+  }
+
+  private static <K> void addCount(Map<K, Integer> counts, K key, int delta) {
+    Integer count = counts.get(key);
+    int newCount = (count == null ? 0 : count) + delta;
+    if (newCount == 0) {
+      counts.remove(key);
+    } else {
+      counts.put(key, newCount);
+    }
+  }
+
+  private static <T> Set<T> newIdentitySet() {
+    return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+  }
+
+  private final Map<JsFunction, Integer> assignments = new IdentityHashMap<JsFunction, Integer>();
+
+  private final Map<JsFunction, Integer> callCounts = new IdentityHashMap<JsFunction, Integer>();
+
+  /**
+   * For each function, the functions calling it and how many times, with the
+   * calls outside of all functions under {@code null}.
+   */
+  private final Map<JsFunction, Map<JsFunction, Integer>> callersByCallee =
+      new IdentityHashMap<JsFunction, Map<JsFunction, Integer>>();
+
+  private final Map<JsName, Integer> declarations = new IdentityHashMap<JsName, Integer>();
+
+  /**
+   * For each top-level function, the stamp of the latest change to a function
+   * it calls that may change what the passes do with its calls.
+   */
+  private final Map<JsFunction, Long> dependencyStamps = new IdentityHashMap<JsFunction, Long>();
+
+  private Summary globalSummary;
+
+  /**
+   * The function each function is nested in, or {@code null} for top-level
+   * functions.
+   */
+  private final Map<JsFunction, JsFunction> parents = new IdentityHashMap<JsFunction, JsFunction>();
+
+  private final JsProgram program;
+
+  private final Set<JsFunction> recursive = newIdentitySet();
+
+  private final Map<JsName, Integer> references = new IdentityHashMap<JsName, Integer>();
+
+  /**
+   * The functions that are the single caller of another function, with the
+   * number of functions they are the single caller of.
+   */
+  private final Map<JsFunction, Integer> singleCallers = new IdentityHashMap<JsFunction, Integer>();
+
+  /**
+   * The modification stamp up to which this index is current.
+   */
+  private long stamp = -1;
+
+  private final Map<JsFunction, Summary> summaries = new IdentityHashMap<JsFunction, Summary>();
+
+  private List<JsFunction> topLevelFunctions = Collections.emptyList();
+
+  /**
+   * Callees whose calls are being recorded or forgotten, with their single
+   * caller beforehand.
+   */
+  private Map<JsFunction, JsFunction> touchedSingleCallers;
+
+  /**
+   * Callees whose calls are being recorded or forgotten, with whether they
+   * were called more than once beforehand.
+   */
+  private Map<JsFunction, Boolean> touchedMoreThanOnce;
+
+  private JsProgramIndex(JsProgram program) {
+    this.program = program;
+  }
+
+  /**
+   * Returns the number of calls to a function in the program, or {@code null}
+   * if there are none.
+   */
+  Integer getCallCount(JsFunction function) {
+    return callCounts.get(function);
+  }
+
+  /**
+   * Returns the stamp of the latest change to a function that a top-level
+   * function calls, where the change may affect what the passes do with the
+   * calls.
+   */
+  long getDependencyStamp(JsFunction topLevelFunction) {
+    Long dependencyStamp = dependencyStamps.get(topLevelFunction);
+    return dependencyStamp == null ? -1 : dependencyStamp;
+  }
+
+  /**
+   * Returns the functions called from their own body.
+   */
+  Collection<JsFunction> getRecursive() {
+    return recursive;
+  }
+
+  /**
+   * Returns the function a function is nested in, or {@code null} if it is a
+   * top-level function.
+   */
+  JsFunction getParent(JsFunction function) {
+    return parents.get(function);
+  }
+
+  /**
+   * Returns the top-level functions in program order.
+   */
+  List<JsFunction> getTopLevelFunctions() {
+    return topLevelFunctions;
+  }
+
+  /**
+   * Returns {@code true} if a function is known to declare no named functions
+   * as statements in its body.
+   */
+  boolean hasNoNestedDeclarations(JsFunction function) {
+    Summary summary = summaries.get(function);
+    return summary != null && !summary.declaresNestedFunctions;
+  }
+
+  /**
+   * Returns {@code true} if a function may be replaced while the program runs,
+   * because it is assigned to or shares its name with another function.
+   */
+  boolean isRedefined(JsFunction function) {
+    if (assignments.containsKey(function)) {
+      return true;
+    }
+    JsName name = function.getName();
+    if (name == null || !parents.containsKey(function)) {
+      return false;
+    }
+    Integer count = declarations.get(name);
+    return count != null && count > 1;
+  }
+
+  /**
+   * Returns {@code true} if a name is referenced anywhere in the program.
+   */
+  boolean isReferenced(JsName name) {
+    return references.containsKey(name);
+  }
+
+  /**
+   * Returns {@code true} if a function contains the only call to some other
+   * function, not counting the calls outside of all functions.
+   */
+  boolean isSingleCaller(JsFunction function) {
+    return singleCallers.containsKey(function);
+  }
+
+  /**
+   * Records the top-level functions that are new or changed since the previous
+   * update, and the code outside of all functions, and forgets the functions
+   * that are no longer in the program.
+   */
+  void update() {
+    long newStamp = JsModVisitor.getCurrentModificationStamp();
+    touchedSingleCallers = new IdentityHashMap<JsFunction, JsFunction>();
+    touchedMoreThanOnce = new IdentityHashMap<JsFunction, Boolean>();
+    Set<JsFunction> changed = newIdentitySet();
+
+    List<JsFunction> newTopLevelFunctions = new ArrayList<JsFunction>();
+    Summarizer globalSummarizer = new Summarizer(newTopLevelFunctions);
+    globalSummarizer.accept(program);
+    if (globalSummary != null) {
+      remove(globalSummary);
+    }
+    globalSummary = globalSummarizer.summary;
+    add(globalSummary);
+
+    Set<JsFunction> live = newIdentitySet();
+    live.addAll(newTopLevelFunctions);
+    for (JsFunction function : topLevelFunctions) {
+      if (!live.contains(function)) {
+        Summary summary = summaries.remove(function);
+        if (summary != null) {
+          remove(summary);
+          changed.addAll(summary.functions);
+        }
+        dependencyStamps.remove(function);
+      }
+    }
+
+    for (JsFunction function : newTopLevelFunctions) {
+      if (function.getModificationStamp() <= stamp && summaries.containsKey(function)) {
+        continue;
+      }
+      Summarizer summarizer = new Summarizer(null);
+      summarizer.accept(function);
+      Summary oldSummary = summaries.put(function, summarizer.summary);
+      if (oldSummary != null) {
+        remove(oldSummary);
+        changed.addAll(oldSummary.functions);
+      }
+      add(summarizer.summary);
+      changed.addAll(summarizer.summary.functions);
+    }
+    topLevelFunctions = newTopLevelFunctions;
+
+    // Callers see the changes to the bodies and to the call counts of callees
+    for (Map.Entry<JsFunction, JsFunction> entry : touchedSingleCallers.entrySet()) {
+      JsFunction callee = entry.getKey();
+      if (entry.getValue() != getSingleCaller(callee)
+          || touchedMoreThanOnce.get(callee) != isCalledMoreThanOnce(callee)) {
+        changed.add(callee);
+      }
+    }
+    touchedSingleCallers = null;
+    touchedMoreThanOnce = null;
+    stamp = newStamp;
+
+    Set<JsFunction> dependents = newIdentitySet();
+    for (JsFunction callee : changed) {
+      Map<JsFunction, Integer> callers = callersByCallee.get(callee);
+      if (callers == null) {
+        continue;
+      }
+      for (JsFunction caller : callers.keySet()) {
+        if (caller != null) {
+          dependents.add(getTopLevelFunction(caller));
+        }
+      }
+    }
+    if (!dependents.isEmpty()) {
+      // Not every change bumps a stamp, e.g. removing a top-level function
+      long dependencyStamp = JsModVisitor.nextModificationStamp();
+      for (JsFunction dependent : dependents) {
+        dependencyStamps.put(dependent, dependencyStamp);
+      }
+    }
+  }
+
+  private void add(Summary summary) {
+    for (int i = 0, c = summary.functions.size(); i < c; ++i) {
+      JsFunction function = summary.functions.get(i);
+      parents.put(function, summary.parents.get(i));
+      if (function.getName() != null) {
+        addCount(declarations, function.getName(), 1);
+      }
+    }
+    recordCalls(summary, 1);
+    for (JsFunction function : summary.assigned) {
+      addCount(assignments, function, 1);
+    }
+    for (JsName name : summary.references) {
+      addCount(references, name, 1);
+    }
+    recursive.addAll(summary.recursive);
+  }
+
+  /**
+   * Returns the only function containing calls to a function, if there is a
+   * single such call and the function does not call itself.
+   */
+  private JsFunction getSingleCaller(JsFunction callee) {
+    Map<JsFunction, Integer> callers = callersByCallee.get(callee);
+    if (callers == null) {
+      return null;
+    }
+    JsFunction singleCaller = null;
+    for (Map.Entry<JsFunction, Integer> entry : callers.entrySet()) {
+      if (entry.getKey() == null) {
+        continue;
+      }
+      if (singleCaller != null || entry.getValue() > 1) {
+        return null;
+      }
+      singleCaller = entry.getKey();
+    }
+    return singleCaller == callee ? null : singleCaller;
+  }
+
+  private JsFunction getTopLevelFunction(JsFunction function) {
+    JsFunction parent = parents.get(function);
+    while (parent != null) {
+      function = parent;
+      parent = parents.get(function);
+    }
+    return function;
+  }
+
+  private boolean isCalledMoreThanOnce(JsFunction callee) {
+    Integer count = callCounts.get(callee);
+    return count == null || count > 1;
+  }
+
+  private void recordCalls(Summary summary, int delta) {
+    for (int i = 0, c = summary.callees.size(); i < c; ++i) {
+      JsFunction callee = summary.callees.get(i);
+      JsFunction singleCaller = getSingleCaller(callee);
+      if (!touchedSingleCallers.containsKey(callee)) {
+        touchedSingleCallers.put(callee, singleCaller);
+        touchedMoreThanOnce.put(callee, isCalledMoreThanOnce(callee));
+      }
+
+      addCount(callCounts, callee, delta);
+      Map<JsFunction, Integer> callers = callersByCallee.get(callee);
+      if (callers == null) {
+        callers = new IdentityHashMap<JsFunction, Integer>();
+        callersByCallee.put(callee, callers);
+      }
+      addCount(callers, summary.callers.get(i), delta);
+      if (callers.isEmpty()) {
+        callersByCallee.remove(callee);
+      }
+
+      JsFunction newSingleCaller = getSingleCaller(callee);
+      if (newSingleCaller != singleCaller) {
+        if (singleCaller != null) {
+          addCount(singleCallers, singleCaller, -1);
+        }
+        if (newSingleCaller != null) {
+          addCount(singleCallers, newSingleCaller, 1);
+        }
+      }
+    }
+  }
+
+  private void remove(Summary summary) {
+    for (JsFunction function : summary.functions) {
+      parents.remove(function);
+      if (function.getName() != null) {
+        addCount(declarations, function.getName(), -1);
+      }
+    }
+    recordCalls(summary, -1);
+    for (JsFunction function : summary.assigned) {
+      addCount(assignments, function, -1);
+    }
+    for (JsName name : summary.references) {
+      addCount(references, name, -1);
+    }
+    recursive.removeAll(summary.recursive);
+  }
+}
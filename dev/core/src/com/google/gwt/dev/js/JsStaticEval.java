@@ -55,6 +55,7 @@ import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
@@ -158,6 +159,11 @@ public class JsStaticEval {
 
     private Set<JsExpression> evalBooleanContext = new HashSet<JsExpression>();
 
+    /**
+     * Top-level functions that need not be visited again.
+     */
+    private Set<JsFunction> skipped = Collections.emptySet();
+
     /**
      * This is used by {@link #additionCoercesToString}.
      */
@@ -453,6 +459,11 @@ public class JsStaticEval {
       return true;
     }
 
+    @Override
+    public boolean visit(JsFunction x, JsContext ctx) {
+      return !skipped.contains(x);
+    }
+
     @Override
     public boolean visit(JsIf x, JsContext ctx) {
       evalBooleanContext.add(x.getIfExpr());
@@ -868,9 +879,17 @@ public class JsStaticEval {
   }
 
   public static OptimizerStats exec(JsProgram program) {
+    return exec(program, (JsOptimizerContext) null);
+  }
+
+  /**
+   * Evaluates the program, skipping the functions that have not changed since
+   * the previous run recorded in {@code optimizerCtx}, if not {@code null}.
+   */
+  public static OptimizerStats exec(JsProgram program, JsOptimizerContext optimizerCtx) {
     Event optimizeJsEvent = SpeedTracerLogger.start(
         CompilerEventType.OPTIMIZE_JS, "optimizer", NAME);
-    OptimizerStats stats = new JsStaticEval(program).execImpl();
+    OptimizerStats stats = new JsStaticEval(program).execImpl(optimizerCtx);
     optimizeJsEvent.end("didChange", "" + stats.didChange());
     return stats;
   }
@@ -978,7 +997,14 @@ public class JsStaticEval {
   }
 
   public OptimizerStats execImpl() {
+    return execImpl((JsOptimizerContext) null);
+  }
+
+  private OptimizerStats execImpl(JsOptimizerContext optimizerCtx) {
     StaticEvalVisitor sev = new StaticEvalVisitor();
+    if (optimizerCtx != null) {
+      sev.skipped = optimizerCtx.startPass(NAME);
+    }
     sev.accept(program);
     OptimizerStats stats = new OptimizerStats(NAME);
     if (sev.didChange()) {
@@ -48,7 +48,7 @@ public class JsUnusedFunctionRemover {
       JsName name = f.getName();
 
       // Anonymous function, ignore it
-      if (name == null || seen.contains(name) || f.isArtificiallyRescued()) {
+      if (name == null || isReferenced(name) || f.isArtificiallyRescued()) {
         return;
       }
 
@@ -60,6 +60,12 @@ public class JsUnusedFunctionRemover {
       // Remove the statement
       ctx.removeMe();
     }
+
+    @Override
+    public boolean visit(JsFunction x, JsContext ctx) {
+      // Only functions declared as statements can be removed
+      return index == null || !index.hasNoNestedDeclarations(x);
+    }
   }
 
   /**
@@ -76,13 +82,26 @@ public class JsUnusedFunctionRemover {
   public static final String NAME = JsUnusedFunctionRemover.class.getSimpleName();
 
   public static OptimizerStats exec(JsProgram program) {
+    return exec(program, null);
+  }
+
+  /**
+   * Removes the unused functions, taking the references from the index kept by
+   * {@code optimizerCtx}, if not {@code null}, instead of the whole program.
+   */
+  public static OptimizerStats exec(JsProgram program, JsOptimizerContext optimizerCtx) {
     Event optimizeJsEvent =
         SpeedTracerLogger.start(CompilerEventType.OPTIMIZE_JS, "optimizer", NAME);
-    OptimizerStats stats = new JsUnusedFunctionRemover(program).execImpl();
+    JsUnusedFunctionRemover remover = new JsUnusedFunctionRemover(program);
+    if (optimizerCtx != null) {
+      remover.index = optimizerCtx.getIndex();
+    }
+    OptimizerStats stats = remover.execImpl();
     optimizeJsEvent.end("didChange", "" + stats.didChange());
     return stats;
   }
 
+  private JsProgramIndex index;
   private final JsProgram program;
   private final Set<JsName> seen = new IdentityHashSet<JsName>();
 
@@ -94,7 +113,9 @@ public class JsUnusedFunctionRemover {
     OptimizerStats stats = new OptimizerStats(NAME);
 
     // Rescue all referenced functions.
-    new RescueVisitor().accept(program);
+    if (index == null) {
+      new RescueVisitor().accept(program);
+    }
 
     // Remove the unused functions from the JsProgram
     RemovalVisitor removalVisitor = new RemovalVisitor();
@@ -105,4 +126,8 @@ public class JsUnusedFunctionRemover {
     }
     return stats;
   }
+
+  private boolean isReferenced(JsName name) {
+    return index == null ? seen.contains(name) : index.isReferenced(name);
+  }
 }
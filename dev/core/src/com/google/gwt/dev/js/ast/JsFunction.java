@@ -38,6 +38,7 @@ public final class JsFunction extends JsLiteral implements HasName {
   private boolean executeOnce;
   private boolean fromJava;
   private JsFunction impliedExecute;
+  private transient long modificationStamp = JsModVisitor.nextModificationStamp();
   private JsName name;
   private boolean trace = false;
   private boolean traceFirst = true;
@@ -107,6 +108,16 @@ public final class JsFunction extends JsLiteral implements HasName {
     return NodeKind.FUNCTION;
   }
 
+  /**
+   * Returns the stamp of the last change a {@link JsModVisitor} made while
+   * traversing this function, or of its creation.
+   *
+   * @see JsModVisitor#getCurrentModificationStamp()
+   */
+  public long getModificationStamp() {
+    return modificationStamp;
+  }
+
   @Override
   public JsName getName() {
     return name;
@@ -160,6 +171,7 @@ public final class JsFunction extends JsLiteral implements HasName {
 
   public void setBody(JsBlock body) {
     this.body = body;
+    modificationStamp = JsModVisitor.nextModificationStamp();
   }
 
   public void setExecuteOnce(boolean executeOnce) {
@@ -197,11 +209,24 @@ public final class JsFunction extends JsLiteral implements HasName {
         trace("SCRIPT INITIAL", before);
       }
     }
+    // Track the changes made within this function apart from the others
+    JsModVisitor modVisitor = v instanceof JsModVisitor ? (JsModVisitor) v : null;
+    boolean changedBefore = false;
+    if (modVisitor != null) {
+      changedBefore = modVisitor.didChange;
+      modVisitor.didChange = false;
+    }
     if (v.visit(this, ctx)) {
       v.acceptWithInsertRemove(params);
       body = v.accept(body);
     }
     v.endVisit(this, ctx);
+    if (modVisitor != null) {
+      if (modVisitor.didChange) {
+        modificationStamp = JsModVisitor.nextModificationStamp();
+      }
+      modVisitor.didChange |= changedBefore;
+    }
     if (trace && v instanceof JsModVisitor) {
       String after = this.toSource();
       if (!after.equals(before)) {
@@ -16,6 +16,7 @@ package com.google.gwt.dev.js.ast;
 import com.google.gwt.dev.jjs.InternalCompilerException;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A visitor for iterating through and modifying an AST.
@@ -155,6 +156,30 @@ public class JsModVisitor extends JsVisitor {
     }
   }
 
+  /**
+   * Source of the stamps recorded on functions when they change.
+   */
+  private static final AtomicLong modificationStamps = new AtomicLong();
+
+  /**
+   * Returns the stamp of the latest change made to any function. Stamps only
+   * increase, so a function was changed after this call if its stamp is
+   * greater than the returned value.
+   *
+   * @see JsFunction#getModificationStamp()
+   */
+  public static long getCurrentModificationStamp() {
+    return modificationStamps.get();
+  }
+
+  /**
+   * Returns a new stamp, greater than all the stamps returned so far, for
+   * changes made outside of a visitor.
+   */
+  public static long nextModificationStamp() {
+    return modificationStamps.incrementAndGet();
+  }
+
   protected static void checkReplacement(JsVisitable origNode, JsVisitable newNode) {
     if (newNode == null) {
       throw new InternalCompilerException("Cannot replace with null");
@@ -18,18 +18,89 @@ package com.google.gwt.dev.resource.impl;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.dev.util.collect.Lists;
 import com.google.gwt.dev.util.msg.Message1String;
+import com.google.gwt.thirdparty.guava.common.collect.MapMaker;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * A {@link ClassPathEntry} for a directory on the file system.
+ * <p>
+ * Rescans are incremental: the outcome of scanning each directory is kept per
+ * {@link PathPrefixSet} and reused for as long as the directory's modification
+ * time doesn't change, which it does whenever a child is created, deleted or
+ * renamed. Only the changed directories are listed and filtered again. Set the
+ * {@value #INCREMENTAL_SCAN_PROPERTY} system property to false to always scan
+ * the whole tree.
  */
 public class DirectoryClassPathEntry extends ClassPathEntry {
 
+  /**
+   * The outcome of scanning a single directory (not its subdirectories).
+   */
+  private static class DirectoryScan {
+    /**
+     * The included subdirectories, by abstract path.
+     */
+    private final Map<String, File> includedDirs = new HashMap<String, File>();
+
+    private final Map<AbstractResource, PathPrefix> includedFiles =
+        new IdentityHashMap<AbstractResource, PathPrefix>();
+
+    private final long lastModified;
+
+    private final long scanTime;
+
+    DirectoryScan(long lastModified, long scanTime) {
+      this.lastModified = lastModified;
+      this.scanTime = scanTime;
+    }
+
+    /**
+     * Returns true if the directory can't have changed since it was scanned.
+     * A change made right around the scan might not have moved the
+     * modification time on file systems with coarse timestamps, so the scan
+     * is only trusted if the directory was already unchanged for a while.
+     */
+    boolean isCurrent(long currentLastModified) {
+      return currentLastModified != 0 && currentLastModified == lastModified
+          && lastModified + TIMESTAMP_GRANULARITY_MS < scanTime;
+    }
+  }
+
+  /**
+   * The results of the last scan for one {@link PathPrefixSet}.
+   */
+  private static class Snapshot {
+    private final int prefixSetSize;
+
+    /**
+     * Scans by abstract directory path.
+     */
+    private Map<String, DirectoryScan> scansByPath = new HashMap<String, DirectoryScan>();
+
+    Snapshot(int prefixSetSize) {
+      this.prefixSetSize = prefixSetSize;
+    }
+  }
+
+  /**
+   * The name of the system property that enables incremental rescans.
+   */
+  public static final String INCREMENTAL_SCAN_PROPERTY = "gwt.resourceOracle.incrementalScan";
+
+  private static final boolean INCREMENTAL_SCAN =
+      Boolean.parseBoolean(System.getProperty(INCREMENTAL_SCAN_PROPERTY, "true"));
+
+  /**
+   * The coarsest directory timestamp resolution we expect to encounter.
+   */
+  private static final long TIMESTAMP_GRANULARITY_MS = 2000;
+
   private static class Messages {
     static final Message1String DESCENDING_INTO_DIR = new Message1String(
         TreeLogger.SPAM, "Descending into dir: $0");
@@ -48,6 +119,12 @@ public class DirectoryClassPathEntry extends ClassPathEntry {
 
   private final String location;
 
+  /**
+   * Scan snapshots, which live as long as their {@link PathPrefixSet} (see
+   * {@link ZipFileClassPathEntry}).
+   */
+  private final Map<PathPrefixSet, Snapshot> snapshots = new MapMaker().weakKeys().makeMap();
+
   /**
    * @param dir an absolute directory
    */
@@ -70,11 +147,23 @@ public class DirectoryClassPathEntry extends ClassPathEntry {
   }
 
   @Override
-  public Map<AbstractResource, PathPrefix> findApplicableResources(
+  public synchronized Map<AbstractResource, PathPrefix> findApplicableResources(
       TreeLogger logger, PathPrefixSet pathPrefixSet) {
     Map<AbstractResource, PathPrefix> results = new IdentityHashMap<AbstractResource, PathPrefix>();
-    descendToFindResources(logger, Lists.create(pathPrefixSet),
-        Lists.create(results), dir, "");
+    if (!INCREMENTAL_SCAN) {
+      descendToFindResources(logger, Lists.create(pathPrefixSet),
+          Lists.create(results), dir, "");
+      return results;
+    }
+    Snapshot snapshot = snapshots.get(pathPrefixSet);
+    if (snapshot == null || snapshot.prefixSetSize != pathPrefixSet.getSize()) {
+      snapshot = new Snapshot(pathPrefixSet.getSize());
+      snapshots.put(pathPrefixSet, snapshot);
+    }
+    Map<String, DirectoryScan> newScans = new HashMap<String, DirectoryScan>();
+    rescan(logger, pathPrefixSet, snapshot.scansByPath, newScans, results, dir, "");
+    // Drops the scans of directories that are gone or no longer included.
+    snapshot.scansByPath = newScans;
     return results;
   }
 
@@ -129,4 +218,56 @@ public class DirectoryClassPathEntry extends ClassPathEntry {
       }
     }
   }
+
+  /**
+   * Like {@link #descendToFindResources} for a single {@link PathPrefixSet},
+   * but reuses the previous scan of each directory that hasn't changed.
+   *
+   * @param oldScans the scans made by the previous call
+   * @param newScans accumulates the scans of this call
+   */
+  private void rescan(TreeLogger logger, PathPrefixSet pathPrefixSet,
+      Map<String, DirectoryScan> oldScans, Map<String, DirectoryScan> newScans,
+      Map<AbstractResource, PathPrefix> results, File dir, String dirPath) {
+    DirectoryScan scan = oldScans.get(dirPath);
+    if (scan == null || !scan.isCurrent(dir.lastModified())) {
+      scan = scanDirectory(logger, pathPrefixSet, dir, dirPath);
+    }
+    newScans.put(dirPath, scan);
+    results.putAll(scan.includedFiles);
+    for (Map.Entry<String, File> entry : scan.includedDirs.entrySet()) {
+      rescan(logger, pathPrefixSet, oldScans, newScans, results, entry.getValue(),
+          entry.getKey());
+    }
+  }
+
+  private DirectoryScan scanDirectory(TreeLogger logger, PathPrefixSet pathPrefixSet,
+      File dir, String dirPath) {
+    // Read the timestamp before listing, so a concurrent change invalidates the scan.
+    DirectoryScan scan = new DirectoryScan(dir.lastModified(), System.currentTimeMillis());
+    File[] children = dir.listFiles();
+    if (children == null) {
+      // Deleted while scanning.
+      return scan;
+    }
+    for (File child : children) {
+      String childPath = dirPath + child.getName();
+      if (child.isDirectory()) {
+        String childDirPath = childPath + "/";
+        if (pathPrefixSet.includesDirectory(childDirPath)) {
+          Messages.DESCENDING_INTO_DIR.log(logger, child.getPath(), null);
+          scan.includedDirs.put(childDirPath, child);
+        }
+      } else if (child.isFile()) {
+        PathPrefix prefix = pathPrefixSet.includesResource(childPath);
+        if (prefix != null) {
+          Messages.INCLUDING_FILE.log(logger, childPath, null);
+          scan.includedFiles.put(new FileResource(this, childPath, child), prefix);
+        } else {
+          Messages.EXCLUDING_FILE.log(logger, childPath, null);
+        }
+      }
+    }
+    return scan;
+  }
 }
@@ -24,6 +24,8 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -33,6 +35,13 @@ import java.util.Set;
 
 /**
  * A base class for communication between Dev-mode client and server.
+ * <p>
+ * Invoke, Return, Free and LoadJsni messages are not flushed when they are
+ * sent. They stay buffered until this side next needs to read from the other
+ * side, so that messages sent in a row, such as a Free followed by an Invoke or
+ * consecutive LoadJsni messages, go out together. This also avoids two small
+ * writes before a read, which could stall on Nagle's algorithm. The bytes on
+ * the wire are the same as when each message was flushed separately.
  */
 public abstract class BrowserChannel {
 
@@ -725,7 +734,6 @@ public abstract class BrowserChannel {
       for (int id : ids) {
         stream.writeInt(id);
       }
-      stream.flush();
     }
 
     private final int ids[];
@@ -808,7 +816,6 @@ public abstract class BrowserChannel {
       for (int i = 0; i < args.length; i++) {
         getBrowserChannel().writeValue(stream, args[i]);
       }
-      stream.flush();
     }
   }
 
@@ -871,7 +878,6 @@ public abstract class BrowserChannel {
       for (int i = 0; i < args.length; i++) {
         getBrowserChannel().writeValue(stream, args[i]);
       }
-      stream.flush();
     }
   }
 
@@ -926,7 +932,6 @@ public abstract class BrowserChannel {
       for (int i = 0; i < args.length; i++) {
         getBrowserChannel().writeValue(stream, args[i]);
       }
-      stream.flush();
     }
   }
 
@@ -948,7 +953,6 @@ public abstract class BrowserChannel {
       DataOutputStream stream = channel.getStreamToOtherSide();
       stream.write(MessageType.LOAD_JSNI.getId());
       writeUtf8String(stream, js);
-      stream.flush();
     }
 
     private final String js;
@@ -1277,7 +1281,6 @@ public abstract class BrowserChannel {
       stream.writeByte(MessageType.RETURN.getId());
       stream.writeBoolean(isException);
       channel.writeValue(stream, returnValue);
-      stream.flush();
     }
 
     public static void send(BrowserChannel channel,
@@ -1528,6 +1531,11 @@ public abstract class BrowserChannel {
     stream.writeByte(ValueType.UNDEFINED.getTag());
   }
 
+  /**
+   * Whether anything was written to the other side since the last flush.
+   */
+  private boolean unflushed;
+
   private final ObjectRefFactory objectRefFactory;
 
   private Socket socket;
@@ -1546,8 +1554,8 @@ public abstract class BrowserChannel {
 
   protected BrowserChannel(InputStream inputStream, OutputStream outputStream,
       ObjectRefFactory objectRefFactory) {
-    streamFromOtherSide = new DataInputStream(inputStream);
-    streamToOtherSide = new DataOutputStream(outputStream);
+    streamFromOtherSide = new DataInputStream(new FlushingInputStream(inputStream));
+    streamToOtherSide = new DataOutputStream(new FlushTrackingOutputStream(outputStream));
     socket = null;
     this.objectRefFactory = objectRefFactory;
   }
@@ -1673,4 +1681,72 @@ public abstract class BrowserChannel {
       throw new IllegalArgumentException("Unexpected type: " + value.getType());
     }
   }
+
+  /**
+   * Sends anything written to the other side that is still buffered, since
+   * the other side may have to process it before it sends what this side is
+   * about to read.
+   */
+  private void flushBeforeRead() throws IOException {
+    if (unflushed) {
+      streamToOtherSide.flush();
+    }
+  }
+
+  /**
+   * Flushes the messages sent to the other side before each read.
+   */
+  private class FlushingInputStream extends FilterInputStream {
+
+    public FlushingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      flushBeforeRead();
+      return super.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      flushBeforeRead();
+      return super.read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      flushBeforeRead();
+      return super.skip(n);
+    }
+  }
+
+  /**
+   * Records whether anything was written to the other side since the last
+   * flush.
+   */
+  private class FlushTrackingOutputStream extends FilterOutputStream {
+
+    public FlushTrackingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      unflushed = false;
+      super.flush();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      unflushed = true;
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      unflushed = true;
+      out.write(b);
+    }
+  }
 }
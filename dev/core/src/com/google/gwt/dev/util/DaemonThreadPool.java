@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed number of named daemon threads, started the first time the pool is
+ * used. Being daemons, the threads never keep the JVM alive, so a pool that is
+ * shared for the life of the JVM need not be shut down.
+ */
+public class DaemonThreadPool {
+
+  /**
+   * Returns the exception to throw for a task that failed with an exception:
+   * the task's own exception if it's a {@link RuntimeException}, or else a
+   * {@link RuntimeException} with the given message that wraps it. Callers
+   * should throw an {@link Error} thrown by a task as it is instead, as
+   * {@link #invokeAll} does.
+   */
+  public static RuntimeException toUnchecked(ExecutionException e, String message) {
+    Throwable cause = e.getCause();
+    if (cause instanceof RuntimeException) {
+      return (RuntimeException) cause;
+    }
+    return new RuntimeException(message, cause);
+  }
+
+  private ExecutorService executor;
+
+  private final String name;
+
+  private final AtomicInteger threadCount = new AtomicInteger();
+
+  private final int threads;
+
+  /**
+   * @param name the prefix of the names of the threads
+   * @param threads the number of threads, at least 1
+   */
+  public DaemonThreadPool(String name, int threads) {
+    this.name = name;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Returns the executor that runs tasks on this pool's threads.
+   */
+  public synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Runs the tasks on this pool and returns their results in the same order.
+   * If a task fails, the tasks that haven't started yet are cancelled. An
+   * error is thrown as it is, and any other failure as described in
+   * {@link #toUnchecked}.
+   *
+   * @param description what the tasks do, for the message of a wrapped
+   *     exception
+   */
+  public <T> List<T> invokeAll(List<? extends Callable<T>> tasks, String description)
+      throws InterruptedException {
+    List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    List<T> results = new ArrayList<T>(tasks.size());
+    try {
+      ExecutorService executorService = getExecutor();
+      for (Callable<T> task : tasks) {
+        futures.add(executorService.submit(task));
+      }
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw toUnchecked(e, "Exception " + description);
+    } finally {
+      for (Future<T> future : futures) {
+        future.cancel(false);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Stops the threads once they are done with the tasks already given to
+   * them. The pool starts new threads if it's used again.
+   */
+  public synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+}
@@ -15,11 +15,14 @@
  */
 package com.google.gwt.dev.util;
 
+import com.google.gwt.util.tools.Utility;
+
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.lang.ref.WeakReference;
@@ -115,15 +118,21 @@ public class DiskCache {
    * @return the deserialized object
    */
   public <T> T readObject(long token, Class<T> type) {
-    try {
-      byte[] bytes = readByteArray(token);
-      ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-      return Util.readStreamAsObject(in, type);
-    } catch (ClassNotFoundException e) {
-      throw new RuntimeException("Unexpected exception deserializing from disk cache", e);
-    } catch (IOException e) {
-      throw new RuntimeException("Unexpected exception deserializing from disk cache", e);
-    }
+    return readObject(token, type, false);
+  }
+
+  /**
+   * Deserialize the underlying bytes as an object, replacing its strings with
+   * the instances held by {@link StringInterner}.
+   * 
+   * @param <T> the type of the object to deserialize
+   * @param token a previously returned token
+   * @param type the type of the object to deserialize
+   * @return the deserialized object
+   * @see StringInterningObjectInputStream
+   */
+  public <T> T readObjectInterningStrings(long token, Class<T> type) {
+    return readObject(token, type, true);
   }
 
   /**
@@ -253,6 +262,22 @@ public class DiskCache {
     }
   }
 
+  private <T> T readObject(long token, Class<T> type, boolean internStrings) {
+    ObjectInputStream in = null;
+    try {
+      InputStream bytes = new ByteArrayInputStream(readByteArray(token));
+      in = internStrings ? new StringInterningObjectInputStream(bytes)
+          : new ObjectInputStream(bytes);
+      return type.cast(in.readObject());
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException("Unexpected exception deserializing from disk cache", e);
+    } catch (IOException e) {
+      throw new RuntimeException("Unexpected exception deserializing from disk cache", e);
+    } finally {
+      Utility.close(in);
+    }
+  }
+
   /**
    * Moves to the end of the file if necessary and returns the offset position.
    * Caller must synchronize.
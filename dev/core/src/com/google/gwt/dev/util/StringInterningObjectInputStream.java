@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
+/**
+ * An {@link ObjectInputStream} that replaces every string it reads with the
+ * instance held by {@link StringInterner}. Several objects deserialized from
+ * the same bytes, such as the per-permutation copies of an AST, then share
+ * their names and literals instead of each holding its own copy.
+ */
+public class StringInterningObjectInputStream extends ObjectInputStream {
+
+  public StringInterningObjectInputStream(InputStream in) throws IOException {
+    super(in);
+    enableResolveObject(true);
+  }
+
+  @Override
+  protected Object resolveObject(Object obj) {
+    if (obj instanceof String) {
+      return StringInterner.get().intern((String) obj);
+    }
+    return obj;
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.GeneratorContext;
+import com.google.gwt.core.ext.IncrementalGenerator;
+import com.google.gwt.core.ext.RebindMode;
+import com.google.gwt.core.ext.RebindResult;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConditionWhenTypeIs;
+import com.google.gwt.dev.cfg.MockModuleDef;
+import com.google.gwt.dev.cfg.PropertyPermutations;
+import com.google.gwt.dev.cfg.RuleGenerateWith;
+import com.google.gwt.dev.javac.CompilationStateBuilder;
+import com.google.gwt.dev.resource.Resource;
+import com.google.gwt.thirdparty.guava.common.collect.Sets;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the reuse of generator results across compiles in
+ * {@link DistillerRebindPermutationOracle}.
+ */
+public class DistillerRebindPermutationOracleTest extends TestCase {
+
+  /**
+   * A generator that returns its cached result whenever it is given one, and
+   * counts how often it had to generate.
+   */
+  public static class CountingGenerator extends IncrementalGenerator {
+    static int cachedCount;
+    static int generatedCount;
+
+    @Override
+    public RebindResult generateIncrementally(TreeLogger logger, GeneratorContext context,
+        String typeName) {
+      if (context.isGeneratorResultCachingEnabled()
+          && context.getCachedGeneratorResult() != null) {
+        cachedCount++;
+        return new RebindResult(RebindMode.USE_ALL_CACHED, typeName + "Impl");
+      }
+      generatedCount++;
+      return new RebindResult(RebindMode.USE_ALL_NEW, typeName + "Impl");
+    }
+
+    @Override
+    public long getVersionId() {
+      return 1;
+    }
+  }
+
+  private static final String REQUEST_TYPE = "test.Foo";
+
+  public void testCompilerHandsCacheToContext() {
+    RebindCache rebindCache = new RebindCache();
+    Compiler compiler = new Compiler(new CompilerOptionsImpl(), rebindCache);
+    assertSame(rebindCache, compiler.getCompilerContext().getRebindCache());
+    assertNull(new Compiler(new CompilerOptionsImpl()).getCompilerContext().getRebindCache());
+  }
+
+  public void testReusesCachedResult() throws UnableToCompleteException {
+    RebindCache rebindCache = new RebindCache();
+
+    assertEquals(REQUEST_TYPE + "Impl", rebind(createModule(false), rebindCache));
+    assertEquals(1, CountingGenerator.generatedCount);
+    assertEquals(0, CountingGenerator.cachedCount);
+
+    // A second compile with the same cache gets the result of the first.
+    assertEquals(REQUEST_TYPE + "Impl", rebind(createModule(false), rebindCache));
+    assertEquals(1, CountingGenerator.generatedCount);
+    assertEquals(1, CountingGenerator.cachedCount);
+  }
+
+  public void testMultiplePermutationsBypassCache() throws UnableToCompleteException {
+    RebindCache rebindCache = new RebindCache();
+    rebind(createModule(false), rebindCache);
+    assertEquals(1, CountingGenerator.generatedCount);
+
+    // The cached result is not used for either permutation.
+    rebind(createModule(true), rebindCache);
+    assertEquals(3, CountingGenerator.generatedCount);
+    assertEquals(0, CountingGenerator.cachedCount);
+
+    // Nor is the cache updated with results that may differ by permutation.
+    RebindCache emptyCache = new RebindCache();
+    rebind(createModule(true), emptyCache);
+    assertNull(emptyCache.get(createRule(), REQUEST_TYPE));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    CountingGenerator.cachedCount = 0;
+    CountingGenerator.generatedCount = 0;
+  }
+
+  /**
+   * Creates a module that rebinds {@link #REQUEST_TYPE} with a
+   * {@link CountingGenerator}, and that has two permutations if requested.
+   */
+  private static MockModuleDef createModule(boolean twoPermutations) {
+    MockModuleDef module = new MockModuleDef();
+    module.getRules().prepend(createRule());
+    if (twoPermutations) {
+      BindingProperty flavor = module.getProperties().createBinding("flavor");
+      flavor.addDefinedValue(flavor.getRootCondition(), "vanilla");
+      flavor.addDefinedValue(flavor.getRootCondition(), "chocolate");
+    }
+    return module;
+  }
+
+  private static RuleGenerateWith createRule() {
+    RuleGenerateWith rule = new RuleGenerateWith(CountingGenerator.class);
+    rule.getRootCondition().getConditions().add(new ConditionWhenTypeIs(REQUEST_TYPE));
+    return rule;
+  }
+
+  /**
+   * Rebinds {@link #REQUEST_TYPE} in every permutation of a module, the way a
+   * compile of the module with the given cache does.
+   */
+  private static String rebind(MockModuleDef module, RebindCache rebindCache)
+      throws UnableToCompleteException {
+    CompilerContext compilerContext =
+        new CompilerContext.Builder().module(module).rebindCache(rebindCache).build();
+    DistillerRebindPermutationOracle oracle = new DistillerRebindPermutationOracle(
+        compilerContext, CompilationStateBuilder.buildFrom(TreeLogger.NULL, compilerContext,
+            Sets.<Resource>newHashSet()), new ArtifactSet(),
+        new PropertyPermutations(module.getProperties(), module.getActiveLinkerNames()));
+    String[] answers = oracle.getAllPossibleRebindAnswers(TreeLogger.NULL, REQUEST_TYPE);
+    assertEquals(1, answers.length);
+    return answers[0];
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests {@link PermutationCostHistory}.
+ */
+public class PermutationCostHistoryTest extends TestCase {
+
+  private File historyFile;
+
+  @Override
+  protected void setUp() throws IOException {
+    historyFile = File.createTempFile("PermutationCostHistoryTest", ".properties");
+    historyFile.delete();
+  }
+
+  @Override
+  protected void tearDown() {
+    historyFile.delete();
+  }
+
+  public void testEstimate() {
+    PermutationCostHistory history = PermutationCostHistory.load(TreeLogger.NULL, historyFile);
+    assertNull(history.estimate("{Foo=[FooImpl]}"));
+
+    history.record("{Foo=[FooImpl]}", 1000, 300);
+    history.record("{Foo=[FooImplIE]}", 3000, 100);
+    assertEquals(3000, history.estimate("{Foo=[FooImplIE]}").getMillis());
+
+    // Unknown permutations are assumed to be average.
+    PermutationCostHistory.Cost average = history.estimate("{Foo=[FooImplOpera]}");
+    assertEquals(2000, average.getMillis());
+    assertEquals(200, average.getHeapBytes());
+
+    // Work compiled remotely doesn't report its heap use.
+    history.record("{Foo=[FooImpl]}", 1500, 0);
+    assertEquals(1500, history.estimate("{Foo=[FooImpl]}").getMillis());
+    assertEquals(300, history.estimate("{Foo=[FooImpl]}").getHeapBytes());
+  }
+
+  public void testSaveAndLoad() {
+    PermutationCostHistory history = PermutationCostHistory.load(TreeLogger.NULL, historyFile);
+    history.record("{Foo=[FooImpl], Bar=[Bar_EN, Bar_FR]}", 1000, 300);
+    history.save(TreeLogger.NULL);
+    assertTrue(historyFile.isFile());
+
+    history = PermutationCostHistory.load(TreeLogger.NULL, historyFile);
+    PermutationCostHistory.Cost cost = history.estimate("{Foo=[FooImpl], Bar=[Bar_EN, Bar_FR]}");
+    assertEquals(1000, cost.getMillis());
+    assertEquals(300, cost.getHeapBytes());
+  }
+
+  public void testNoHistoryFile() {
+    PermutationCostHistory history = PermutationCostHistory.load(TreeLogger.NULL, null);
+    history.record("{Foo=[FooImpl]}", 1000, 300);
+    history.save(TreeLogger.NULL);
+    assertEquals(1000, history.estimate("{Foo=[FooImpl]}").getMillis());
+  }
+}
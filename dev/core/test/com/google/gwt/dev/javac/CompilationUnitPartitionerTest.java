@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.javac;
+
+import com.google.gwt.dev.javac.testing.impl.StaticJavaResource;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests {@link CompilationUnitPartitioner}.
+ */
+public class CompilationUnitPartitionerTest extends TestCase {
+
+  private static CompilationUnitBuilder builder(String typeName, String... imports) {
+    StringBuilder source = new StringBuilder();
+    source.append("package ").append(Shared.getPackageName(typeName)).append(";\n");
+    for (String anImport : imports) {
+      source.append("import ").append(anImport).append(";\n");
+    }
+    source.append("class ").append(Shared.getShortName(typeName)).append(" {}\n");
+    return CompilationUnitBuilder.create(new StaticJavaResource(typeName, source));
+  }
+
+  private static List<String> typeNames(List<CompilationUnitBuilder> partition) {
+    List<String> typeNames = new ArrayList<String>();
+    for (CompilationUnitBuilder builder : partition) {
+      typeNames.add(builder.getTypeName());
+    }
+    Collections.sort(typeNames);
+    return typeNames;
+  }
+
+  private final Map<CompilationUnitBuilder, Dependencies> noDependencies =
+      new IdentityHashMap<CompilationUnitBuilder, Dependencies>();
+
+  public void testImportsJoinPartitions() {
+    List<CompilationUnitBuilder> builders = Arrays.asList(
+        builder("a.A1"),
+        builder("a.A2"),
+        builder("b.B", "a.A1"),
+        builder("c.C", "d.*"),
+        builder("d.D"),
+        builder("e.E", "static c.C.foo"));
+
+    List<List<CompilationUnitBuilder>> partitions =
+        CompilationUnitPartitioner.partition(builders, noDependencies, 4);
+    assertEquals(2, partitions.size());
+    assertEquals(Arrays.asList("a.A1", "a.A2", "b.B"), typeNames(partitions.get(0)));
+    assertEquals(Arrays.asList("c.C", "d.D", "e.E"), typeNames(partitions.get(1)));
+  }
+
+  public void testKnownDependencies() {
+    CompilationUnitBuilder a = builder("a.A");
+    CompilationUnitBuilder b = builder("b.B");
+    Map<CompilationUnitBuilder, Dependencies> knownDependencies =
+        new IdentityHashMap<CompilationUnitBuilder, Dependencies>();
+    knownDependencies.put(b, new Dependencies("b", Arrays.asList("a.A"),
+        Collections.<String>emptyList(), Collections.<String>emptyList()));
+
+    List<List<CompilationUnitBuilder>> partitions =
+        CompilationUnitPartitioner.partition(Arrays.asList(a, b), knownDependencies, 2);
+    assertEquals(1, partitions.size());
+    assertEquals(Arrays.asList("a.A", "b.B"), typeNames(partitions.get(0)));
+  }
+
+  public void testPacksComponentsIntoPartitions() {
+    List<CompilationUnitBuilder> builders = Arrays.asList(
+        builder("a.A1"),
+        builder("a.A2"),
+        builder("a.A3"),
+        builder("b.B"),
+        builder("c.C"),
+        builder("d.D"));
+
+    List<List<CompilationUnitBuilder>> partitions =
+        CompilationUnitPartitioner.partition(builders, noDependencies, 2);
+    assertEquals(2, partitions.size());
+    assertEquals(Arrays.asList("a.A1", "a.A2", "a.A3"), typeNames(partitions.get(0)));
+    assertEquals(Arrays.asList("b.B", "c.C", "d.D"), typeNames(partitions.get(1)));
+
+    partitions = CompilationUnitPartitioner.partition(builders, noDependencies, 1);
+    assertEquals(1, partitions.size());
+    assertSame(builders, partitions.get(0));
+  }
+}
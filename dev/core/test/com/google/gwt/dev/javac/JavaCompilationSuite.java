@@ -44,6 +44,7 @@ public class JavaCompilationSuite {
     suite.addTestSuite(BinaryTypeReferenceRestrictionsCheckerTest.class);
     suite.addTestSuite(BytecodeSignatureMakerTest.class);
     suite.addTestSuite(CompilationStateTest.class);
+    suite.addTestSuite(CompilationUnitPartitionerTest.class);
     suite.addTestSuite(CompilationUnitFileReferenceTest.class);
     suite.addTestSuite(CompiledClassTest.class);
     suite.addTestSuite(GWTProblemTest.class);
@@ -54,6 +55,7 @@ public class JavaCompilationSuite {
     suite.addTestSuite(JsniCheckerTest.class);
     suite.addTestSuite(JsniCollectorTest.class);
     suite.addTestSuite(JSORestrictionsTest.class);
+    suite.addTestSuite(MappedUnitCacheTest.class);
     suite.addTestSuite(MemoryUnitCacheTest.class);
     suite.addTestSuite(PersistentUnitCacheTest.class);
     suite.addTestSuite(CompilationUnitTypeOracleUpdaterFromByteCodeTest.class);
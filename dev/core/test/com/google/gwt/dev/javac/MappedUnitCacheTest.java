@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.javac;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Unit test for {@link MappedUnitCache}.
+ */
+public class MappedUnitCacheTest extends TestCase {
+
+  File lastCacheDir = null;
+
+  @Override
+  public void tearDown() {
+    if (lastCacheDir != null) {
+      Util.recursiveDelete(lastCacheDir, false);
+    }
+    lastCacheDir = null;
+  }
+
+  /**
+   * A segment that doesn't start with the expected header is stale and should
+   * be removed.
+   */
+  public void testInvalidSegment() throws IOException, UnableToCompleteException,
+      InterruptedException, ExecutionException {
+    TreeLogger logger = TreeLogger.NULL;
+    File cacheDir = lastCacheDir = File.createTempFile("MappedUnitTest-invalid", "");
+    File segmentDir = mkCacheDir(cacheDir);
+
+    File errorFile = new File(segmentDir,
+        PersistentUnitCache.CURRENT_VERSION_CACHE_FILE_PREFIX + "12345");
+    FileOutputStream os = new FileOutputStream(errorFile);
+    os.write(Util.getBytes("not a segment"));
+    os.close();
+    assertNumCacheFiles(segmentDir, 1);
+
+    MappedUnitCache cache = new MappedUnitCache(logger, cacheDir);
+    assertNull(cache.find("com/example/Foo.java"));
+    cache.cleanup(logger);
+    cache.shutdown();
+
+    assertNumCacheFiles(segmentDir, 0);
+  }
+
+  public void testMappedCache() throws IOException, InterruptedException,
+      UnableToCompleteException, ExecutionException {
+    TreeLogger logger = TreeLogger.NULL;
+    File cacheDir = lastCacheDir = File.createTempFile("MappedUnitTest", "");
+    File segmentDir = mkCacheDir(cacheDir);
+
+    MappedUnitCache cache = new MappedUnitCache(logger, cacheDir);
+    MockCompilationUnit foo1 = new MockCompilationUnit("com.example.Foo", "Foo: source1");
+    cache.add(foo1);
+    MockCompilationUnit bar1 = new MockCompilationUnit("com.example.Bar", "Bar: source1");
+    cache.add(bar1);
+    MockCompilationUnit foo2 = new MockCompilationUnit("com.example.Foo", "Foo: source2");
+    cache.add(foo2);
+    assertNull(cache.find(foo1.getContentId()));
+    assertEquals(foo2.getContentId(), cache.find("com/example/Foo.java").getContentId());
+    cache.cleanup(logger);
+    cache.shutdown();
+    assertNumCacheFiles(segmentDir, 1);
+
+    // Units are served lazily out of the segment written above.
+    cache = new MappedUnitCache(logger, cacheDir);
+    CompilationUnit result = cache.find(foo2.getContentId());
+    assertNotNull(result);
+    assertEquals("com.example.Foo", result.getTypeName());
+    assertNull(cache.find(foo1.getContentId()));
+    result = cache.find("com/example/Bar.java");
+    assertNotNull(result);
+    assertEquals(bar1.getContentId(), result.getContentId());
+
+    // Replacing or removing a unit hides the indexed copy.
+    MockCompilationUnit foo3 = new MockCompilationUnit("com.example.Foo", "Foo: source3");
+    cache.add(foo3);
+    assertNull(cache.find(foo2.getContentId()));
+    cache.remove(result);
+    assertNull(cache.find(bar1.getContentId()));
+    assertNull(cache.find("com/example/Bar.java"));
+    cache.cleanup(logger);
+    cache.shutdown();
+    assertNumCacheFiles(segmentDir, 2);
+
+    // Keep making segments until they get compacted.
+    MockCompilationUnit lastUnit = null;
+    for (int i = 3; i <= PersistentUnitCache.CACHE_FILE_THRESHOLD; i++) {
+      cache = new MappedUnitCache(logger, cacheDir);
+      lastUnit = new MockCompilationUnit("com.example.Baz", "Baz Source" + i);
+      cache.add(lastUnit);
+      cache.cleanup(logger);
+      cache.shutdown();
+    }
+    assertNumCacheFiles(segmentDir, 1);
+
+    cache = new MappedUnitCache(logger, cacheDir);
+    result = cache.find("com/example/Foo.java");
+    assertNotNull(result);
+    assertEquals(foo3.getContentId(), result.getContentId());
+    result = cache.find(lastUnit.getContentId());
+    assertNotNull(result);
+    assertEquals("com.example.Baz", result.getTypeName());
+    cache.shutdown();
+  }
+
+  private void assertNumCacheFiles(File segmentDir, int expected) {
+    assertEquals(expected, segmentDir.list().length);
+  }
+
+  private File mkCacheDir(File cacheDir) {
+    assertNotNull(cacheDir);
+    assertTrue(cacheDir.exists());
+    cacheDir.delete();
+    File segmentDir = new File(cacheDir, MappedUnitCache.SEGMENT_DIRECTORY);
+    segmentDir.mkdirs();
+    return segmentDir;
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs;
+
+import com.google.gwt.core.ext.PropertyOracle;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.core.ext.linker.StatementRanges;
+import com.google.gwt.core.ext.linker.SymbolData;
+import com.google.gwt.core.ext.linker.impl.StandardSymbolData;
+import com.google.gwt.core.ext.soyc.Range;
+import com.google.gwt.dev.CompilerContext;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConditionNone;
+import com.google.gwt.dev.cfg.ConfigurationProperty;
+import com.google.gwt.dev.cfg.Properties;
+import com.google.gwt.dev.cfg.StaticPropertyOracle;
+import com.google.gwt.dev.javac.CompilationState;
+import com.google.gwt.dev.javac.CompilationStateBuilder;
+import com.google.gwt.dev.javac.testing.impl.MockJavaResource;
+import com.google.gwt.dev.jjs.ast.JLiteral;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.jjs.ast.JType;
+import com.google.gwt.dev.jjs.impl.ArrayNormalizer;
+import com.google.gwt.dev.jjs.impl.ComputeCastabilityInformation;
+import com.google.gwt.dev.jjs.impl.GenerateJavaScriptAST;
+import com.google.gwt.dev.jjs.impl.ImplementCastsAndTypeChecks;
+import com.google.gwt.dev.jjs.impl.JJSTestBase;
+import com.google.gwt.dev.jjs.impl.JavaToJavaScriptMap;
+import com.google.gwt.dev.jjs.impl.MethodCallTightener;
+import com.google.gwt.dev.jjs.impl.ResolveRuntimeTypeReferences;
+import com.google.gwt.dev.jjs.impl.TypeTightener;
+import com.google.gwt.dev.jjs.impl.codesplitter.CodeSplitter;
+import com.google.gwt.dev.jjs.impl.codesplitter.MultipleDependencyGraphRecorder;
+import com.google.gwt.dev.js.SizeBreakdown;
+import com.google.gwt.dev.js.ast.JsName;
+import com.google.gwt.dev.js.ast.JsProgram;
+import com.google.gwt.dev.util.DaemonThreadPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tests the generation of the Js code of code-split fragments in {@link JavaToJavaScriptCompiler}.
+ */
+public class JavaToJavaScriptCompilerTest extends JJSTestBase {
+
+  /**
+   * The output of generating the Js code of every fragment once.
+   */
+  private static class GeneratedCode {
+    final String[] js;
+    final StatementRanges[] ranges;
+    final SizeBreakdown[] sizeBreakdowns;
+    final List<Map<Range, SourceInfo>> sourceInfoMaps;
+
+    GeneratedCode(int fragments, boolean recordSourceInfo) {
+      js = new String[fragments];
+      ranges = new StatementRanges[fragments];
+      sizeBreakdowns = new SizeBreakdown[fragments];
+      sourceInfoMaps = recordSourceInfo ? new ArrayList<Map<Range, SourceInfo>>() : null;
+    }
+  }
+
+  private static final String INITIAL_SEQUENCE_PROPERTY = "compiler.splitpoint.initial.sequence";
+
+  private final DaemonThreadPool sequentialPool = new DaemonThreadPool("Sequential", 1);
+
+  private final DaemonThreadPool parallelPool = new DaemonThreadPool("Parallel", 4);
+
+  private JsProgram jsProgram;
+
+  private JavaToJavaScriptMap jjsMap;
+
+  public void testParallelGenerationWithSourceInfo() throws UnableToCompleteException {
+    compileSplitProgram();
+    JJSOptionsImpl options = new JJSOptionsImpl();
+    options.setOutput(JsOutputOption.PRETTY);
+    assertSameCode(generate(options, true, sequentialPool), generate(options, true, parallelPool));
+  }
+
+  public void testParallelGenerationWithClustering() throws UnableToCompleteException {
+    compileSplitProgram();
+    JJSOptionsImpl options = new JJSOptionsImpl();
+    options.setOutput(JsOutputOption.OBFUSCATED);
+    options.setClusterSimilarFunctions(true);
+    assertSameCode(generate(options, false, sequentialPool),
+        generate(options, false, parallelPool));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    sequentialPool.shutdown();
+    parallelPool.shutdown();
+    super.tearDown();
+  }
+
+  private void assertSameCode(GeneratedCode expected, GeneratedCode actual) {
+    assertTrue(expected.js.length > 2);
+    for (int i = 0; i < expected.js.length; i++) {
+      assertEquals(expected.js[i], actual.js[i]);
+
+      assertEquals(expected.ranges[i].numStatements(), actual.ranges[i].numStatements());
+      for (int j = 0; j < expected.ranges[i].numStatements(); j++) {
+        assertEquals(expected.ranges[i].start(j), actual.ranges[i].start(j));
+        assertEquals(expected.ranges[i].end(j), actual.ranges[i].end(j));
+      }
+
+      assertEquals(expected.sizeBreakdowns[i].getSize(), actual.sizeBreakdowns[i].getSize());
+      assertEquals(expected.sizeBreakdowns[i].getSizeMap(),
+          actual.sizeBreakdowns[i].getSizeMap());
+    }
+    assertEquals(expected.sourceInfoMaps, actual.sourceInfoMaps);
+  }
+
+  /**
+   * Compiles a Java class <code>test.EntryPoint</code> with several runAsync calls and splits it
+   * into fragments.
+   */
+  private void compileSplitProgram() throws UnableToCompleteException {
+    final StringBuilder code = new StringBuilder();
+    code.append("package test;\n");
+    code.append("import com.google.gwt.core.client.GWT;\n");
+    code.append("import com.google.gwt.core.client.RunAsyncCallback;\n");
+    code.append("public class EntryPoint {\n");
+    code.append("  static int count;\n");
+    for (int i = 0; i < 4; i++) {
+      code.append("  public static void function" + i + "() { count += " + i + "; }\n");
+    }
+    code.append("  public static void onModuleLoad() {\n");
+    code.append("    function0();\n");
+    code.append(createRunAsync("function1();"));
+    code.append(createRunAsync("function1(); function2();"));
+    code.append(createRunAsync("function3();"));
+    code.append("  }\n");
+    code.append("}\n");
+
+    addMockIntrinsic();
+    sourceOracle.addOrReplace(new MockJavaResource("test.EntryPoint") {
+      @Override
+      public CharSequence getContent() {
+        return code;
+      }
+    });
+    addBuiltinClasses(sourceOracle);
+    CompilationState state = CompilationStateBuilder.buildFrom(logger, new CompilerContext(),
+        sourceOracle.getResources(), getAdditionalTypeProviderDelegate());
+
+    ConfigurationProperty initialSequence =
+        new ConfigurationProperty(INITIAL_SEQUENCE_PROPERTY, true);
+    Properties properties = new Properties();
+    properties.createConfiguration(INITIAL_SEQUENCE_PROPERTY, true);
+    JProgram jProgram = JavaAstConstructor.construct(logger, state, properties,
+        "test.EntryPoint", "com.google.gwt.lang.Exceptions");
+    jProgram.addEntryMethod(findMethod(jProgram, "onModuleLoad"));
+
+    ComputeCastabilityInformation.exec(jProgram, false);
+    ImplementCastsAndTypeChecks.exec(jProgram, false);
+    ArrayNormalizer.exec(jProgram, false);
+    TypeTightener.exec(jProgram);
+    MethodCallTightener.exec(jProgram);
+    Map<JType, JLiteral> typeIdsByType =
+        ResolveRuntimeTypeReferences.IntoIntLiterals.exec(jProgram);
+
+    BindingProperty stackMode = new BindingProperty("compiler.stackMode");
+    stackMode.addDefinedValue(new ConditionNone(), "STRIP");
+    Map<StandardSymbolData, JsName> symbolTable =
+        new TreeMap<StandardSymbolData, JsName>(new SymbolData.ClassIdentComparator());
+    jsProgram = new JsProgram();
+    jjsMap = GenerateJavaScriptAST.exec(jProgram, jsProgram, JsOutputOption.PRETTY,
+        typeIdsByType, symbolTable, new PropertyOracle[] {new StaticPropertyOracle(
+            new BindingProperty[] {stackMode}, new String[] {"STRIP"},
+            new ConfigurationProperty[] {initialSequence})}).getLeft();
+    CodeSplitter.exec(logger, jProgram, jsProgram, jjsMap, 4, 0,
+        MultipleDependencyGraphRecorder.NULL_RECORDER);
+  }
+
+  private GeneratedCode generate(JJSOptions options, boolean recordSourceInfo,
+      DaemonThreadPool pool) {
+    GeneratedCode code = new GeneratedCode(jsProgram.getFragmentCount(), recordSourceInfo);
+    JavaToJavaScriptCompiler.generateJavaScriptCode(jsProgram, options, jjsMap, code.js,
+        code.ranges, code.sizeBreakdowns, code.sourceInfoMaps, recordSourceInfo, pool);
+    return code;
+  }
+
+  private static String createRunAsync(String body) {
+    return "    GWT.runAsync(new RunAsyncCallback() {\n"
+        + "      public void onFailure(Throwable reason) {}\n"
+        + "      public void onSuccess() { " + body + " }\n"
+        + "    });\n";
+  }
+
+  /**
+   * Adds the compiler intrinsics that code splitting needs.
+   */
+  private void addMockIntrinsic() {
+    sourceOracle.addOrReplace(new MockJavaResource("com.google.gwt.lang.Array") {
+      @Override
+      public CharSequence getContent() {
+        return "package com.google.gwt.lang; public class Array {"
+            + " public static int length = 0;"
+            + " public static void setCheck(Array array, int index, Object value) { }"
+            + " static void initDim() { }"
+            + " static void initDims() { }"
+            + " static void initValues() { }"
+            + "}";
+      }
+    });
+    sourceOracle.addOrReplace(
+        new MockJavaResource("com.google.gwt.lang.JavaClassHierarchySetupUtil") {
+          @Override
+          public CharSequence getContent() {
+            return "package com.google.gwt.lang; public class JavaClassHierarchySetupUtil {"
+                + "public static Object defineClass(int typeId, int superTypeId, Object map)"
+                + "{return null;}}";
+          }
+        });
+    sourceOracle.addOrReplace(new MockJavaResource("com.google.gwt.core.client.impl.Impl") {
+      @Override
+      public CharSequence getContent() {
+        return "package com.google.gwt.core.client.impl; public class Impl {"
+            + "public static Object registerEntry(){return null;}}";
+      }
+    });
+    sourceOracle.addOrReplace(new MockJavaResource("com.google.gwt.lang.CollapsedPropertyHolder") {
+      @Override
+      public CharSequence getContent() {
+        return "package com.google.gwt.lang; public class CollapsedPropertyHolder {"
+            + "public static int permutationId = -1;}";
+      }
+    });
+    sourceOracle.addOrReplace(new MockJavaResource("com.google.gwt.core.client.GWT") {
+      @Override
+      public CharSequence getContent() {
+        return "package com.google.gwt.core.client; public class GWT {"
+            + "public static void runAsync(RunAsyncCallback cb){}"
+            + "public static void runAsync(Class<?> clazz, RunAsyncCallback cb){}}";
+      }
+    });
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.linker.Artifact;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.core.ext.linker.StatementRanges;
+import com.google.gwt.dev.CompilerContext;
+import com.google.gwt.dev.Permutation;
+import com.google.gwt.dev.PrecompileTaskOptionsImpl;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConditionAll;
+import com.google.gwt.dev.cfg.ConfigurationProperty;
+import com.google.gwt.dev.cfg.ModuleDef;
+import com.google.gwt.dev.cfg.StaticPropertyOracle;
+import com.google.gwt.dev.jjs.UnifiedAst.AST;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.js.ast.JsProgram;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.dev.util.arg.OptionOptimize;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Tests {@link PermutationResultCache}.
+ */
+public class PermutationResultCacheTest extends TestCase {
+
+  private static class MockPermutationResult implements PermutationResult {
+    private final byte[][] js;
+
+    MockPermutationResult(String js) {
+      this.js = new byte[][] {Util.getBytes(js)};
+    }
+
+    @Override
+    public void addArtifacts(Collection<? extends Artifact<?>> newArtifacts) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ArtifactSet getArtifacts() {
+      return new ArtifactSet();
+    }
+
+    @Override
+    public byte[][] getJs() {
+      return js;
+    }
+
+    @Override
+    public String getJsStrongName() {
+      return Util.computeStrongName(js);
+    }
+
+    @Override
+    public Permutation getPermutation() {
+      return null;
+    }
+
+    @Override
+    public byte[] getSerializedSymbolMap() {
+      return new byte[0];
+    }
+
+    @Override
+    public StatementRanges[] getStatementRanges() {
+      return new StatementRanges[0];
+    }
+  }
+
+  private File cacheDir;
+
+  private BindingProperty userAgent;
+
+  private ConfigurationProperty config;
+
+  @Override
+  protected void setUp() throws IOException {
+    cacheDir = File.createTempFile("PermutationResultCacheTest", "");
+    cacheDir.delete();
+
+    ModuleDef module = new ModuleDef("fake");
+    config = module.getProperties().createConfiguration("conf", false);
+    config.setValue("value");
+    userAgent = module.getProperties().createBinding("user.agent");
+    userAgent.addDefinedValue(new ConditionAll(), "ie9");
+    userAgent.addDefinedValue(new ConditionAll(), "safari");
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(cacheDir, false);
+  }
+
+  public void testComputeKey() {
+    PermutationResultCache cache = new PermutationResultCache(cacheDir);
+    UnifiedAst unifiedAst = createUnifiedAst();
+    CompilerContext context = new CompilerContext.Builder().build();
+
+    String ieKey = cache.computeKey(unifiedAst, context, createPermutation(0, "ie9", "IeImpl"));
+    assertEquals(ieKey,
+        cache.computeKey(unifiedAst, context, createPermutation(0, "ie9", "IeImpl")));
+    assertFalse(ieKey.equals(cache.computeKey(unifiedAst,
+        new CompilerContext.Builder().compileMonolithic(false).build(),
+        createPermutation(0, "ie9", "IeImpl"))));
+    assertFalse(ieKey.equals(
+        cache.computeKey(unifiedAst, context, createPermutation(1, "ie9", "IeImpl"))));
+    assertFalse(ieKey.equals(
+        cache.computeKey(unifiedAst, context, createPermutation(0, "safari", "IeImpl"))));
+    assertFalse(ieKey.equals(
+        cache.computeKey(unifiedAst, context, createPermutation(0, "ie9", "SafariImpl"))));
+
+    config.setValue("other");
+    assertFalse(ieKey.equals(
+        cache.computeKey(unifiedAst, context, createPermutation(0, "ie9", "IeImpl"))));
+  }
+
+  public void testComputeKeyUsesCompilerOptions() {
+    PermutationResultCache cache = new PermutationResultCache(cacheDir);
+    // The options saved in the AST don't change; only the ones the compiler reads do.
+    UnifiedAst unifiedAst = createUnifiedAst();
+    Permutation permutation = createPermutation(0, "ie9", "IeImpl");
+    String key = cache.computeKey(unifiedAst, new CompilerContext.Builder().build(), permutation);
+
+    PrecompileTaskOptionsImpl options = new PrecompileTaskOptionsImpl();
+    options.setOptimizationLevel(OptionOptimize.OPTIMIZE_LEVEL_DRAFT);
+    assertFalse(key.equals(cache.computeKey(unifiedAst,
+        new CompilerContext.Builder().options(options).build(), permutation)));
+
+    options = new PrecompileTaskOptionsImpl();
+    options.setOutput(JsOutputOption.PRETTY);
+    assertFalse(key.equals(cache.computeKey(unifiedAst,
+        new CompilerContext.Builder().options(options).build(), permutation)));
+
+    options = new PrecompileTaskOptionsImpl();
+    options.setLink(true);
+    assertFalse(key.equals(cache.computeKey(unifiedAst,
+        new CompilerContext.Builder().options(options).build(), permutation)));
+  }
+
+  public void testComputeKeyUsesSystemProperties() {
+    PermutationResultCache cache = new PermutationResultCache(cacheDir);
+    UnifiedAst unifiedAst = createUnifiedAst();
+    CompilerContext context = new CompilerContext.Builder().build();
+    Permutation permutation = createPermutation(0, "ie9", "IeImpl");
+    String key = cache.computeKey(unifiedAst, context, permutation);
+
+    for (String property : PermutationResultCache.CODEGEN_PROPERTIES) {
+      String oldValue = System.getProperty(property);
+      System.setProperty(property, "12345");
+      try {
+        assertFalse(property, key.equals(cache.computeKey(unifiedAst, context, permutation)));
+      } finally {
+        if (oldValue == null) {
+          System.clearProperty(property);
+        } else {
+          System.setProperty(property, oldValue);
+        }
+      }
+    }
+    assertEquals(key, cache.computeKey(unifiedAst, context, permutation));
+  }
+
+  public void testReadWrite() {
+    PermutationResultCache cache = new PermutationResultCache(cacheDir);
+    assertNull(cache.read(TreeLogger.NULL, "key1"));
+
+    cache.write(TreeLogger.NULL, "key1", new MockPermutationResult("foo();"));
+    PermutationResult result = cache.read(TreeLogger.NULL, "key1");
+    assertNotNull(result);
+    assertTrue(Arrays.equals(Util.getBytes("foo();"), result.getJs()[0]));
+
+    cache.write(TreeLogger.NULL, "key1", new MockPermutationResult("bar();"));
+    result = new PermutationResultCache(cacheDir).read(TreeLogger.NULL, "key1");
+    assertTrue(Arrays.equals(Util.getBytes("bar();"), result.getJs()[0]));
+    assertNull(cache.read(TreeLogger.NULL, "key2"));
+  }
+
+  private UnifiedAst createUnifiedAst() {
+    return new UnifiedAst(new JJSOptionsImpl(), new AST(new JProgram(), new JsProgram()), false,
+        Collections.<String>emptySet());
+  }
+
+  private Permutation createPermutation(int id, String userAgentValue, String implementation) {
+    Permutation permutation = new Permutation(id, new StaticPropertyOracle(
+        new BindingProperty[] {userAgent}, new String[] {userAgentValue},
+        new ConfigurationProperty[] {config}));
+    permutation.putRebindAnswer("com.example.Impl", "com.example." + implementation);
+    return permutation;
+  }
+}
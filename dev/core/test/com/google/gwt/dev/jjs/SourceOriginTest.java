@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Tests {@link SourceOrigin}.
+ */
+public class SourceOriginTest extends TestCase {
+
+  public void testCanonical() {
+    SourceOrigin origin = SourceOrigin.create(12, "com/example/Foo.java");
+    assertSame(origin, SourceOrigin.create(12, new String("com/example/Foo.java")));
+    assertSame(origin, SourceOrigin.create(12, "foo.jar!/com/example/Foo.java"));
+    assertNotSame(origin, SourceOrigin.create(13, "com/example/Foo.java"));
+    assertEquals("com/example/Foo.java", origin.getFileName());
+    assertEquals(12, origin.getStartLine());
+    assertEquals(-1, origin.getStartPos());
+  }
+
+  public void testPositions() {
+    SourceOrigin origin = SourceOrigin.create(5, 9, 12, "com/example/Foo.java");
+    assertEquals(5, origin.getStartPos());
+    assertEquals(9, origin.getEndPos());
+    assertFalse(origin.equals(SourceOrigin.create(12, "com/example/Foo.java")));
+  }
+
+  public void testSerialization() throws Exception {
+    SourceOrigin origin = SourceOrigin.create(12, "com/example/Foo.java");
+    assertSame(origin, reserialize(origin));
+    assertSame(SourceOrigin.UNKNOWN, reserialize(SourceOrigin.UNKNOWN));
+  }
+
+  private static Object reserialize(Object object) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(object);
+    out.close();
+    return new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.ast.Context;
+import com.google.gwt.dev.jjs.ast.JField;
+import com.google.gwt.dev.jjs.ast.JIntLiteral;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JMethodCall;
+import com.google.gwt.dev.jjs.ast.JModVisitor;
+import com.google.gwt.dev.jjs.ast.JProgram;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Tests {@link OptimizerContext}.
+ */
+public class OptimizerContextTest extends JJSTestBase {
+
+  private JMethod callee;
+  private JMethod caller;
+  private JField field;
+  private JMethod fieldReader;
+  private JProgram program;
+
+  public void testChangedField() {
+    OptimizerContext optimizerCtx = new OptimizerContext(program);
+    assertNull(optimizerCtx.startPass("pass"));
+
+    new JModVisitor() {
+      @Override
+      public void endVisit(JField x, Context ctx) {
+        madeChanges();
+      }
+    }.accept(field);
+    assertEquals(Collections.singletonList(fieldReader), optimizerCtx.startPass("pass"));
+  }
+
+  public void testChangedMethod() {
+    OptimizerContext optimizerCtx = new OptimizerContext(program);
+    assertFalse(optimizerCtx.hasPassHistory());
+    assertNull(optimizerCtx.startPass("pass"));
+    assertTrue(optimizerCtx.hasPassHistory());
+    assertEquals(Collections.emptyList(), optimizerCtx.startPass("pass"));
+
+    replaceIntLiterals(callee);
+    List<JMethod> worklist = optimizerCtx.startPass("pass");
+    assertEquals(new HashSet<JMethod>(Arrays.asList(callee, caller)),
+        new HashSet<JMethod>(worklist));
+    // Changes made by a pass are seen by its next run
+    replaceIntLiterals(callee);
+    assertEquals(worklist, optimizerCtx.startPass("pass"));
+    assertEquals(Collections.emptyList(), optimizerCtx.startPass("pass"));
+
+    // Each pass has its own history
+    assertNull(optimizerCtx.startPass("other"));
+    optimizerCtx.clearPassHistory();
+    assertFalse(optimizerCtx.hasPassHistory());
+    assertNull(optimizerCtx.startPass("pass"));
+  }
+
+  public void testRemovedCall() {
+    OptimizerContext optimizerCtx = new OptimizerContext(program);
+    assertNull(optimizerCtx.startPass("pass"));
+
+    final JMethod unrelated = findMethod(program, "unrelated");
+    new JModVisitor() {
+      @Override
+      public void endVisit(JMethodCall x, Context ctx) {
+        ctx.replaceMe(new JMethodCall(x.getSourceInfo(), null, unrelated));
+      }
+    }.accept(caller);
+    assertEquals(new HashSet<JMethod>(Arrays.asList(caller, findMainMethod(program), unrelated)),
+        new HashSet<JMethod>(optimizerCtx.startPass("pass")));
+
+    // caller no longer calls callee, so it is not affected by changes to it
+    replaceIntLiterals(callee);
+    assertEquals(Collections.singletonList(callee), optimizerCtx.startPass("pass"));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    addSnippetClassDecl("static int field;");
+    addSnippetClassDecl("static int callee() { return 1; }");
+    addSnippetClassDecl("static int caller() { return callee(); }");
+    addSnippetClassDecl("static int fieldReader() { return field; }");
+    addSnippetClassDecl("static int unrelated() { return 2; }");
+    program = compileSnippet("void", "caller(); fieldReader(); unrelated();");
+    callee = findMethod(program, "callee");
+    caller = findMethod(program, "caller");
+    field = findField(program, "EntryPoint.field");
+    fieldReader = findMethod(program, "fieldReader");
+  }
+
+  private void replaceIntLiterals(JMethod method) {
+    new JModVisitor() {
+      @Override
+      public void endVisit(JIntLiteral x, Context ctx) {
+        ctx.replaceMe(program.getLiteralInt(x.getValue() + 1));
+      }
+    }.accept(method);
+  }
+}
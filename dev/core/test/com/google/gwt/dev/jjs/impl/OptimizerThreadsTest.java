@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.ast.Context;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JMethodCall;
+import com.google.gwt.dev.jjs.ast.JModVisitor;
+import com.google.gwt.dev.jjs.ast.JProgram;
+
+import java.util.List;
+
+/**
+ * Tests {@link OptimizerThreads}.
+ */
+public class OptimizerThreadsTest extends JJSTestBase {
+
+  private static final int METHODS = 300;
+
+  private int savedThreads;
+
+  public void testDeadCodeElimination() throws Exception {
+    JProgram sequential = compile();
+    OptimizerThreads.setThreads(1);
+    int sequentialMods =
+        DeadCodeElimination.exec(sequential, (OptimizerContext) null).getNumMods();
+
+    JProgram parallel = compile();
+    OptimizerThreads.setThreads(4);
+    int parallelMods = DeadCodeElimination.exec(parallel, (OptimizerContext) null).getNumMods();
+
+    assertTrue(sequentialMods > 0);
+    assertEquals(sequentialMods, parallelMods);
+    assertEquals(sequential.toSource(), parallel.toSource());
+  }
+
+  public void testException() throws Exception {
+    JProgram program = compile();
+    try {
+      OptimizerThreads.accept(OptimizerThreads.getModuleMethods(program),
+          new OptimizerThreads.VisitorFactory() {
+            @Override
+            public JModVisitor create() {
+              return new JModVisitor() {
+                @Override
+                public void endVisit(JMethodCall x, Context ctx) {
+                  throw new IllegalStateException();
+                }
+              };
+            }
+          }, 4);
+      fail("Expected an exception");
+    } catch (RuntimeException expected) {
+    }
+  }
+
+  public void testModuleMethods() throws Exception {
+    JProgram program = compile();
+    List<JMethod> methods = OptimizerThreads.getModuleMethods(program);
+    assertTrue(methods.contains(findMainMethod(program)));
+    assertTrue(methods.contains(findMethod(program, "m0")));
+    assertTrue(methods.size() > METHODS);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    savedThreads = OptimizerThreads.getThreads();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    OptimizerThreads.setThreads(savedThreads);
+    super.tearDown();
+  }
+
+  private JProgram compile() throws Exception {
+    StringBuilder calls = new StringBuilder();
+    addSnippetClassDecl("static int count;");
+    for (int i = 0; i < METHODS; i++) {
+      // Half the constructors are empty, so that the calls to them can be removed.
+      addSnippetClassDecl("static class C" + i + " { C" + i + "() { "
+          + (i % 2 == 0 ? "" : "count++;") + " } }");
+      addSnippetClassDecl("static int m" + i + "(int x) { new C" + i + "(); if (" + i
+          + " % 2 == 0) { return x + " + i + " * 2; } else { return x - 1 + 1; } }");
+      calls.append("m" + i + "(" + i + ");");
+    }
+    return compileSnippet("void", calls.toString());
+  }
+}
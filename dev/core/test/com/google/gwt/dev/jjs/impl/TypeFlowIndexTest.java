@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.ast.Context;
+import com.google.gwt.dev.jjs.ast.JExpression;
+import com.google.gwt.dev.jjs.ast.JExpressionStatement;
+import com.google.gwt.dev.jjs.ast.JField;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JModVisitor;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.jjs.ast.JReturnStatement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Tests {@link TypeFlowIndex}.
+ */
+public class TypeFlowIndexTest extends JJSTestBase {
+
+  private JField field;
+  private List<JMethod> methods;
+  private JProgram program;
+  private JMethod returnsString;
+  private JMethod setsNull;
+  private JMethod setsNullToo;
+
+  public void testChangedMethod() {
+    TypeFlowIndex index = TypeFlowIndex.build(methods);
+    assertEquals(1, index.getReturns(returnsString).size());
+
+    new JModVisitor() {
+      @Override
+      public void endVisit(JReturnStatement x, Context ctx) {
+        ctx.replaceMe(new JReturnStatement(x.getSourceInfo(),
+            program.getStringLiteral(x.getSourceInfo(), "changed")));
+      }
+    }.accept(returnsString);
+    Collection<JExpression> before = new ArrayList<JExpression>(index.getReturns(returnsString));
+    index.update(methods);
+    Collection<JExpression> after = index.getReturns(returnsString);
+    assertEquals(1, after.size());
+    assertFalse(before.equals(new ArrayList<JExpression>(after)));
+  }
+
+  public void testRemovedMethod() {
+    TypeFlowIndex index = TypeFlowIndex.build(methods);
+    assertNotNull(index.getAssignments(field));
+
+    methods.remove(setsNull);
+    methods.remove(setsNullToo);
+    index.update(methods);
+    assertNull(index.getAssignments(field));
+    assertNotNull(index.getReturns(returnsString));
+  }
+
+  public void testSharedLiteral() {
+    TypeFlowIndex index = TypeFlowIndex.build(methods);
+    // Both methods assign the shared null literal
+    assertEquals(1, index.getAssignments(field).size());
+
+    removeStatements(setsNull);
+    index.update(methods);
+    assertEquals(1, index.getAssignments(field).size());
+
+    removeStatements(setsNullToo);
+    index.update(methods);
+    assertNull(index.getAssignments(field));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    addSnippetClassDecl("static Object field = new Object();");
+    addSnippetClassDecl("static void setsNull() { field = null; }");
+    addSnippetClassDecl("static void setsNullToo() { field = null; }");
+    addSnippetClassDecl("static String returnsString() { return \"a\"; }");
+    program = compileSnippet("void", "setsNull(); setsNullToo(); returnsString();");
+    field = findField(program, "EntryPoint.field");
+    returnsString = findMethod(program, "returnsString");
+    setsNull = findMethod(program, "setsNull");
+    setsNullToo = findMethod(program, "setsNullToo");
+    methods = new ArrayList<JMethod>();
+    methods.add(returnsString);
+    methods.add(setsNull);
+    methods.add(setsNullToo);
+  }
+
+  private void removeStatements(JMethod method) {
+    new JModVisitor() {
+      @Override
+      public void endVisit(JExpressionStatement x, Context ctx) {
+        ctx.removeMe();
+      }
+    }.accept(method);
+  }
+}
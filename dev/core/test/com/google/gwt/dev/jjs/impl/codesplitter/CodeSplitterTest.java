@@ -56,7 +56,9 @@ import com.google.gwt.thirdparty.guava.common.collect.Lists;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Unit test for {@link com.google.gwt.dev.jjs.impl.codesplitter.CodeSplitter}.
@@ -113,6 +115,7 @@ public class CodeSplitterTest extends JJSTestBase {
 
   public int leftOverMergeSize = 0;
   public int expectedFragmentCount = 0;
+  public MultipleDependencyGraphRecorder dependencyRecorder = NULL_RECORDER;
   public List<JRunAsync> initialAsyncSequence = Lists.newArrayList();
 
   @Override
@@ -464,6 +467,109 @@ public class CodeSplitterTest extends JJSTestBase {
     assertInFragment("functionC", 3);
   }
 
+  public void testNoMergeOnInitiallyLiveCode() throws UnableToCompleteException {
+    StringBuffer code = new StringBuffer();
+    code.append("package test;\n");
+    code.append("import com.google.gwt.core.client.GWT;\n");
+    code.append("import com.google.gwt.core.client.RunAsyncCallback;\n");
+    code.append("public class EntryPoint {\n");
+    code.append(functionA);
+    code.append(functionB);
+    code.append(initialA);
+    code.append("  public static void onModuleLoad() {\n");
+    code.append("initialA();");
+    // Fragment #1
+    code.append(createRunAsync("initialA(); functionA();"));
+    // Fragment #2
+    code.append(createRunAsync("initialA(); functionB();"));
+    code.append("  }\n");
+    code.append("}\n");
+
+    expectedFragmentCount = 3;
+    compileSnippet(code.toString());
+
+    // initialA is already loaded by the initial sequence, so it is not code shared by the two
+    // runAsyncs and does not make them merge.
+
+    // init + 2 fragments + leftover.
+    assertFragmentCount(4);
+    assertInFragment("initialA", 0);
+    assertNotInFragment("initialA", 1);
+    assertNotInFragment("initialA", 2);
+    assertInFragment("functionA", 1);
+    assertInFragment("functionB", 2);
+  }
+
+  public void testMergeTiesByRunAsyncOrder() throws UnableToCompleteException {
+    StringBuffer code = new StringBuffer();
+    code.append("package test;\n");
+    code.append("import com.google.gwt.core.client.GWT;\n");
+    code.append("import com.google.gwt.core.client.RunAsyncCallback;\n");
+    code.append("public class EntryPoint {\n");
+    code.append(functionA);
+    code.append(functionB);
+    code.append(functionC);
+    code.append(functionD);
+    code.append("  public static void onModuleLoad() {\n");
+    // Fragment #1
+    code.append(createRunAsync("functionB(); functionC();"));
+    // Fragment #2
+    code.append(createRunAsync("functionA();"));
+    // Fragment #1 (merged)
+    code.append(createRunAsync("functionB(); functionD();"));
+    // Fragment #3
+    code.append(createRunAsync("functionA();"));
+    code.append("  }\n");
+    code.append("}\n");
+
+    expectedFragmentCount = 5;
+    compileSnippet(code.toString());
+
+    // The first and third runAsyncs share as much code as the second and fourth. Only one pair
+    // is merged, and the tie goes to the pair with the lowest runAsync ids.
+
+    // init + 3 fragments + leftover.
+    assertFragmentCount(5);
+    assertInFragment("functionB", 1);
+    assertInFragment("functionC", 1);
+    assertInFragment("functionD", 1);
+    assertInFragment("functionA", 4);
+    assertNotInFragment("functionA", 2);
+    assertNotInFragment("functionA", 3);
+  }
+
+  public void testComplementsWithoutDependencyRecorder() throws UnableToCompleteException {
+    StringBuffer code = new StringBuffer();
+    code.append("package test;\n");
+    code.append("import com.google.gwt.core.client.GWT;\n");
+    code.append("import com.google.gwt.core.client.RunAsyncCallback;\n");
+    code.append("public class EntryPoint {\n");
+    code.append(functionA);
+    code.append(functionB);
+    code.append(functionC);
+    code.append(functionD);
+    code.append(initialA);
+    code.append("  public static void onModuleLoad() {\n");
+    code.append(createRunAsync("functionA();"));
+    code.append(createRunAsync("functionA(); functionB();"));
+    code.append(createRunAsync("functionB();"));
+    code.append(createRunAsync("functionC();"));
+    code.append(createRunAsync("functionD(); initialA();"));
+    code.append(createRunAsync("initialA();"));
+    code.append("  }\n");
+    code.append("}\n");
+
+    compileSnippet(code.toString());
+    List<Set<String>> recorded = getFragmentFunctions();
+
+    jsProgram = new JsProgram();
+    dependencyRecorder = MultipleDependencyGraphRecorder.NULL_RECORDER;
+    compileSnippet(code.toString());
+    assertEquals(recorded, getFragmentFunctions());
+    assertInFragment("functionC", 4);
+    assertInFragment("functionA", 7);
+  }
+
   private void assertFragmentCount(int num) {
     assertEquals(num, jsProgram.getFragmentCount());
   }
@@ -535,7 +641,29 @@ public class CodeSplitterTest extends JJSTestBase {
         jProgram, jsProgram, JsOutputOption.PRETTY, typeIdsByType, symbolTable, new PropertyOracle[]{
         new StaticPropertyOracle(orderedProps, orderedPropValues, configProps)}).getLeft();
     CodeSplitter.exec(logger, jProgram, jsProgram, map, expectedFragmentCount, leftOverMergeSize,
-        NULL_RECORDER);
+        dependencyRecorder);
+  }
+
+  /**
+   * Returns the names of the functions in each fragment. Type ids differ from one compile to the
+   * next, so the generated code cannot be compared directly.
+   */
+  private List<Set<String>> getFragmentFunctions() {
+    List<Set<String>> functions = Lists.newArrayList();
+    for (int i = 0; i < jsProgram.getFragmentCount(); i++) {
+      final Set<String> names = new TreeSet<String>();
+      new JsVisitor() {
+        @Override
+        public boolean visit(JsFunction x, JsContext ctx) {
+          if (x.getName() != null) {
+            names.add(x.getName().getShortIdent());
+          }
+          return false;
+        }
+      }.accept(jsProgram.getFragmentBlock(i));
+      functions.add(names);
+    }
+    return functions;
   }
 
   private static String createRunAsync(String cast, String body) {
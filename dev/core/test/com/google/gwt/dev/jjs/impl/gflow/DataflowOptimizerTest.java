@@ -131,6 +131,20 @@ public class DataflowOptimizerTest extends OptimizerTestBase {
         "int i; int j; return 1;");
   }
   
+  public void testNodeBudget() throws Exception {
+    maxNodes = 5;
+    optimize("int",
+        "int i = 1; int j = 0; while (j > 0) { if (i != 1) { i++; j++; } } return i;").into(
+        "int i = 1; int j = 0; while (j > 0) { if (i != 1) { i++; j++; } } return i;");
+  }
+
+  public void testStepBudget() throws Exception {
+    stepsPerNode = 1;
+    optimize("int",
+        "int i = 1; int j = 0; while (j > 0) { if (i != 1) { i++; j++; } } return i;").into(
+        "int i = 1; int j = 0; while (j > 0) { if (i != 1) { i++; j++; } } return i;");
+  }
+
   public void testComplexCode2() throws Exception {
     optimize("void",
         "boolean b = bar(); if (b) { baz(b); return; }").into(
@@ -425,8 +439,10 @@ public class DataflowOptimizerTest extends OptimizerTestBase {
     
   }
   
+  private int maxNodes = DataflowOptimizer.MAX_NODES;
   private boolean runDCE;
   private boolean runMethodInliner;
+  private int stepsPerNode = DataflowOptimizer.STEPS_PER_NODE;
 
   @Override
   protected boolean optimizeMethod(JProgram program, JMethod method) {
@@ -447,7 +463,8 @@ public class DataflowOptimizerTest extends OptimizerTestBase {
       didChange = didChange || optimizeChange;
     } while (optimizeChange);
 
-    didChange = DataflowOptimizer.exec(program, method).didChange() || didChange;
+    didChange = DataflowOptimizer.exec(program, method, maxNodes, stepsPerNode).didChange()
+        || didChange;
     return didChange;
   }
 }
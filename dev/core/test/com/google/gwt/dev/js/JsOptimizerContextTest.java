@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.js;
+
+import com.google.gwt.dev.jjs.SourceOrigin;
+import com.google.gwt.dev.jjs.impl.OptimizerStats;
+import com.google.gwt.dev.js.ast.JsContext;
+import com.google.gwt.dev.js.ast.JsExprStmt;
+import com.google.gwt.dev.js.ast.JsFunction;
+import com.google.gwt.dev.js.ast.JsModVisitor;
+import com.google.gwt.dev.js.ast.JsName;
+import com.google.gwt.dev.js.ast.JsNode;
+import com.google.gwt.dev.js.ast.JsNumberLiteral;
+import com.google.gwt.dev.js.ast.JsProgram;
+import com.google.gwt.dev.js.ast.JsStatement;
+import com.google.gwt.dev.js.ast.JsVisitor;
+import com.google.gwt.dev.util.DefaultTextOutput;
+import com.google.gwt.dev.util.TextOutput;
+
+import junit.framework.TestCase;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Tests {@link JsOptimizerContext}.
+ */
+public class JsOptimizerContextTest extends TestCase {
+
+  private static final String PROGRAM = ""
+      + "function a(x) { return x + 1; }"
+      + "function b(x) { return a(x) * 2; }"
+      + "function c() { return b(3); }"
+      + "function d(y) { if (false) { y = 1; } return c() + y; }"
+      + "function e() { return d(2); }"
+      + "function f() { var z = e(); return z; }"
+      + "function g(x) { if (x) { return g(x - 1); } return true && a(x); }"
+      + "function h() { return g(4) || false; }"
+      + "function unused() { return 1; }"
+      + "f(); h();";
+
+  private JsProgram program;
+
+  public void testChangedFunction() throws Exception {
+    program = parse("function a() { return 1; } function b() { return a(); }"
+        + "function c() { return 2; } b(); c();");
+    JsOptimizerContext optimizerCtx = new JsOptimizerContext(program);
+    assertFalse(optimizerCtx.hasPassHistory());
+    assertEquals(Collections.emptySet(), optimizerCtx.startPass("pass"));
+    assertTrue(optimizerCtx.hasPassHistory());
+    assertEquals(functions("a", "b", "c"), optimizerCtx.startPass("pass"));
+
+    incrementNumbers("a");
+    // The caller of a changed function is revisited too
+    assertEquals(functions("c"), optimizerCtx.startPass("pass"));
+    assertEquals(functions("a", "b", "c"), optimizerCtx.startPass("pass"));
+
+    // Each pass has its own history
+    assertEquals(Collections.emptySet(), optimizerCtx.startPass("other"));
+    optimizerCtx.clearPassHistory();
+    assertFalse(optimizerCtx.hasPassHistory());
+    assertEquals(Collections.emptySet(), optimizerCtx.startPass("pass"));
+  }
+
+  public void testRemovedCaller() throws Exception {
+    program = parse("function a() { return 1; } function b() { return a(); }"
+        + "function c() { return a(); } b();");
+    JsOptimizerContext optimizerCtx = new JsOptimizerContext(program);
+    optimizerCtx.startPass("pass");
+    assertFalse(optimizerCtx.getIndex().isSingleCaller(function("b")));
+
+    // b becomes the single caller of a once c is gone
+    assertTrue(JsUnusedFunctionRemover.exec(program, optimizerCtx).didChange());
+    assertEquals(functions("a"), optimizerCtx.startPass("pass"));
+    assertTrue(optimizerCtx.getIndex().isSingleCaller(function("b")));
+  }
+
+  public void testSameOutput() throws Exception {
+    assertEquals(optimize(PROGRAM, false), optimize(PROGRAM, true));
+  }
+
+  private Collection<JsFunction> functions(String... names) {
+    Collection<JsFunction> functions = new HashSet<JsFunction>();
+    for (String name : names) {
+      functions.add(function(name));
+    }
+    return functions;
+  }
+
+  private JsFunction function(String name) {
+    return (JsFunction) program.getScope().findExistingName(name).getStaticRef();
+  }
+
+  private void incrementNumbers(String name) {
+    new JsModVisitor() {
+      @Override
+      public void endVisit(JsNumberLiteral x, JsContext ctx) {
+        ctx.replaceMe(new JsNumberLiteral(x.getSourceInfo(), x.getValue() + 1));
+      }
+    }.accept(function(name));
+  }
+
+  private String optimize(String js, boolean incremental) throws Exception {
+    program = parse(js);
+    Collection<JsNode> toInline = Arrays.<JsNode> asList(function("f"), function("h"));
+    JsOptimizerContext optimizerCtx = incremental ? new JsOptimizerContext(program) : null;
+    while (true) {
+      boolean fullPass = optimizerCtx == null || !optimizerCtx.hasPassHistory();
+      OptimizerStats stats = new OptimizerStats("Pass");
+      stats.add(JsStaticEval.exec(program, optimizerCtx));
+      stats.add(JsInliner.exec(program, toInline, optimizerCtx));
+      stats.add(JsUnusedFunctionRemover.exec(program, optimizerCtx));
+      if (!stats.didChange()) {
+        if (fullPass) {
+          break;
+        }
+        optimizerCtx.clearPassHistory();
+      }
+    }
+    TextOutput text = new DefaultTextOutput(true);
+    new JsSourceGenerationVisitor(text).accept(program);
+    return text.toString();
+  }
+
+  private JsProgram parse(String js) throws Exception {
+    JsProgram program = new JsProgram();
+    List<JsStatement> statements =
+        JsParser.parse(SourceOrigin.UNKNOWN, program.getScope(), new StringReader(js));
+    program.getGlobalBlock().getStatements().addAll(statements);
+    JsSymbolResolver.exec(program);
+    new JsVisitor() {
+      @Override
+      public void endVisit(JsExprStmt x, JsContext ctx) {
+        if (x.getExpression() instanceof JsFunction) {
+          JsFunction function = (JsFunction) x.getExpression();
+          JsName name = function.getName();
+          if (name != null) {
+            name.setStaticRef(function);
+          }
+        }
+      }
+    }.accept(program);
+    return program;
+  }
+}
@@ -16,9 +16,12 @@
 package com.google.gwt.dev.resource.impl;
 
 import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Map;
 import java.util.Set;
 
 public class ClassPathEntryTest extends AbstractResourceOrientedTestBase {
@@ -35,6 +38,48 @@ public class ClassPathEntryTest extends AbstractResourceOrientedTestBase {
     testAllCpe2FilesFound(getClassPathEntry2AsZip());
   }
 
+  public void testDirectoryRescan() throws IOException {
+    TreeLogger logger = createTestTreeLogger();
+    File root = File.createTempFile("ClassPathEntryTest", "");
+    root.delete();
+    try {
+      File pkg = new File(root, "com/example");
+      pkg.mkdirs();
+      File foo = new File(pkg, "Foo.java");
+      Util.writeStringAsFile(foo, "class Foo {}");
+      // Make the directories look like they haven't changed in a while.
+      long past = System.currentTimeMillis() - 60 * 1000;
+      pkg.setLastModified(past);
+      pkg.getParentFile().setLastModified(past);
+      root.setLastModified(past);
+
+      DirectoryClassPathEntry cpe = new DirectoryClassPathEntry(root);
+      PathPrefixSet pps = new PathPrefixSet();
+      pps.add(new PathPrefix("com/example/", null));
+      Map<AbstractResource, PathPrefix> first = cpe.findApplicableResources(logger, pps);
+      assertEquals(1, first.size());
+
+      // Unchanged directories are not scanned again, so the very same resources come back.
+      Map<AbstractResource, PathPrefix> second = cpe.findApplicableResources(logger, pps);
+      assertEquals(first.keySet(), second.keySet());
+
+      // A new file changes the modification time of its directory.
+      Util.writeStringAsFile(new File(pkg, "Bar.java"), "class Bar {}");
+      pkg.setLastModified(past + 1000);
+      Set<AbstractResource> third = cpe.findApplicableResources(logger, pps).keySet();
+      assertEquals(2, third.size());
+      assertPathIncluded(third, "com/example/Bar.java");
+
+      // So does a deleted one.
+      foo.delete();
+      Set<AbstractResource> fourth = cpe.findApplicableResources(logger, pps).keySet();
+      assertEquals(1, fourth.size());
+      assertPathNotIncluded(fourth, "com/example/Foo.java");
+    } finally {
+      Util.recursiveDelete(root, false);
+    }
+  }
+
   public void testPathPrefixSetChanges() throws IOException, URISyntaxException {
     ClassPathEntry cpe1jar = getClassPathEntry1AsJar();
     ClassPathEntry cpe1dir = getClassPathEntry1AsDirectory();
@@ -30,6 +30,7 @@ import com.google.gwt.dev.shell.BrowserChannel.InvokeSpecialMessage;
 import com.google.gwt.dev.shell.BrowserChannel.JavaObjectRef;
 import com.google.gwt.dev.shell.BrowserChannel.LoadJsniMessage;
 import com.google.gwt.dev.shell.BrowserChannel.LoadModuleMessage;
+import com.google.gwt.dev.shell.BrowserChannel.Message;
 import com.google.gwt.dev.shell.BrowserChannel.OldLoadModuleMessage;
 import com.google.gwt.dev.shell.BrowserChannel.ProtocolVersionMessage;
 import com.google.gwt.dev.shell.BrowserChannel.QuitMessage;
@@ -40,6 +41,7 @@ import com.google.gwt.dev.shell.BrowserChannel.UserAgentIconMessage;
 
 import junit.framework.TestCase;
 
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -59,6 +61,30 @@ public class BrowserChannelTest extends TestCase {
       bufferStream.getOutputStream());
   private TestBrowserChannel channel;
 
+  public void testBatchedMessages() throws IOException,
+      BrowserChannelException {
+    TestBrowserChannel batchedChannel = new TestBrowserChannel(
+        bufferStream.getInputStream(), new BufferedOutputStream(
+            bufferStream.getOutputStream()));
+    int[] ids = new int[] { 42 };
+    new FreeMessage(batchedChannel, ids).send();
+    Value val = new Value();
+    val.setInt(7);
+    new ReturnMessage(batchedChannel, false, val).send();
+    // nothing is sent until the channel waits for the other side
+    assertEquals(-1, bufferStream.getInputStream().read());
+
+    MessageType type = Message.readMessageType(
+        batchedChannel.getStreamFromOtherSide());
+    assertEquals(MessageType.FREE_VALUE, type);
+    FreeMessage freeMessage = FreeMessage.receive(batchedChannel);
+    assertTrue(Arrays.equals(ids, freeMessage.getIds()));
+    type = Message.readMessageType(batchedChannel.getStreamFromOtherSide());
+    assertEquals(MessageType.RETURN, type);
+    ReturnMessage returnMessage = ReturnMessage.receive(batchedChannel);
+    assertEquals(7, returnMessage.getReturnValue().getInt());
+  }
+
   public void testBooleanValue() throws IOException {
     Value val = new Value();
     val.setBoolean(true);
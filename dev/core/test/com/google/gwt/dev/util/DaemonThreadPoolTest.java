@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Tests {@link DaemonThreadPool}.
+ */
+public class DaemonThreadPoolTest extends TestCase {
+
+  private final DaemonThreadPool pool = new DaemonThreadPool("Test", 3);
+
+  public void testCheckedException() throws Exception {
+    List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+    tasks.add(new Callable<String>() {
+      @Override
+      public String call() throws IOException {
+        throw new IOException();
+      }
+    });
+    try {
+      pool.invokeAll(tasks, "testing");
+      fail("Expected an exception");
+    } catch (RuntimeException expected) {
+      assertEquals("Exception testing", expected.getMessage());
+      assertTrue(expected.getCause() instanceof IOException);
+    }
+  }
+
+  public void testError() throws Exception {
+    List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+    tasks.add(new Callable<String>() {
+      @Override
+      public String call() {
+        throw new AssertionError("expected");
+      }
+    });
+    try {
+      pool.invokeAll(tasks, "testing");
+      fail("Expected an error");
+    } catch (AssertionError expected) {
+      assertEquals("expected", expected.getMessage());
+    }
+  }
+
+  public void testInvokeAll() throws Exception {
+    List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+    for (int i = 0; i < 10; i++) {
+      final int task = i;
+      tasks.add(new Callable<String>() {
+        @Override
+        public String call() {
+          Thread thread = Thread.currentThread();
+          assertTrue(thread.isDaemon());
+          assertTrue(thread.getName().startsWith("Test-"));
+          return "task" + task;
+        }
+      });
+    }
+    assertEquals(Arrays.asList("task0", "task1", "task2", "task3", "task4", "task5", "task6",
+        "task7", "task8", "task9"), pool.invokeAll(tasks, "testing"));
+
+    // The pool starts over after it's shut down.
+    pool.shutdown();
+    assertEquals(Arrays.asList("task0"), pool.invokeAll(tasks.subList(0, 1), "testing"));
+  }
+
+  public void testUncheckedException() throws Exception {
+    List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+    tasks.add(new Callable<String>() {
+      @Override
+      public String call() {
+        throw new IllegalStateException();
+      }
+    });
+    try {
+      pool.invokeAll(tasks, "testing");
+      fail("Expected an exception");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    pool.shutdown();
+    super.tearDown();
+  }
+}
@@ -17,7 +17,9 @@ package com.google.gwt.dev.util;
 
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Tests {@link DiskCache}.
@@ -49,6 +51,22 @@ public class DiskCacheTest extends TestCase {
     }
   }
 
+  public void testObjects() {
+    List<String> list = new ArrayList<String>();
+    list.add(new String("interned"));
+    list.add(new String("interned"));
+    long token = diskCache.writeObject(list);
+
+    List<?> copy = diskCache.readObject(token, List.class);
+    assertEquals(list, copy);
+    assertNotSame(copy.get(0), copy.get(1));
+
+    List<?> internedCopy = diskCache.readObjectInterningStrings(token, List.class);
+    assertEquals(list, internedCopy);
+    assertSame(internedCopy.get(0), internedCopy.get(1));
+    assertSame(StringInterner.get().intern("interned"), internedCopy.get(0));
+  }
+
   public void testStrings() {
     String a = "";
     String b = "abjdsfkl;jasdf";
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests {@link StringInterningObjectInputStream}.
+ */
+public class StringInterningObjectInputStreamTest extends TestCase {
+
+  public void testSharedStrings() throws Exception {
+    List<Object> list = new ArrayList<Object>();
+    list.add(new String("com.example.Foo"));
+    list.add(42);
+    byte[] bytes = serialize(list);
+
+    List<?> first = deserialize(bytes);
+    List<?> second = deserialize(bytes);
+    assertEquals(list, first);
+    assertNotSame(first, second);
+    assertSame(first.get(0), second.get(0));
+    assertSame(StringInterner.get().intern("com.example.Foo"), first.get(0));
+  }
+
+  private static List<?> deserialize(byte[] bytes) throws Exception {
+    StringInterningObjectInputStream in =
+        new StringInterningObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return (List<?>) in.readObject();
+    } finally {
+      in.close();
+    }
+  }
+
+  private static byte[] serialize(Object object) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(object);
+    out.close();
+    return bytes.toByteArray();
+  }
+}
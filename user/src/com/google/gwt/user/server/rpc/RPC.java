@@ -605,8 +605,7 @@ public final class RPC {
       stream.serializeValue(object, responseClass);
     }
 
-    String bufferStr = (wasThrown ? "//EX" : "//OK") + stream.toString();
-    return bufferStr;
+    return stream.toString(wasThrown ? "//EX" : "//OK");
   }
 
   private static String formatIllegalAccessErrorMessage(Object target, Method serviceMethod) {
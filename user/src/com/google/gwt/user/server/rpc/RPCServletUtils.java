@@ -18,8 +18,12 @@ package com.google.gwt.user.server.rpc;
 import com.google.gwt.core.shared.impl.StringCase;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.nio.charset.Charset;
 import java.util.concurrent.ConcurrentHashMap;
@@ -35,6 +39,26 @@ import javax.servlet.http.HttpServletResponse;
  * the RPC system.
  */
 public class RPCServletUtils {
+
+  /**
+   * Lets the encoding and compressing streams be closed, releasing their
+   * resources, without closing the response's output stream underneath them.
+   */
+  private static class UnclosableOutputStream extends FilterOutputStream {
+    UnclosableOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+  }
   
   public static final String CHARSET_UTF8_NAME = "UTF-8";
   
@@ -66,12 +90,30 @@ public class RPCServletUtils {
 
   private static final String GWT_RPC_CONTENT_TYPE = "text/x-gwt-rpc";
 
+  /**
+   * The largest request buffer allocated up front from the request's declared
+   * content length; longer requests grow the buffer as their content arrives.
+   * Kept small since the declared length comes from the client and can't be
+   * trusted before any content has been read.
+   */
+  private static final int MAX_PRESIZED_CONTENT_LENGTH = 64 * 1024;
+
   /**
    * Controls the compression threshold at and below which no compression will
    * take place.
    */
   private static final int UNCOMPRESSED_BYTE_SIZE_LIMIT = 256;
 
+  /**
+   * Per-thread buffer used to hand response content to the encoder in chunks.
+   */
+  private static final ThreadLocal<char[]> CHAR_BUFFER = new ThreadLocal<char[]>() {
+    @Override
+    protected char[] initialValue() {
+      return new char[BUFFER_SIZE];
+    }
+  };
+
   /**
    * Contains cached mappings from character set name to Charset. The
    * null key maps to the default UTF-8 character set.
@@ -218,7 +260,11 @@ public class RPCServletUtils {
      */
     InputStream in = request.getInputStream();
     byte[] buffer = new byte[BUFFER_SIZE];
-    ByteArrayOutputStream out = new  ByteArrayOutputStream(BUFFER_SIZE);
+    // Size the buffer up front when the length is known, so that large
+    // payloads aren't copied as it grows.
+    int contentLength = request.getContentLength();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(
+        contentLength > 0 ? Math.min(contentLength, MAX_PRESIZED_CONTENT_LENGTH) : BUFFER_SIZE);
     try {
       while (true) {
         int byteCount = in.read(buffer);
@@ -227,7 +273,8 @@ public class RPCServletUtils {
         }
         out.write(buffer, 0, byteCount);
       }
-      return new String(out.toByteArray(), getCharset(expectedCharSet));
+      // Decode straight from the buffer rather than from a copy of it.
+      return out.toString(getCharset(expectedCharSet).name());
     } finally {
       if (in != null) {
         in.close();
@@ -322,6 +369,10 @@ public class RPCServletUtils {
    * Write the response content into the {@link HttpServletResponse}. If
    * <code>gzipResponse</code> is <code>true</code>, the response content will
    * be gzipped prior to being written into the response.
+   * <p>
+   * The content is encoded in small chunks, straight into the response's
+   * output stream or, when gzipped, into the compressed buffer, so no
+   * uncompressed copy of the full response is made.
    *
    * @param servletContext servlet context for this response
    * @param response response instance
@@ -334,47 +385,35 @@ public class RPCServletUtils {
   public static void writeResponse(ServletContext servletContext,
       HttpServletResponse response, String responseContent, boolean gzipResponse)
       throws IOException {
-
-    byte[] responseBytes = responseContent.getBytes(CHARSET_UTF8);
+    ByteArrayOutputStream compressed = null;
     if (gzipResponse) {
       // Compress the reply and adjust headers.
       //
-      ByteArrayOutputStream output = null;
-      GZIPOutputStream gzipOutputStream = null;
-      Throwable caught = null;
+      compressed = new ByteArrayOutputStream(BUFFER_SIZE);
       try {
-        output = new ByteArrayOutputStream(responseBytes.length);
-        gzipOutputStream = new GZIPOutputStream(output);
-        gzipOutputStream.write(responseBytes);
-        gzipOutputStream.finish();
-        gzipOutputStream.flush();
-        setGzipEncodingHeader(response);
-        responseBytes = output.toByteArray();
+        writeUtf8(responseContent, new GZIPOutputStream(compressed, BUFFER_SIZE));
       } catch (IOException e) {
-        caught = e;
-      } finally {
-        if (null != gzipOutputStream) {
-          gzipOutputStream.close();
-        }
-        if (null != output) {
-          output.close();
-        }
-      }
-
-      if (caught != null) {
-        servletContext.log("Unable to compress response", caught);
+        servletContext.log("Unable to compress response", e);
         response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         return;
       }
+      setGzipEncodingHeader(response);
+      response.setContentLength(compressed.size());
+    } else {
+      response.setContentLength(getUtf8Length(responseContent));
     }
 
     // Send the reply.
     //
-    response.setContentLength(responseBytes.length);
     response.setContentType(CONTENT_TYPE_APPLICATION_JSON_UTF8);
     response.setStatus(HttpServletResponse.SC_OK);
     response.setHeader(CONTENT_DISPOSITION, ATTACHMENT);
-    response.getOutputStream().write(responseBytes);
+    if (compressed != null) {
+      compressed.writeTo(response.getOutputStream());
+    } else {
+      // Closing the writer must leave the response's output stream open.
+      writeUtf8(responseContent, new UnclosableOutputStream(response.getOutputStream()));
+    }
   }
 
   /**
@@ -408,6 +447,32 @@ public class RPCServletUtils {
     }
   }
 
+  /**
+   * Returns the number of bytes in the UTF-8 encoding of a string. Unpaired
+   * surrogates count as one byte, since the encoder replaces them with '?'.
+   * Package protected for use in tests.
+   */
+  static int getUtf8Length(String content) {
+    int byteLength = 0;
+    for (int i = 0, length = content.length(); i < length; i++) {
+      char c = content.charAt(i);
+      if (c < 0x80) {
+        byteLength += 1;
+      } else if (c < 0x800) {
+        byteLength += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(content.charAt(i + 1))) {
+        byteLength += 4;
+        i++;
+      } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+        byteLength += 1;
+      } else {
+        byteLength += 3;
+      }
+    }
+    return byteLength;
+  }
+
   /**
    * Performs validation of the character encoding, ignoring case.
    *
@@ -480,6 +545,20 @@ public class RPCServletUtils {
     }
   }
 
+  /**
+   * Encodes a string as UTF-8 into a stream in chunks, then closes the stream.
+   */
+  private static void writeUtf8(String content, OutputStream out) throws IOException {
+    Writer writer = new OutputStreamWriter(out, CHARSET_UTF8);
+    char[] buffer = CHAR_BUFFER.get();
+    for (int start = 0, length = content.length(); start < length; start += buffer.length) {
+      int end = Math.min(length, start + buffer.length);
+      content.getChars(start, end, buffer, 0);
+      writer.write(buffer, 0, end - start);
+    }
+    writer.close();
+  }
+
   private RPCServletUtils() {
     // Not instantiable
   }
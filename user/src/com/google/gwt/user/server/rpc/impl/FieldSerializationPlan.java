@@ -0,0 +1,297 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The precomputed plan for reading and writing the serializable fields
+ * declared by one class, in the order they appear in the RPC stream.
+ * <p>
+ * Building the plan does all the per-class reflective work once: it applies
+ * the field serialization policy, overrides access restrictions, looks up the
+ * generic type of every field, and picks a typed accessor for it, so that
+ * primitive fields are read and written without going through boxed values.
+ */
+final class FieldSerializationPlan {
+
+  /**
+   * Reads or writes one serializable field.
+   */
+  static final class FieldAccessor {
+    private final Field field;
+    private final Type genericType;
+    private final Kind kind;
+
+    private FieldAccessor(Field field) {
+      this.field = field;
+      this.genericType = field.getGenericType();
+      Kind kind = CLASS_TO_KIND.get(field.getType());
+      this.kind = kind == null ? Kind.OBJECT : kind;
+    }
+
+    Field getField() {
+      return field;
+    }
+
+    String getName() {
+      return field.getName();
+    }
+
+    /**
+     * Reads the next value of the field from the stream into an instance.
+     */
+    void read(ServerSerializationStreamReader stream, Object instance,
+        DequeMap<TypeVariable<?>, Type> resolvedTypes) throws SerializationException,
+        IllegalAccessException {
+      kind.read(stream, field, genericType, instance, resolvedTypes);
+    }
+
+    /**
+     * Reads the next value of the field from the stream, without storing it.
+     */
+    Object readValue(ServerSerializationStreamReader stream,
+        DequeMap<TypeVariable<?>, Type> resolvedTypes) throws SerializationException {
+      return stream.deserializeValue(field.getType(), genericType, resolvedTypes);
+    }
+
+    /**
+     * Writes the value of the field in an instance to the stream.
+     */
+    void write(ServerSerializationStreamWriter stream, Object instance)
+        throws SerializationException, IllegalAccessException {
+      kind.write(stream, field, instance);
+    }
+  }
+
+  /**
+   * Typed field accessors, one for each kind of value the stream
+   * distinguishes.
+   */
+  private enum Kind {
+    BOOLEAN {
+      @Override
+      void read(ServerSerializationStreamReader stream, Field field, Type genericType,
+          Object instance, DequeMap<TypeVariable<?>, Type> resolvedTypes)
+          throws SerializationException, IllegalAccessException {
+        field.setBoolean(instance, stream.readBoolean());
+      }
+
+      @Override
+      void write(ServerSerializationStreamWriter stream, Field field, Object instance)
+          throws IllegalAccessException {
+        stream.writeBoolean(field.getBoolean(instance));
+      }
+    },
+    BYTE {
+      @Override
+      void read(ServerSerializationStreamReader stream, Field field, Type genericType,
+          Object instance, DequeMap<TypeVariable<?>, Type> resolvedTypes)
+          throws SerializationException, IllegalAccessException {
+        field.setByte(instance, stream.readByte());
+      }
+
+      @Override
+      void write(ServerSerializationStreamWriter stream, Field field, Object instance)
+          throws IllegalAccessException {
+        stream.writeByte(field.getByte(instance));
+      }
+    },
+    CHAR {
+      @Override
+      void read(ServerSerializationStreamReader stream, Field field, Type genericType,
+          Object instance, DequeMap<TypeVariable<?>, Type> resolvedTypes)
+          throws SerializationException, IllegalAccessException {
+        field.setChar(instance, stream.readChar());
+      }
+
+      @Override
+      void write(ServerSerializationStreamWriter stream, Field field, Object instance)
+          throws IllegalAccessException {
+        stream.writeChar(field.getChar(instance));
+      }
+    },
+    DOUBLE {
+      @Override
+      void read(ServerSerializationStreamReader stream, Field field, Type genericType,
+          Object instance, DequeMap<TypeVariable<?>, Type> resolvedTypes)
+          throws SerializationException, IllegalAccessException {
+        field.setDouble(instance, stream.readDouble());
+      }
+
+      @Override
+      void write(ServerSerializationStreamWriter stream, Field field, Object instance)
+          throws IllegalAccessException {
+        stream.writeDouble(field.getDouble(instance));
+      }
+    },
+    FLOAT {
+      @Override
+      void read(ServerSerializationStreamReader stream, Field field, Type genericType,
+          Object instance, DequeMap<TypeVariable<?>, Type> resolvedTypes)
+          throws SerializationException, IllegalAccessException {
+        field.setFloat(instance, stream.readFloat());
+      }
+
+      @Override
+      void write(ServerSerializationStreamWriter stream, Field field, Object instance)
+          throws IllegalAccessException {
+        stream.writeFloat(field.getFloat(instance));
+      }
+    },
+    INT {
+      @Override
+      void read(ServerSerializationStreamReader stream, Field field, Type genericType,
+          Object instance, DequeMap<TypeVariable<?>, Type> resolvedTypes)
+          throws SerializationException, IllegalAccessException {
+        field.setInt(instance, stream.readInt());
+      }
+
+      @Override
+      void write(ServerSerializationStreamWriter stream, Field field, Object instance)
+          throws IllegalAccessException {
+        stream.writeInt(field.getInt(instance));
+      }
+    },
+    LONG {
+      @Override
+      void read(ServerSerializationStreamReader stream, Field field, Type genericType,
+          Object instance, DequeMap<TypeVariable<?>, Type> resolvedTypes)
+          throws SerializationException, IllegalAccessException {
+        field.setLong(instance, stream.readLong());
+      }
+
+      @Override
+      void write(ServerSerializationStreamWriter stream, Field field, Object instance)
+          throws IllegalAccessException {
+        stream.writeLong(field.getLong(instance));
+      }
+    },
+    OBJECT {
+      @Override
+      void read(ServerSerializationStreamReader stream, Field field, Type genericType,
+          Object instance, DequeMap<TypeVariable<?>, Type> resolvedTypes)
+          throws SerializationException, IllegalAccessException {
+        field.set(instance, stream.readObject(genericType, resolvedTypes));
+      }
+
+      @Override
+      void write(ServerSerializationStreamWriter stream, Field field, Object instance)
+          throws SerializationException, IllegalAccessException {
+        stream.writeObject(field.get(instance));
+      }
+    },
+    SHORT {
+      @Override
+      void read(ServerSerializationStreamReader stream, Field field, Type genericType,
+          Object instance, DequeMap<TypeVariable<?>, Type> resolvedTypes)
+          throws SerializationException, IllegalAccessException {
+        field.setShort(instance, stream.readShort());
+      }
+
+      @Override
+      void write(ServerSerializationStreamWriter stream, Field field, Object instance)
+          throws IllegalAccessException {
+        stream.writeShort(field.getShort(instance));
+      }
+    },
+    STRING {
+      @Override
+      void read(ServerSerializationStreamReader stream, Field field, Type genericType,
+          Object instance, DequeMap<TypeVariable<?>, Type> resolvedTypes)
+          throws SerializationException, IllegalAccessException {
+        field.set(instance, stream.readString());
+      }
+
+      @Override
+      void write(ServerSerializationStreamWriter stream, Field field, Object instance)
+          throws IllegalAccessException {
+        stream.writeString((String) field.get(instance));
+      }
+    };
+
+    abstract void read(ServerSerializationStreamReader stream, Field field, Type genericType,
+        Object instance, DequeMap<TypeVariable<?>, Type> resolvedTypes)
+        throws SerializationException, IllegalAccessException;
+
+    abstract void write(ServerSerializationStreamWriter stream, Field field, Object instance)
+        throws SerializationException, IllegalAccessException;
+  }
+
+  private static final Map<Class<?>, Kind> CLASS_TO_KIND = new IdentityHashMap<Class<?>, Kind>();
+
+  /**
+   * A permanent cache of the plans of all serialized classes. This is safe to
+   * do because a Class is guaranteed not to change within the lifetime of a
+   * ClassLoader (and thus, this Map).
+   */
+  private static final Map<Class<?>, FieldSerializationPlan> classPlanCache =
+      new ConcurrentHashMap<Class<?>, FieldSerializationPlan>();
+
+  static {
+    CLASS_TO_KIND.put(boolean.class, Kind.BOOLEAN);
+    CLASS_TO_KIND.put(byte.class, Kind.BYTE);
+    CLASS_TO_KIND.put(char.class, Kind.CHAR);
+    CLASS_TO_KIND.put(double.class, Kind.DOUBLE);
+    CLASS_TO_KIND.put(float.class, Kind.FLOAT);
+    CLASS_TO_KIND.put(int.class, Kind.INT);
+    CLASS_TO_KIND.put(long.class, Kind.LONG);
+    CLASS_TO_KIND.put(short.class, Kind.SHORT);
+    CLASS_TO_KIND.put(String.class, Kind.STRING);
+  }
+
+  /**
+   * Returns the plan for the fields declared by a class.
+   */
+  static FieldSerializationPlan get(Class<?> clazz) {
+    FieldSerializationPlan plan = classPlanCache.get(clazz);
+    if (plan == null) {
+      plan = new FieldSerializationPlan(clazz);
+      classPlanCache.put(clazz, plan);
+    }
+    return plan;
+  }
+
+  private final FieldAccessor[] fields;
+
+  private FieldSerializationPlan(Class<?> clazz) {
+    Field[] serializableFields = SerializabilityUtil.applyFieldSerializationPolicy(clazz);
+    fields = new FieldAccessor[serializableFields.length];
+    for (int i = 0; i < serializableFields.length; i++) {
+      Field field = serializableFields[i];
+      if (!field.isAccessible() && !Modifier.isPublic(field.getModifiers())) {
+        // Override access restrictions
+        field.setAccessible(true);
+      }
+      fields[i] = new FieldAccessor(field);
+    }
+  }
+
+  /**
+   * Returns the accessors of the serializable fields, in stream order.
+   */
+  FieldAccessor[] getFields() {
+    return fields;
+  }
+}
@@ -39,6 +39,7 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -90,6 +91,15 @@ public class SerializabilityUtil {
   private static final Map<Class<?>, Class<?>> classServerCustomSerializerCache =
       new ConcurrentHashMap<Class<?>, Class<?>>();
 
+  /**
+   * A permanent cache of the type variable bindings contributed by the generic
+   * superclass and interfaces of classes, as pairs of a {@link TypeVariable}
+   * followed by its binding. This is safe to do because a Class is guaranteed
+   * not to change within the lifetime of a ClassLoader (and thus, this Map).
+   */
+  private static final Map<Class<?>, Type[]> classSupertypeBindingsCache =
+      new ConcurrentHashMap<Class<?>, Type[]>();
+
   /**
    * Map of {@link Class} objects to singleton instances of that
    * {@link CustomFieldSerializer}.
@@ -925,6 +935,63 @@ public class SerializabilityUtil {
     }
   }
 
+  /**
+   * Adds or removes type variable bindings computed by
+   * {@link #getSupertypeBindings(Class)}.
+   */
+  private static void applyBindings(Type[] bindings,
+      DequeMap<TypeVariable<?>, Type> resolvedTypes, boolean addTypes) {
+    for (int i = 0; i < bindings.length; i += 2) {
+      TypeVariable<?> variableType = (TypeVariable<?>) bindings[i];
+      if (addTypes) {
+        resolvedTypes.add(variableType, bindings[i + 1]);
+      } else {
+        resolvedTypes.remove(variableType);
+      }
+    }
+  }
+
+  /**
+   * Records the bindings {@link #resolveTypesWorker} would add for a type, in
+   * the order it would add them.
+   */
+  private static void collectBindings(Type type, List<Type> bindings) {
+    if (type instanceof GenericArrayType) {
+      collectBindings(((GenericArrayType) type).getGenericComponentType(), bindings);
+    } else if (type instanceof ParameterizedType) {
+      ParameterizedType paramType = (ParameterizedType) type;
+      if (paramType.getRawType() instanceof Class) {
+        Class<?> rawClass = (Class<?>) paramType.getRawType();
+        TypeVariable<?>[] classGenericTypes = rawClass.getTypeParameters();
+        Type[] actualTypes = paramType.getActualTypeArguments();
+        for (int i = 0; i < actualTypes.length; ++i) {
+          bindings.add(classGenericTypes[i]);
+          bindings.add(actualTypes[i]);
+        }
+        bindings.addAll(Arrays.asList(getSupertypeBindings(rawClass)));
+      }
+    } else if (type instanceof WildcardType) {
+      WildcardType wildcardType = (WildcardType) type;
+      for (Type bound : wildcardType.getLowerBounds()) {
+        collectBindings(bound, bindings);
+      }
+      for (Type bound : wildcardType.getUpperBounds()) {
+        collectBindings(bound, bindings);
+      }
+    } else if (type instanceof TypeVariable) {
+      for (Type bound : ((TypeVariable<?>) type).getBounds()) {
+        collectBindings(bound, bindings);
+      }
+    } else if (type instanceof Class) {
+      Class<?> classType = (Class<?>) type;
+      for (TypeVariable<?> classParamType : classType.getTypeParameters()) {
+        bindings.add(classParamType);
+        bindings.add(classParamType);
+      }
+      bindings.addAll(Arrays.asList(getSupertypeBindings(classType)));
+    }
+  }
+
   private static Class<?> getCustomFieldSerializer(ClassLoader classLoader,
       String qualifiedSerialzierName) {
     try {
@@ -935,6 +1002,30 @@ public class SerializabilityUtil {
     }
   }
 
+  /**
+   * Returns the type variable bindings contributed by the generic superclass
+   * and interfaces of a class, which are the same every time the class is
+   * resolved. Walking the hierarchy once per class rather than once per
+   * deserialized instance keeps {@link #resolveTypes} and
+   * {@link #releaseTypes} cheap.
+   */
+  private static Type[] getSupertypeBindings(Class<?> clazz) {
+    Type[] bindings = classSupertypeBindingsCache.get(clazz);
+    if (bindings == null) {
+      List<Type> bindingList = new ArrayList<Type>();
+      Type superGenericType = clazz.getGenericSuperclass();
+      if (superGenericType != null) {
+        collectBindings(superGenericType, bindingList);
+      }
+      for (Type interfaceType : clazz.getGenericInterfaces()) {
+        collectBindings(interfaceType, bindingList);
+      }
+      bindings = bindingList.toArray(new Type[bindingList.size()]);
+      classSupertypeBindingsCache.put(clazz, bindings);
+    }
+    return bindings;
+  }
+
   private static void resolveTypesWorker(Type methodType,
       DequeMap<TypeVariable<?>, Type> resolvedTypes, boolean addTypes) {
     if (methodType instanceof GenericArrayType) {
@@ -957,16 +1048,7 @@ public class SerializabilityUtil {
           }
         }
 
-        Class<?> superClass = rawClass.getSuperclass();
-        if (superClass != null) {
-          Type superGenericType = rawClass.getGenericSuperclass();
-          SerializabilityUtil.resolveTypesWorker(superGenericType, resolvedTypes, addTypes);
-        }
-
-        Type[] interfaceTypes = rawClass.getGenericInterfaces();
-        for (Type interfaceType : interfaceTypes) {
-          SerializabilityUtil.resolveTypesWorker(interfaceType, resolvedTypes, addTypes);
-        }
+        applyBindings(getSupertypeBindings(rawClass), resolvedTypes, addTypes);
       }
     } else if (methodType instanceof WildcardType) {
       WildcardType wildcardType = (WildcardType) methodType;
@@ -997,15 +1079,7 @@ public class SerializabilityUtil {
         }
       }
 
-      Type superGenericType = classType.getGenericSuperclass();
-      if (superGenericType != null) {
-        SerializabilityUtil.resolveTypesWorker(superGenericType, resolvedTypes, addTypes);
-      }
-
-      Type[] interfaceTypes = classType.getGenericInterfaces();
-      for (Type interfaceType : interfaceTypes) {
-        SerializabilityUtil.resolveTypesWorker(interfaceType, resolvedTypes, addTypes);
-      }
+      applyBindings(getSupertypeBindings(classType), resolvedTypes, addTypes);
     }
   }
 }
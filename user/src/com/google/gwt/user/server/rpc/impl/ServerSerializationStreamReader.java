@@ -25,6 +25,7 @@ import com.google.gwt.user.server.rpc.RPC;
 import com.google.gwt.user.server.rpc.SerializationPolicy;
 import com.google.gwt.user.server.rpc.SerializationPolicyProvider;
 import com.google.gwt.user.server.rpc.ServerCustomFieldSerializer;
+import com.google.gwt.user.server.rpc.impl.FieldSerializationPlan.FieldAccessor;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -35,10 +36,8 @@ import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
@@ -378,11 +377,24 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
   private final Map<Class<?>, Map<String, Method>> settersByClass =
       new HashMap<Class<?>, Map<String, Method>>();
 
+  /**
+   * The payload being read. Tokens are located and parsed in place, so only
+   * the tokens that are read as strings are ever copied out of it.
+   */
+  private String encodedTokens;
+
   private String[] stringTable;
 
-  private final ArrayList<String> tokenList = new ArrayList<String>();
+  /**
+   * The number of tokens in {@link #encodedTokens}, or -1 if they haven't been
+   * counted yet.
+   */
+  private int tokenCount;
 
-  private int tokenListIndex;
+  /**
+   * The offset of the next token in {@link #encodedTokens}.
+   */
+  private int tokenPosition;
 
   {
     CLASS_TO_VECTOR_READER.put(boolean[].class, VectorReader.BOOLEAN_VECTOR);
@@ -436,7 +448,16 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
   }
 
   public int getNumberOfTokens() {
-    return tokenList.size();
+    if (tokenCount < 0) {
+      tokenCount = 0;
+      if (encodedTokens != null) {
+        for (int idx = encodedTokens.indexOf(RPC_SEPARATOR_CHAR); idx != -1;
+            idx = encodedTokens.indexOf(RPC_SEPARATOR_CHAR, idx + 1)) {
+          ++tokenCount;
+        }
+      }
+    }
+    return tokenCount;
   }
 
   public SerializationPolicy getSerializationPolicy() {
@@ -445,20 +466,16 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   @Override
   public void prepareToRead(String encodedTokens) throws SerializationException {
-    tokenList.clear();
-    tokenListIndex = 0;
+    this.encodedTokens = encodedTokens;
+    tokenCount = -1;
+    tokenPosition = 0;
     stringTable = null;
 
-    int idx = 0, nextIdx;
-    while (-1 != (nextIdx = encodedTokens.indexOf(RPC_SEPARATOR_CHAR, idx))) {
-      String current = encodedTokens.substring(idx, nextIdx);
-      tokenList.add(current);
-      idx = nextIdx + 1;
-    }
-    if (idx == 0) {
+    if (encodedTokens.indexOf(RPC_SEPARATOR_CHAR) == -1) {
       // Didn't find any separator, assume an older version with different
       // separators and get the version as the sequence of digits at the
       // beginning of the encoded string.
+      int idx = 0;
       while (idx < encodedTokens.length() && Character.isDigit(encodedTokens.charAt(idx))) {
         ++idx;
       }
@@ -513,17 +530,14 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   @Override
   public boolean readBoolean() throws SerializationException {
-    return !extract().equals("0");
+    int start = tokenPosition;
+    int end = nextToken();
+    return end - start != 1 || encodedTokens.charAt(start) != '0';
   }
 
   @Override
   public byte readByte() throws SerializationException {
-    String value = extract();
-    try {
-      return Byte.parseByte(value);
-    } catch (NumberFormatException e) {
-      throw getNumberFormatException(value, "byte", Byte.MIN_VALUE, Byte.MAX_VALUE);
-    }
+    return (byte) extractInt("byte", Byte.MIN_VALUE, Byte.MAX_VALUE);
   }
 
   @Override
@@ -544,12 +558,7 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   @Override
   public int readInt() throws SerializationException {
-    String value = extract();
-    try {
-      return Integer.parseInt(value);
-    } catch (NumberFormatException e) {
-      throw getNumberFormatException(value, "int", Integer.MIN_VALUE, Integer.MAX_VALUE);
-    }
+    return extractInt("int", Integer.MIN_VALUE, Integer.MAX_VALUE);
   }
 
   @Override
@@ -594,12 +603,7 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   @Override
   public short readShort() throws SerializationException {
-    String value = extract();
-    try {
-      return Short.parseShort(value);
-    } catch (NumberFormatException e) {
-      throw getNumberFormatException(value, "short", Short.MIN_VALUE, Short.MAX_VALUE);
-    }
+    return (short) extractInt("short", Short.MIN_VALUE, Short.MAX_VALUE);
   }
 
   @Override
@@ -821,36 +825,32 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
       setters = getSetters(instanceClass);
     }
 
-    Field[] serializableFields = SerializabilityUtil.applyFieldSerializationPolicy(instanceClass);
-    for (Field declField : serializableFields) {
-      assert (declField != null);
-      if ((clientFieldNames != null) && !clientFieldNames.contains(declField.getName())) {
-        continue;
+    FieldAccessor[] serializableFields = FieldSerializationPlan.get(instanceClass).getFields();
+    if (clientFieldNames == null) {
+      for (FieldAccessor declField : serializableFields) {
+        declField.read(this, instance, resolvedTypes);
       }
-
-      Type declGenericType = declField.getGenericType();
-      Object value = deserializeValue(declField.getType(), declGenericType, resolvedTypes);
-
-      String fieldName = declField.getName();
-      Method setter;
-      /*
-       * If setters is non-null and there is a setter method for the given
-       * field, call the setter. Otherwise, set the field value directly. For
-       * persistence APIs such as JDO, the setter methods have been enhanced to
-       * manipulate additional object state, causing direct field writes to fail
-       * to update the object state properly.
-       */
-      if ((setters != null) && ((setter = setters.get(fieldName)) != null)) {
-        setter.invoke(instance, value);
-      } else {
-        boolean isAccessible = declField.isAccessible();
-        boolean needsAccessOverride = !isAccessible && !Modifier.isPublic(declField.getModifiers());
-        if (needsAccessOverride) {
-          // Override access restrictions
-          declField.setAccessible(true);
+    } else {
+      for (FieldAccessor declField : serializableFields) {
+        String fieldName = declField.getName();
+        if (!clientFieldNames.contains(fieldName)) {
+          continue;
         }
 
-        declField.set(instance, value);
+        Object value = declField.readValue(this, resolvedTypes);
+        Method setter = setters.get(fieldName);
+        /*
+         * If there is a setter method for the given field, call the setter.
+         * Otherwise, set the field value directly. For persistence APIs such as
+         * JDO, the setter methods have been enhanced to manipulate additional
+         * object state, causing direct field writes to fail to update the
+         * object state properly.
+         */
+        if (setter != null) {
+          setter.invoke(instance, value);
+        } else {
+          declField.getField().set(instance, value);
+        }
       }
     }
 
@@ -988,11 +988,50 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
   }
 
   private String extract() throws SerializationException {
+    int start = tokenPosition;
+    return encodedTokens.substring(start, nextToken());
+  }
+
+  /**
+   * Reads the next token as an integer within the given range. Short decimal
+   * tokens, which include all type and string table references, are parsed in
+   * place without creating a substring.
+   */
+  private int extractInt(String type, int minValue, int maxValue)
+      throws SerializationException {
+    int start = tokenPosition;
+    int end = nextToken();
+    // At most 9 digits, which can't overflow an int
+    if (end > start && end - start < 10) {
+      boolean negative = encodedTokens.charAt(start) == '-';
+      int idx = negative ? start + 1 : start;
+      int value = 0;
+      while (idx < end) {
+        char ch = encodedTokens.charAt(idx);
+        if (ch < '0' || ch > '9') {
+          break;
+        }
+        value = value * 10 + (ch - '0');
+        ++idx;
+      }
+      if (idx == end && idx > start + (negative ? 1 : 0)) {
+        value = negative ? -value : value;
+        if (value >= minValue && value <= maxValue) {
+          return value;
+        }
+      }
+    }
+
+    String value = encodedTokens.substring(start, end);
     try {
-      return tokenList.get(tokenListIndex++);
-    } catch (IndexOutOfBoundsException e) {
-      throw new SerializationException("Too few tokens in RPC request", e);
+      int parsed = Integer.parseInt(value);
+      if (parsed >= minValue && parsed <= maxValue) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      // Fall through to a more explanatory exception.
     }
+    throw getNumberFormatException(value, type, minValue, maxValue);
   }
 
   /**
@@ -1138,6 +1177,18 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
     return cl.getTypeParameters().length == 0 && cl.getEnclosingClass() == null;
   }
 
+  /**
+   * Advances past the next token and returns the offset of its end.
+   */
+  private int nextToken() throws SerializationException {
+    int end = encodedTokens.indexOf(RPC_SEPARATOR_CHAR, tokenPosition);
+    if (end == -1) {
+      throw new SerializationException("Too few tokens in RPC request");
+    }
+    tokenPosition = end + 1;
+    return end;
+  }
+
   private void validateTypeVersions(Class<?> instanceClass,
       SerializedInstanceReference serializedInstRef) throws SerializationException {
     String clientTypeSignature = serializedInstRef.getSignature();
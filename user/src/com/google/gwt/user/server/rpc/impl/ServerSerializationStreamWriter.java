@@ -20,6 +20,7 @@ import com.google.gwt.user.client.rpc.SerializationException;
 import com.google.gwt.user.client.rpc.impl.AbstractSerializationStreamWriter;
 import com.google.gwt.user.server.Base64Utils;
 import com.google.gwt.user.server.rpc.SerializationPolicy;
+import com.google.gwt.user.server.rpc.impl.FieldSerializationPlan.FieldAccessor;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -27,7 +28,6 @@ import java.io.ObjectOutputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.IdentityHashMap;
 import java.util.List;
@@ -100,6 +100,59 @@ public final class ServerSerializationStreamWriter extends
     }
   }
 
+  /**
+   * Streams the same output as {@link LengthConstrainedArray} to an
+   * {@link Appendable} as tokens are added, instead of buffering it.
+   */
+  private static class LengthConstrainedArrayWriter {
+    private final Appendable out;
+    private int count = 0;
+    private boolean needsComma = false;
+    private int total = 0;
+
+    LengthConstrainedArrayWriter(Appendable out) throws IOException {
+      this.out = out;
+      out.append('[');
+    }
+
+    void addToken(CharSequence token) throws IOException {
+      beginToken();
+      out.append(token);
+    }
+
+    void addToken(int i) throws IOException {
+      addToken(String.valueOf(i));
+    }
+
+    /**
+     * Writes the separator for the next token, which the caller then writes
+     * to the underlying {@link Appendable} itself.
+     */
+    void beginToken() throws IOException {
+      total++;
+      if (count++ == LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH) {
+        if (total == LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH + 1) {
+          out.append(LengthConstrainedArray.PRELUDE);
+        } else {
+          out.append("],[");
+        }
+        count = 0;
+        needsComma = false;
+      }
+
+      if (needsComma) {
+        out.append(',');
+      } else {
+        needsComma = true;
+      }
+    }
+
+    void close() throws IOException {
+      out.append(total > LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH
+          ? LengthConstrainedArray.POSTLUDE : "]");
+    }
+  }
+
   /**
    * Enumeration used to provided typed instance writers.
    */
@@ -434,6 +487,27 @@ public final class ServerSerializationStreamWriter extends
     return String.valueOf(charVector.asArray(), 0, charVector.getSize());
   }
 
+  /**
+   * Appends {@link #escapeStringSplitNodes(String)} of a string, skipping the
+   * intermediate copy for the common case of a short string without any
+   * characters that need escaping.
+   */
+  private static void appendEscapedStringSplitNodes(String toEscape, Appendable out)
+      throws IOException {
+    int length = toEscape.length();
+    if (length <= MAX_STRING_NODE_LENGTH - 5) {
+      boolean needsEscape = false;
+      for (int i = 0; i < length && !needsEscape; i++) {
+        needsEscape = needsUnicodeEscape(toEscape.charAt(i));
+      }
+      if (!needsEscape) {
+        out.append(JS_QUOTE_CHAR).append(toEscape).append(JS_QUOTE_CHAR);
+        return;
+      }
+    }
+    out.append(escapeStringSplitNodes(toEscape));
+  }
+
   /**
    * Returns the {@link Class} instance to use for serialization. Enumerations
    * are serialized as their declaring class while all others are serialized
@@ -597,18 +671,32 @@ public final class ServerSerializationStreamWriter extends
    */
   @Override
   public String toString() {
+    return toString("");
+  }
+
+  /**
+   * Returns {@code prefix} followed by the encoded stream. Equivalent to
+   * {@code prefix + toString()}, without copying the encoded stream.
+   */
+  public String toString(String prefix) {
     // Build a JavaScript string (with escaping, of course).
     // We take a guess at how big to make to buffer to avoid numerous resizes.
     //
-    int capacityGuess = 2 * tokenListCharCount + 2 * tokenList.size();
-    LengthConstrainedArray stream = new LengthConstrainedArray(capacityGuess);
-    writePayload(stream);
-    writeStringTable(stream);
-    writeHeader(stream);
-
-    return stream.toString();
+    int capacityGuess = prefix.length() + 2 * tokenListCharCount + 2 * tokenList.size();
+    StringBuilder builder = new StringBuilder(capacityGuess);
+    builder.append(prefix);
+    try {
+      LengthConstrainedArrayWriter stream = new LengthConstrainedArrayWriter(builder);
+      writePayload(stream);
+      writeStringTable(stream, builder);
+      writeHeader(stream);
+      stream.close();
+    } catch (IOException e) {
+      throw new RuntimeException("Should never happen with a StringBuilder", e);
+    }
+    return builder.toString();
   }
-  
+
   @Override
   public void writeLong(long value) {
     if (getVersion() == SERIALIZATION_STREAM_MIN_VERSION) {
@@ -693,7 +781,7 @@ public final class ServerSerializationStreamWriter extends
   private void serializeClass(Object instance, Class<?> instanceClass)
       throws SerializationException {
     assert (instance != null);
-    Field[] serializableFields = SerializabilityUtil.applyFieldSerializationPolicy(instanceClass);
+    FieldAccessor[] serializableFields = FieldSerializationPlan.get(instanceClass).getFields();
 
     /**
      * If clientFieldNames is non-null, identify any additional server-only fields and serialize
@@ -703,12 +791,12 @@ public final class ServerSerializationStreamWriter extends
     Set<String> clientFieldNames = serializationPolicy.getClientFieldNamesForEnhancedClass(instanceClass);
     if (clientFieldNames != null) {
       List<Field> serverFields = new ArrayList<Field>();
-      for (Field declField : serializableFields) {
+      for (FieldAccessor declField : serializableFields) {
         assert (declField != null);
         
         // Identify server-only fields
         if (!clientFieldNames.contains(declField.getName())) {
-          serverFields.add(declField);
+          serverFields.add(declField.getField());
           continue;
         }
       }
@@ -737,31 +825,21 @@ public final class ServerSerializationStreamWriter extends
     }
     
     // Write the client-visible field data
-    for (Field declField : serializableFields) {
-      if ((clientFieldNames != null) && !clientFieldNames.contains(declField.getName())) {
-        // Skip server-only fields
-        continue;
-      }
+    try {
+      for (FieldAccessor declField : serializableFields) {
+        if ((clientFieldNames != null) && !clientFieldNames.contains(declField.getName())) {
+          // Skip server-only fields
+          continue;
+        }
 
-      boolean isAccessible = declField.isAccessible();
-      boolean needsAccessOverride = !isAccessible
-          && !Modifier.isPublic(declField.getModifiers());
-      if (needsAccessOverride) {
-        // Override the access restrictions
-        declField.setAccessible(true);
+        declField.write(this, instance);
       }
 
-      Object value;
-      try {
-        value = declField.get(instance);
-        serializeValue(value, declField.getType());
-
-      } catch (IllegalArgumentException e) {
-        throw new SerializationException(e);
+    } catch (IllegalArgumentException e) {
+      throw new SerializationException(e);
 
-      } catch (IllegalAccessException e) {
-        throw new SerializationException(e);
-      }
+    } catch (IllegalAccessException e) {
+      throw new SerializationException(e);
     }
 
     Class<?> superClass = instanceClass.getSuperclass();
@@ -831,23 +909,30 @@ public final class ServerSerializationStreamWriter extends
    * Notice that the field are written in reverse order that the client can just
    * pop items out of the stream.
    */
-  private void writeHeader(LengthConstrainedArray stream) {
+  private void writeHeader(LengthConstrainedArrayWriter stream) throws IOException {
     stream.addToken(getFlags());
     stream.addToken(getVersion());
   }
 
-  private void writePayload(LengthConstrainedArray stream) {
+  private void writePayload(LengthConstrainedArrayWriter stream) throws IOException {
     ListIterator<String> tokenIterator = tokenList.listIterator(tokenList.size());
     while (tokenIterator.hasPrevious()) {
       stream.addToken(tokenIterator.previous());
     }
   }
 
-  private void writeStringTable(LengthConstrainedArray stream) {
-    LengthConstrainedArray tableStream = new LengthConstrainedArray();
+  /**
+   * Writes the string table as a nested array, which is a single token of the
+   * outer array.
+   */
+  private void writeStringTable(LengthConstrainedArrayWriter stream, Appendable out)
+      throws IOException {
+    stream.beginToken();
+    LengthConstrainedArrayWriter tableStream = new LengthConstrainedArrayWriter(out);
     for (String s : getStringTable()) {
-      tableStream.addToken(escapeStringSplitNodes(s));
+      tableStream.beginToken();
+      appendEscapedStringSplitNodes(s, out);
     }
-    stream.addToken(tableStream.toString());
+    tableStream.close();
   }
 }
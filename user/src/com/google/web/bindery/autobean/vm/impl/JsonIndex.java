@@ -0,0 +1,329 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+/**
+ * A structural index of a JSON payload, built in a single pass over the
+ * payload without decoding any of its values.
+ * <p>
+ * Every value in the payload is recorded as an entry, in document order. An
+ * object is followed by the entries of its keys and values, alternating, and an
+ * array by the entries of its elements. Each entry records the character range
+ * of its value and the index of the entry following it, which allows the
+ * contents of nested objects and arrays to be skipped without rescanning them.
+ */
+final class JsonIndex {
+
+  static final byte ARRAY = 0;
+  static final byte BOOLEAN = 1;
+  static final byte NULL = 2;
+  static final byte NUMBER = 3;
+  static final byte OBJECT = 4;
+  static final byte STRING = 5;
+
+  /**
+   * Indexes a JSON payload.
+   *
+   * @throws RuntimeException if the payload is not well-formed JSON
+   */
+  static JsonIndex parse(String json) {
+    JsonIndex index = new JsonIndex(json);
+    index.skipWhitespace();
+    index.parseValue();
+    return index;
+  }
+
+  private int count;
+  private int[] ends;
+  private final String json;
+  private int[] nexts;
+  private int position;
+  private int[] starts;
+  private byte[] types;
+
+  private JsonIndex(String json) {
+    this.json = json;
+    // A rough guess, one entry per eight characters
+    int capacity = json.length() / 8 + 4;
+    ends = new int[capacity];
+    nexts = new int[capacity];
+    starts = new int[capacity];
+    types = new byte[capacity];
+  }
+
+  /**
+   * Returns the decoded value of a boolean entry.
+   */
+  boolean getBoolean(int entry) {
+    return json.charAt(starts[entry]) == 't';
+  }
+
+  /**
+   * Returns the index of the entry that follows an entry and all of its
+   * contents.
+   */
+  int getNext(int entry) {
+    return nexts[entry];
+  }
+
+  /**
+   * Returns the decoded value of a number entry.
+   */
+  double getNumber(int entry) {
+    return Double.parseDouble(json.substring(starts[entry], ends[entry]));
+  }
+
+  /**
+   * Returns the decoded value of a string entry.
+   */
+  String getString(int entry) {
+    int start = starts[entry] + 1;
+    int end = ends[entry] - 1;
+    int escape = start;
+    while (escape < end && json.charAt(escape) != '\\') {
+      escape++;
+    }
+    if (escape == end) {
+      return json.substring(start, end);
+    }
+
+    StringBuilder sb = new StringBuilder(end - start);
+    sb.append(json, start, escape);
+    for (int i = escape; i < end; i++) {
+      char c = json.charAt(i);
+      if (c != '\\') {
+        sb.append(c);
+        continue;
+      }
+      c = json.charAt(++i);
+      switch (c) {
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'n':
+          sb.append('\n');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'u':
+          if (i + 4 >= end) {
+            throw error("Truncated unicode escape", i);
+          }
+          try {
+            sb.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+          } catch (NumberFormatException e) {
+            throw error("Invalid unicode escape", i);
+          }
+          i += 4;
+          break;
+        default:
+          sb.append(c);
+          break;
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the type of an entry, one of the constants declared by this class.
+   */
+  byte getType(int entry) {
+    return types[entry];
+  }
+
+  /**
+   * Appends the payload text of an entry and its contents.
+   */
+  void write(int entry, StringBuilder sb) {
+    sb.append(json, starts[entry], ends[entry]);
+  }
+
+  private RuntimeException error(String message, int at) {
+    return new RuntimeException("Could not parse payload: " + message + " at position " + at);
+  }
+
+  private void expect(char c) {
+    if (position >= json.length() || json.charAt(position) != c) {
+      throw error("Expected '" + c + "'", position);
+    }
+    position++;
+  }
+
+  private void expectLiteral(String literal) {
+    if (!json.startsWith(literal, position)) {
+      throw error("Expected " + literal, position);
+    }
+    position += literal.length();
+  }
+
+  private int newEntry(byte type) {
+    if (count == starts.length) {
+      int capacity = count * 2;
+      int[] newEnds = new int[capacity];
+      int[] newNexts = new int[capacity];
+      int[] newStarts = new int[capacity];
+      byte[] newTypes = new byte[capacity];
+      System.arraycopy(ends, 0, newEnds, 0, count);
+      System.arraycopy(nexts, 0, newNexts, 0, count);
+      System.arraycopy(starts, 0, newStarts, 0, count);
+      System.arraycopy(types, 0, newTypes, 0, count);
+      ends = newEnds;
+      nexts = newNexts;
+      starts = newStarts;
+      types = newTypes;
+    }
+    starts[count] = position;
+    types[count] = type;
+    return count++;
+  }
+
+  /**
+   * Returns the next non-whitespace character without consuming it.
+   */
+  private char peek() {
+    skipWhitespace();
+    if (position >= json.length()) {
+      throw error("Unexpected end of payload", position);
+    }
+    return json.charAt(position);
+  }
+
+  /**
+   * Records the members of an object or the elements of an array.
+   */
+  private void parseContainer(char close, boolean keyed) {
+    position++;
+    if (peek() == close) {
+      position++;
+      return;
+    }
+    while (true) {
+      if (keyed) {
+        if (peek() != '"') {
+          throw error("Expected a property name", position);
+        }
+        parseValue();
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+      }
+      parseValue();
+      char c = peek();
+      position++;
+      if (c == close) {
+        return;
+      } else if (c != ',') {
+        throw error("Expected ',' or '" + close + "'", position - 1);
+      }
+      skipWhitespace();
+    }
+  }
+
+  /**
+   * Records the value starting at the current position, which must not be
+   * whitespace.
+   */
+  private void parseValue() {
+    if (position >= json.length()) {
+      throw error("Unexpected end of payload", position);
+    }
+    char c = json.charAt(position);
+    int entry;
+    switch (c) {
+      case '{':
+        entry = newEntry(OBJECT);
+        parseContainer('}', true);
+        break;
+      case '[':
+        entry = newEntry(ARRAY);
+        parseContainer(']', false);
+        break;
+      case '"':
+        entry = newEntry(STRING);
+        skipString();
+        break;
+      case 't':
+        entry = newEntry(BOOLEAN);
+        expectLiteral("true");
+        break;
+      case 'f':
+        entry = newEntry(BOOLEAN);
+        expectLiteral("false");
+        break;
+      case 'n':
+        entry = newEntry(NULL);
+        expectLiteral("null");
+        break;
+      case '-':
+      case '0':
+      case '1':
+      case '2':
+      case '3':
+      case '4':
+      case '5':
+      case '6':
+      case '7':
+      case '8':
+      case '9':
+        entry = newEntry(NUMBER);
+        skipNumber();
+        break;
+      default:
+        throw error("Unexpected character '" + c + "'", position);
+    }
+    ends[entry] = position;
+    nexts[entry] = count;
+  }
+
+  private void skipNumber() {
+    for (int length = json.length(); position < length; position++) {
+      char c = json.charAt(position);
+      if ((c < '0' || c > '9') && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+        return;
+      }
+    }
+  }
+
+  private void skipString() {
+    int start = position++;
+    for (int length = json.length(); position < length; position++) {
+      char c = json.charAt(position);
+      if (c == '"') {
+        position++;
+        return;
+      } else if (c == '\\') {
+        position++;
+      }
+    }
+    throw error("Unterminated string", start);
+  }
+
+  private void skipWhitespace() {
+    for (int length = json.length(); position < length; position++) {
+      char c = json.charAt(position);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        return;
+      }
+    }
+  }
+}
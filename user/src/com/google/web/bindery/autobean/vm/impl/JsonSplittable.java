@@ -15,156 +15,121 @@
  */
 package com.google.web.bindery.autobean.vm.impl;
 
-import com.google.gwt.core.client.impl.WeakMapping;
 import com.google.web.bindery.autobean.shared.Splittable;
 import com.google.web.bindery.autobean.shared.impl.HasSplittable;
 import com.google.web.bindery.autobean.shared.impl.StringQuoter;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * Uses the org.json packages to slice and dice request payloads.
+ * Slices and dices request payloads on the server.
+ * <p>
+ * A parsed payload is backed by a {@link JsonIndex} over the original text.
+ * Values are only decoded when they are read, the members of objects and
+ * arrays are only materialized when they are accessed, and subtrees that have
+ * not been modified are copied verbatim from the original text by
+ * {@link #getPayload()}.
  */
 public class JsonSplittable implements Splittable, HasSplittable {
 
   public static JsonSplittable create() {
-    return new JsonSplittable(new JSONObject());
+    JsonSplittable toReturn = new JsonSplittable(JsonIndex.OBJECT);
+    toReturn.properties = new LinkedHashMap<String, JsonSplittable>();
+    return toReturn;
   }
 
   public static Splittable create(String payload) {
-    try {
-      switch (payload.charAt(0)) {
-        case '{':
-          return new JsonSplittable(new JSONObject(payload));
-        case '[':
-          return new JsonSplittable(new JSONArray(payload));
-        case '"':
-          return new JsonSplittable(new JSONArray("[" + payload + "]").getString(0));
-        case '-':
-        case '0':
-        case '1':
-        case '2':
-        case '3':
-        case '4':
-        case '5':
-        case '6':
-        case '7':
-        case '8':
-        case '9':
-          return new JsonSplittable(Double.parseDouble(payload));
-        case 't':
-        case 'f':
-          return new JsonSplittable(Boolean.parseBoolean(payload));
-        case 'n':
-          return null;
-        default:
-          throw new RuntimeException("Could not parse payload: payload[0] = " + payload.charAt(0));
-      }
-    } catch (JSONException e) {
-      throw new RuntimeException("Could not parse payload", e);
-    }
+    JsonSplittable toReturn = new JsonSplittable(JsonIndex.parse(payload), 0);
+    return toReturn.type == JsonIndex.NULL ? null : toReturn;
   }
 
   public static Splittable createIndexed() {
-    return new JsonSplittable(new JSONArray());
+    JsonSplittable toReturn = new JsonSplittable(JsonIndex.ARRAY);
+    toReturn.elements = new ArrayList<JsonSplittable>();
+    return toReturn;
   }
 
   public static Splittable createNull() {
-    return new JsonSplittable();
+    return new JsonSplittable(JsonIndex.NULL);
   }
 
   /**
-   * Private equivalent of org.json.JSONObject.getNames(JSONObject) since that
-   * method is not available in Android 2.2. Used to represent a null value.
+   * The elements of an array, once materialized.
    */
-  private static String[] getNames(JSONObject json) {
-    int length = json.length();
-    if (length == 0) {
-      return null;
-    }
-    String[] names = new String[length];
-    Iterator<?> i = json.keys();
-    int j = 0;
-    while (i.hasNext()) {
-      names[j++] = (String) i.next();
-    }
-    return names;
-  }
-
-  private JSONArray array;
-  private Boolean bool;
+  private List<JsonSplittable> elements;
+  private final int entry;
   /**
-   * Used to represent a null value.
+   * The index backing this value, or {@code null} if it was created empty.
    */
-  private boolean isNull;
-  private Double number;
-  private JSONObject obj;
+  private final JsonIndex index;
+  /**
+   * Set when the members of an object or array have been changed.
+   */
+  private boolean modified;
+  /**
+   * The properties of an object, once materialized.
+   */
+  private Map<String, JsonSplittable> properties;
+  private Map<String, Object> reified;
   private String string;
-  private final Map<String, Object> reified = new HashMap<String, Object>();
+  private final byte type;
 
   /**
-   * Constructor for a null value.
+   * Constructor for a value created without a payload.
    */
-  private JsonSplittable() {
-    isNull = true;
-  }
-
-  private JsonSplittable(boolean value) {
-    this.bool = value;
-  }
-
-  private JsonSplittable(double value) {
-    this.number = value;
+  private JsonSplittable(byte type) {
+    this.entry = -1;
+    this.index = null;
+    this.type = type;
   }
 
-  private JsonSplittable(JSONArray array) {
-    this.array = array;
-  }
-
-  private JsonSplittable(JSONObject obj) {
-    this.obj = obj;
-  }
-
-  private JsonSplittable(String string) {
-    this.array = null;
-    this.obj = null;
-    this.string = string;
+  /**
+   * Constructor for a value in a payload.
+   */
+  private JsonSplittable(JsonIndex index, int entry) {
+    this.entry = entry;
+    this.index = index;
+    this.type = index.getType(entry);
   }
 
   public boolean asBoolean() {
-    return bool;
+    return index.getBoolean(entry);
   }
 
   public double asNumber() {
-    return number;
+    return index.getNumber(entry);
   }
 
   public void assign(Splittable parent, int index) {
-    try {
-      ((JsonSplittable) parent).array.put(index, value());
-    } catch (JSONException e) {
-      throw new RuntimeException(e);
+    JsonSplittable p = (JsonSplittable) parent;
+    List<JsonSplittable> list = p.elements();
+    while (list.size() <= index) {
+      list.add(null);
     }
+    list.set(index, this);
+    p.modified = true;
   }
 
   public void assign(Splittable parent, String propertyName) {
-    try {
-      ((JsonSplittable) parent).obj.put(propertyName, value());
-    } catch (JSONException e) {
-      throw new RuntimeException(e);
+    JsonSplittable p = (JsonSplittable) parent;
+    if (type == JsonIndex.NULL) {
+      // Assigning null removes the property, like JSONObject.put()
+      p.properties().remove(propertyName);
+    } else {
+      p.properties().put(propertyName, this);
     }
+    p.modified = true;
   }
 
   public String asString() {
+    if (string == null && type == JsonIndex.STRING) {
+      string = index.getString(entry);
+    }
     return string;
   }
 
@@ -173,54 +138,25 @@ public class JsonSplittable implements Splittable, HasSplittable {
   }
 
   public Splittable get(int index) {
-    try {
-      return makeSplittable(array.get(index));
-    } catch (JSONException e) {
-      throw new RuntimeException(e);
-    }
+    return nonNull(elements().get(index));
   }
 
   public Splittable get(String key) {
-    try {
-      return makeSplittable(obj.get(key));
-    } catch (JSONException e) {
-      throw new RuntimeException(key, e);
-    }
+    return nonNull(properties().get(key));
   }
 
   public String getPayload() {
-    if (isNull) {
-      return "null";
-    }
-    if (obj != null) {
-      return obj.toString();
-    }
-    if (array != null) {
-      return array.toString();
-    }
-    if (string != null) {
-      return StringQuoter.quote(string);
-    }
-    if (number != null) {
-      return String.valueOf(number);
-    }
-    if (bool != null) {
-      return String.valueOf(bool);
-    }
-    throw new RuntimeException("No data in this JsonSplittable");
+    StringBuilder sb = new StringBuilder();
+    write(sb);
+    return sb.toString();
   }
 
   public List<String> getPropertyKeys() {
-    String[] names = getNames(obj);
-    if (names == null) {
-      return Collections.emptyList();
-    } else {
-      return Collections.unmodifiableList(Arrays.asList(names));
-    }
+    return Collections.unmodifiableList(new ArrayList<String>(properties().keySet()));
   }
 
   public Object getReified(String key) {
-    return reified.get(key);
+    return reified == null ? null : reified.get(key);
   }
 
   public Splittable getSplittable() {
@@ -228,112 +164,204 @@ public class JsonSplittable implements Splittable, HasSplittable {
   }
 
   public boolean isBoolean() {
-    return bool != null;
+    return type == JsonIndex.BOOLEAN;
   }
 
   public boolean isIndexed() {
-    return array != null;
+    return type == JsonIndex.ARRAY;
   }
 
   public boolean isKeyed() {
-    return obj != null;
+    return type == JsonIndex.OBJECT;
   }
 
   public boolean isNull(int index) {
-    return array.isNull(index);
+    List<JsonSplittable> list = elements();
+    return index >= list.size() || nonNull(list.get(index)) == null;
   }
 
   public boolean isNull(String key) {
     // Treat undefined and null as the same
-    return !obj.has(key) || obj.isNull(key);
+    return nonNull(properties().get(key)) == null;
   }
 
   public boolean isNumber() {
-    return number != null;
+    return type == JsonIndex.NUMBER;
   }
 
   public boolean isReified(String key) {
-    return reified.containsKey(key);
+    return reified != null && reified.containsKey(key);
   }
 
   public boolean isString() {
-    return string != null;
+    return type == JsonIndex.STRING;
   }
 
   public boolean isUndefined(String key) {
-    return !obj.has(key);
+    return !properties().containsKey(key);
   }
 
   public void setReified(String key, Object object) {
+    if (reified == null) {
+      reified = new HashMap<String, Object>();
+    }
     reified.put(key, object);
   }
 
   public void setSize(int size) {
-    // This is terrible, but there's no API support for resizing or splicing
-    JSONArray newArray = new JSONArray();
-    for (int i = 0; i < size; i++) {
-      try {
-        newArray.put(i, array.get(i));
-      } catch (JSONException e) {
-        throw new RuntimeException(e);
+    List<JsonSplittable> list = elements();
+    if (size < list.size()) {
+      list.subList(size, list.size()).clear();
+    } else {
+      while (list.size() < size) {
+        list.add(null);
       }
     }
-    array = newArray;
+    modified = true;
   }
 
   public int size() {
-    return array.length();
+    return elements().size();
+  }
+
+  /**
+   * Materializes the elements of an array.
+   */
+  private List<JsonSplittable> elements() {
+    if (elements == null) {
+      if (type != JsonIndex.ARRAY) {
+        throw new IllegalStateException("Not an array");
+      }
+      elements = new ArrayList<JsonSplittable>();
+      for (int e = entry + 1, end = index.getNext(entry); e < end; e = index.getNext(e)) {
+        elements.add(new JsonSplittable(index, e));
+      }
+    }
+    return elements;
   }
 
-  private synchronized JsonSplittable makeSplittable(Object object) {
-    if (JSONObject.NULL.equals(object)) {
-      return null;
+  /**
+   * Returns {@code true} if this value can be written by copying its original
+   * text.
+   */
+  private boolean isPristine() {
+    if (index == null || modified) {
+      return false;
+    }
+    if (elements != null) {
+      for (JsonSplittable element : elements) {
+        if (!element.isPristine()) {
+          return false;
+        }
+      }
     }
-    /*
-     * Maintain a 1:1 mapping between object instances and JsonSplittables.
-     * Doing this with a WeakHashMap doesn't work on Android, since its org.json
-     * arrays appear to have value-based equality.
-     */
-    JsonSplittable seen = (JsonSplittable) WeakMapping.get(object, JsonSplittable.class.getName());
-    if (seen == null) {
-      if (object instanceof JSONObject) {
-        seen = new JsonSplittable((JSONObject) object);
-        WeakMapping.setWeak(object, JsonSplittable.class.getName(), seen);
-      } else if (object instanceof JSONArray) {
-        seen = new JsonSplittable((JSONArray) object);
-        WeakMapping.setWeak(object, JsonSplittable.class.getName(), seen);
-      } else if (object instanceof String) {
-        seen = new JsonSplittable(object.toString());
-      } else if (object instanceof Number) {
-        seen = new JsonSplittable(((Number) object).doubleValue());
-      } else if (object instanceof Boolean) {
-        seen = new JsonSplittable((Boolean) object);
-      } else {
-        throw new RuntimeException("Unhandled type " + object.getClass());
+    if (properties != null) {
+      for (JsonSplittable value : properties.values()) {
+        if (!value.isPristine()) {
+          return false;
+        }
       }
     }
-    return seen;
+    return true;
   }
 
-  private Object value() {
-    if (isNull) {
-      return null;
+  private JsonSplittable nonNull(JsonSplittable value) {
+    return value == null || value.type == JsonIndex.NULL ? null : value;
+  }
+
+  /**
+   * Materializes the properties of an object.
+   */
+  private Map<String, JsonSplittable> properties() {
+    if (properties == null) {
+      if (type != JsonIndex.OBJECT) {
+        throw new IllegalStateException("Not an object");
+      }
+      properties = new LinkedHashMap<String, JsonSplittable>();
+      for (int e = entry + 1, end = index.getNext(entry); e < end;) {
+        int value = index.getNext(e);
+        properties.put(index.getString(e), new JsonSplittable(index, value));
+        e = index.getNext(value);
+      }
     }
-    if (obj != null) {
-      return obj;
+    return properties;
+  }
+
+  private void write(StringBuilder sb) {
+    switch (type) {
+      case JsonIndex.ARRAY:
+        if (isPristine()) {
+          index.write(entry, sb);
+          return;
+        }
+        sb.append('[');
+        boolean needsComma = false;
+        for (JsonSplittable element : elements) {
+          if (needsComma) {
+            sb.append(',');
+          }
+          needsComma = true;
+          if (element == null) {
+            sb.append("null");
+          } else {
+            element.write(sb);
+          }
+        }
+        sb.append(']');
+        return;
+      case JsonIndex.NULL:
+        sb.append("null");
+        return;
+      case JsonIndex.NUMBER:
+        writeNumber(sb);
+        return;
+      case JsonIndex.OBJECT:
+        if (isPristine()) {
+          index.write(entry, sb);
+          return;
+        }
+        sb.append('{');
+        needsComma = false;
+        for (Map.Entry<String, JsonSplittable> property : properties.entrySet()) {
+          if (needsComma) {
+            sb.append(',');
+          }
+          needsComma = true;
+          sb.append(StringQuoter.quote(property.getKey())).append(':');
+          property.getValue().write(sb);
+        }
+        sb.append('}');
+        return;
+      default:
+        index.write(entry, sb);
+        return;
     }
-    if (array != null) {
-      return array;
+  }
+
+  /**
+   * Writes a number, dropping the trailing zeroes that
+   * {@link String#valueOf(double)} leaves behind, so that {@code 42.0} is
+   * written as {@code 42}.
+   */
+  private void writeNumber(StringBuilder sb) {
+    int start = sb.length();
+    index.write(entry, sb);
+    for (int i = start, j = sb.length(); i < j; i++) {
+      char c = sb.charAt(i);
+      if (c == 'e' || c == 'E') {
+        return;
+      }
     }
-    if (string != null) {
-      return string;
+    if (sb.indexOf(".", start) == -1) {
+      return;
     }
-    if (number != null) {
-      return number;
+    int end = sb.length();
+    while (sb.charAt(end - 1) == '0') {
+      end--;
     }
-    if (bool != null) {
-      return bool;
+    if (sb.charAt(end - 1) == '.') {
+      end--;
     }
-    throw new RuntimeException("No data");
+    sb.setLength(end);
   }
 }
@@ -16,6 +16,7 @@
 package com.google.web.bindery.requestfactory.server;
 
 import com.google.web.bindery.requestfactory.shared.BaseProxy;
+import com.google.web.bindery.requestfactory.shared.BatchLocator;
 import com.google.web.bindery.requestfactory.shared.Locator;
 import com.google.web.bindery.requestfactory.shared.ProxyFor;
 import com.google.web.bindery.requestfactory.shared.ProxyForName;
@@ -27,6 +28,11 @@ import com.google.web.bindery.requestfactory.shared.ServiceName;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Adds support to the ServiceLayer chain for using {@link Locator} and
@@ -34,6 +40,99 @@ import java.lang.reflect.Modifier;
  */
 final class LocatorServiceLayer extends ServiceLayerDecorator {
 
+  /**
+   * Splits a call covering many domain objects into one call per domain type
+   * that has a {@link BatchLocator}, and a single call down the chain for the
+   * remaining objects.
+   * 
+   * @param <R> the type of value computed for each object
+   */
+  private abstract class BatchedCall<R> {
+    /**
+     * Computes the values for objects of one domain type.
+     */
+    abstract List<R> callLocator(BatchLocator<Object, Object> locator, Class<?> domainType,
+        List<Object> args);
+
+    /**
+     * Computes the values for objects without a {@link BatchLocator}.
+     */
+    abstract List<R> callNext(List<Class<?>> domainTypes, List<Object> args);
+
+    List<R> invoke(String methodName, List<Class<?>> domainTypes, List<Object> args) {
+      // Group argument positions by domain type, keeping the first-seen order
+      Map<Class<?>, List<Integer>> positionsByType = new LinkedHashMap<Class<?>, List<Integer>>();
+      List<Integer> unbatchedPositions = new ArrayList<Integer>();
+      for (int i = 0, j = domainTypes.size(); i < j; i++) {
+        Class<?> domainType = domainTypes.get(i);
+        List<Integer> positions = positionsByType.get(domainType);
+        if (positions == null) {
+          positions = getBatchLocator(domainType) == null ? unbatchedPositions
+              : new ArrayList<Integer>();
+          positionsByType.put(domainType, positions);
+        }
+        positions.add(i);
+      }
+
+      List<R> toReturn = new ArrayList<R>(Collections.<R> nCopies(args.size(), null));
+      for (Map.Entry<Class<?>, List<Integer>> entry : positionsByType.entrySet()) {
+        List<Integer> positions = entry.getValue();
+        if (positions != unbatchedPositions) {
+          BatchLocator<Object, Object> locator = getBatchLocator(entry.getKey());
+          scatter(methodName, locator.getClass().getCanonicalName(),
+              callLocator(locator, entry.getKey(), select(args, positions)), positions, toReturn);
+        }
+      }
+      if (unbatchedPositions.size() == args.size()) {
+        return callNext(domainTypes, args);
+      } else if (!unbatchedPositions.isEmpty()) {
+        List<Class<?>> unbatchedTypes = new ArrayList<Class<?>>(unbatchedPositions.size());
+        for (int position : unbatchedPositions) {
+          unbatchedTypes.add(domainTypes.get(position));
+        }
+        scatter(methodName, ServiceLayer.class.getSimpleName(),
+            callNext(unbatchedTypes, select(args, unbatchedPositions)), unbatchedPositions,
+            toReturn);
+      }
+      return toReturn;
+    }
+
+    private <E> List<E> select(List<E> list, List<Integer> positions) {
+      List<E> toReturn = new ArrayList<E>(positions.size());
+      for (int position : positions) {
+        toReturn.add(list.get(position));
+      }
+      return toReturn;
+    }
+
+    private void scatter(String methodName, String source, List<R> values,
+        List<Integer> positions, List<R> toReturn) {
+      if (values.size() != positions.size()) {
+        die(null, "%s.%s returned %d values for %d domain objects", source, methodName,
+            values.size(), positions.size());
+      }
+      for (int i = 0, j = positions.size(); i < j; i++) {
+        toReturn.set(positions.get(i), values.get(i));
+      }
+    }
+  }
+
+  @Override
+  public List<Boolean> areLive(List<Object> domainObjects) {
+    return new BatchedCall<Boolean>() {
+      @Override
+      List<Boolean> callLocator(BatchLocator<Object, Object> locator, Class<?> domainType,
+          List<Object> domainObjects) {
+        return locator.areLive(domainObjects);
+      }
+
+      @Override
+      List<Boolean> callNext(List<Class<?>> domainTypes, List<Object> domainObjects) {
+        return LocatorServiceLayer.super.areLive(domainObjects);
+      }
+    }.invoke("areLive", getClasses(domainObjects), domainObjects);
+  }
+
   @Override
   public <T> T createDomainObject(Class<T> clazz) {
     Locator<T, ?> l = getLocator(clazz);
@@ -80,6 +179,22 @@ final class LocatorServiceLayer extends ServiceLayerDecorator {
     return doGetVersion(domainObject);
   }
 
+  @Override
+  public List<Object> getVersions(List<Object> domainObjects) {
+    return new BatchedCall<Object>() {
+      @Override
+      List<Object> callLocator(BatchLocator<Object, Object> locator, Class<?> domainType,
+          List<Object> domainObjects) {
+        return locator.getVersions(domainObjects);
+      }
+
+      @Override
+      List<Object> callNext(List<Class<?>> domainTypes, List<Object> domainObjects) {
+        return LocatorServiceLayer.super.getVersions(domainObjects);
+      }
+    }.invoke("getVersions", getClasses(domainObjects), domainObjects);
+  }
+
   @Override
   public boolean isLive(Object domainObject) {
     return doIsLive(domainObject);
@@ -90,6 +205,30 @@ final class LocatorServiceLayer extends ServiceLayerDecorator {
     return doLoadDomainObject(clazz, domainId);
   }
 
+  @Override
+  public List<Object> loadDomainObjects(List<Class<?>> classes, List<Object> domainIds) {
+    if (classes.size() != domainIds.size()) {
+      die(null, "Size mismatch in paramaters. classes.size() = %d domainIds.size=%d", classes
+          .size(), domainIds.size());
+    }
+    return new BatchedCall<Object>() {
+      @Override
+      List<Object> callLocator(BatchLocator<Object, Object> locator, Class<?> domainType,
+          List<Object> domainIds) {
+        List<Object> ids = new ArrayList<Object>(domainIds.size());
+        for (Object domainId : domainIds) {
+          ids.add(locator.getIdType().cast(domainId));
+        }
+        return locator.findAll(domainType, ids);
+      }
+
+      @Override
+      List<Object> callNext(List<Class<?>> domainTypes, List<Object> domainIds) {
+        return LocatorServiceLayer.super.loadDomainObjects(domainTypes, domainIds);
+      }
+    }.invoke("findAll", classes, domainIds);
+  }
+
   /**
    * Returns true if the context method returns a {@link Request} and the domain
    * method is non-static.
@@ -198,6 +337,24 @@ final class LocatorServiceLayer extends ServiceLayerDecorator {
     return l.find(clazz, id);
   }
 
+  /**
+   * Returns the {@link BatchLocator} for a domain type, or {@code null} if the
+   * type doesn't have one.
+   */
+  @SuppressWarnings("unchecked")
+  private BatchLocator<Object, Object> getBatchLocator(Class<?> domainType) {
+    Locator<?, ?> l = getLocator(domainType);
+    return l instanceof BatchLocator ? (BatchLocator<Object, Object>) l : null;
+  }
+
+  private List<Class<?>> getClasses(List<Object> domainObjects) {
+    List<Class<?>> toReturn = new ArrayList<Class<?>>(domainObjects.size());
+    for (Object domainObject : domainObjects) {
+      toReturn.add(domainObject.getClass());
+    }
+    return toReturn;
+  }
+
   @SuppressWarnings("unchecked")
   private <T, I> Locator<T, I> getLocator(Class<T> domainType) {
     Class<? extends Locator<?, ?>> locatorType = getTop().resolveLocator(domainType);
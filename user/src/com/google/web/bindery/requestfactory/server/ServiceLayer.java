@@ -102,6 +102,21 @@ public abstract class ServiceLayer {
   ServiceLayer() {
   }
 
+  /**
+   * Determines whether multiple domain objects are still live (i.e. not
+   * deleted) in the backing store. This method is intended to allow more
+   * efficient access to the backing store by checking all objects returned in
+   * a response together.
+   * <p>
+   * The default implementation of this method will delegate to
+   * {@link #isLive(Object)}.
+   * 
+   * @param domainObjects the domain entities to check
+   * @return one value per domain object, in the same order, as would be
+   *         returned by {@link #isLive(Object)}
+   */
+  public abstract List<Boolean> areLive(List<Object> domainObjects);
+
   /**
    * Create an instance of the requested domain type.
    * 
@@ -221,6 +236,20 @@ public abstract class ServiceLayer {
    */
   public abstract Object getVersion(Object domainObject);
 
+  /**
+   * Returns the versions of multiple domain objects. This method is intended
+   * to allow more efficient access to the backing store by providing all
+   * objects returned in a response.
+   * <p>
+   * The default implementation of this method will delegate to
+   * {@link #getVersion(Object)}.
+   * 
+   * @param domainObjects the domain objects
+   * @return one version per domain object, in the same order, elements of which
+   *         may be {@code null} if the objects are not persistent
+   */
+  public abstract List<Object> getVersions(List<Object> domainObjects);
+
   /**
    * Invoke a domain service method. The underlying eventually calls
    * {@link Method#invoke(Object, Object...)}.
@@ -249,6 +249,16 @@ public class SimpleRequestProcessor {
     }
   }
 
+  /**
+   * Verifies that a batched ServiceLayer method returned one value per object.
+   */
+  private void checkBatchSize(String methodName, List<Object> domainObjects, List<?> values) {
+    if (values.size() != domainObjects.size()) {
+      throw new UnexpectedException("ServiceLayer." + methodName + " returned " + values.size()
+          + " values for " + domainObjects.size() + " domain objects", null);
+    }
+  }
+
   private AutoBean<ServerFailureMessage> createFailureMessage(ReportableException e) {
     ServerFailure failure =
         exceptionHandler.createServerFailure(e.getCause() == null ? e : e.getCause());
@@ -263,12 +273,19 @@ public class SimpleRequestProcessor {
 
   private void createReturnOperations(List<OperationMessage> operations, RequestState returnState,
       IdToEntityMap toProcess) {
+    /*
+     * Find the persistent objects first, so that their liveness and versions
+     * can be checked together and the ServiceLayer can batch its access to the
+     * backing store.
+     */
+    List<Map.Entry<SimpleProxyId<?>, AutoBean<? extends BaseProxy>>> entries =
+        new ArrayList<Map.Entry<SimpleProxyId<?>, AutoBean<? extends BaseProxy>>>(toProcess
+            .size());
+    List<Boolean> isPersistent = new ArrayList<Boolean>(toProcess.size());
+    List<Object> persistentObjects = new ArrayList<Object>();
     for (Map.Entry<SimpleProxyId<?>, AutoBean<? extends BaseProxy>> entry : toProcess.entrySet()) {
       SimpleProxyId<?> id = entry.getKey();
-
-      AutoBean<? extends BaseProxy> bean = entry.getValue();
-      Object domainObject = bean.getTag(Constants.DOMAIN_OBJECT);
-      WriteOperation writeOperation;
+      Object domainObject = entry.getValue().getTag(Constants.DOMAIN_OBJECT);
 
       if (id.isEphemeral() && returnState.isEntityType(id.getProxyClass())) {
         // See if the entity has been persisted in the meantime
@@ -276,10 +293,45 @@ public class SimpleRequestProcessor {
             Collections.<String> emptySet());
       }
 
-      if (id.isEphemeral() || id.isSynthetic() || domainObject == null) {
-        // If the object isn't persistent, there's no reason to send an update
+      // If the object isn't persistent, there's no reason to send an update
+      boolean persistent = !id.isEphemeral() && !id.isSynthetic() && domainObject != null;
+      entries.add(entry);
+      isPersistent.add(persistent);
+      if (persistent) {
+        persistentObjects.add(domainObject);
+      }
+    }
+
+    List<Boolean> areLive = Collections.emptyList();
+    if (!persistentObjects.isEmpty()) {
+      areLive = service.areLive(persistentObjects);
+      checkBatchSize("areLive", persistentObjects, areLive);
+    }
+    List<Object> liveObjects = new ArrayList<Object>(persistentObjects.size());
+    for (int i = 0, j = persistentObjects.size(); i < j; i++) {
+      if (areLive.get(i)) {
+        liveObjects.add(persistentObjects.get(i));
+      }
+    }
+    List<Object> domainVersions = Collections.emptyList();
+    if (!liveObjects.isEmpty()) {
+      domainVersions = service.getVersions(liveObjects);
+      checkBatchSize("getVersions", liveObjects, domainVersions);
+    }
+
+    Iterator<Boolean> isPersistentIt = isPersistent.iterator();
+    Iterator<Boolean> areLiveIt = areLive.iterator();
+    Iterator<Object> domainVersionsIt = domainVersions.iterator();
+    for (Map.Entry<SimpleProxyId<?>, AutoBean<? extends BaseProxy>> entry : entries) {
+      SimpleProxyId<?> id = entry.getKey();
+
+      AutoBean<? extends BaseProxy> bean = entry.getValue();
+      Object domainObject = bean.getTag(Constants.DOMAIN_OBJECT);
+      WriteOperation writeOperation;
+
+      if (!isPersistentIt.next()) {
         writeOperation = null;
-      } else if (!service.isLive(domainObject)) {
+      } else if (!areLiveIt.next()) {
         writeOperation = WriteOperation.DELETE;
       } else if (id.wasEphemeral()) {
         writeOperation = WriteOperation.PERSIST;
@@ -293,7 +345,7 @@ public class SimpleRequestProcessor {
          * If we're sending an operation, the domain object must be persistent.
          * This means that it must also have a non-null version.
          */
-        Object domainVersion = service.getVersion(domainObject);
+        Object domainVersion = domainVersionsIt.next();
         if (domainVersion == null) {
           throw new UnexpectedException("The persisted entity with id "
               + service.getId(domainObject) + " has a null version", null);
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Locator} that can retrieve and check many domain objects at once.
+ * <p>
+ * The RequestFactory service layer collects all of the objects of a request
+ * that share a Locator and hands them to these methods together, so that a
+ * Locator backed by a datastore can answer with a single query instead of one
+ * query per object. The default implementations delegate to the single-object
+ * methods of {@link Locator}; subtypes should override the ones they can
+ * implement more efficiently.
+ *
+ * @param <T> the type of domain object the Locator will operate on
+ * @param <I> the type of object the Locator expects to use as an id for the
+ *          domain object
+ */
+public abstract class BatchLocator<T, I> extends Locator<T, I> {
+
+  /**
+   * Returns whether each of the given domain objects should still be
+   * considered accessible.
+   * <p>
+   * The default implementation calls {@link #isLive(Object)} for each object.
+   *
+   * @param domainObjects the objects to check
+   * @return one value per domain object, in the same order
+   * @see #isLive(Object)
+   */
+  public List<Boolean> areLive(List<T> domainObjects) {
+    List<Boolean> toReturn = new ArrayList<Boolean>(domainObjects.size());
+    for (T domainObject : domainObjects) {
+      toReturn.add(isLive(domainObject));
+    }
+    return toReturn;
+  }
+
+  /**
+   * Retrieves several objects of the same type. Elements of the returned list
+   * may be {@code null} to indicate that the requested object could not be
+   * found.
+   * <p>
+   * The default implementation calls {@link #find(Class, Object)} for each id.
+   *
+   * @param clazz the type of objects to retrieve
+   * @param ids ids previously returned from {@link #getId(Object)}
+   * @return one object per id, in the same order
+   */
+  public List<T> findAll(Class<? extends T> clazz, List<I> ids) {
+    List<T> toReturn = new ArrayList<T>(ids.size());
+    for (I id : ids) {
+      toReturn.add(find(clazz, id));
+    }
+    return toReturn;
+  }
+
+  /**
+   * Returns the versions of the given domain objects.
+   * <p>
+   * The default implementation calls {@link #getVersion(Object)} for each
+   * object.
+   *
+   * @param domainObjects the objects to obtain versions for
+   * @return one version, which may be {@code null}, per domain object, in the
+   *         same order
+   */
+  public List<Object> getVersions(List<T> domainObjects) {
+    List<Object> toReturn = new ArrayList<Object>(domainObjects.size());
+    for (T domainObject : domainObjects) {
+      toReturn.add(getVersion(domainObject));
+    }
+    return toReturn;
+  }
+}
@@ -67,7 +67,7 @@ public class MockHttpServletRequest implements HttpServletRequest {
   }
 
   public int getContentLength() {
-    throw new UnsupportedOperationException();
+    return -1;
   }
 
   public String getContentType() {
@@ -189,6 +189,19 @@ public class RPCServletUtilsTest extends TestCase {
     assertSame(RPCServletUtils.CHARSET_UTF8, RPCServletUtils.getCharset(null));
   }
 
+  /**
+   * RPCServletUtils#getUtf8Length() should agree with the UTF-8 encoder.
+   */
+  public void testGetUtf8Length() {
+    String[] samples = {
+        "", "//OK[1,2,[\"foo\"],0,7]", "caf\u00e9", "\u6d4b\u8bd5",
+        "\ud83d\ude00 smile", "lone \ud83d surrogate", "trailing \ud83d", "\ude00 low"};
+    for (String sample : samples) {
+      assertEquals(sample, sample.getBytes(RPCServletUtils.CHARSET_UTF8).length,
+          RPCServletUtils.getUtf8Length(sample));
+    }
+  }
+
   /**
    * Character type doesn't match UTF-8, but ignore it.
    */
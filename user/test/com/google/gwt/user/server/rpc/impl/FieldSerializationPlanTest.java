@@ -0,0 +1,438 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.SerializationStreamReader;
+import com.google.gwt.user.client.rpc.SerializationStreamWriter;
+import com.google.gwt.user.server.rpc.RPC;
+import com.google.gwt.user.server.rpc.SerializationPolicy;
+import com.google.gwt.user.server.rpc.SerializationPolicyProvider;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests {@link FieldSerializationPlan} and the type variable bindings that
+ * {@link SerializabilityUtil} caches per class, by writing instances with a
+ * {@link ServerSerializationStreamWriter} and reading them back with a
+ * {@link ServerSerializationStreamReader}.
+ */
+public class FieldSerializationPlanTest extends TestCase {
+
+  /**
+   * A class with a field of every kind the stream distinguishes.
+   */
+  public static class Base implements IsSerializable {
+    public int id;
+    public long big;
+    public String name;
+    public Base next;
+
+    public int getBaseId() {
+      return id;
+    }
+  }
+
+  /**
+   * A subclass that hides one of the fields of its superclass.
+   */
+  public static class Derived extends Base {
+    public int id;
+    public boolean flag;
+    public byte b;
+    public char c;
+    public double d;
+    public float f;
+    public short s;
+  }
+
+  /**
+   * A class with fields that must not be serialized.
+   */
+  public static class WithSkippedFields implements IsSerializable {
+    public static int staticValue = 3;
+    public final int finalValue;
+    public transient int transientValue;
+    public int value;
+
+    public WithSkippedFields() {
+      this(1);
+    }
+
+    public WithSkippedFields(int finalValue) {
+      this.finalValue = finalValue;
+    }
+  }
+
+  /**
+   * A class serialized by {@link CustomSerialized_CustomFieldSerializer}.
+   */
+  public static class CustomSerialized implements IsSerializable {
+    public int first;
+    public String second;
+  }
+
+  /**
+   * Writes the fields of a {@link CustomSerialized} in reverse order.
+   */
+  public static class CustomSerialized_CustomFieldSerializer {
+    public static void deserialize(SerializationStreamReader streamReader,
+        CustomSerialized instance) throws SerializationException {
+      instance.second = streamReader.readString();
+      instance.first = streamReader.readInt() - 100;
+    }
+
+    public static void serialize(SerializationStreamWriter streamWriter,
+        CustomSerialized instance) throws SerializationException {
+      streamWriter.writeString(instance.second);
+      streamWriter.writeInt(instance.first + 100);
+    }
+  }
+
+  /**
+   * A subclass without a custom field serializer of a class that has one.
+   */
+  public static class DerivedFromCustomSerialized extends CustomSerialized {
+    public int third;
+  }
+
+  /**
+   * A class with a field the client does not know about.
+   */
+  public static class Enhanced implements IsSerializable {
+    public int clientValue;
+    public String serverValue;
+    public transient boolean setterCalled;
+
+    public void setClientValue(int clientValue) {
+      this.clientValue = clientValue;
+      setterCalled = true;
+    }
+  }
+
+  /**
+   * A generic class with a field typed by its type parameter.
+   */
+  public static class Box<T> implements IsSerializable {
+    public T value;
+  }
+
+  /**
+   * A class binding the type parameter of its superclass.
+   */
+  public static class StringBox extends Box<String> {
+  }
+
+  /**
+   * A serialization policy that treats {@link Enhanced} as an enhanced class.
+   */
+  private static class EnhancedPolicy extends SerializationPolicy {
+    private final SerializationPolicy delegate = RPC.getDefaultSerializationPolicy();
+
+    @Override
+    public Set<String> getClientFieldNamesForEnhancedClass(Class<?> clazz) {
+      return clazz == Enhanced.class ? Collections.singleton("clientValue") : null;
+    }
+
+    @Override
+    public boolean shouldDeserializeFields(Class<?> clazz) {
+      return delegate.shouldDeserializeFields(clazz);
+    }
+
+    @Override
+    public boolean shouldSerializeFields(Class<?> clazz) {
+      return delegate.shouldSerializeFields(clazz);
+    }
+
+    @Override
+    public void validateDeserialize(Class<?> clazz) throws SerializationException {
+      delegate.validateDeserialize(clazz);
+    }
+
+    @Override
+    public void validateSerialize(Class<?> clazz) throws SerializationException {
+      delegate.validateSerialize(clazz);
+    }
+  }
+
+  private static final String MODULE_BASE_URL = "http://example.com/";
+
+  private static final String STRONG_NAME = "ABC";
+
+  private static final String TYPE_PREFIX = FieldSerializationPlanTest.class.getName() + "$";
+
+  public void testInheritedFields() throws SerializationException {
+    Derived instance = new Derived();
+    instance.id = 1;
+    ((Base) instance).id = 2;
+    instance.big = 1234567890123L;
+    instance.name = "a|b\\c";
+    instance.flag = true;
+    instance.b = Byte.MIN_VALUE;
+    instance.c = '\u2011';
+    instance.d = 4.5;
+    instance.f = -0.25f;
+    instance.s = Short.MAX_VALUE;
+    instance.next = instance;
+
+    String response = write(RPC.getDefaultSerializationPolicy(), instance);
+    assertEquals("[-1,2,2,'R9x$wTL',32767,1,1,-0.25,4.5,8209,-128,1,[\"" + TYPE_PREFIX
+        + "Derived/2416174225\",\"a|b\\\\c\"],0,7]", response);
+
+    Derived copy = (Derived) read(RPC.getDefaultSerializationPolicy(), response);
+    assertEquals(1, copy.id);
+    assertEquals(2, copy.getBaseId());
+    assertEquals(1234567890123L, copy.big);
+    assertEquals("a|b\\c", copy.name);
+    assertTrue(copy.flag);
+    assertEquals(Byte.MIN_VALUE, copy.b);
+    assertEquals('\u2011', copy.c);
+    assertEquals(4.5, copy.d);
+    assertEquals(-0.25f, copy.f);
+    assertEquals(Short.MAX_VALUE, copy.s);
+    assertSame(copy, copy.next);
+  }
+
+  public void testSkippedFields() throws SerializationException {
+    WithSkippedFields instance = new WithSkippedFields(2);
+    instance.transientValue = 4;
+    instance.value = 5;
+
+    String response = write(RPC.getDefaultSerializationPolicy(), instance);
+    assertEquals("[5,1,[\"" + TYPE_PREFIX + "WithSkippedFields/3100657578\"],0,7]", response);
+
+    WithSkippedFields copy = (WithSkippedFields) read(RPC.getDefaultSerializationPolicy(),
+        response);
+    assertEquals(1, copy.finalValue);
+    assertEquals(0, copy.transientValue);
+    assertEquals(5, copy.value);
+  }
+
+  public void testCustomFieldSerializer() throws SerializationException {
+    DerivedFromCustomSerialized instance = new DerivedFromCustomSerialized();
+    instance.first = 1;
+    instance.second = "two";
+    instance.third = 3;
+
+    String response = write(RPC.getDefaultSerializationPolicy(), instance);
+    assertEquals("[101,2,3,1,[\"" + TYPE_PREFIX
+        + "DerivedFromCustomSerialized/3062132513\",\"two\"],0,7]", response);
+
+    DerivedFromCustomSerialized copy = (DerivedFromCustomSerialized) read(
+        RPC.getDefaultSerializationPolicy(), response);
+    assertEquals(1, copy.first);
+    assertEquals("two", copy.second);
+    assertEquals(3, copy.third);
+  }
+
+  public void testEnhancedClass() throws SerializationException {
+    Enhanced instance = new Enhanced();
+    instance.clientValue = 1;
+    instance.serverValue = "server";
+
+    String response = write(new EnhancedPolicy(), instance);
+    assertEquals("[1,2,1,[\"" + TYPE_PREFIX + "Enhanced/1433368548\",\""
+        + "rO0ABXcEAAAAAXQAC3NlcnZlclZhbHVldAAGc2VydmVy\"],0,7]", response);
+
+    Enhanced copy = (Enhanced) read(new EnhancedPolicy(), response);
+    assertEquals(1, copy.clientValue);
+    assertEquals("server", copy.serverValue);
+    assertTrue(copy.setterCalled);
+  }
+
+  public void testSupertypeBindings() {
+    TypeVariable<?> boxParameter = Box.class.getTypeParameters()[0];
+    DequeMap<TypeVariable<?>, Type> resolvedTypes = new DequeMap<TypeVariable<?>, Type>();
+
+    // The bindings of a class are cached the first time, so resolve twice.
+    for (int i = 0; i < 2; i++) {
+      SerializabilityUtil.resolveTypes(StringBox.class, resolvedTypes);
+      assertEquals(String.class, resolvedTypes.get(boxParameter));
+      SerializabilityUtil.releaseTypes(StringBox.class, resolvedTypes);
+      assertTrue(resolvedTypes.isEmpty());
+    }
+  }
+
+  public void testTypeCheckedGenericField() throws SerializationException {
+    StringBox instance = new StringBox();
+    instance.value = "boxed";
+    String response = write(RPC.getDefaultSerializationPolicy(), instance);
+
+    StringBox copy = (StringBox) readTypeChecked(response, StringBox.class);
+    assertEquals("boxed", copy.value);
+
+    @SuppressWarnings("unchecked")
+    Box<Object> rawBox = (Box<Object>) (Box<?>) instance;
+    rawBox.value = Integer.valueOf(1);
+    response = write(RPC.getDefaultSerializationPolicy(), instance);
+    try {
+      readTypeChecked(response, StringBox.class);
+      fail("Expected SerializationException");
+    } catch (SerializationException e) {
+      // Expected: the field is bound to String by the superclass.
+    }
+  }
+
+  private static ServerSerializationStreamReader createReader(final SerializationPolicy policy,
+      String response) throws SerializationException {
+    ServerSerializationStreamReader reader = new ServerSerializationStreamReader(
+        FieldSerializationPlanTest.class.getClassLoader(), new SerializationPolicyProvider() {
+          @Override
+          public SerializationPolicy getSerializationPolicy(String moduleBaseURL,
+              String serializationPolicyStrongName) {
+            return policy;
+          }
+        });
+    reader.prepareToRead(toRequest(response));
+    return reader;
+  }
+
+  private static String escapeRequestString(String s) {
+    return s.replace("\\", "\\\\").replace("|", "\\!").replace("\u0000", "\\0");
+  }
+
+  private static Object read(SerializationPolicy policy, String response)
+      throws SerializationException {
+    return createReader(policy, response).readObject();
+  }
+
+  private static Object readTypeChecked(String response, Type expectedType)
+      throws SerializationException {
+    return createReader(RPC.getDefaultSerializationPolicy(), response).readObject(expectedType,
+        new DequeMap<TypeVariable<?>, Type>());
+  }
+
+  /**
+   * Reads one JavaScript string literal, or several joined by '+', starting
+   * at the opening quote at {@code start}, and returns the index following it.
+   */
+  private static int readStringLiteral(String js, int start, StringBuilder out) {
+    int i = start;
+    while (true) {
+      assertEquals('"', js.charAt(i++));
+      for (char c = js.charAt(i++); c != '"'; c = js.charAt(i++)) {
+        if (c != '\\') {
+          out.append(c);
+          continue;
+        }
+        char escaped = js.charAt(i++);
+        switch (escaped) {
+          case 'b':
+            out.append('\b');
+            break;
+          case 'f':
+            out.append('\f');
+            break;
+          case 'n':
+            out.append('\n');
+            break;
+          case 'r':
+            out.append('\r');
+            break;
+          case 't':
+            out.append('\t');
+            break;
+          case 'u':
+            out.append((char) Integer.parseInt(js.substring(i, i + 4), 16));
+            i += 4;
+            break;
+          default:
+            out.append(escaped);
+        }
+      }
+      if (js.charAt(i) != '+') {
+        return i;
+      }
+      i++;
+    }
+  }
+
+  /**
+   * Turns a response written by {@link ServerSerializationStreamWriter} into a
+   * request that {@link ServerSerializationStreamReader} reads the same values
+   * from. Both use the same tokens for values, but a response lists them in
+   * reverse order as a JavaScript array, followed by the string table.
+   */
+  private static String toRequest(String response) {
+    List<String> tokens = new ArrayList<String>();
+    List<String> strings = new ArrayList<String>();
+    int i = 1;
+    int end = response.length() - 1;
+    assertEquals('[', response.charAt(0));
+    assertEquals(']', response.charAt(end));
+    while (i < end) {
+      if (response.charAt(i) == '[') {
+        i++;
+        while (response.charAt(i) != ']') {
+          StringBuilder string = new StringBuilder();
+          i = readStringLiteral(response, i, string);
+          strings.add(string.toString());
+          if (response.charAt(i) == ',') {
+            i++;
+          }
+        }
+        i++;
+        tokens.add(null);
+      } else {
+        int tokenEnd = response.indexOf(',', i);
+        if (tokenEnd == -1) {
+          tokenEnd = end;
+        }
+        tokens.add(response.substring(i, tokenEnd));
+        i = tokenEnd;
+      }
+      if (i < end) {
+        assertEquals(',', response.charAt(i++));
+      }
+    }
+
+    // The string table is followed by the flags and the version.
+    assertEquals(tokens.size() - 3, tokens.indexOf(null));
+    StringBuilder request = new StringBuilder();
+    request.append(tokens.get(tokens.size() - 1)).append('|');
+    request.append(tokens.get(tokens.size() - 2)).append('|');
+    request.append(strings.size() + 2).append('|');
+    for (String s : strings) {
+      request.append(escapeRequestString(s)).append('|');
+    }
+    request.append(MODULE_BASE_URL).append('|');
+    request.append(STRONG_NAME).append('|');
+    request.append(strings.size() + 1).append('|');
+    request.append(strings.size() + 2).append('|');
+    for (int j = tokens.size() - 4; j >= 0; j--) {
+      // Longs are quoted in responses only.
+      request.append(tokens.get(j).replace("'", "")).append('|');
+    }
+    return request.toString();
+  }
+
+  private static String write(SerializationPolicy policy, Object instance)
+      throws SerializationException {
+    ServerSerializationStreamWriter writer = new ServerSerializationStreamWriter(policy);
+    writer.prepareToWrite();
+    writer.writeObject(instance);
+    return writer.toString();
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link ServerSerializationStreamReader}.
+ */
+public class ServerSerializationStreamReaderTest extends TestCase {
+
+  private static final String HEADER = "7|0|3|http://example.com/|ABC|a\\!b|1|2|";
+
+  public void testReadNumbers() throws SerializationException {
+    ServerSerializationStreamReader reader = createReader(
+        "42|-7|1234567890|-2147483648|-0|0|1|-128|32767|3|4.5|");
+    assertEquals(42, reader.readInt());
+    assertEquals(-7, reader.readInt());
+    assertEquals(1234567890, reader.readInt());
+    assertEquals(Integer.MIN_VALUE, reader.readInt());
+    assertEquals(0, reader.readInt());
+    assertFalse(reader.readBoolean());
+    assertTrue(reader.readBoolean());
+    assertEquals(Byte.MIN_VALUE, reader.readByte());
+    assertEquals(Short.MAX_VALUE, reader.readShort());
+    assertEquals("a|b", reader.readString());
+    assertEquals(4.5, reader.readDouble());
+    assertEquals(19, reader.getNumberOfTokens());
+  }
+
+  public void testReadInvalidNumbers() throws SerializationException {
+    ServerSerializationStreamReader reader = createReader("128|-|1.5|99999999999|");
+    try {
+      reader.readByte();
+      fail("Expected NumberFormatException");
+    } catch (NumberFormatException e) {
+      assertTrue(e.getMessage().contains("out-of-range"));
+    }
+    try {
+      reader.readInt();
+      fail("Expected NumberFormatException");
+    } catch (NumberFormatException e) {
+      assertTrue(e.getMessage().contains("non-numerical"));
+    }
+    try {
+      reader.readInt();
+      fail("Expected NumberFormatException");
+    } catch (NumberFormatException e) {
+      assertTrue(e.getMessage().contains("fractional"));
+    }
+    try {
+      reader.readInt();
+      fail("Expected NumberFormatException");
+    } catch (NumberFormatException e) {
+      assertTrue(e.getMessage().contains("out-of-range"));
+    }
+  }
+
+  public void testTooFewTokens() throws SerializationException {
+    ServerSerializationStreamReader reader = createReader("1|2");
+    assertEquals(1, reader.readInt());
+    try {
+      reader.readInt();
+      fail("Expected SerializationException");
+    } catch (SerializationException e) {
+      assertTrue(e.getMessage().contains("Too few tokens"));
+    }
+  }
+
+  private ServerSerializationStreamReader createReader(String tokens)
+      throws SerializationException {
+    ServerSerializationStreamReader reader =
+        new ServerSerializationStreamReader(getClass().getClassLoader(), null);
+    reader.prepareToRead(HEADER + tokens);
+    return reader;
+  }
+}
@@ -16,6 +16,9 @@
 
 package com.google.gwt.user.server.rpc.impl;
 
+import com.google.gwt.user.server.rpc.RPC;
+import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamWriter.LengthConstrainedArray;
+
 import junit.framework.TestCase;
 
 /**
@@ -114,4 +117,36 @@ public class ServerSerializationStreamWriterTest extends TestCase {
         escaped);
   }
 
+  /**
+   * Streaming the output into one buffer must produce exactly what the buffered
+   * {@link LengthConstrainedArray} produces, including the concatenation of
+   * arrays that exceed the maximum array length.
+   */
+  public void testToStringWithPrefix() {
+    ServerSerializationStreamWriter writer =
+        new ServerSerializationStreamWriter(RPC.getDefaultSerializationPolicy());
+    writer.prepareToWrite();
+    String[] strings = {"foo", "bar \"quoted\"", "\u2011"};
+    int tokenCount = LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH + 10;
+    for (int i = 0; i < tokenCount; i++) {
+      writer.writeInt(i);
+      writer.writeString(strings[i % strings.length]);
+    }
+
+    LengthConstrainedArray expected = new LengthConstrainedArray();
+    for (int i = tokenCount - 1; i >= 0; i--) {
+      expected.addToken(i % strings.length + 1);
+      expected.addToken(i);
+    }
+    LengthConstrainedArray stringTable = new LengthConstrainedArray();
+    for (String s : strings) {
+      stringTable.addToken(ServerSerializationStreamWriter.escapeStringSplitNodes(s));
+    }
+    expected.addToken(stringTable.toString());
+    expected.addToken(writer.getFlags());
+    expected.addToken(writer.getVersion());
+
+    assertEquals(expected.toString(), writer.toString());
+    assertEquals("//OK" + expected.toString(), writer.toString("//OK"));
+  }
 }
@@ -180,6 +180,22 @@ public class SplittableTest extends GWTTestCase {
     assertEquals(a, s.get("a"));
   }
 
+  /**
+   * Ensure that changes to a nested value show up in the payload of its
+   * parents, along with the untouched values.
+   */
+  public void testNestedAssign() {
+    Splittable s = StringQuoter.split("{\"a\":{\"b\":[1,\"x\\ny\"]},\"c\":{\"d\":true}}");
+    assertEquals("x\ny", s.get("a").get("b").get(1).asString());
+    string("z").assign(s.get("a"), "e");
+
+    Splittable normalized = normalize(s);
+    assertEquals("z", normalized.get("a").get("e").asString());
+    assertEquals(1.0, normalized.get("a").get("b").get(0).asNumber());
+    assertEquals("x\ny", normalized.get("a").get("b").get(1).asString());
+    assertTrue(normalized.get("c").get("d").asBoolean());
+  }
+
   /**
    * Tests attributes of the {@link Splittable#NULL} field.
    */
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import com.google.web.bindery.requestfactory.shared.BatchLocator;
+import com.google.web.bindery.requestfactory.shared.Locator;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests that {@link LocatorServiceLayer} hands all objects of a type with a
+ * {@link BatchLocator} to it at once.
+ */
+public class BatchLocatorTest extends TestCase {
+
+  static class Domain {
+    final String id;
+    final boolean live;
+
+    Domain(String id, boolean live) {
+      this.id = id;
+      this.live = live;
+    }
+  }
+
+  static class DomainLocator extends BatchLocator<Domain, String> {
+    final List<List<?>> batches = new ArrayList<List<?>>();
+
+    @Override
+    public List<Boolean> areLive(List<Domain> domainObjects) {
+      batches.add(domainObjects);
+      return super.areLive(domainObjects);
+    }
+
+    @Override
+    public Domain create(Class<? extends Domain> clazz) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Domain find(Class<? extends Domain> clazz, String id) {
+      return new Domain(id, true);
+    }
+
+    @Override
+    public List<Domain> findAll(Class<? extends Domain> clazz, List<String> ids) {
+      batches.add(ids);
+      return super.findAll(clazz, ids);
+    }
+
+    @Override
+    public Class<Domain> getDomainType() {
+      return Domain.class;
+    }
+
+    @Override
+    public String getId(Domain domainObject) {
+      return domainObject.id;
+    }
+
+    @Override
+    public Class<String> getIdType() {
+      return String.class;
+    }
+
+    @Override
+    public Object getVersion(Domain domainObject) {
+      return domainObject.id + "-version";
+    }
+
+    @Override
+    public List<Object> getVersions(List<Domain> domainObjects) {
+      batches.add(domainObjects);
+      return super.getVersions(domainObjects);
+    }
+
+    @Override
+    public boolean isLive(Domain domainObject) {
+      return domainObject.live;
+    }
+  }
+
+  static class Other {
+    final String id;
+
+    Other(String id) {
+      this.id = id;
+    }
+  }
+
+  static class OtherLocator extends Locator<Other, String> {
+    int calls;
+
+    @Override
+    public Other create(Class<? extends Other> clazz) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Other find(Class<? extends Other> clazz, String id) {
+      calls++;
+      return new Other(id);
+    }
+
+    @Override
+    public Class<Other> getDomainType() {
+      return Other.class;
+    }
+
+    @Override
+    public String getId(Other domainObject) {
+      calls++;
+      return domainObject.id;
+    }
+
+    @Override
+    public Class<String> getIdType() {
+      return String.class;
+    }
+
+    @Override
+    public Object getVersion(Other domainObject) {
+      calls++;
+      return 1;
+    }
+  }
+
+  static class LocatorLayer extends ServiceLayerDecorator {
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends Locator<?, ?>> T createLocator(Class<T> clazz) {
+      return (T) (clazz == DomainLocator.class ? domainLocator : otherLocator);
+    }
+
+    @Override
+    public Class<? extends Locator<?, ?>> resolveLocator(Class<?> domainType) {
+      return domainType == Domain.class ? DomainLocator.class : OtherLocator.class;
+    }
+  }
+
+  /*
+   * ServiceLayerCache memoizes createLocator() across ServiceLayer instances,
+   * so the locators are shared and reset before each test.
+   */
+  private static final DomainLocator domainLocator = new DomainLocator();
+
+  private static final OtherLocator otherLocator = new OtherLocator();
+
+  private ServiceLayer layer;
+
+  public void testAreLive() {
+    Domain live = new Domain("a", true);
+    Domain dead = new Domain("b", false);
+    Other other = new Other("c");
+
+    List<Boolean> areLive = layer.areLive(Arrays.<Object> asList(live, other, dead));
+    assertEquals(Arrays.asList(true, true, false), areLive);
+    assertEquals(Arrays.asList(Arrays.asList(live, dead)), domainLocator.batches);
+    // The default isLive() implementation uses getId() and find()
+    assertEquals(2, otherLocator.calls);
+  }
+
+  public void testGetVersions() {
+    Domain a = new Domain("a", true);
+    Domain b = new Domain("b", true);
+
+    List<Object> versions = layer.getVersions(Arrays.<Object> asList(a, b, new Other("c")));
+    assertEquals(Arrays.<Object> asList("a-version", "b-version", 1), versions);
+    assertEquals(Arrays.asList(Arrays.asList(a, b)), domainLocator.batches);
+    assertEquals(1, otherLocator.calls);
+  }
+
+  public void testLoadDomainObjects() {
+    List<Class<?>> classes = Arrays.<Class<?>> asList(Domain.class, Other.class, Domain.class);
+    List<Object> loaded = layer.loadDomainObjects(classes, Arrays.<Object> asList("a", "b", "c"));
+    assertEquals(3, loaded.size());
+    assertEquals("a", ((Domain) loaded.get(0)).id);
+    assertEquals("b", ((Other) loaded.get(1)).id);
+    assertEquals("c", ((Domain) loaded.get(2)).id);
+    assertEquals(Arrays.asList(Arrays.asList("a", "c")), domainLocator.batches);
+    assertEquals(1, otherLocator.calls);
+  }
+
+  @Override
+  protected void setUp() {
+    domainLocator.batches.clear();
+    otherLocator.calls = 0;
+    layer = ServiceLayer.create(new LocatorLayer());
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.google.web.bindery.requestfactory.vm;
 
+import com.google.web.bindery.requestfactory.server.BatchLocatorTest;
 import com.google.web.bindery.requestfactory.server.BoxesAndPrimitivesJreTest;
 import com.google.web.bindery.requestfactory.server.ComplexKeysJreTest;
 import com.google.web.bindery.requestfactory.server.FanoutReceiverJreTest;
@@ -44,6 +45,7 @@ import junit.framework.TestSuite;
 public class RequestFactoryJreSuite {
   public static Test suite() {
     TestSuite suite = new TestSuite("requestfactory package tests that require the JRE");
+    suite.addTestSuite(BatchLocatorTest.class);
     suite.addTestSuite(BoxesAndPrimitivesJreTest.class);
     suite.addTestSuite(ComplexKeysJreTest.class);
     suite.addTestSuite(FanoutReceiverJreTest.class);